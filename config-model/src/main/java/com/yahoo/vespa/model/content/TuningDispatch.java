@@ -7,7 +7,7 @@ package com.yahoo.vespa.model.content;
 public class TuningDispatch {
 
     private final Integer maxHitsPerPartition;
-    public enum DispatchPolicy { ROUNDROBIN, RANDOM};
+    public enum DispatchPolicy { ROUNDROBIN, RANDOM, ADAPTIVE};
     private final DispatchPolicy dispatchPolicy;
     private final Boolean useLocalNode;
     private final Double minGroupCoverage;
@@ -19,6 +19,7 @@ import com.yahoo.vespa.model.container.ContainerCluster;
 import com.yahoo.vespa.model.container.docproc.DocprocChain;
 import com.yahoo.vespa.model.content.DispatchSpec;
 import com.yahoo.vespa.model.content.SearchCoverage;
+import com.yahoo.vespa.model.content.TuningDispatch;
 
 import java.io.File;
 import java.io.IOException;
@@ -404,6 +405,10 @@ public class IndexedSearchCluster extends SearchCluster
                 builder.minActivedocsPercentage(tuning.dispatch.minActiveDocsCoverage);
             builder.node(nodeBuilder);
         }
+        if (tuning.dispatch.minGroupCoverage != null)
+            builder.minSearchCoverage(tuning.dispatch.minGroupCoverage);
+        if (tuning.dispatch.policy == TuningDispatch.DispatchPolicy.ADAPTIVE)
+            builder.distributionPolicy(DispatchConfig.DistributionPolicy.ADAPTIVE);
     }
 
     @Override
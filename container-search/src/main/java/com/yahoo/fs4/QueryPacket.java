@@ -32,6 +32,8 @@ public class QueryPacket extends Packet {
     private int sessionSize = 0; // Length of sessionKey ignore section for cache key
     private int ignoreableOffset = 0; // Start of (hits/offset/timestamp) ignore section for cache key
     private int ignoreableSize = 0;  // Length of (hits/offset/timestamp) ignore section for cache key
+    private int offset = -1; // The offset to request, or -1 to use the offset of the query
+    private int hits = -1; // The hits to request, or -1 to use the hits of the query
 
     private QueryPacket(Query query) {
         this.query = query;
@@ -52,9 +54,19 @@ public class QueryPacket extends Packet {
     }
 
 
+    /**
+     * Sets the result window to request, overriding the offset and hits of the query.
+     * This is used when the query is sent to multiple search nodes whose results are merged
+     * before the window of the query is applied.
+     */
+    public void setResultWindow(int offset, int hits) {
+        this.offset = offset;
+        this.hits = hits;
+    }
+
     /** Returns the first offset requested */
     public int getOffset() {
-        return query.getOffset();
+        return offset >= 0 ? offset : query.getOffset();
     }
 
     /**
@@ -67,7 +79,7 @@ public class QueryPacket extends Packet {
 
     /** Returns the number of hits requested */
     public int getHits() {
-        return query.getHits();
+        return hits >= 0 ? hits : query.getHits();
     }
 
     private byte[] getSummaryClassAsUtf8() {
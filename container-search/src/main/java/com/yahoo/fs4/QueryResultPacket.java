@@ -183,6 +183,9 @@ public class QueryResultPacket extends Packet {
     /** Returns the opaque grouping results **/
     public byte[] getGroupData() { return groupData; }
 
+    /** Sets the opaque grouping results. Used when merging results from multiple search nodes. */
+    public void setGroupData(byte[] groupData) { this.groupData = groupData; }
+
 
     /** Returns the total number of documents avalable for this query */
     public long getTotalDocumentCount() { return totalDocumentCount; }
@@ -204,6 +207,20 @@ public class QueryResultPacket extends Packet {
     // TODO: Handle new maxRank intelligently
     public int getMaxRank() { return maxRank.intValue(); }
 
+    /** Sets the max rank. Used when merging results from multiple search nodes. */
+    public void setMaxRank(Number maxRank) { this.maxRank = maxRank; }
+
+    /** Sets the coverage information. Used when merging results from multiple search nodes. */
+    public void setCoverage(long coverageDocs, long activeDocs, long soonActiveDocs, int degradedReason,
+                            short nodesQueried, short nodesReplied) {
+        this.coverageDocs = coverageDocs;
+        this.activeDocs = activeDocs;
+        this.soonActiveDocs = soonActiveDocs;
+        this.degradedReason = degradedReason;
+        this.nodesQueried = nodesQueried;
+        this.nodesReplied = nodesReplied;
+    }
+
     public short getNodesQueried() { return nodesQueried; }
     public short getNodesReplied() { return nodesReplied; }
 
@@ -5,6 +5,7 @@ import com.google.common.collect.ImmutableList;
 import com.yahoo.search.Query;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.yahoo.text.Lowercase.toLowerCase;
 
@@ -57,6 +58,12 @@ public class IndexFacts {
 
     private boolean frozen;
 
+    /** The max number of source and restrict combinations to cache the resolved indexes of */
+    private static final int maxCachedDocumentTypeIndexes = 1000;
+
+    /** The indexes resolved for each combination of sources and restrict, cached when this is frozen */
+    private final Map<List<List<String>>, DocumentTypeIndexes> documentTypeIndexes = new ConcurrentHashMap<>();
+
     /** Whether this has (any) NGram indexes. Calculated at freeze time. */
     private boolean hasNGramIndices;
 
@@ -198,13 +205,6 @@ public class IndexFacts {
         return sd.indices().values();
     }
 
-    /** Calls resolveDocumentTypes(query.getModel().getSources(), query.getModel().getRestrict()) */
-    private Set<String> resolveDocumentTypes(Query query) {
-        // Assumption: Search definition name equals document name.
-        return resolveDocumentTypes(query.getModel().getSources(), query.getModel().getRestrict(),
-                                    searchDefinitions.keySet());
-    }
-
     /**
      * Given a search list which is a mixture of document types and cluster
      * names, and a restrict list which is a list of document types, return a
@@ -258,6 +258,23 @@ public class IndexFacts {
         return collection == null ? Collections.<String>emptyList() : collection;
     }
 
+    /**
+     * Returns the indexes of the document types resolved from the given sources and restrict,
+     * which are cached for each combination if this is frozen.
+     */
+    private DocumentTypeIndexes resolveIndexes(Collection<String> sources, Collection<String> restrict) {
+        if ( ! frozen) return null; // the indexes may still change
+        List<List<String>> key = Arrays.asList(new ArrayList<>(emptyCollectionIfNull(sources)),
+                                               new ArrayList<>(emptyCollectionIfNull(restrict)));
+        DocumentTypeIndexes indexes = documentTypeIndexes.get(key);
+        if (indexes == null) {
+            indexes = new DocumentTypeIndexes(resolveDocumentTypes(sources, restrict, searchDefinitions.keySet()));
+            if (documentTypeIndexes.size() < maxCachedDocumentTypeIndexes)
+                documentTypeIndexes.put(key, indexes);
+        }
+        return indexes;
+    }
+
     /**
      * Chooses the correct search definition, default if in doubt.
      *
@@ -393,17 +410,24 @@ public class IndexFacts {
 
         private final List<String> documentTypes;
 
+        /** The precomputed indexes of the document types of this, or null to look them up in the search definitions */
+        private final DocumentTypeIndexes indexes;
+
         private Session(Query query) {
-            documentTypes = ImmutableList.copyOf(resolveDocumentTypes(query));
+            this(query.getModel().getSources(), query.getModel().getRestrict());
         }
 
         private Session(Collection<String> sources, Collection<String> restrict) {
+            indexes = resolveIndexes(sources, restrict);
             // Assumption: Search definition name equals document name.
-            documentTypes = ImmutableList.copyOf(resolveDocumentTypes(sources, restrict, searchDefinitions.keySet()));
+            documentTypes = indexes != null
+                            ? indexes.documentTypes
+                            : ImmutableList.copyOf(resolveDocumentTypes(sources, restrict, searchDefinitions.keySet()));
         }
 
         private Session(Collection<String> sources, Collection<String> restrict, Set<String> candidateDocumentTypes) {
             documentTypes = ImmutableList.copyOf(resolveDocumentTypes(sources, restrict, candidateDocumentTypes));
+            indexes = null;
         }
 
         /**
@@ -415,6 +439,7 @@ public class IndexFacts {
          *         (never null) if none is found
          */
         public Index getIndex(String indexName) {
+            if (indexes != null) return indexes.getIndex(indexName);
             return IndexFacts.this.getIndexFromDocumentTypes(indexName, documentTypes);
         }
 
@@ -440,6 +465,7 @@ public class IndexFacts {
          * @param indexName index name or alias
          */
         public String getCanonicName(String indexName) {
+            if (indexes != null) return indexes.getCanonicName(indexName);
             return IndexFacts.this.getCanonicNameFromDocumentTypes(indexName, documentTypes);
         }
 
@@ -449,6 +475,7 @@ public class IndexFacts {
          * @param indexName index name candidate
          */
         public boolean isIndex(String indexName) {
+            if (indexes != null) return indexes.isIndex(indexName);
             return IndexFacts.this.isIndexFromDocumentTypes(indexName, documentTypes);
         }
 
@@ -462,4 +489,69 @@ public class IndexFacts {
 
     }
 
+    /**
+     * The indexes visible when searching a list of document types, with each name resolved to the index
+     * of the first search definition having it, precomputed such that each lookup is a single hash lookup.
+     * This is immutable.
+     */
+    private class DocumentTypeIndexes {
+
+        private final List<String> documentTypes;
+
+        /** The visible indexes by name and alias, or null if this IndexFacts contains no search definitions */
+        private final Map<String, Index> indexes;
+
+        /** The visible indexes by lower cased name and alias, or null if this IndexFacts contains no search definitions */
+        private final Map<String, Index> indexesByLowerCase;
+
+        DocumentTypeIndexes(Collection<String> documentTypes) {
+            this.documentTypes = ImmutableList.copyOf(documentTypes);
+            if ( ! isInitialized()) {
+                indexes = null;
+                indexesByLowerCase = null;
+                return;
+            }
+
+            List<SearchDefinition> searched = new ArrayList<>();
+            if (documentTypes.isEmpty()) {
+                searched.add(unionSearchDefinition);
+            }
+            else {
+                for (DocumentTypeListOffset sd = chooseSearchDefinition(this.documentTypes, 0);
+                     sd != null;
+                     sd = chooseSearchDefinition(this.documentTypes, sd.offset))
+                    searched.add(sd.searchDefinition);
+            }
+
+            Map<String, Index> indexes = new HashMap<>();
+            Map<String, Index> indexesByLowerCase = new HashMap<>();
+            for (SearchDefinition sd : searched) {
+                sd.indices().forEach(indexes::putIfAbsent);
+                sd.indicesByLowerCase().forEach(indexesByLowerCase::putIfAbsent);
+            }
+            this.indexes = Collections.unmodifiableMap(indexes);
+            this.indexesByLowerCase = Collections.unmodifiableMap(indexesByLowerCase);
+        }
+
+        Index getIndex(String indexName) {
+            if (indexes == null) return Index.nullIndex;
+            if (indexName == null || indexName.isEmpty())
+                indexName = "default";
+            Index index = indexes.get(indexName);
+            return index == null ? Index.nullIndex : index;
+        }
+
+        String getCanonicName(String indexName) {
+            if (indexesByLowerCase == null) return indexName;
+            Index index = indexesByLowerCase.get(toLowerCase(indexName));
+            return index == null ? indexName : index.getName();
+        }
+
+        boolean isIndex(String indexName) {
+            if (indexes == null) return true;
+            return indexes.containsKey(indexName);
+        }
+
+    }
+
 }
@@ -87,6 +87,11 @@ public class SearchDefinition {
         return indices;
     }
 
+    /** Returns the indices of this as a map indexed by lower cased name */
+    Map<String, Index> indicesByLowerCase() {
+        return lowerCase;
+    }
+
     public Index getOrCreateIndex(String name) {
         Index idx = getIndex(name);
         if (idx != null) {
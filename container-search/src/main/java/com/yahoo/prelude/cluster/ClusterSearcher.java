@@ -11,6 +11,7 @@ import com.yahoo.concurrent.Receiver.MessageState;
 import com.yahoo.container.QrSearchersConfig;
 import com.yahoo.container.handler.VipStatus;
 import com.yahoo.fs4.mplex.Backend;
+import com.yahoo.jdisc.Metric;
 import com.yahoo.container.search.LegacyEmulationConfig;
 import com.yahoo.net.HostName;
 import com.yahoo.prelude.fastsearch.DocsumDefinitionSet;
@@ -73,6 +74,8 @@ public class ClusterSearcher extends Searcher {
 
     private final ClusterMonitor monitor;
 
+    private final Dispatcher dispatcher;
+
     private final Value cacheHitRatio;
 
     private final String clusterModelName;
@@ -106,12 +109,14 @@ public class ClusterSearcher extends Searcher {
                            DispatchConfig dispatchConfig,
                            ClusterInfoConfig clusterInfoConfig,
                            Statistics manager,
+                           Metric metric,
                            FS4ResourcePool fs4ResourcePool,
                            VipStatus vipStatus) {
         super(id);
         this.fs4ResourcePool = fs4ResourcePool;
 
-        Dispatcher dispatcher = new Dispatcher(dispatchConfig, fs4ResourcePool, clusterInfoConfig.nodeCount(), vipStatus);
+        dispatcher = new Dispatcher(dispatchConfig, fs4ResourcePool, clusterInfoConfig.nodeCount(), vipStatus,
+                                    manager, clusterConfig.clusterName(), metric);
 
         monitor = (dispatcher.searchCluster().directDispatchTarget().isPresent()) // dispatcher should decide vip status instead
                 ? new ClusterMonitor(this, monitorConfig, Optional.empty())
@@ -130,7 +135,7 @@ public class ClusterSearcher extends Searcher {
         maxQueryCacheTimeout = ParameterParser.asMilliSeconds(clusterConfig.maxQueryCacheTimeout(),
                                                               DEFAULT_MAX_QUERY_CACHE_TIMEOUT);
 
-        CacheParams cacheParams = new CacheParams(createCache(clusterConfig, clusterModelName));
+        CacheParams cacheParams = new CacheParams(createCache(clusterConfig, clusterModelName, metric));
         SummaryParameters docSumParams = new SummaryParameters(qrsConfig
                 .com().yahoo().prelude().fastsearch().FastSearcher().docsum()
                 .defaultclass());
@@ -234,6 +239,7 @@ public class ClusterSearcher extends Searcher {
                                   Statistics.nullImplementation, new Value.Parameters());
         clusterModelName = "testScenario";
         fs4ResourcePool = null;
+        dispatcher = null;
         maxQueryTimeout = DEFAULT_MAX_QUERY_TIMEOUT;
         maxQueryCacheTimeout = DEFAULT_MAX_QUERY_CACHE_TIMEOUT;
     }
@@ -242,12 +248,12 @@ public class ClusterSearcher extends Searcher {
         return fs4ResourcePool.getBackend(disp.host(), disp.port());
     }
 
-    private static CacheControl createCache(ClusterConfig config, String clusterModelName) {
+    private static CacheControl createCache(ClusterConfig config, String clusterModelName, Metric metric) {
         log.log(Level.INFO, "Enabling cache for search cluster "
                             + clusterModelName + " (size=" + config.cacheSize()
                             + ", timeout=" + config.cacheTimeout() + ")");
 
-        return new CacheControl(config.cacheSize(), config.cacheTimeout());
+        return new CacheControl(config.cacheSize(), config.cacheTimeout(), metric);
     }
 
     ClusterMonitor getMonitor() {
@@ -529,6 +535,8 @@ public class ClusterSearcher extends Searcher {
     @Override
     public void deconstruct() {
         monitor.shutdown();
+        if (dispatcher != null)
+            dispatcher.deconstruct();
     }
 
     ExecutorService getExecutor() {
@@ -2,17 +2,23 @@
 package com.yahoo.prelude.fastsearch;
 
 
+import com.yahoo.fs4.DocsumPacket;
 import com.yahoo.fs4.Packet;
-import com.yahoo.fs4.QueryPacket;
 import com.yahoo.fs4.QueryResultPacket;
+import com.yahoo.jdisc.Metric;
 import com.yahoo.search.Query;
 import com.yahoo.processing.request.CompoundName;
+import com.yahoo.search.cache.QueryResultCache;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 
 
 /**
- * The cache control logic for FastSearcher
+ * The cache control logic for FastSearcher. Results are cached by the query, rank profile and grouping requests
+ * sent to the backend (see {@link CacheKey}), such that the cached hits can have their summaries fetched either
+ * over fs4 or rpc.
  *
  * @author Steinar Knutsen
  */
@@ -20,99 +26,119 @@ public class CacheControl {
 
     public static final CompoundName nocachewrite=new CompoundName("nocachewrite");
 
+    /** The prefix of the names of the metrics reported by the result cache */
+    public static final String metricPrefix = "query_result_cache";
+
+    /** The name of the metric counting lookups which returned a cached result */
+    public static final String hitsMetricName = metricPrefix + QueryResultCache.hitsMetricSuffix;
+
+    /** The name of the metric counting lookups which did not return a cached result */
+    public static final String missesMetricName = metricPrefix + QueryResultCache.missesMetricSuffix;
+
+    /** The name of the metric counting results removed from the cache to make room for others */
+    public static final String evictionsMetricName = metricPrefix + QueryResultCache.evictionsMetricSuffix;
+
     /** Whether this CacheControl actually should cache hits at all. */
     private final boolean activeCache;
 
-    /** Direct unsychronized cache access */
-    private final PacketCache packetCache;
+    /** The max size of a cached result compared to the total size */
+    private static final int maxCacheItemPercentage = 1;
+
+    /** The cached results, which is thread safe and does not need external synchronization */
+    private final QueryResultCache<CacheKey, CachedResult> resultCache;
 
     public CacheControl(int sizeMegaBytes, double cacheTimeOutSeconds) {
+        this(sizeMegaBytes, cacheTimeOutSeconds, null);
+    }
+
+    /**
+     * Creates a cache control
+     *
+     * @param metric the metric to which cache hits, misses and evictions are reported, or null to not report them
+     */
+    public CacheControl(int sizeMegaBytes, double cacheTimeOutSeconds, Metric metric) {
         activeCache = sizeMegaBytes > 0 && cacheTimeOutSeconds > 0.0d;
         if (activeCache) {
-            packetCache = new PacketCache(sizeMegaBytes, 0, cacheTimeOutSeconds);
+            resultCache = new QueryResultCache<>(((long)sizeMegaBytes) << 20,
+                                                 (long)(cacheTimeOutSeconds * 1000.0d),
+                                                 maxCacheItemPercentage,
+                                                 metric,
+                                                 metricPrefix);
         } else {
-            packetCache = null;
+            resultCache = null;
         }
     }
 
-    /** Returns the capacity of the packet cache in megabytes */
+    /** Returns the capacity of the result cache in megabytes */
     public final int capacity() {
-        return packetCache.getCapacity();
+        return (int)(resultCache.capacity() >> 20);
+    }
+
+    /** Returns the number of cache lookups which found a valid result */
+    public long hitCount() {
+        return resultCache == null ? 0 : resultCache.hitCount();
+    }
+
+    /** Returns the number of cache lookups which did not find a valid result */
+    public long missCount() {
+        return resultCache == null ? 0 : resultCache.missCount();
+    }
+
+    /** Returns the number of results removed from the cache to make room for others */
+    public long evictionCount() {
+        return resultCache == null ? 0 : resultCache.evictionCount();
     }
 
     public final boolean useCache(Query query) {
         return (activeCache && !query.getNoCache());
     }
 
-    public final PacketWrapper lookup(CacheKey key, Query query) {
+    public final CachedResult lookup(CacheKey key, Query query) {
         if ((key != null) && useCache(query)) {
-            long now = System.currentTimeMillis();
-            synchronized (packetCache) {
-                return packetCache.get(key, now);
-            }
+            return resultCache.get(key, System.currentTimeMillis());
         }
         return null;
     }
 
-    // updates first phase in multi phase search
-    void updateCacheEntry(CacheKey key, Query query, QueryResultPacket resultPacket) {
-        long oldTimestamp;
-        if (!activeCache) return;
-
-        PacketWrapper wrapper = lookup(key, query);
-        if (wrapper == null) return;
-
-        // The timestamp is owned by the QueryResultPacket, this is why this
-        // update method puts entries into the cache differently from elsewhere
-        oldTimestamp = wrapper.getTimestamp();
-        wrapper = (PacketWrapper) wrapper.clone();
-        wrapper.addResultPacket(resultPacket);
-        synchronized (packetCache) {
-            packetCache.put(key, wrapper, oldTimestamp);
-        }
-    }
-
-    // updates phases after first phase phase in multi phase search
-    void updateCacheEntry(CacheKey key, Query query, DocsumPacketKey[] packetKeys, Packet[] packets) {
-        if (!activeCache) return;
+    /** Caches the first phase result returned for a query, adding it to any hits already cached for it */
+    void cache(CacheKey key, Query query, QueryResultPacket resultPacket, Optional<Integer> distributionKey) {
+        if ( ! activeCache) return;
 
-        PacketWrapper wrapper = lookup(key, query);
-        if (wrapper== null) return;
+        if (query.getNoCache()) return;
+        if (query.properties().getBoolean(nocachewrite)) return;
 
-        wrapper = (PacketWrapper) wrapper.clone();
-        wrapper.addDocsums(packetKeys, packets);
-        synchronized (packetCache) {
-            packetCache.put(key, wrapper, wrapper.getTimestamp());
-        }
+        CachedResult cached = lookup(key, query);
+        if (cached == null)
+            put(key, CachedResult.of(resultPacket, distributionKey, System.currentTimeMillis()));
+        else
+            put(key, cached.withDocuments(resultPacket));
     }
 
-    void cache(CacheKey key, Query query, DocsumPacketKey[] packetKeys, Packet[] packets, Optional<Integer> distributionKey) {
+    /** Adds summaries fetched for the hits of a cached result to it */
+    void updateCacheEntry(CacheKey key, Query query, DocsumPacketKey[] packetKeys, Packet[] packets) {
         if ( ! activeCache) return;
 
-        if (query.getNoCache()) return;
-        if (query.properties().getBoolean(nocachewrite)) return;
+        CachedResult cached = lookup(key, query);
+        if (cached == null) return;
 
-        PacketWrapper wrapper = lookup(key, query);
-        if (wrapper == null) {
-            wrapper = new PacketWrapper(key, packetKeys, packets, distributionKey);
-            long now = System.currentTimeMillis();
-            synchronized (packetCache) {
-                packetCache.put(key, wrapper, now);
-            }
-        } else {
-            wrapper = (PacketWrapper) wrapper.clone();
-            wrapper.addResultPacket((QueryResultPacket) packets[0]);
-            wrapper.addDocsums(packetKeys, packets, 1);
-            synchronized (packetCache) {
-                packetCache.put(key, wrapper, wrapper.getTimestamp());
-            }
+        Map<DocsumPacketKey, byte[]> summaries = new HashMap<>();
+        for (int i = 0; i < packetKeys.length && i < packets.length; i++) {
+            if (packetKeys[i] == null || ! (packets[i] instanceof DocsumPacket)) continue;
+            DocsumPacket docsum = (DocsumPacket) packets[i];
+            if ( ! packetKeys[i].getGlobalId().equals(docsum.getGlobalId()) || docsum.getData().length == 0) continue;
+            summaries.put(packetKeys[i], docsum.getData());
         }
+        put(key, cached.withSummaries(summaries));
+    }
+
+    private void put(CacheKey key, CachedResult result) {
+        resultCache.put(key, result, result.byteSize() + key.byteSize(), result.getTimestamp());
     }
 
     /** Test method. */
     public void clear() {
-        if (packetCache != null) {
-            packetCache.clear();
+        if (resultCache != null) {
+            resultCache.clear();
         }
     }
 
@@ -1,72 +1,46 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.prelude.fastsearch;
 
-
-import java.util.Arrays;
-
-import com.yahoo.collections.BobHash;
 import com.yahoo.fs4.QueryPacket;
-
+import com.yahoo.search.Query;
+import com.yahoo.search.cache.QueryCacheKey;
+import com.yahoo.search.grouping.vespa.GroupingExecutor;
 
 /**
- * The key used in the packet cache.
+ * The key used in the result cache: The query tree, rank profile, rank properties and sorting of the query,
+ * and the grouping requests sent with it. The hit window, summary class and session of the query are
+ * not part of the key.
  *
  * @author  <a href="mailto:steinar@yahoo-inc.com">Steinar Knutsen</a>
  */
 public class CacheKey {
-    final private int hashCode;
-    final private byte[] serialized;
 
-    /**
-     * Create a cache key from the query packet.
-     */
-    public CacheKey(QueryPacket queryPacket) {
-        if (!queryPacket.isEncoded()) {
-            queryPacket.allocateAndEncode(0);
-        }
-        this.serialized = queryPacket.getOpaqueCacheKey();
-        hashCode = calculateHashCode();
+    private final QueryCacheKey key;
+
+    /** Creates a cache key for the query and the grouping requests it will send to the backend */
+    public CacheKey(Query query) {
+        this.key = QueryCacheKey.of(query, GroupingExecutor.getGroupingList(query));
     }
 
-    private int calculateHashCode() {
-        return BobHash.hash(serialized, 0);
+    /** Creates a cache key for the query of the given query packet */
+    public CacheKey(QueryPacket queryPacket) {
+        this(queryPacket.getQuery());
     }
 
+    @Override
     public boolean equals(Object o) {
-        if (o == null) {
-            return false;
-        }
-        if (!(o instanceof CacheKey)) {
-            return false;
-        }
-
-        CacheKey k = (CacheKey) o;
-        return Arrays.equals(serialized, k.serialized);
-        // // The following is used for detailed debugging
-        // boolean state = true;
-        // if (serialized.length != k.serialized.length) {
-        //     System.out.println("this " + serialized.length +  " other " +  k.serialized.length);
-        //     return false;
-        // }
-        // System.out.println("start of arrays");
-        // for (int i = 0; i < serialized.length; ++i) {
-        //     System.out.print("serialized " + serialized[i] + " " + k.serialized[i]);
-        //     if (serialized[i] != k.serialized[i]) {
-        //         System.out.println(" diff at index " + i);
-        //         state = false; // want to see all the data
-        //     } else {
-        //         System.out.println("");
-        //     }
-        // }
-        // return state;
+        if (o == this) return true;
+        if ( ! (o instanceof CacheKey)) return false;
+        return key.equals(((CacheKey) o).key);
     }
 
+    @Override
     public int hashCode() {
-        return hashCode;
+        return key.hashCode();
     }
 
     public byte[] getCopyOfFullKey() {
-        return Arrays.copyOf(serialized, serialized.length);
+        return key.getCopyOfFullKey();
     }
 
     /**
@@ -74,8 +48,7 @@ public class CacheKey {
      * the internal data fields.
      */
     public int byteSize() {
-        // 4 = sizeOf(hashCode)
-        return serialized.length + 4;
+        return key.byteSize();
     }
 
 }
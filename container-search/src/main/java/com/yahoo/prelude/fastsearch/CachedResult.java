@@ -0,0 +1,185 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.fastsearch;
+
+import com.yahoo.document.GlobalId;
+import com.yahoo.fs4.DocumentInfo;
+import com.yahoo.fs4.QueryResultPacket;
+import com.yahoo.search.result.Coverage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A cached query result: The hits of a window of the result, the total hit count, coverage and
+ * grouping result of the query, and the summaries which have been fetched for those hits.
+ * The same entry is used by both the fs4 and rpc summary paths, as the hits are independent of how
+ * their summaries are fetched, and summaries are only added here when they are fetched over fs4.
+ *
+ * This is immutable. Adding to it returns a new instance.
+ *
+ * @author agent
+ */
+public final class CachedResult {
+
+    /** The estimated size of a document info in the cache */
+    private static final int documentSize = 32;
+
+    private final int offset;
+    private final List<DocumentInfo> documents;
+    private final long totalHitCount;
+    private final byte[] groupData;
+    private final Optional<CachedCoverage> coverage;
+    private final Optional<Integer> distributionKey;
+    private final Map<DocsumPacketKey, byte[]> summaries;
+    private final long timestamp;
+    private final int byteSize;
+
+    private CachedResult(int offset, List<DocumentInfo> documents, long totalHitCount, byte[] groupData,
+                         Optional<CachedCoverage> coverage, Optional<Integer> distributionKey,
+                         Map<DocsumPacketKey, byte[]> summaries, long timestamp) {
+        this.offset = offset;
+        this.documents = Collections.unmodifiableList(documents);
+        this.totalHitCount = totalHitCount;
+        this.groupData = groupData;
+        this.coverage = coverage;
+        this.distributionKey = distributionKey;
+        this.summaries = Collections.unmodifiableMap(summaries);
+        this.timestamp = timestamp;
+        this.byteSize = byteSize(documents, groupData, summaries);
+    }
+
+    /**
+     * Creates a cached result from the first phase result returned from a search
+     *
+     * @param resultPacket the result returned from the backend
+     * @param distributionKey the distribution key of the node producing these hits, or empty if returned through dispatch
+     * @param timestamp the time at which this result was produced
+     */
+    static CachedResult of(QueryResultPacket resultPacket, Optional<Integer> distributionKey, long timestamp) {
+        return new CachedResult(resultPacket.getOffset(),
+                                new ArrayList<>(resultPacket.getDocuments()),
+                                resultPacket.getTotalDocumentCount(),
+                                resultPacket.getGroupData(),
+                                resultPacket.getCoverageFeature() ? Optional.of(new CachedCoverage(resultPacket)) : Optional.empty(),
+                                distributionKey,
+                                new HashMap<>(),
+                                timestamp);
+    }
+
+    /**
+     * Returns the documents of the given result window, or null if they are not all available in this.
+     * Returns an empty list if the window starts after the last hit of the result.
+     */
+    public List<DocumentInfo> getDocuments(int offset, int hits) {
+        if (offset >= totalHitCount) return Collections.emptyList();
+        if (offset < this.offset) return null;
+
+        int end = this.offset + documents.size();
+        if (offset + hits > end && end < totalHitCount) return null;
+        if (offset >= end) return null;
+        return documents.subList(offset - this.offset, Math.min(end, offset + hits) - this.offset);
+    }
+
+    /** Returns the total number of hits matched by the query */
+    public long getTotalHitCount() { return totalHitCount; }
+
+    /** Returns the serialized grouping results of the query, or null if it had no grouping */
+    byte[] getGroupData() { return groupData; }
+
+    /** Returns a new instance of the coverage of the query, or empty if the backend did not report coverage */
+    Optional<Coverage> getCoverage() { return coverage.map(CachedCoverage::toCoverage); }
+
+    /**
+     * Returns the distribution key of the content node producing these hits,
+     * or empty if the hits were returned through dispatch
+     */
+    public Optional<Integer> distributionKey() { return distributionKey; }
+
+    /** Returns the number of summaries stored in this */
+    public int getSummaryCount() { return summaries.size(); }
+
+    /** Returns the serialized summary of the given class for the given hit, or null if it is not stored in this */
+    byte[] getSummary(GlobalId globalId, int partId, String summaryClass) {
+        return summaries.get(new DocsumPacketKey(globalId, partId, summaryClass));
+    }
+
+    /** Returns the time at which the first phase result of this was produced */
+    public long getTimestamp() { return timestamp; }
+
+    /** Returns an estimate of the memory used by this in bytes */
+    public int byteSize() { return byteSize; }
+
+    /**
+     * Returns a result containing the hits of this and the hits of the given result window.
+     * If the window does not overlap or continue the hits of this, the returned result contains
+     * only the hits of the new window.
+     */
+    CachedResult withDocuments(QueryResultPacket resultPacket) {
+        int newOffset = resultPacket.getOffset();
+        List<DocumentInfo> newDocuments = resultPacket.getDocuments();
+        int end = offset + documents.size();
+        if (newOffset + newDocuments.size() <= end && newOffset >= offset) return this; // nothing new
+
+        List<DocumentInfo> merged;
+        if (newOffset < offset || newOffset > end) {
+            merged = new ArrayList<>(newDocuments);
+        }
+        else {
+            merged = new ArrayList<>(documents.subList(0, newOffset - offset));
+            merged.addAll(newDocuments);
+            newOffset = offset;
+        }
+        return new CachedResult(newOffset, merged, totalHitCount, groupData, coverage, distributionKey,
+                                new HashMap<>(summaries), timestamp);
+    }
+
+    /** Returns a result which contains the summaries of this and the given summaries */
+    CachedResult withSummaries(Map<DocsumPacketKey, byte[]> addedSummaries) {
+        if (addedSummaries.isEmpty()) return this;
+        Map<DocsumPacketKey, byte[]> merged = new HashMap<>(summaries);
+        merged.putAll(addedSummaries);
+        return new CachedResult(offset, new ArrayList<>(documents), totalHitCount, groupData, coverage, distributionKey,
+                                merged, timestamp);
+    }
+
+    private static int byteSize(List<DocumentInfo> documents, byte[] groupData, Map<DocsumPacketKey, byte[]> summaries) {
+        int size = documents.size() * documentSize;
+        if (groupData != null)
+            size += groupData.length;
+        for (byte[] summary : summaries.values())
+            size += summary.length + documentSize;
+        return size;
+    }
+
+    /** The coverage reported with a result, kept such that each cache hit can get a private Coverage instance */
+    private static final class CachedCoverage {
+
+        private final long docs;
+        private final long active;
+        private final int nodes;
+        private final long soonActive;
+        private final int degradedReason;
+        private final int nodesTried;
+
+        CachedCoverage(QueryResultPacket resultPacket) {
+            this.docs = resultPacket.getCoverageDocs();
+            this.active = resultPacket.getActiveDocs();
+            this.nodes = resultPacket.getNodesReplied();
+            this.soonActive = resultPacket.getSoonActiveDocs();
+            this.degradedReason = resultPacket.getDegradedReason();
+            this.nodesTried = resultPacket.getNodesQueried();
+        }
+
+        Coverage toCoverage() {
+            return new Coverage(docs, active, nodes).setSoonActive(soonActive)
+                                                     .setDegradedReason(degradedReason)
+                                                     .setNodesTried(nodesTried);
+        }
+
+    }
+
+}
@@ -222,7 +222,7 @@ public class FastSearcher extends VespaBackEndSearcher {
      */
     private CloseableChannel getChannel(Query query) {
         if (query.properties().getBoolean(dispatchInternal, false)) {
-            Optional<CloseableChannel> dispatchedChannel = dispatcher.getDispatchedChannel(query);
+            Optional<CloseableChannel> dispatchedChannel = dispatcher.getDispatchedChannel(query, fillSummariesOverRpc(query));
             if (dispatchedChannel.isPresent()) {
                 return dispatchedChannel.get();
             }
@@ -255,12 +255,7 @@ public class FastSearcher extends VespaBackEndSearcher {
         Query query = result.getQuery();
         traceQuery(getName(), "fill", query, query.getOffset(), query.getHits(), 1, quotedSummaryClass(summaryClass));
 
-        if (query.properties().getBoolean(dispatchSummaries, true)
-            && ! summaryNeedsQuery(query)
-            && query.getRanking().getLocation() == null
-            && ! cacheControl.useCache(query)
-            && ! legacyEmulationConfigIsSet(getDocumentDatabase(query))) {
-
+        if (fillSummariesOverRpc(query)) {
             CompressionType compression =
                 CompressionType.valueOf(query.properties().getString(dispatchCompression, "LZ4").toUpperCase());
             dispatcher.fill(result, summaryClass, getDocumentDatabase(query), compression);
@@ -268,14 +263,13 @@ public class FastSearcher extends VespaBackEndSearcher {
         }
 
         CacheKey cacheKey = null;
-        PacketWrapper packetWrapper = null;
+        CachedResult cachedResult = null;
         if (getCacheControl().useCache(query)) {
             cacheKey = fetchCacheKeyFromHits(result.hits(), summaryClass);
             if (cacheKey == null) {
-                QueryPacket queryPacket = QueryPacket.create(query);
-                cacheKey = new CacheKey(queryPacket);
+                cacheKey = new CacheKey(query);
             }
-            packetWrapper = cacheLookupTwoPhase(cacheKey, result, summaryClass);
+            cachedResult = cacheLookupTwoPhase(cacheKey, result, summaryClass);
         }
 
         Packet[] receivedPackets;
@@ -326,7 +320,7 @@ public class FastSearcher extends VespaBackEndSearcher {
                 result.hits().addError(ErrorMessage.createBackendCommunicationError("Error filling hits with summary fields, source: " + getName() + " Exception thrown: " + e.getMessage()));
                 return;
             }
-            if (skippedHits == 0 && packetWrapper != null) {
+            if (skippedHits == 0 && cachedResult != null) {
                 cacheControl.updateCacheEntry(cacheKey, query, packetKeys, receivedPackets);
             }
 
@@ -350,6 +344,14 @@ public class FastSearcher extends VespaBackEndSearcher {
         }
     }
 
+    /** Returns whether summaries for this query will be fetched by rpc directly from the node each hit came from */
+    private boolean fillSummariesOverRpc(Query query) {
+        return query.properties().getBoolean(dispatchSummaries, true)
+               && ! summaryNeedsQuery(query)
+               && query.getRanking().getLocation() == null
+               && ! legacyEmulationConfigIsSet(getDocumentDatabase(query));
+    }
+
     private boolean legacyEmulationConfigIsSet(DocumentDatabase db) {
         LegacyEmulationConfig config = db.getDocsumDefinitionSet().legacyEmulationConfig();
         if (config.forceFillEmptyFields()) return true;
@@ -424,22 +426,11 @@ public class FastSearcher extends VespaBackEndSearcher {
 
         addUnfilledHits(result, resultPacket.getDocuments(), false,
                         queryPacket.getQueryPacketData(), cacheKey, channel.distributionKey());
-        Packet[] packets;
-        PacketWrapper packetWrapper = cacheControl.lookup(cacheKey, query);
-
-        if (packetWrapper != null) {
-            cacheControl.updateCacheEntry(cacheKey, query, resultPacket);
-        }
-        else {
-            if (resultPacket.getCoverageFeature() && ! resultPacket.getCoverageFull()) {
-                // Don't add error here, it was done in first phase
-                // No check if packetWrapper already exists, since incomplete
-                // first phase data won't be cached anyway.
-            } else {
-                packets = new Packet[1];
-                packets[0] = resultPacket;
-                cacheControl.cache(cacheKey, query, new DocsumPacketKey[0], packets, channel.distributionKey());
-            }
+        if (resultPacket.getCoverageFeature() && ! resultPacket.getCoverageFull()) {
+            // Don't add error here, it was done in first phase
+            // Incomplete first phase data is not cached.
+        } else {
+            cacheControl.cache(cacheKey, query, resultPacket, channel.distributionKey());
         }
         return result;
     }
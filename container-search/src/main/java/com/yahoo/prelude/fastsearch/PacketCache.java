@@ -15,9 +15,12 @@ import com.yahoo.log.LogLevel;
  *
  * @author Steinar Knutsen
  * @author bratseth
+ * @deprecated use {@link com.yahoo.search.cache.QueryResultCache}, which does not need external synchronization
  */
 // TODO: Remove packet cache as it timed out a long time ago.
 // 1 - It does not work with grouping, 2 the packet protocol is eroding away.
+// TODO: Remove on Vespa 7
+@Deprecated
 public class PacketCache extends LinkedHashMap<CacheKey, PacketWrapper> {
 
     private static final long serialVersionUID = -7403077211906108356L;
@@ -81,7 +81,7 @@ public abstract class VespaBackEndSearcher extends PingableSearcher {
     /** Sets default document summary class. Default is null */
     private void setDefaultDocsumClass(String docsumClass) { defaultDocsumClass = docsumClass; }
 
-    /** Returns the packet cache controller of this */
+    /** Returns the result cache controller of this */
     public final CacheControl getCacheControl() { return cacheControl; }
 
     /**
@@ -90,7 +90,7 @@ public abstract class VespaBackEndSearcher extends PingableSearcher {
      *
      * @param query the query to search
      * @param queryPacket the serialized query representation to pass to the search cluster
-     * @param cacheKey the cache key created from the query packet, or null if caching is not used
+     * @param cacheKey the cache key created from the query, or null if caching is not used
      * @param execution the query execution context
      */
     protected abstract Result doSearch2(Query query, QueryPacket queryPacket, CacheKey cacheKey, Execution execution);
@@ -122,24 +122,23 @@ public abstract class VespaBackEndSearcher extends PingableSearcher {
     }
 
     private Result cacheLookupFirstPhase(CacheKey key, QueryPacketData queryPacketData, Query query, int offset, int hits, String summaryClass) {
-        PacketWrapper packetWrapper = cacheControl.lookup(key, query);
+        CachedResult cached = cacheControl.lookup(key, query);
 
-        if (packetWrapper == null) return null;
+        if (cached == null) return null;
 
         // Check if the cache entry contains the requested hits
-        List<DocumentInfo> documents = packetWrapper.getDocuments(offset, hits);
+        List<DocumentInfo> documents = cached.getDocuments(offset, hits);
         if (documents == null) return null;
 
         if (query.getPresentation().getSummary() == null)
             query.getPresentation().setSummary(getDefaultDocsumClass());
         Result result = new Result(query);
-        QueryResultPacket resultPacket = packetWrapper.getFirstResultPacket();
 
-        addMetaInfo(query, queryPacketData, resultPacket, result, true);
-        if (packetWrapper.getNumPackets() == 0)
-            addUnfilledHits(result, documents, true, queryPacketData, key, packetWrapper.distributionKey());
+        addMetaInfo(query, queryPacketData, cached, result);
+        if (cached.getSummaryCount() == 0)
+            addUnfilledHits(result, documents, true, queryPacketData, key, cached.distributionKey());
         else
-            addCachedHits(result, packetWrapper, summaryClass, documents);
+            addCachedHits(result, cached, summaryClass, documents);
         return result;
     }
 
@@ -224,7 +223,7 @@ public abstract class VespaBackEndSearcher extends PingableSearcher {
         Result result = null;
         CacheKey cacheKey = null;
         if (cacheControl.useCache(query)) {
-            cacheKey = new CacheKey(queryPacket);
+            cacheKey = new CacheKey(query);
             result = getCached(cacheKey, queryPacket.getQueryPacketData(), query);
         }
 
@@ -243,7 +242,7 @@ public abstract class VespaBackEndSearcher extends PingableSearcher {
     /**
      * Returns a cached result, or null if no result was cached for this key
      *
-     * @param cacheKey the cache key created from the query packet
+     * @param cacheKey the cache key created from the query
      * @param queryPacketData a serialization of the query, to avoid having to recompute this, or null if not available
      * @param query the query, used for tracing, lookup of result window and result creation
      */
@@ -403,23 +402,7 @@ public abstract class VespaBackEndSearcher extends PingableSearcher {
     protected void addMetaInfo(Query query, QueryPacketData queryPacketData, QueryResultPacket resultPacket, Result result, boolean fromCache) {
         result.setTotalHitCount(resultPacket.getTotalDocumentCount());
 
-        // Grouping
-        if (resultPacket.getGroupData() != null) {
-            byte[] data = resultPacket.getGroupData();
-            ArrayList<Grouping> list = new ArrayList<>();
-            BufferSerializer buf = new BufferSerializer(new GrowableByteBuffer(ByteBuffer.wrap(data)));
-            int cnt = buf.getInt(null);
-            for (int i = 0; i < cnt; i++) {
-                Grouping g = new Grouping();
-                g.deserialize(buf);
-                list.add(g);
-            }
-            GroupingListHit hit = new GroupingListHit(list, getDocsumDefinitionSet(query));
-            hit.setQuery(result.getQuery());
-            hit.setSource(getName());
-            hit.setQueryPacketData(queryPacketData);
-            result.hits().add(hit);
-        }
+        addGroupingListHit(query, queryPacketData, resultPacket.getGroupData(), result);
 
         if (resultPacket.getCoverageFeature()) {
             result.setCoverage(new Coverage(resultPacket.getCoverageDocs(), resultPacket.getActiveDocs(), resultPacket.getNodesReplied())
@@ -429,6 +412,30 @@ public abstract class VespaBackEndSearcher extends PingableSearcher {
         }
     }
 
+    private void addMetaInfo(Query query, QueryPacketData queryPacketData, CachedResult cached, Result result) {
+        result.setTotalHitCount(cached.getTotalHitCount());
+        addGroupingListHit(query, queryPacketData, cached.getGroupData(), result);
+        cached.getCoverage().ifPresent(result::setCoverage);
+    }
+
+    private void addGroupingListHit(Query query, QueryPacketData queryPacketData, byte[] groupData, Result result) {
+        if (groupData == null) return;
+
+        ArrayList<Grouping> list = new ArrayList<>();
+        BufferSerializer buf = new BufferSerializer(new GrowableByteBuffer(ByteBuffer.wrap(groupData)));
+        int cnt = buf.getInt(null);
+        for (int i = 0; i < cnt; i++) {
+            Grouping g = new Grouping();
+            g.deserialize(buf);
+            list.add(g);
+        }
+        GroupingListHit hit = new GroupingListHit(list, getDocsumDefinitionSet(query));
+        hit.setQuery(result.getQuery());
+        hit.setSource(getName());
+        hit.setQueryPacketData(queryPacketData);
+        result.hits().add(hit);
+    }
+
     static private class FillHitResult {
         final boolean ok;
         final String error;
@@ -511,7 +518,7 @@ public abstract class VespaBackEndSearcher extends PingableSearcher {
     }
 
     private boolean addCachedHits(Result result,
-                                  PacketWrapper packetWrapper,
+                                  CachedResult cached,
                                   String summaryClass,
                                   List<DocumentInfo> documents) {
         boolean filledAllOfEm = true;
@@ -526,17 +533,12 @@ public abstract class VespaBackEndSearcher extends PingableSearcher {
 
             extractDocumentInfo(hit, document);
 
-            DocsumPacket docsum = (DocsumPacket) packetWrapper.getPacket(document.getGlobalId(), document.getPartId(), summaryClass);
-
-            if (docsum != null) {
-                byte[] docsumdata = docsum.getData();
+            cached.distributionKey().ifPresent(hit::setDistributionKey);
 
-                if (docsumdata.length > 0) {
-                    String error = decodeSummary(summaryClass, hit, docsumdata);
-                    if (error != null) {
-                        filledAllOfEm = false;
-                    }
-                } else {
+            byte[] docsumdata = cached.getSummary(document.getGlobalId(), document.getPartId(), summaryClass);
+            if (docsumdata != null) {
+                String error = decodeSummary(summaryClass, hit, docsumdata);
+                if (error != null) {
                     filledAllOfEm = false;
                 }
             } else {
@@ -562,22 +564,22 @@ public abstract class VespaBackEndSearcher extends PingableSearcher {
         hit.setPartId(document.getPartId());
     }
 
-    protected PacketWrapper cacheLookupTwoPhase(CacheKey cacheKey, Result result, String summaryClass) {
+    protected CachedResult cacheLookupTwoPhase(CacheKey cacheKey, Result result, String summaryClass) {
         Query query = result.getQuery();
-        PacketWrapper packetWrapper = cacheControl.lookup(cacheKey, query);
+        CachedResult cached = cacheControl.lookup(cacheKey, query);
 
-        if (packetWrapper == null) {
+        if (cached == null) {
             return null;
         }
-        if (packetWrapper.getNumPackets() != 0) {
+        if (cached.getSummaryCount() != 0) {
             for (Iterator<Hit> i = hitIterator(result); i.hasNext();) {
                 Hit hit = i.next();
 
                 if (hit instanceof FastHit) {
                     FastHit fastHit = (FastHit) hit;
-                    DocsumPacketKey key = new DocsumPacketKey(fastHit.getGlobalId(), fastHit.getPartId(), summaryClass);
+                    byte[] docsumdata = cached.getSummary(fastHit.getGlobalId(), fastHit.getPartId(), summaryClass);
 
-                    if (fillHit(fastHit, (DocsumPacket) packetWrapper.getPacket(key), summaryClass).ok) {
+                    if (docsumdata != null && decodeSummary(summaryClass, fastHit, docsumdata) == null) {
                         fastHit.setCached(true);
                     }
 
@@ -587,7 +589,7 @@ public abstract class VespaBackEndSearcher extends PingableSearcher {
             result.analyzeHits();
         }
 
-        return packetWrapper;
+        return cached;
     }
 
     protected DocsumDefinitionSet getDocsumDefinitionSet(Query query) {
@@ -615,7 +617,7 @@ public abstract class VespaBackEndSearcher extends PingableSearcher {
      * created from a cache in the current call path.
      *
      * @param queryPacketData binary data from first phase of search, or null
-     * @param cacheKey the key this hit should match in the packet cache, or null
+     * @param cacheKey the key this hit should match in the result cache, or null
      * @param channelDistributionKey distribution key of the node producing these hits.
      *                               Only set if produced directly by a search node, not dispatch
      *                               (in which case it is not set in the received packets.)
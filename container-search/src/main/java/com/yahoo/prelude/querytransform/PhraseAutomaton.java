@@ -0,0 +1,259 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.querytransform;
+
+import com.yahoo.fsa.FSA;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A word level Aho-Corasick automaton of the phrases in a phrase FSA, which finds all phrases occurring in
+ * a sequence of words in a single pass over the words.
+ * <p>
+ * This is immutable, and should be created once per phrase dictionary and shared between threads.
+ *
+ * @author agent
+ */
+public class PhraseAutomaton {
+
+    private static final int root = 0;
+
+    /** The id of each distinct word in the phrases of this */
+    private final Map<String, Integer> wordIds;
+
+    private final Transitions transitions;
+
+    /** The number of words from the root to each state */
+    private final int[] depth;
+
+    /** Whether each state is a complete phrase */
+    private final boolean[] complete;
+
+    /** The data of each state which is a complete phrase, or null if it is not or has no data */
+    private final String[] data;
+
+    /** The state of the longest proper suffix of the words leading to each state which is also a prefix of a phrase */
+    private final int[] failure;
+
+    /** The state of the longest proper suffix of each state which is a complete phrase, or -1 if none */
+    private final int[] nextPhrase;
+
+    /**
+     * Creates an automaton of all the phrases in a phrase automaton, where the words of each phrase are
+     * separated by single spaces
+     *
+     * @throws IllegalArgumentException if the given automaton contains phrases which are not single space
+     *         separated words
+     */
+    public PhraseAutomaton(FSA phraseFSA) {
+        Builder builder = new Builder();
+        for (FSA.Iterator i = phraseFSA.iterator(); i.hasNext(); ) {
+            FSA.Iterator.Item phrase = i.next();
+            builder.add(phrase.getString(), phrase.getDataString());
+        }
+        this.wordIds = builder.wordIds;
+        this.transitions = builder.transitions;
+        this.depth = Arrays.copyOf(builder.depth, builder.stateCount);
+        this.complete = Arrays.copyOf(builder.complete, builder.stateCount);
+        this.data = Arrays.copyOf(builder.data, builder.stateCount);
+        this.failure = new int[depth.length];
+        this.nextPhrase = new int[depth.length];
+        computeFailures();
+    }
+
+    /** Computes the failure and next phrase links of all states, in breadth first order */
+    private void computeFailures() {
+        nextPhrase[root] = -1;
+        int[][] parentAndWord = transitions.parentAndWordByState(depth.length);
+        for (int state : statesByDepth()) {
+            if (state == root) continue;
+            int parent = parentAndWord[0][state];
+            int word = parentAndWord[1][state];
+            if (parent == root) {
+                failure[state] = root;
+            }
+            else {
+                int candidate = failure[parent];
+                while (candidate != root && transitions.get(candidate, word) < 0)
+                    candidate = failure[candidate];
+                int next = transitions.get(candidate, word);
+                failure[state] = next < 0 ? root : next;
+            }
+            nextPhrase[state] = isPhrase(failure[state]) ? failure[state] : nextPhrase[failure[state]];
+        }
+    }
+
+    private int[] statesByDepth() {
+        int maxDepth = 0;
+        for (int d : depth)
+            maxDepth = Math.max(maxDepth, d);
+        int[] offsets = new int[maxDepth + 2];
+        for (int d : depth)
+            offsets[d + 1]++;
+        for (int d = 1; d < offsets.length; d++)
+            offsets[d] += offsets[d - 1];
+        int[] states = new int[depth.length];
+        for (int state = 0; state < depth.length; state++)
+            states[offsets[depth[state]]++] = state;
+        return states;
+    }
+
+    private boolean isPhrase(int state) {
+        return complete[state];
+    }
+
+    /**
+     * Finds all phrases in the given sequence of words. Matches are passed to the given handler
+     * in order of increasing end position, and by decreasing length for the same end position.
+     */
+    public void match(List<String> words, MatchHandler handler) {
+        int state = root;
+        for (int position = 0; position < words.size(); position++) {
+            Integer wordId = wordIds.get(words.get(position));
+            if (wordId == null) {
+                state = root;
+                continue;
+            }
+
+            int next;
+            while ((next = transitions.get(state, wordId)) < 0 && state != root)
+                state = failure[state];
+            state = next < 0 ? root : next;
+
+            for (int phrase = isPhrase(state) ? state : nextPhrase[state]; phrase >= 0; phrase = nextPhrase[phrase])
+                handler.match(position - depth[phrase] + 1, depth[phrase], data[phrase]);
+        }
+    }
+
+    /** Returns the number of states of this automaton */
+    public int stateCount() { return depth.length; }
+
+    /** Receives the matches found by an automaton */
+    public interface MatchHandler {
+
+        /**
+         * Called for each phrase found
+         *
+         * @param start the index of the first word of the phrase
+         * @param length the number of words in the phrase
+         * @param data the data of the phrase in the automaton
+         */
+        void match(int start, int length, String data);
+
+    }
+
+    /** Builds the trie of the phrases */
+    private static final class Builder {
+
+        private final Map<String, Integer> wordIds = new HashMap<>();
+        private final Transitions transitions = new Transitions();
+        private int[] depth = new int[1024];
+        private boolean[] complete = new boolean[1024];
+        private String[] data = new String[1024];
+        private int stateCount = 1;
+
+        void add(String phrase, String phraseData) {
+            if (phrase.isEmpty() || phrase.startsWith(" ") || phrase.endsWith(" ") || phrase.contains("  "))
+                throw new IllegalArgumentException("Phrase '" + phrase + "' is not a sequence of space separated words");
+
+            int state = root;
+            for (String word : phrase.split(" ")) {
+                Integer wordId = wordIds.get(word);
+                if (wordId == null) {
+                    wordId = wordIds.size();
+                    wordIds.put(word, wordId);
+                }
+                int next = transitions.get(state, wordId);
+                if (next < 0) {
+                    next = newState(depth[state] + 1);
+                    transitions.put(state, wordId, next);
+                }
+                state = next;
+            }
+            complete[state] = true;
+            data[state] = phraseData;
+        }
+
+        private int newState(int stateDepth) {
+            if (stateCount == depth.length) {
+                depth = Arrays.copyOf(depth, stateCount * 2);
+                complete = Arrays.copyOf(complete, stateCount * 2);
+                data = Arrays.copyOf(data, stateCount * 2);
+            }
+            depth[stateCount] = stateDepth;
+            return stateCount++;
+        }
+
+    }
+
+    /** A hash table from state and word id to the next state, using open addressing */
+    private static final class Transitions {
+
+        private long[] keys = newKeys(1024);
+        private int[] values = new int[1024];
+        private int size = 0;
+
+        int get(int state, int wordId) {
+            long key = key(state, wordId);
+            for (int slot = slot(key, keys.length); ; slot = (slot + 1) & (keys.length - 1)) {
+                if (keys[slot] == key) return values[slot];
+                if (keys[slot] < 0) return -1;
+            }
+        }
+
+        void put(int state, int wordId, int next) {
+            if (size * 2 >= keys.length)
+                grow();
+            insert(key(state, wordId), next, keys, values);
+            size++;
+        }
+
+        /** Returns the parent state and the word leading to each state */
+        int[][] parentAndWordByState(int stateCount) {
+            int[][] parentAndWord = new int[2][stateCount];
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] < 0) continue;
+                parentAndWord[0][values[slot]] = (int)(keys[slot] >>> 32);
+                parentAndWord[1][values[slot]] = (int)keys[slot];
+            }
+            return parentAndWord;
+        }
+
+        private void grow() {
+            long[] newKeys = newKeys(keys.length * 2);
+            int[] newValues = new int[values.length * 2];
+            for (int slot = 0; slot < keys.length; slot++)
+                if (keys[slot] >= 0)
+                    insert(keys[slot], values[slot], newKeys, newValues);
+            keys = newKeys;
+            values = newValues;
+        }
+
+        private static void insert(long key, int value, long[] keys, int[] values) {
+            int slot = slot(key, keys.length);
+            while (keys[slot] >= 0)
+                slot = (slot + 1) & (keys.length - 1);
+            keys[slot] = key;
+            values[slot] = value;
+        }
+
+        private static long key(int state, int wordId) {
+            return ((long)state << 32) | wordId;
+        }
+
+        private static int slot(long key, int capacity) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int)(hash ^ (hash >>> 32)) & (capacity - 1);
+        }
+
+        private static long[] newKeys(int capacity) {
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, -1);
+            return keys;
+        }
+
+    }
+
+}
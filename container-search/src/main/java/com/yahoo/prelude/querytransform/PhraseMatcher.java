@@ -20,6 +20,9 @@ public class PhraseMatcher {
 
     private FSA phraseFSA = null;
 
+    /** The automaton used to match all phrases in a single pass, or null to walk the FSA from each word */
+    private PhraseAutomaton phraseAutomaton = null;
+
     private boolean matchPhraseItems = false;
 
     private boolean matchSingleItems = false;
@@ -96,6 +99,23 @@ public class PhraseMatcher {
      */
     public void setMatchAll(boolean matchAll) { this.matchAll =matchAll; }
 
+    /**
+     * Sets whether to find the phrases among the words of a composite in a single pass over the words,
+     * using an automaton built from the phrase automaton of this, instead of walking the phrase automaton
+     * from each word. This is faster for long queries but uses memory proportional to the size of the
+     * phrase automaton. It has no effect when plural/singular form differences are ignored.
+     * Default is false.
+     *
+     * @throws IllegalArgumentException if the phrase automaton contains entries which are not
+     *         single space separated words
+     */
+    public void setSinglePassMatching(boolean singlePassMatching) {
+        if (singlePassMatching && phraseFSA != null)
+            phraseAutomaton = new PhraseAutomaton(phraseFSA);
+        else
+            phraseAutomaton = null;
+    }
+
     /**
      * Finds all phrases (word sequences of length 1 or higher)
      * of the same index, not negative items of a notitem,
@@ -151,6 +171,14 @@ public class PhraseMatcher {
         if (owner instanceof NotItem)
             checkItemCount=1; // Skip negatives
 
+        if (phraseAutomaton != null && ! ignorePluralForm) {
+            List<List<Phrase>> phrasesByStart = findPhrasesInOnePass(owner);
+            if (phrasesByStart != null) {
+                addPhrasesFoundInOnePass(owner, checkItemCount, phrasesByStart, phrases);
+                return;
+            }
+        }
+
         while (i<checkItemCount) {
             int largestFoundLength=findPhrasesAtStartpoint(i,owner,phrases);
 
@@ -164,6 +192,72 @@ public class PhraseMatcher {
         }
     }
 
+    /** Adds the phrases found in one pass in the same way as when finding phrases at each start point */
+    private void addPhrasesFoundInOnePass(CompositeItem owner, int checkItemCount, List<List<Phrase>> phrasesByStart,
+                                          MatchedPhrases phrases) {
+        int i = 0;
+        while (i < checkItemCount) {
+            List<Phrase> phrasesAtStart = phrasesByStart.get(i);
+            if (phrasesAtStart == null) {
+                recursivelyMatchPhrases(owner.getItem(i), phrases);
+                i++;
+            }
+            else if (matchAll) {
+                for (Phrase phrase : phrasesAtStart)
+                    phrases.add(phrase);
+                recursivelyMatchPhrases(owner.getItem(i), phrases);
+                i++;
+            }
+            else {
+                Phrase longest = phrasesAtStart.get(phrasesAtStart.size() - 1);
+                phrases.add(longest);
+                i += longest.getLength();
+            }
+        }
+    }
+
+    /**
+     * Finds all phrases in the runs of term items of the same index in the given owner in a single pass.
+     *
+     * @return the phrases starting at each index of the owner by increasing length, with null entries
+     *         at indexes where no phrase starts, or null if the words of the owner cannot be matched in one pass
+     */
+    private List<List<Phrase>> findPhrasesInOnePass(CompositeItem owner) {
+        List<List<Phrase>> phrasesByStart = new ArrayList<>(owner.getItemCount());
+        for (int i = 0; i < owner.getItemCount(); i++)
+            phrasesByStart.add(null);
+
+        int runStart = 0;
+        while (runStart < owner.getItemCount()) {
+            if ( ! (owner.getItem(runStart) instanceof TermItem)) {
+                runStart++;
+                continue;
+            }
+
+            String index = ((TermItem)owner.getItem(runStart)).getIndexName();
+            List<String> words = new ArrayList<>();
+            for (int i = runStart; i < owner.getItemCount(); i++) {
+                Item current = owner.getItem(i);
+                if ( ! (current instanceof TermItem) || ! ((TermItem)current).getIndexName().equals(index)) break;
+                String word = toLowerCase(((TermItem)current).stringValue());
+                if (word.isEmpty() || word.indexOf(' ') >= 0) return null; // words can not be told apart
+                words.add(word);
+            }
+
+            int offset = runStart;
+            phraseAutomaton.match(words, (start, length, data) -> {
+                List<Phrase> phrasesAtStart = phrasesByStart.get(offset + start);
+                if (phrasesAtStart == null) {
+                    phrasesAtStart = new ArrayList<>(2);
+                    phrasesByStart.set(offset + start, phrasesAtStart);
+                }
+                phrasesAtStart.add(new Phrase(owner, null, offset + start, length, data));
+            });
+            runStart += words.size();
+        }
+        return phrasesByStart;
+    }
+
     /**
      * If (!matchAll), finds longest possible phrase starting at the
      * given index in the owner and adds it to phrases.
@@ -64,6 +64,9 @@ public class RuleBase {
     /** Should we allow stemmed matches? */
     private boolean stemming=true;
 
+    /** Should only the rules which may match a query be looked up and evaluated? */
+    private boolean ruleIndexing=true;
+
     /** Creates an empty rule base. TODO: Disallow */
     public RuleBase() {
     }
@@ -108,6 +111,15 @@ public class RuleBase {
     /** Returns whether stemmed matches are allowed. True by default */
     public boolean getStemming() { return stemming; }
 
+    /**
+     * Set to false to evaluate every rule over every query instead of looking up the rules
+     * which may match each query in an index. True by default
+     */
+    public void setRuleIndexing(boolean ruleIndexing) { this.ruleIndexing=ruleIndexing; }
+
+    /** Returns whether rules which may match a query are looked up in an index. True by default */
+    public boolean getRuleIndexing() { return ruleIndexing; }
+
     /**
      * <p>Include another rule base into this. This <b>transfers ownership</b>
      * of the given rule base - it can not be subsequently used for any purpose
@@ -302,6 +314,7 @@ public class RuleBase {
     public void initialize() {
         inlineIncluded();
         makeReferences();
+        analyzer.initialize();
     }
 
     /**
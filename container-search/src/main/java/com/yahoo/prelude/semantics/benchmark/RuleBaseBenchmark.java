@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
 
 import com.yahoo.search.Query;
 import com.yahoo.prelude.semantics.RuleBase;
@@ -18,6 +19,17 @@ public class RuleBaseBenchmark {
 
     public void benchmark(String ruleBaseFile, String queryFile, int iterations)
             throws IOException, ParseException {
+        benchmark(ruleBaseFile, queryFile, iterations, 0);
+    }
+
+    /**
+     * Runs the queries over the rule base both with and without rule indexing
+     *
+     * @param generatedRules the number of generated rules which matches none of the queries
+     *                       to add to the rule base, to measure the cost of large rule bases
+     */
+    public void benchmark(String ruleBaseFile, String queryFile, int iterations, int generatedRules)
+            throws IOException, ParseException {
 
         String fsaFile = null;
         if(ruleBaseFile.endsWith(".sr")){
@@ -27,13 +39,32 @@ public class RuleBaseBenchmark {
                 fsaFile = null;
             }
         }
-        RuleBase ruleBase = new RuleImporter().importFile(ruleBaseFile,fsaFile);
+        RuleBase ruleBase = generatedRules > 0
+                            ? RuleBase.createFromString(ruleBaseFile, withGeneratedRules(ruleBaseFile, generatedRules), fsaFile)
+                            : new RuleImporter().importFile(ruleBaseFile,fsaFile);
         ArrayList<String> queries = new ArrayList<>();
         BufferedReader reader = new BufferedReader(new FileReader(queryFile));
         String line;
         while((line=reader.readLine())!=null){
             queries.add(line);
         }
+
+        ruleBase.setRuleIndexing(false);
+        run(ruleBase, queries, iterations); // warmup
+        long unindexedElapsed = run(ruleBase, queries, iterations);
+        ruleBase.setRuleIndexing(true);
+        run(ruleBase, queries, iterations); // warmup
+        long indexedElapsed = run(ruleBase, queries, iterations);
+        System.out.print("BENCHMARK: rulebase=" + ruleBaseFile +
+                "\n           fsa=" + fsaFile +
+                "\n           rules=" + ruleBase.rules().size() +
+                "\n           queries=" + queryFile +
+                "\n           iterations=" + iterations +
+                "\n           elapsed without rule index=" + unindexedElapsed + "ms" +
+                "\n           elapsed with rule index=" + indexedElapsed + "ms\n");
+    }
+
+    private long run(RuleBase ruleBase, List<String> queries, int iterations) {
         Date start = new Date();
         for (int i=0;i<iterations;i++){
             for (Iterator<String> iter = queries.iterator(); iter.hasNext(); ){
@@ -43,23 +74,31 @@ public class RuleBaseBenchmark {
             }
         }
         Date end = new Date();
-        long elapsed = end.getTime()-start.getTime();
-        System.out.print("BENCHMARK: rulebase=" + ruleBaseFile +
-                "\n           fsa=" + fsaFile +
-                "\n           queries=" + queryFile +
-                "\n           iterations=" + iterations +
-                "\n           elapsed=" + elapsed + "ms\n");
+        return end.getTime()-start.getTime();
     }
 
+    private String withGeneratedRules(String ruleBaseFile, int generatedRules) throws IOException {
+        StringBuilder rules = new StringBuilder();
+        BufferedReader reader = new BufferedReader(new FileReader(ruleBaseFile));
+        String line;
+        while((line=reader.readLine())!=null){
+            rules.append(line).append("\n");
+        }
+        for (int i=0;i<generatedRules;i++){
+            rules.append("generated").append(i).append(" +> generatedproduct").append(i).append(";\n");
+        }
+        return rules.toString();
+    }
 
     public static void main(String[] args) {
         if(args.length<3){
-            System.out.println("USAGE: RuleBaseBenchmark ruleBaseFile queryFile iterations");
+            System.out.println("USAGE: RuleBaseBenchmark ruleBaseFile queryFile iterations [generatedRules]");
             System.exit(1);
         }
 
         try {
-            new RuleBaseBenchmark().benchmark(args[0],args[1],Integer.parseInt(args[2]));
+            int generatedRules = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+            new RuleBaseBenchmark().benchmark(args[0],args[1],Integer.parseInt(args[2]),generatedRules);
         }
         catch (Exception e) {
             System.out.println("ERROR: " + collectMessage(e));
@@ -7,6 +7,7 @@ import com.yahoo.prelude.semantics.RuleBase;
 import com.yahoo.prelude.semantics.RuleBaseException;
 import com.yahoo.prelude.semantics.rule.ProductionRule;
 
+import java.util.BitSet;
 import java.util.ListIterator;
 
 /**
@@ -19,10 +20,18 @@ public class RuleEngine {
 
     private RuleBase rules;
 
+    /** The index of the rules to use for looking up candidate rules, or null if not initialized */
+    private volatile RuleIndex index = null;
+
     public RuleEngine(RuleBase rules) {
         this.rules=rules;
     }
 
+    /** Call this when all rules are added to the rule base of this, before any evaluation starts */
+    public void initialize() {
+        index = new RuleIndex(rules);
+    }
+
     /**
      * Evaluates a rule base over a query
      *
@@ -32,20 +41,15 @@ public class RuleEngine {
      *         If there is an error, this query is destroyed (unusable)
      */
     public String evaluate(Query query,int traceLevel) {
-        // TODO: This is O(query size*rule base size). We'll eventually need to create indices
-        //       on rules to look up rule candidates per term to make it O(query size) instead
-        //       Probably create indices on the first term like Prolog implementations use to
-
         boolean matchedAnything=false;
         Evaluation evaluation=new Evaluation(query,traceLevel);
         evaluation.setStemming(rules.getStemming());
         evaluation.trace(2,"Evaluating query '" + evaluation.getQuery().getModel().getQueryTree().getRoot() + "':");
-        for (ListIterator<ProductionRule> i=rules.ruleIterator(); i.hasNext(); ) {
-            evaluation.reset();
-            ProductionRule rule=i.next();
-            boolean matched=matchRuleAtAllStartPoints(evaluation,rule);
-            matchedAnything|=matched;
-        }
+        RuleIndex index=this.index;
+        if (rules.getRuleIndexing() && index != null && index.indexes(rules))
+            matchedAnything=evaluateCandidates(evaluation,index);
+        else
+            matchedAnything=evaluateAll(evaluation);
 
         if (!matchedAnything) return null;
 
@@ -57,6 +61,35 @@ public class RuleEngine {
         return error;
     }
 
+    /**
+     * Evaluates the rules which may match the query, in rule order.
+     * The candidates are looked up again each time a rule has changed the query.
+     */
+    private boolean evaluateCandidates(Evaluation evaluation, RuleIndex index) {
+        boolean matchedAnything=false;
+        BitSet candidates=index.candidates(evaluation);
+        for (int i=candidates.nextSetBit(0); i>=0; i=candidates.nextSetBit(i+1)) {
+            evaluation.reset();
+            boolean matched=matchRuleAtAllStartPoints(evaluation,index.rule(i));
+            if (matched)
+                index.addCandidates(evaluation,candidates);
+            matchedAnything|=matched;
+        }
+        return matchedAnything;
+    }
+
+    /** Evaluates every rule */
+    private boolean evaluateAll(Evaluation evaluation) {
+        boolean matchedAnything=false;
+        for (ListIterator<ProductionRule> i=rules.ruleIterator(); i.hasNext(); ) {
+            evaluation.reset();
+            ProductionRule rule=i.next();
+            boolean matched=matchRuleAtAllStartPoints(evaluation,rule);
+            matchedAnything|=matched;
+        }
+        return matchedAnything;
+    }
+
     /** Match a rule at any starting point in the query */
     private boolean matchRuleAtAllStartPoints(Evaluation evaluation, ProductionRule rule) {
         boolean matchedAtLeastOnce=false;
@@ -0,0 +1,162 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.semantics.engine;
+
+import com.yahoo.prelude.semantics.RuleBase;
+import com.yahoo.prelude.semantics.rule.ChoiceCondition;
+import com.yahoo.prelude.semantics.rule.Condition;
+import com.yahoo.prelude.semantics.rule.ConditionReference;
+import com.yahoo.prelude.semantics.rule.NamedCondition;
+import com.yahoo.prelude.semantics.rule.ProductionRule;
+import com.yahoo.prelude.semantics.rule.SequenceCondition;
+import com.yahoo.prelude.semantics.rule.SuperCondition;
+import com.yahoo.prelude.semantics.rule.TermCondition;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An index of the rules of a rule base by the terms they require to be present in the query to match,
+ * used to avoid evaluating rules which cannot match.
+ *
+ * The terms required by a rule are those of the first condition in it which requires some term,
+ * with condition references resolved to the terms of the named condition.
+ * Rules where no such terms can be determined (e.g rules starting with an ellipsis, negations,
+ * automata references or conditions on other name spaces than the query) are always candidates.
+ *
+ * This is immutable and thread safe.
+ *
+ * @author agent
+ */
+class RuleIndex {
+
+    private final List<ProductionRule> rules;
+
+    /** The indexes of the rules which must always be evaluated */
+    private final BitSet alwaysCandidates;
+
+    /** The indexes of the rules requiring each term, in increasing order */
+    private final Map<String, int[]> rulesByTerm;
+
+    RuleIndex(RuleBase ruleBase) {
+        rules = new ArrayList<>(ruleBase.rules());
+        alwaysCandidates = new BitSet(rules.size());
+        Map<String, List<Integer>> rulesByTerm = new HashMap<>();
+        Map<String, Set<String>> termsByConditionName = new HashMap<>();
+        for (int i = 0; i < rules.size(); i++) {
+            Set<String> terms = requiredTerms(rules.get(i).getCondition(), ruleBase, termsByConditionName,
+                                              new HashSet<>());
+            if (terms == null) {
+                alwaysCandidates.set(i);
+                continue;
+            }
+            for (String term : terms)
+                rulesByTerm.computeIfAbsent(term, k -> new ArrayList<>()).add(i);
+        }
+
+        this.rulesByTerm = new HashMap<>(rulesByTerm.size());
+        for (Map.Entry<String, List<Integer>> entry : rulesByTerm.entrySet())
+            this.rulesByTerm.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /** Returns the number of rules in this index */
+    int size() { return rules.size(); }
+
+    /** Returns the rule at the given index */
+    ProductionRule rule(int index) { return rules.get(index); }
+
+    /** Returns whether this is an index of the current rules of the given rule base */
+    boolean indexes(RuleBase ruleBase) {
+        return rules.size() == ruleBase.rules().size();
+    }
+
+    /** Returns the indexes of the rules which may match the items of the given evaluation */
+    BitSet candidates(Evaluation evaluation) {
+        BitSet candidates = (BitSet)alwaysCandidates.clone();
+        addCandidates(evaluation, candidates);
+        return candidates;
+    }
+
+    /**
+     * Adds the indexes of the rules which may match the items of the given evaluation to the given set.
+     * Call this when the query of the evaluation has been changed.
+     */
+    void addCandidates(Evaluation evaluation, BitSet candidates) {
+        for (FlattenedItem item : evaluation.flattenedItems()) {
+            String term = item.getItem().stringValue();
+            if (term == null) continue;
+            addRulesRequiring(term, candidates);
+            // Include stemmed matches, see TermCondition
+            addRulesRequiring(term + "s", candidates);
+            if (term.endsWith("s"))
+                addRulesRequiring(term.substring(0, term.length() - 1), candidates);
+        }
+    }
+
+    private void addRulesRequiring(String term, BitSet candidates) {
+        int[] rules = rulesByTerm.get(term);
+        if (rules == null) return;
+        for (int rule : rules)
+            candidates.set(rule);
+    }
+
+    /**
+     * Returns a set of terms at least one of which must be present in the query for the given
+     * condition to match, or null if this cannot be determined.
+     *
+     * @param termsByConditionName the terms of the named conditions resolved so far
+     * @param resolving the names of the named conditions currently being resolved, to avoid cycles
+     */
+    private static Set<String> requiredTerms(Condition condition, RuleBase ruleBase,
+                                             Map<String, Set<String>> termsByConditionName, Set<String> resolving) {
+        if (condition == null) return null;
+        if (condition.getNameSpace() != null) return null; // not matched against the query terms
+
+        if (condition instanceof TermCondition) {
+            return ((TermCondition)condition).getTerm() == null
+                   ? null
+                   : Collections.singleton(((TermCondition)condition).getTerm());
+        }
+        else if (condition instanceof SequenceCondition) { // all must match: Use the first which requires terms
+            for (Iterator<Condition> i = ((SequenceCondition)condition).conditionIterator(); i.hasNext(); ) {
+                Set<String> terms = requiredTerms(i.next(), ruleBase, termsByConditionName, resolving);
+                if (terms != null) return terms;
+            }
+            return null;
+        }
+        else if (condition instanceof ChoiceCondition) { // any may match: All must require terms
+            Set<String> allTerms = new LinkedHashSet<>();
+            for (Iterator<Condition> i = ((ChoiceCondition)condition).conditionIterator(); i.hasNext(); ) {
+                Set<String> terms = requiredTerms(i.next(), ruleBase, termsByConditionName, resolving);
+                if (terms == null) return null;
+                allTerms.addAll(terms);
+            }
+            return allTerms.isEmpty() ? null : allTerms;
+        }
+        else if (condition instanceof ConditionReference) {
+            String name = ((ConditionReference)condition).getConditionName();
+            if (termsByConditionName.containsKey(name)) return termsByConditionName.get(name);
+            NamedCondition namedCondition = ruleBase.getCondition(name);
+            if (namedCondition == null) return null; // an automata reference
+            if ( ! resolving.add(name)) return null; // recursive
+            Set<String> terms = requiredTerms(namedCondition.getCondition(), ruleBase, termsByConditionName, resolving);
+            resolving.remove(name);
+            termsByConditionName.put(name, terms);
+            return terms;
+        }
+        else if (condition instanceof SuperCondition) {
+            return requiredTerms(((SuperCondition)condition).getCondition(), ruleBase, termsByConditionName, resolving);
+        }
+        else { // ellipsis, negation, literal, comparison and composite item conditions
+            return null;
+        }
+    }
+
+}
@@ -42,6 +42,7 @@ import com.yahoo.search.query.properties.PropertyMap;
 import com.yahoo.search.query.properties.QueryProperties;
 import com.yahoo.search.query.properties.QueryPropertyAliases;
 import com.yahoo.search.query.properties.RequestContextProperties;
+import com.yahoo.search.statistics.LatencyBreakdown;
 import com.yahoo.search.yql.NullItemException;
 import com.yahoo.search.yql.VespaSerializer;
 import com.yahoo.search.yql.YqlParser;
@@ -161,6 +162,9 @@ public class Query extends com.yahoo.processing.Request implements Cloneable {
     /** Used for downstream session caches */
     private UniqueRequestId requestId = null;
 
+    /** The breakdown of the time spent by this query, or null if it is not sampled for latency measurement */
+    private LatencyBreakdown latencyBreakdown = null;
+
     //--------------- Owned sub-objects containing query properties ----------------
 
     /** The ranking requested in this query */
@@ -601,6 +605,15 @@ public class Query extends com.yahoo.processing.Request implements Cloneable {
     /** Sets whether this query should use the grouping session cache. Default is false */
     public void setGroupingSessionCache(boolean groupingSessionCache) { this.groupingSessionCache = groupingSessionCache; }
 
+    /**
+     * Returns the breakdown of the time spent by this query, or null if this query is not sampled
+     * for latency measurement. Clones of this query share the breakdown of this.
+     */
+    public LatencyBreakdown getLatencyBreakdown() { return latencyBreakdown; }
+
+    /** Sets the breakdown which should record the time spent by this query, or null to not record it */
+    public void setLatencyBreakdown(LatencyBreakdown latencyBreakdown) { this.latencyBreakdown = latencyBreakdown; }
+
     /**
      * Returns the offset from the most relevant hits requested by the submitter
      * of this query.
@@ -987,6 +1000,7 @@ public class Query extends com.yahoo.processing.Request implements Cloneable {
         clone.setNoCache(getNoCache());
         clone.setGroupingSessionCache(getGroupingSessionCache());
         clone.requestId = null; // Each clone should have their own requestId.
+        clone.latencyBreakdown = latencyBreakdown;
     }
 
     /** Returns the presentation to be used for this query, never null */
@@ -0,0 +1,123 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.cache;
+
+import com.yahoo.prelude.query.Item;
+import com.yahoo.search.Query;
+import com.yahoo.searchlib.aggregation.Grouping;
+import com.yahoo.vespa.objects.BufferSerializer;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The key of a cached query result: The query tree, rank profile, rank properties, rank features,
+ * sorting, location, search path and document type of the query, the grouping requests sent with it
+ * (which contain any continuation state), and its sources and restrict.
+ *
+ * The hit window, timeout, summary class and session of the query are not part of the key,
+ * such that all result windows of the same query have the same key.
+ *
+ * This is immutable.
+ *
+ * @author agent
+ */
+public final class QueryCacheKey {
+
+    private final byte[] groupings;
+    private final byte[] query;
+    private final Set<String> sources;
+    private final Set<String> restrict;
+    private final int hashCode;
+
+    private QueryCacheKey(Query query, Collection<Grouping> groupings) {
+        this.groupings = serialized(groupings);
+        this.query = encoded(query);
+        this.sources = new HashSet<>(query.getModel().getSources());
+        this.restrict = new HashSet<>(query.getModel().getRestrict());
+        this.hashCode = 31 * (31 * (31 * Arrays.hashCode(this.groupings) + Arrays.hashCode(this.query))
+                              + sources.hashCode()) + restrict.hashCode();
+    }
+
+    /** Returns the key of the result of the given query with the given grouping requests */
+    public static QueryCacheKey of(Query query, Collection<Grouping> groupings) {
+        return new QueryCacheKey(query, groupings);
+    }
+
+    /** Returns an estimate of the memory used by this in bytes */
+    public int byteSize() {
+        return groupings.length + query.length + 4;
+    }
+
+    /** Returns a copy of the encoded query and grouping requests of this */
+    public byte[] getCopyOfFullKey() {
+        byte[] key = Arrays.copyOf(query, query.length + groupings.length);
+        System.arraycopy(groupings, 0, key, query.length, groupings.length);
+        return key;
+    }
+
+    /** Serializes the groupings ordered by id, such that the same requests always produce the same bytes */
+    private static byte[] serialized(Collection<Grouping> groupings) {
+        Map<Integer, Grouping> groupingsById = new TreeMap<>();
+        for (Grouping grouping : groupings)
+            groupingsById.put(grouping.getId(), grouping);
+
+        BufferSerializer buffer = new BufferSerializer();
+        for (Grouping grouping : groupingsById.values())
+            grouping.serialize(buffer);
+        return Arrays.copyOf(buffer.getBuf().array(), buffer.position());
+    }
+
+    /** Encodes the parts of the query which influence its result as the backend would receive them */
+    private static byte[] encoded(Query query) {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        while (true) {
+            try {
+                Item.putString(query.getRanking().getProfile(), buffer);
+                query.getRanking().getProperties().encode(buffer, true);
+                query.getRanking().getFeatures().encode(buffer);
+                putNullable(query.getModel().getSearchPath(), buffer);
+                putNullable(query.getModel().getDocumentDb(), buffer);
+                if (query.getRanking().getSorting() != null)
+                    query.getRanking().getSorting().encode(buffer);
+                buffer.put((byte)0);
+                if (query.getRanking().getLocation() != null)
+                    query.getRanking().getLocation().encode(buffer);
+                buffer.put((byte)0);
+                query.getModel().getQueryTree().encode(buffer);
+                buffer.flip();
+                break;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static void putNullable(String value, ByteBuffer buffer) {
+        Item.putString(value == null ? "" : value, buffer);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if ( ! (o instanceof QueryCacheKey)) return false;
+        QueryCacheKey other = (QueryCacheKey)o;
+        return this.hashCode == other.hashCode
+               && Arrays.equals(this.groupings, other.groupings)
+               && Arrays.equals(this.query, other.query)
+               && this.sources.equals(other.sources)
+               && this.restrict.equals(other.restrict);
+    }
+
+    @Override
+    public int hashCode() { return hashCode; }
+
+}
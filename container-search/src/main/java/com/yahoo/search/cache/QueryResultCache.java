@@ -0,0 +1,287 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.cache;
+
+import com.yahoo.jdisc.Metric;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread safe LRU cache of query results, bounded by the total byte size of the cached values.
+ *
+ * The cache is split into a number of segments, each guarded by its own lock and owning an equal share
+ * of the total capacity, so that concurrent queries only contend when their keys hash to the same segment.
+ * The key must identify everything which influences the cached value, i.e the normalized query, rank profile,
+ * grouping request and summary class. Entries expire when they are older than the max age of the cache.
+ * Hits, misses and evictions are counted, and also reported to a metric if one is given.
+ *
+ * @author agent
+ */
+public class QueryResultCache<KEY, VALUE> {
+
+    /** The suffix of the name of the metric counting lookups which returned a cached value */
+    public static final String hitsMetricSuffix = ".hits";
+
+    /** The suffix of the name of the metric counting lookups which did not return a cached value */
+    public static final String missesMetricSuffix = ".misses";
+
+    /** The suffix of the name of the metric counting entries removed to make room for others */
+    public static final String evictionsMetricSuffix = ".evictions";
+
+    private static final int defaultSegmentCount = 16;
+
+    private final Segment<KEY, VALUE>[] segments;
+    private final long capacity;
+    private final long maxAge;
+    private final long maxEntrySize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /** The metric receiving hits, misses and evictions, or null if none */
+    private final Metric metric;
+    private final String hitsMetricName;
+    private final String missesMetricName;
+    private final String evictionsMetricName;
+
+    /**
+     * Creates a cache with the default number of segments.
+     *
+     * @param capacity the max total size of the cached values in bytes
+     * @param maxAge the max age of a valid entry in milliseconds
+     * @param maxEntryPercentage the max size of a single entry as a percentage of the capacity.
+     *                           Requests to cache larger entries are ignored.
+     */
+    public QueryResultCache(long capacity, long maxAge, int maxEntryPercentage) {
+        this(capacity, maxAge, maxEntryPercentage, defaultSegmentCount);
+    }
+
+    /**
+     * Creates a cache with the default number of segments which reports to a metric.
+     *
+     * @param capacity the max total size of the cached values in bytes
+     * @param maxAge the max age of a valid entry in milliseconds
+     * @param maxEntryPercentage the max size of a single entry as a percentage of the capacity.
+     *                           Requests to cache larger entries are ignored.
+     * @param metric the metric to which hits, misses and evictions are reported, or null to not report them
+     * @param metricPrefix the prefix of the names of the reported metrics, to which the metric suffixes of this are added
+     */
+    public QueryResultCache(long capacity, long maxAge, int maxEntryPercentage, Metric metric, String metricPrefix) {
+        this(capacity, maxAge, maxEntryPercentage, defaultSegmentCount, metric, metricPrefix);
+    }
+
+    /**
+     * Creates a cache which does not report to a metric
+     *
+     * @param capacity the max total size of the cached values in bytes
+     * @param maxAge the max age of a valid entry in milliseconds
+     * @param maxEntryPercentage the max size of a single entry as a percentage of the capacity.
+     *                           Requests to cache larger entries are ignored.
+     * @param segmentCount the number of independently locked segments, rounded up to the nearest power of two
+     */
+    public QueryResultCache(long capacity, long maxAge, int maxEntryPercentage, int segmentCount) {
+        this(capacity, maxAge, maxEntryPercentage, segmentCount, null, null);
+    }
+
+    /**
+     * Creates a cache
+     *
+     * @param capacity the max total size of the cached values in bytes
+     * @param maxAge the max age of a valid entry in milliseconds
+     * @param maxEntryPercentage the max size of a single entry as a percentage of the capacity.
+     *                           Requests to cache larger entries are ignored.
+     * @param segmentCount the number of independently locked segments, rounded up to the nearest power of two
+     * @param metric the metric to which hits, misses and evictions are reported, or null to not report them
+     * @param metricPrefix the prefix of the names of the reported metrics, to which the metric suffixes of this are added
+     */
+    @SuppressWarnings("unchecked")
+    public QueryResultCache(long capacity, long maxAge, int maxEntryPercentage, int segmentCount,
+                            Metric metric, String metricPrefix) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Cache capacity must be positive, got " + capacity);
+        if (maxAge <= 0)
+            throw new IllegalArgumentException("Max age must be positive, got " + maxAge);
+        if (segmentCount <= 0)
+            throw new IllegalArgumentException("Segment count must be positive, got " + segmentCount);
+        if (metric != null && metricPrefix == null)
+            throw new IllegalArgumentException("A metric prefix must be given when reporting to a metric");
+
+        int actualSegmentCount = Integer.highestOneBit(segmentCount);
+        if (actualSegmentCount < segmentCount)
+            actualSegmentCount <<= 1;
+        while (actualSegmentCount > 1 && capacity / actualSegmentCount < 1)
+            actualSegmentCount >>= 1;
+
+        this.capacity = capacity;
+        this.maxAge = maxAge;
+        this.metric = metric;
+        this.hitsMetricName = metricPrefix + hitsMetricSuffix;
+        this.missesMetricName = metricPrefix + missesMetricSuffix;
+        this.evictionsMetricName = metricPrefix + evictionsMetricSuffix;
+        long segmentCapacity = capacity / actualSegmentCount;
+        this.maxEntrySize = Math.min(segmentCapacity, capacity * maxEntryPercentage / 100);
+        this.segments = new Segment[actualSegmentCount];
+        for (int i = 0; i < actualSegmentCount; i++)
+            segments[i] = new Segment<>(segmentCapacity, this::evicted);
+    }
+
+    /** Returns the cached value for this key, or null if it is not cached or has expired */
+    public VALUE get(KEY key) {
+        return get(key, System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the cached value for this key, or null if it is not cached or has expired
+     *
+     * @param now the current time in milliseconds
+     */
+    public VALUE get(KEY key, long now) {
+        VALUE value = segmentOf(key).get(key, now - maxAge);
+        if (value == null)
+            misses.increment();
+        else
+            hits.increment();
+        if (metric != null)
+            metric.add(value != null ? hitsMetricName : missesMetricName, 1, null);
+        return value;
+    }
+
+    /**
+     * Caches a value, replacing any value already cached for this key.
+     * If the value is larger than the max entry size it is not cached, and any previous value is removed as it is stale.
+     *
+     * @param size the size of the value in bytes
+     * @param timestamp the time in milliseconds at which this value was created, which determines when it expires
+     */
+    public void put(KEY key, VALUE value, int size, long timestamp) {
+        Segment<KEY, VALUE> segment = segmentOf(key);
+        if (size > maxEntrySize)
+            segment.remove(key);
+        else
+            segment.put(key, new Entry<>(value, size, timestamp));
+    }
+
+    /** Removes the value cached for this key, if any */
+    public void remove(KEY key) {
+        segmentOf(key).remove(key);
+    }
+
+    /** Removes all entries from this cache. The hit, miss and eviction counts are not reset. */
+    public void clear() {
+        for (Segment<KEY, VALUE> segment : segments)
+            segment.clear();
+    }
+
+    /** Returns the max total size of the cached values in bytes */
+    public long capacity() { return capacity; }
+
+    /** Returns the current total size of the cached values in bytes */
+    public long byteSize() {
+        long size = 0;
+        for (Segment<KEY, VALUE> segment : segments)
+            size += segment.byteSize();
+        return size;
+    }
+
+    /** Returns the number of entries currently in this cache */
+    public int entryCount() {
+        int count = 0;
+        for (Segment<KEY, VALUE> segment : segments)
+            count += segment.entryCount();
+        return count;
+    }
+
+    /** Returns the number of lookups which returned a value since this was created */
+    public long hitCount() { return hits.sum(); }
+
+    /** Returns the number of lookups which did not return a value since this was created */
+    public long missCount() { return misses.sum(); }
+
+    /** Returns the number of entries removed to make room for others since this was created */
+    public long evictionCount() { return evictions.sum(); }
+
+    private void evicted() {
+        evictions.increment();
+        if (metric != null)
+            metric.add(evictionsMetricName, 1, null);
+    }
+
+    private Segment<KEY, VALUE> segmentOf(KEY key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16); // spread the high bits, as only the lowest are used to pick the segment
+        return segments[hash & (segments.length - 1)];
+    }
+
+    private static class Entry<VALUE> {
+
+        final VALUE value;
+        final int size;
+        final long timestamp;
+
+        Entry(VALUE value, int size, long timestamp) {
+            this.value = value;
+            this.size = size;
+            this.timestamp = timestamp;
+        }
+
+    }
+
+    /** A part of the cache, which is an access ordered map guarded by its own lock */
+    private static class Segment<KEY, VALUE> {
+
+        private final LinkedHashMap<KEY, Entry<VALUE>> entries = new LinkedHashMap<>(64, 0.75f, true);
+        private final long capacity;
+        private final Runnable evictionListener;
+        private long size = 0;
+
+        Segment(long capacity, Runnable evictionListener) {
+            this.capacity = capacity;
+            this.evictionListener = evictionListener;
+        }
+
+        synchronized VALUE get(KEY key, long oldestValidTimestamp) {
+            Entry<VALUE> entry = entries.get(key);
+            if (entry == null) return null;
+            if (entry.timestamp < oldestValidTimestamp) {
+                remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+
+        synchronized void put(KEY key, Entry<VALUE> entry) {
+            Entry<VALUE> previous = entries.put(key, entry);
+            if (previous != null)
+                size -= previous.size;
+            size += entry.size;
+
+            for (Iterator<Map.Entry<KEY, Entry<VALUE>>> i = entries.entrySet().iterator(); size > capacity && i.hasNext(); ) {
+                Map.Entry<KEY, Entry<VALUE>> eldest = i.next();
+                if (eldest.getKey().equals(key)) continue; // never evict the entry we are adding
+                size -= eldest.getValue().size;
+                i.remove();
+                evictionListener.run();
+            }
+        }
+
+        synchronized void remove(KEY key) {
+            Entry<VALUE> removed = entries.remove(key);
+            if (removed != null)
+                size -= removed.size;
+        }
+
+        synchronized void clear() {
+            entries.clear();
+            size = 0;
+        }
+
+        synchronized long byteSize() { return size; }
+
+        synchronized int entryCount() { return entries.size(); }
+
+    }
+
+}
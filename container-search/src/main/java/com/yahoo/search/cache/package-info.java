@@ -1,6 +1,7 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 /**
- * Cache package, exported to keep the ignored legacy cache config around until Vespa 7.
+ * The query result cache used by the backend searchers.
+ * Also exported to keep the ignored legacy cache config around until Vespa 7.
  *
  * @author bratseth
  */
@@ -3,6 +3,7 @@ package com.yahoo.search.dispatch;
 
 import com.yahoo.compress.CompressionType;
 import com.yahoo.prelude.fastsearch.FastHit;
+import com.yahoo.slime.Inspector;
 
 import java.util.List;
 import java.util.Optional;
@@ -14,30 +15,83 @@ import java.util.Optional;
  */
 interface Client {
 
-    void getDocsums(List<FastHit> hits, NodeConnection node, CompressionType compression,
-                    int uncompressedLength, byte[] compressedSlime, Dispatcher.GetDocsumsResponseReceiver responseReceiver,
-                    double timeoutSeconds);
+    /**
+     * Requests summaries for the given hits from a node. The response is passed to the given receiver
+     * with the given hits list as its hits context.
+     *
+     * @param properties the properties of the request encoded in compressedSlime, which the client may use
+     *                   without decoding the request
+     * @return the request in progress, which can be used to cancel it
+     */
+    PendingRequest getDocsums(List<FastHit> hits, NodeConnection node, GetDocsumsRequestProperties properties,
+                              CompressionType compression, int uncompressedLength, byte[] compressedSlime,
+                              Dispatcher.GetDocsumsResponseReceiver responseReceiver, double timeoutSeconds);
 
     /** Creates a connection to a particular node in this */
     NodeConnection createConnection(String hostname, int port);
 
+    /** Releases the resources held by this client. Connections must be closed separately. */
+    default void close() {}
+
+    /** The properties of a getDocsums request, except the documents requested */
+    class GetDocsumsRequestProperties {
+
+        private final String summaryClass;
+        private final String documentType;
+        private final String rankProfile;
+        private final boolean hasSession;
+
+        public GetDocsumsRequestProperties(String summaryClass, String documentType, String rankProfile, boolean hasSession) {
+            this.summaryClass = summaryClass;
+            this.documentType = documentType;
+            this.rankProfile = rankProfile;
+            this.hasSession = hasSession;
+        }
+
+        /** Returns the summary class requested, or null to use the default */
+        public String summaryClass() { return summaryClass; }
+
+        /** Returns the document type of the documents requested, or null if not set */
+        public String documentType() { return documentType; }
+
+        /** Returns the rank profile to use, or null if not set */
+        public String rankProfile() { return rankProfile; }
+
+        /** Returns whether the request refers to a query session on the node */
+        public boolean hasSession() { return hasSession; }
+
+    }
+
     class GetDocsumsResponseOrError {
 
         // One of these will be non empty and the other not
         private Optional<GetDocsumsResponse> response;
         private Optional<String> error;
+        private final List<FastHit> errorHitsContext;
 
         public static GetDocsumsResponseOrError fromResponse(GetDocsumsResponse response) {
-            return new GetDocsumsResponseOrError(Optional.of(response), Optional.empty());
+            return new GetDocsumsResponseOrError(Optional.of(response), Optional.empty(), null);
         }
 
         public static GetDocsumsResponseOrError fromError(String error) {
-            return new GetDocsumsResponseOrError(Optional.empty(), Optional.of(error));
+            return fromError(error, null);
         }
 
-        private GetDocsumsResponseOrError(Optional<GetDocsumsResponse> response, Optional<String> error) {
+        /** Returns an error response to the request for the given hits */
+        public static GetDocsumsResponseOrError fromError(String error, List<FastHit> hitsContext) {
+            return new GetDocsumsResponseOrError(Optional.empty(), Optional.of(error), hitsContext);
+        }
+
+        private GetDocsumsResponseOrError(Optional<GetDocsumsResponse> response, Optional<String> error,
+                                          List<FastHit> errorHitsContext) {
             this.response = response;
             this.error = error;
+            this.errorHitsContext = errorHitsContext;
+        }
+
+        /** Returns the hits list of the request this responds to, or null if not known */
+        public List<FastHit> hitsContext() {
+            return response.map(GetDocsumsResponse::hitsContext).orElse(errorHitsContext);
         }
 
         /** Returns the response, or empty if there is an error */
@@ -54,12 +108,36 @@ interface Client {
         private final int uncompressedSize;
         private final byte[] compressedSlimeBytes;
         private final List<FastHit> hitsContext;
+        private final int docsumsOffset;
+        private final Inspector decodedRoot;
+        private final boolean includesErrors;
 
         public GetDocsumsResponse(byte compression, int uncompressedSize, byte[] compressedSlimeBytes, List<FastHit> hitsContext) {
             this.compression = compression;
             this.uncompressedSize = uncompressedSize;
             this.compressedSlimeBytes = compressedSlimeBytes;
             this.hitsContext = hitsContext;
+            this.docsumsOffset = 0;
+            this.decodedRoot = null;
+            this.includesErrors = true;
+        }
+
+        /**
+         * Creates a response to one of several requests which shares a decoded response with the others
+         *
+         * @param decodedRoot the root of the shared response, which must not be modified
+         * @param docsumsOffset the index in the docsums array of the shared response of the summary of the first hit
+         *                      in hitsContext
+         * @param includesErrors whether the errors of the shared response should be reported to this request
+         */
+        public GetDocsumsResponse(Inspector decodedRoot, List<FastHit> hitsContext, int docsumsOffset, boolean includesErrors) {
+            this.compression = CompressionType.NONE.getCode();
+            this.uncompressedSize = 0;
+            this.compressedSlimeBytes = null;
+            this.hitsContext = hitsContext;
+            this.docsumsOffset = docsumsOffset;
+            this.decodedRoot = decodedRoot;
+            this.includesErrors = includesErrors;
         }
 
         public byte compression() {
@@ -78,6 +156,31 @@ interface Client {
             return hitsContext;
         }
 
+        public int docsumsOffset() {
+            return docsumsOffset;
+        }
+
+        /**
+         * Returns the already decoded root of the response if it is shared with other requests,
+         * or null if the response must be decoded from its slime bytes
+         */
+        public Inspector decodedRoot() {
+            return decodedRoot;
+        }
+
+        /** Returns whether the errors of the response, if any, should be reported to the request of this */
+        public boolean includesErrors() {
+            return includesErrors;
+        }
+
+    }
+
+    /** A request which has been sent */
+    interface PendingRequest {
+
+        /** Cancels this request if it is not completed. A cancelled request may or may not get an error response. */
+        void cancel();
+
     }
 
     interface NodeConnection {
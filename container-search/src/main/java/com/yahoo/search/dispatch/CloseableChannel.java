@@ -22,6 +22,11 @@ public class CloseableChannel implements Closeable {
         this.channel = backend.openChannel();
     }
 
+    /** For subclasses which do not communicate over a single channel */
+    protected CloseableChannel() {
+        this.channel = null;
+    }
+
     public void setQuery(Query query) {
         channel.setQuery(query);
     }
@@ -1,14 +1,22 @@
 // Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.search.dispatch;
 
+import com.yahoo.fs4.BasicPacket;
+import com.yahoo.fs4.ChannelTimeoutException;
+import com.yahoo.fs4.QueryPacket;
+import com.yahoo.fs4.QueryResultPacket;
+import com.yahoo.fs4.mplex.InvalidChannelException;
 import com.yahoo.prelude.fastsearch.FS4ResourcePool;
 import com.yahoo.search.dispatch.SearchCluster.Group;
 import com.yahoo.search.dispatch.SearchCluster.Node;
 
+import java.io.IOException;
 import java.util.Optional;
 
 /**
  * An extension to CloseableChannel that encapsulates the release of a LoadBalancer group allocation.
+ * The group is released with the time from the query was sent until its result was received,
+ * and is only reported as successful if a query result was received.
  *
  * @author ollivir
  */
@@ -17,6 +25,13 @@ public class DispatchedChannel extends CloseableChannel {
     private final LoadBalancer loadBalancer;
     private boolean groupAllocated = true;
 
+    /** The time the query was sent, or -1 if it is not sent */
+    private long queryStartNanos = -1;
+    /** Whether a query result has been received */
+    private boolean success = false;
+    /** The time from the query was sent until its result was received, in milliseconds */
+    private double searchTimeMs = 0;
+
     public DispatchedChannel(FS4ResourcePool fs4ResourcePool, LoadBalancer loadBalancer, Group group, Node node) {
         super(fs4ResourcePool.getBackend(node.hostname(), node.fs4port(), Optional.of(node.key())));
 
@@ -28,10 +43,27 @@ public class DispatchedChannel extends CloseableChannel {
         this(fs4ResourcePool, loadBalancer, group, group.nodes().iterator().next());
     }
 
+    @Override
+    public boolean sendPacket(BasicPacket packet) throws InvalidChannelException, IOException {
+        if (packet instanceof QueryPacket && queryStartNanos < 0)
+            queryStartNanos = System.nanoTime();
+        return super.sendPacket(packet);
+    }
+
+    @Override
+    public BasicPacket[] receivePackets(long timeout, int packetCount) throws InvalidChannelException, ChannelTimeoutException {
+        BasicPacket[] packets = super.receivePackets(timeout, packetCount);
+        if (queryStartNanos >= 0 && ! success && packets.length > 0 && packets[0] instanceof QueryResultPacket) {
+            success = true;
+            searchTimeMs = (System.nanoTime() - queryStartNanos) / 1_000_000.0;
+        }
+        return packets;
+    }
+
     public void close() {
         if (groupAllocated) {
             groupAllocated = false;
-            loadBalancer.releaseGroup(group);
+            loadBalancer.releaseGroup(group, success, searchTimeMs);
         }
         super.close();
     }
@@ -8,6 +8,7 @@ import com.yahoo.compress.CompressionType;
 import com.yahoo.compress.Compressor;
 import com.yahoo.container.handler.VipStatus;
 import com.yahoo.container.protect.Error;
+import com.yahoo.jdisc.Metric;
 import com.yahoo.prelude.fastsearch.DocumentDatabase;
 import com.yahoo.slime.ArrayTraverser;
 import com.yahoo.data.access.slime.SlimeAdapter;
@@ -19,26 +20,34 @@ import com.yahoo.search.Result;
 import com.yahoo.search.query.SessionId;
 import com.yahoo.search.result.ErrorMessage;
 import com.yahoo.search.result.Hit;
+import com.yahoo.search.statistics.LatencyBreakdown;
 import com.yahoo.data.access.Inspector;
 import com.yahoo.slime.BinaryFormat;
 import com.yahoo.slime.Cursor;
 import com.yahoo.slime.Slime;
+import com.yahoo.statistics.Statistics;
 import com.yahoo.vespa.config.search.DispatchConfig;
 
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * A dispatcher communicates with search nodes to perform queries and fill hits.
  *
- * This is currently not functionally complete: Queries can only be dispatched to a single node,
+ * This is currently not functionally complete: Queries can only be dispatched to groups of multiple nodes
+ * when they are not sorted and their summaries can be fetched over rpc,
  * and summaries can only be requested when they do not need the query.
  *
  * This class is multithread safe.
@@ -61,12 +70,58 @@ public class Dispatcher extends AbstractComponent {
     private final LoadBalancer loadBalancer;
     private final FS4ResourcePool fs4ResourcePool;
 
+    /** The percentage of the nodes of a group which must reply before we give up waiting for full coverage */
+    private final double minSearchCoverage;
+    /** The time to wait for the remaining nodes when minSearchCoverage is reached, as a factor of the time spent */
+    private final double maxWaitAfterCoverageFactor;
+    /** The percentage of the nodes which must have returned summaries before we give up waiting for the rest */
+    private final double minSummaryCoverage;
+
+    /** The cache of summaries from the search nodes, or null if summaries should not be cached */
+    private final SummaryCache summaryCache;
+
+    /** The policy for sending backup requests for slow summaries, or null if backup requests should not be sent */
+    private final SummaryRequestHedging hedging;
+
+    /** The clock deciding when to stop waiting for summaries */
+    private final Clock clock;
+
     public Dispatcher(DispatchConfig dispatchConfig, FS4ResourcePool fs4ResourcePool,
                       int containerClusterSize, VipStatus vipStatus) {
-        this.client = new RpcClient();
+        this(dispatchConfig, fs4ResourcePool, containerClusterSize, vipStatus, Statistics.nullImplementation, "dispatch",
+             null);
+    }
+
+    /**
+     * Creates a dispatcher
+     *
+     * @param statistics the statistics manager to report metrics of this to
+     * @param metricPrefix the prefix of the metrics reported by this
+     * @param metric the metric to report summary cache hits and misses to, or null to not report them
+     */
+    public Dispatcher(DispatchConfig dispatchConfig, FS4ResourcePool fs4ResourcePool,
+                      int containerClusterSize, VipStatus vipStatus, Statistics statistics, String metricPrefix,
+                      Metric metric) {
+        this.client = new RpcClient(dispatchConfig.rpcConnectionsPerNode(),
+                                    dispatchConfig.summaryBatchWindow() / 1000);
         this.searchCluster = new SearchCluster(dispatchConfig, fs4ResourcePool, containerClusterSize, vipStatus);
         this.fs4ResourcePool = fs4ResourcePool;
-        this.loadBalancer = new LoadBalancer(searchCluster);
+        this.loadBalancer = new LoadBalancer(searchCluster,
+                                             dispatchConfig.distributionPolicy() == DispatchConfig.DistributionPolicy.ROUNDROBIN,
+                                             ! dispatchConfig.useMultilevelDispatch());
+        this.minSearchCoverage = dispatchConfig.minSearchCoverage();
+        this.maxWaitAfterCoverageFactor = dispatchConfig.maxWaitAfterCoverageFactor();
+        this.minSummaryCoverage = dispatchConfig.minSummaryCoverage();
+        this.summaryCache = dispatchConfig.summaryCacheSize() > 0
+                            ? new SummaryCache(((long)dispatchConfig.summaryCacheSize()) << 20,
+                                               (long)(dispatchConfig.summaryCacheMaxAge() * 1000),
+                                               metric)
+                            : null;
+        this.hedging = dispatchConfig.summaryHedgingPercentile() > 0
+                       ? new SummaryRequestHedging(searchCluster, dispatchConfig.summaryHedgingPercentile(),
+                                                   statistics, metricPrefix + ".")
+                       : null;
+        this.clock = Clock.systemUTC();
 
         // Create node rpc connections, indexed by the node distribution key
         ImmutableMap.Builder<Integer, Client.NodeConnection> nodeConnectionsBuilder = new ImmutableMap.Builder<>();
@@ -78,29 +133,89 @@ public class Dispatcher extends AbstractComponent {
 
     /** For testing */
     public Dispatcher(Map<Integer, Client.NodeConnection> nodeConnections, Client client) {
-        this.searchCluster = null;
+        this(nodeConnections, client, 100, 1);
+    }
+
+    /** For testing */
+    public Dispatcher(Map<Integer, Client.NodeConnection> nodeConnections, Client client,
+                      double minSummaryCoverage, double maxWaitAfterCoverageFactor) {
+        this(nodeConnections, client, minSummaryCoverage, maxWaitAfterCoverageFactor, null);
+    }
+
+    /** For testing */
+    public Dispatcher(Map<Integer, Client.NodeConnection> nodeConnections, Client client,
+                      double minSummaryCoverage, double maxWaitAfterCoverageFactor, SummaryCache summaryCache) {
+        this(nodeConnections, client, minSummaryCoverage, maxWaitAfterCoverageFactor, summaryCache, null);
+    }
+
+    /** For testing */
+    Dispatcher(Map<Integer, Client.NodeConnection> nodeConnections, Client client,
+               double minSummaryCoverage, double maxWaitAfterCoverageFactor, SummaryCache summaryCache,
+               SummaryRequestHedging hedging) {
+        this(nodeConnections, client, minSummaryCoverage, maxWaitAfterCoverageFactor, summaryCache, hedging,
+             Clock.systemUTC());
+    }
+
+    /** For testing */
+    Dispatcher(Map<Integer, Client.NodeConnection> nodeConnections, Client client,
+               double minSummaryCoverage, double maxWaitAfterCoverageFactor, SummaryCache summaryCache,
+               SummaryRequestHedging hedging, Clock clock) {
+        this(nodeConnections, client, minSummaryCoverage, maxWaitAfterCoverageFactor, summaryCache, hedging, clock,
+             null);
+    }
+
+    /** For testing */
+    Dispatcher(Map<Integer, Client.NodeConnection> nodeConnections, Client client,
+               double minSummaryCoverage, double maxWaitAfterCoverageFactor, SummaryCache summaryCache,
+               SummaryRequestHedging hedging, Clock clock, SearchCluster searchCluster) {
+        this.searchCluster = searchCluster;
         this.nodeConnections = ImmutableMap.copyOf(nodeConnections);
         this.client = client;
         this.fs4ResourcePool = null;
         this.loadBalancer = new LoadBalancer(searchCluster);
+        this.minSearchCoverage = 100;
+        this.maxWaitAfterCoverageFactor = maxWaitAfterCoverageFactor;
+        this.minSummaryCoverage = minSummaryCoverage;
+        this.summaryCache = summaryCache;
+        this.hedging = hedging;
+        this.clock = clock;
     }
     
     /** Returns the search cluster this dispatches to */
     public SearchCluster searchCluster() { return searchCluster; }
 
-    /** Fills the given summary class by sending RPC requests to the right search nodes */
+    /** Returns the cache of summaries from the search nodes, or empty if summaries are not cached */
+    public Optional<SummaryCache> summaryCache() { return Optional.ofNullable(summaryCache); }
+
+    /**
+     * Fills the given summary class by sending RPC requests to the right search nodes.
+     * Hits whose summary is cached are filled from the cache instead.
+     */
     public void fill(Result result, String summaryClass, DocumentDatabase documentDb, CompressionType compression) {
         try {
-            ListMap<Integer, FastHit> hitsByNode = hitsByNode(result);
+            SummaryCache cache = useSummaryCache(result.getQuery()) ? summaryCache : null;
+            ListMap<Integer, FastHit> hitsByNode = hitsByNode(fillFromCache(result, summaryClass, documentDb, cache));
+
+            if (hitsByNode.isEmpty()) { // all filled from the cache
+                result.analyzeHits();
+                return;
+            }
 
             if (result.getQuery().getTraceLevel() >=3)
                 result.getQuery().trace("Sending " + hitsByNode.size() + " summary fetch RPC requests", 3);
 
-            GetDocsumsResponseReceiver responseReceiver = new GetDocsumsResponseReceiver(hitsByNode.size(), compressor, result);
+            GetDocsumsResponseReceiver responseReceiver = new GetDocsumsResponseReceiver(hitsByNode.size(), compressor, result,
+                                                                                         minSummaryCoverage,
+                                                                                         maxWaitAfterCoverageFactor,
+                                                                                         cache,
+                                                                                         clock);
             for (Map.Entry<Integer, List<FastHit>> nodeHits : hitsByNode.entrySet()) {
                 sendGetDocsumsRequest(nodeHits.getKey(), nodeHits.getValue(), summaryClass, compression, result, responseReceiver);
             }
-            responseReceiver.processResponses(result.getQuery(), summaryClass, documentDb);
+            SummaryRequestHedging hedging = useHedging(result.getQuery()) ? this.hedging : null;
+            responseReceiver.processResponses(result.getQuery(), summaryClass, documentDb, hedging,
+                                              request -> sendBackupRequest(request, summaryClass, compression, result,
+                                                                           responseReceiver));
             result.hits().setSorted(false);
             result.analyzeHits();
         }
@@ -109,16 +224,60 @@ public class Dispatcher extends AbstractComponent {
         }
     }
 
-    /** Return a map of hits by their search node (partition) id */
-    private static ListMap<Integer, FastHit> hitsByNode(Result result) {
-        ListMap<Integer, FastHit> hitsByNode = new ListMap<>();
+    /**
+     * Returns whether summaries for this query can be looked up in and added to the summary cache.
+     * Summaries fetched with a query session may depend on the query, so those are never cached.
+     */
+    private boolean useSummaryCache(Query query) {
+        return summaryCache != null && ! query.getNoCache() && query.getSessionId(false) == null;
+    }
+
+    /**
+     * Returns whether backup requests may be sent for slow summaries of this query.
+     * Query sessions are local to a node, so summaries fetched with a session cannot be requested from another node.
+     */
+    private boolean useHedging(Query query) {
+        return hedging != null && query.getSessionId(false) == null;
+    }
+
+    /** Returns the generation of the documents of the search node with the given key, or 0 if it is not known */
+    private int contentGeneration(int nodeKey) {
+        return searchCluster == null ? 0 : searchCluster.contentGeneration(nodeKey);
+    }
+
+    /**
+     * Fills the hits of the given result which have a cached summary from the given cache,
+     * and returns the hits which must be filled from the search nodes.
+     */
+    private List<FastHit> fillFromCache(Result result, String summaryClass, DocumentDatabase documentDb,
+                                               SummaryCache cache) {
+        List<FastHit> unfilledHits = new ArrayList<>();
         for (Iterator<Hit> i = result.hits().unorderedDeepIterator() ; i.hasNext(); ) {
             Hit h = i.next();
             if ( ! (h instanceof FastHit)) continue;
             FastHit hit = (FastHit)h;
 
-            hitsByNode.put(hit.getDistributionKey(), hit);
+            byte[] summary = cache == null ? null : cache.get(hit.getGlobalId(), summaryClass, documentDb.getName(),
+                                                              contentGeneration(hit.getDistributionKey()));
+            if (summary != null) {
+                hit.setField(Hit.SDDOCNAME_FIELD, documentDb.getName());
+                hit.addSummary(documentDb.getDocsumDefinitionSet().getDocsum(summaryClass),
+                               new SlimeAdapter(BinaryFormat.decode(summary).get()));
+                hit.setFilled(summaryClass);
+                hit.setCached(true);
+            }
+            else {
+                unfilledHits.add(hit);
+            }
         }
+        return unfilledHits;
+    }
+
+    /** Return a map of hits by their search node (partition) id */
+    private static ListMap<Integer, FastHit> hitsByNode(List<FastHit> hits) {
+        ListMap<Integer, FastHit> hitsByNode = new ListMap<>();
+        for (FastHit hit : hits)
+            hitsByNode.put(hit.getDistributionKey(), hit);
         return hitsByNode;
     }
 
@@ -130,17 +289,52 @@ public class Dispatcher extends AbstractComponent {
         if (node == null) {
             result.hits().addError(ErrorMessage.createEmptyDocsums("Could not fill hits from unknown node " + nodeId));
             log.warning("Got hits with partid " + nodeId + ", which is not included in the current dispatch config");
+            responseReceiver.skip(); // no response will come
             return;
         }
 
+        int generation = contentGeneration(nodeId); // before sending, such that later content is never cached as this
+        Client.PendingRequest request = send(node, hits, summaryClass, compression, result, responseReceiver);
+        responseReceiver.sent(nodeId, generation, hits, request);
+    }
+
+    /**
+     * Sends a backup of a request which is slow to respond to a replica node, if possible.
+     *
+     * @return whether a backup request was sent
+     */
+    private boolean sendBackupRequest(GetDocsumsResponseReceiver.SentRequest request, String summaryClass,
+                                      CompressionType compression,
+                                      Result result, GetDocsumsResponseReceiver responseReceiver) {
+        Optional<Integer> backupNodeId = hedging.backupNodeOf(request.nodeId());
+        if ( ! backupNodeId.isPresent()) return false;
+        Client.NodeConnection backupNode = nodeConnections.get(backupNodeId.get());
+        if (backupNode == null) return false;
+
+        if (result.getQuery().getTraceLevel() >= 3)
+            result.getQuery().trace("Sending backup summary fetch RPC request for node " + request.nodeId() +
+                                    " to node " + backupNodeId.get(), 3);
+        List<FastHit> backupHits = new ArrayList<>(request.hits()); // a distinct list identifies the backup responses
+        int generation = contentGeneration(backupNodeId.get());
+        responseReceiver.sentBackup(request, generation, backupHits,
+                                    send(backupNode, backupHits, summaryClass, compression, result, responseReceiver));
+        return true;
+    }
+
+    private Client.PendingRequest send(Client.NodeConnection node, List<FastHit> hits, String summaryClass,
+                                       CompressionType compression,
+                                       Result result, GetDocsumsResponseReceiver responseReceiver) {
         Query query = result.getQuery();
         String rankProfile = query.getRanking().getProfile();
-        byte[] serializedSlime = BinaryFormat.encode(toSlime(rankProfile, summaryClass,
-                query.getModel().getDocumentDb(), query.getSessionId(false), hits));
+        String documentType = query.getModel().getDocumentDb();
+        SessionId sessionId = query.getSessionId(false);
+        byte[] serializedSlime = BinaryFormat.encode(toSlime(rankProfile, summaryClass, documentType, sessionId, hits));
         double timeoutSeconds = ((double)query.getTimeLeft()-3.0)/1000.0;
         Compressor.Compression compressionResult = compressor.compress(compression, serializedSlime);
-        client.getDocsums(hits, node, compressionResult.type(),
-                          serializedSlime.length, compressionResult.data(), responseReceiver, timeoutSeconds);
+        Client.GetDocsumsRequestProperties properties =
+                new Client.GetDocsumsRequestProperties(summaryClass, documentType, rankProfile, sessionId != null);
+        return client.getDocsums(hits, node, properties, compressionResult.type(),
+                                 serializedSlime.length, compressionResult.data(), responseReceiver, timeoutSeconds);
     }
 
     static private Slime toSlime(String rankProfile, String summaryClass, String docType, SessionId sessionId, List<FastHit> hits) {
@@ -167,16 +361,30 @@ public class Dispatcher extends AbstractComponent {
 
     @Override
     public void deconstruct() {
+        if (summaryCache != null)
+            summaryCache.invalidateAll(); // the cluster is reconfigured: Summaries from the previous setup are not used
         for (Client.NodeConnection nodeConnection : nodeConnections.values())
             nodeConnection.close();
+        client.close();
     }
 
-    /** Receiver of the responses to a set of getDocsums requests */
+    /**
+     * Receiver of the responses to a set of getDocsums requests.
+     * Each response is decoded and filled into its hits as soon as it is taken off the queue,
+     * such that the wait for the slowest node overlaps with processing the responses of the others.
+     */
     public static class GetDocsumsResponseReceiver {
 
         private final BlockingQueue<Client.GetDocsumsResponseOrError> responses;
         private final Compressor compressor;
         private final Result result;
+        private final int requestCount;
+        private final double minSummaryCoverage;
+        private final double maxWaitAfterCoverageFactor;
+        /** The cache to add the received summaries to, or null if they should not be cached */
+        private final SummaryCache summaryCache;
+        /** The clock deciding when to stop waiting for responses */
+        private final Clock clock;
 
         /** Whether we have already logged/notified about an error - to avoid spamming */
         private boolean hasReportedError = false;
@@ -184,39 +392,179 @@ public class Dispatcher extends AbstractComponent {
         /** The number of responses we should receive (and process) before this is complete */
         private int outstandingResponses;
 
+        /**
+         * The requests which have been sent, indexed by the hits list identifying their responses.
+         * Backup requests have their own hits list, mapped to the request they back up.
+         * This is only accessed by the dispatcher thread.
+         */
+        private final Map<List<FastHit>, SentRequest> sentRequests = new IdentityHashMap<>();
+
+        /** The breakdown to record the time spent on each node in, or null if the query is not sampled */
+        private final LatencyBreakdown latencyBreakdown;
+
+        /** The time in nanoseconds at which each response arrived, or null if no latency breakdown is recorded */
+        private final Map<Client.GetDocsumsResponseOrError, Long> arrivalTimes;
+
         public GetDocsumsResponseReceiver(int requestCount, Compressor compressor, Result result) {
+            this(requestCount, compressor, result, 100, 1);
+        }
+
+        /**
+         * Creates a receiver of responses to the given number of requests
+         *
+         * @param minSummaryCoverage the percentage of the requests which must have been responded to
+         *                           before we stop waiting the full timeout for the rest
+         * @param maxWaitAfterCoverageFactor once minSummaryCoverage is reached, the remaining responses are waited for
+         *                                   this factor times the time spent so far
+         */
+        public GetDocsumsResponseReceiver(int requestCount, Compressor compressor, Result result,
+                                          double minSummaryCoverage, double maxWaitAfterCoverageFactor) {
+            this(requestCount, compressor, result, minSummaryCoverage, maxWaitAfterCoverageFactor, null);
+        }
+
+        /**
+         * Creates a receiver of responses to the given number of requests
+         *
+         * @param minSummaryCoverage the percentage of the requests which must have been responded to
+         *                           before we stop waiting the full timeout for the rest
+         * @param maxWaitAfterCoverageFactor once minSummaryCoverage is reached, the remaining responses are waited for
+         *                                   this factor times the time spent so far
+         * @param summaryCache the cache to add the received summaries to, or null to not cache them.
+         *                     Only the summaries of requests registered by {@link #sent} are cached.
+         */
+        public GetDocsumsResponseReceiver(int requestCount, Compressor compressor, Result result,
+                                          double minSummaryCoverage, double maxWaitAfterCoverageFactor,
+                                          SummaryCache summaryCache) {
+            this(requestCount, compressor, result, minSummaryCoverage, maxWaitAfterCoverageFactor,
+                 summaryCache, Clock.systemUTC());
+        }
+
+        /**
+         * Creates a receiver of responses to the given number of requests
+         *
+         * @param minSummaryCoverage the percentage of the requests which must have been responded to
+         *                           before we stop waiting the full timeout for the rest
+         * @param maxWaitAfterCoverageFactor once minSummaryCoverage is reached, the remaining responses are waited for
+         *                                   this factor times the time spent so far
+         * @param summaryCache the cache to add the received summaries to, or null to not cache them.
+         *                     Only the summaries of requests registered by {@link #sent} are cached.
+         * @param clock the clock deciding when the adaptive and hedging deadlines are reached
+         */
+        public GetDocsumsResponseReceiver(int requestCount, Compressor compressor, Result result,
+                                          double minSummaryCoverage, double maxWaitAfterCoverageFactor,
+                                          SummaryCache summaryCache, Clock clock) {
             this.compressor = compressor;
-            responses = new LinkedBlockingQueue<>(requestCount);
+            responses = new LinkedBlockingQueue<>(2 * requestCount); // each request is sent at most twice
             outstandingResponses = requestCount;
+            this.requestCount = requestCount;
             this.result = result;
+            this.minSummaryCoverage = minSummaryCoverage;
+            this.maxWaitAfterCoverageFactor = maxWaitAfterCoverageFactor;
+            this.summaryCache = summaryCache;
+            this.clock = clock;
+            this.latencyBreakdown = result.getQuery() == null ? null : result.getQuery().getLatencyBreakdown();
+            this.arrivalTimes = latencyBreakdown == null ? null : new ConcurrentHashMap<>();
         }
 
         /** Called by a thread belonging to the client when a valid response becomes available */
         public void receive(Client.GetDocsumsResponseOrError response) {
+            if (arrivalTimes != null)
+                arrivalTimes.put(response, System.nanoTime());
             responses.add(response);
         }
 
+        /** Called from the dispatcher thread when a request was not sent, such that no response should be waited for */
+        void skip() {
+            outstandingResponses--;
+        }
+
+        /**
+         * Called from the dispatcher thread when a request for the given hits has been sent to a node
+         *
+         * @param generation the content generation of the node when the request was sent, which the summaries
+         *                   returned are cached under
+         */
+        void sent(int nodeId, int generation, List<FastHit> hits, Client.PendingRequest request) {
+            sentRequests.put(hits, new SentRequest(nodeId, generation, hits, request, clock.millis()));
+        }
+
+        /**
+         * Called from the dispatcher thread when a backup of a request has been sent to another node.
+         * The first response to either of them is used, while the other is cancelled.
+         *
+         * @param generation the content generation of the backup node when the backup was sent
+         * @param backupHits a list of the same hits as in the original request, which must be a different instance
+         */
+        void sentBackup(SentRequest original, int generation, List<FastHit> backupHits, Client.PendingRequest backup) {
+            original.backupGeneration = generation;
+            original.attempts.add(backup);
+            original.outstandingAttempts++;
+            original.backupSentNanos = System.nanoTime();
+            sentRequests.put(backupHits, original);
+        }
+
         private void throwTimeout() throws TimeoutException {
             throw new TimeoutException("Timed out waiting for summary data. " + outstandingResponses + " responses outstanding.");
         }
 
+        private boolean hasSufficientCoverage() {
+            if (outstandingResponses == 0) return false; // nothing more to wait for
+            return 100.0 * (requestCount - outstandingResponses) / requestCount >= minSummaryCoverage;
+        }
+
         /**
          * Call this from the dispatcher thread to initiate and complete processing of responses.
          * This will block until all responses are available and processed, or to timeout.
+         * If minSummaryCoverage is reached before that, the remaining responses are only waited for a limited time.
          */
         public void processResponses(Query query, String summaryClass, DocumentDatabase documentDb) throws TimeoutException {
+            processResponses(query, summaryClass, documentDb, null, null);
+        }
+
+        /**
+         * Call this from the dispatcher thread to initiate and complete processing of responses.
+         * This will block until all responses are available and processed, or to timeout.
+         * If minSummaryCoverage is reached before that, the remaining responses are only waited for a limited time.
+         *
+         * @param hedging the policy deciding when to send backups of requests which are slow to respond,
+         *                or null to not send backup requests
+         * @param backupSender sends a backup of the given request to another node and returns true, or returns false
+         *                     if no backup could be sent. This is called from this thread.
+         */
+        void processResponses(Query query, String summaryClass, DocumentDatabase documentDb,
+                              SummaryRequestHedging hedging, Predicate<SentRequest> backupSender) throws TimeoutException {
             try {
+                long startTime = clock.millis();
+                long adaptiveDeadline = Long.MAX_VALUE;
+                long hedgeDeadline = hedging != null && hedging.hedgeDelay().isPresent()
+                                     ? startTime + hedging.hedgeDelay().getAsLong()
+                                     : Long.MAX_VALUE;
                 int skippedHits = 0;
                 while (outstandingResponses > 0) {
-                    long timeLeftMs = query.getTimeLeft();
-                    if (timeLeftMs <= 0) {
+                    long timeLeftMs = Math.min(query.getTimeLeft(),
+                                               Math.min(adaptiveDeadline, hedgeDeadline) - clock.millis());
+                    // when out of time, still use the responses which have already arrived
+                    Client.GetDocsumsResponseOrError response = timeLeftMs > 0 ? responses.poll(timeLeftMs, TimeUnit.MILLISECONDS)
+                                                                               : responses.poll();
+                    if (response == null) {
+                        if (clock.millis() >= hedgeDeadline) { // responses which have arrived are processed first
+                            hedge(hedging, backupSender);
+                            hedgeDeadline = Long.MAX_VALUE;
+                            continue;
+                        }
                         throwTimeout();
                     }
-                    Client.GetDocsumsResponseOrError response = responses.poll(timeLeftMs, TimeUnit.MILLISECONDS);
-                    if (response == null)
-                        throwTimeout();
+                    if ( ! isAnswer(response, hedging)) continue;
+                    long decodeStartTime = latencyBreakdown == null ? 0 : System.nanoTime();
                     skippedHits += processResponse(response, summaryClass, documentDb);
+                    if (latencyBreakdown != null)
+                        recordLatency(response, decodeStartTime);
                     outstandingResponses--;
+
+                    if (adaptiveDeadline == Long.MAX_VALUE && hasSufficientCoverage()) {
+                        long now = clock.millis();
+                        adaptiveDeadline = now + (long)((now - startTime) * maxWaitAfterCoverageFactor);
+                    }
                 }
                 if (skippedHits != 0) {
                     result.hits().addError(com.yahoo.search.result.ErrorMessage.createEmptyDocsums("Missing hit summary data for summary " +
@@ -228,6 +576,60 @@ public class Dispatcher extends AbstractComponent {
             }
         }
 
+        /** Sends backups of all the requests which are not yet answered */
+        private void hedge(SummaryRequestHedging hedging, Predicate<SentRequest> backupSender) {
+            for (SentRequest request : new ArrayList<>(sentRequests.values())) {
+                if (request.answered) continue;
+                if (backupSender.test(request))
+                    hedging.hedged();
+            }
+        }
+
+        /**
+         * Returns whether the given response should be used as the answer to its request.
+         * This is false for responses to requests which have already been answered by another node,
+         * and for errors when another node may still answer. Once a request is answered,
+         * any other attempts at answering it are cancelled.
+         */
+        private boolean isAnswer(Client.GetDocsumsResponseOrError response, SummaryRequestHedging hedging) {
+            List<FastHit> hitsContext = response.hitsContext();
+            SentRequest request = hitsContext == null ? null : sentRequests.get(hitsContext);
+            if (request == null) return true; // not tracked
+
+            request.outstandingAttempts--;
+            if (request.answered) return false;
+            if (response.error().isPresent() && request.outstandingAttempts > 0) return false;
+
+            request.answered = true;
+            if (request.attempts.size() > 1) {
+                for (Client.PendingRequest attempt : request.attempts)
+                    attempt.cancel(); // a no-op for the attempt which completed
+            }
+            if (hedging != null && response.response().isPresent()) {
+                // Also when a backup answers first, such that slow nodes keep contributing to the percentile
+                hedging.recordResponseTime(clock.millis() - request.sentTime);
+                if (hitsContext != request.hits)
+                    hedging.hedgeWon();
+            }
+            return true;
+        }
+
+        /** Records the time the given response was waited for, and the time spent decoding it */
+        private void recordLatency(Client.GetDocsumsResponseOrError response, long decodeStartTime) {
+            long decodeTime = System.nanoTime() - decodeStartTime;
+            List<FastHit> hitsContext = response.hitsContext();
+            SentRequest request = hitsContext == null ? null : sentRequests.get(hitsContext);
+            if (request == null) return; // not tracked
+
+            boolean fromBackup = hitsContext != request.hits;
+            String source = "node." + request.nodeId + (fromBackup ? ".backup" : "");
+            Long arrivalTime = arrivalTimes.get(response);
+            if (arrivalTime != null)
+                latencyBreakdown.record(LatencyBreakdown.Phase.RPC_WAIT, source,
+                                        arrivalTime - (fromBackup ? request.backupSentNanos : request.sentNanos));
+            latencyBreakdown.record(LatencyBreakdown.Phase.DECODE, source, decodeTime);
+        }
+
         private int processResponse(Client.GetDocsumsResponseOrError responseOrError,
                                     String summaryClass,
                                     DocumentDatabase documentDb) {
@@ -239,9 +641,14 @@ public class Dispatcher extends AbstractComponent {
             }
             else {
                 Client.GetDocsumsResponse response = responseOrError.response().get();
-                CompressionType compression = CompressionType.valueOf(response.compression());
-                byte[] slimeBytes = compressor.decompress(response.compressedSlimeBytes(), compression, response.uncompressedSize());
-                return fill(response.hitsContext(), summaryClass, documentDb, slimeBytes);
+                com.yahoo.slime.Inspector root = response.decodedRoot();
+                if (root == null) {
+                    CompressionType compression = CompressionType.valueOf(response.compression());
+                    byte[] slimeBytes = compressor.decompress(response.compressedSlimeBytes(), compression, response.uncompressedSize());
+                    root = BinaryFormat.decode(slimeBytes).get();
+                }
+                return fill(response.hitsContext(), response.docsumsOffset(), summaryClass, documentDb, root,
+                            response.includesErrors());
             }
             return 0;
         }
@@ -256,10 +663,10 @@ public class Dispatcher extends AbstractComponent {
             });
         }
 
-        private int fill(List<FastHit> hits, String summaryClass, DocumentDatabase documentDb, byte[] slimeBytes) {
-            com.yahoo.slime.Inspector root = BinaryFormat.decode(slimeBytes).get();
+        private int fill(List<FastHit> hits, int docsumsOffset, String summaryClass, DocumentDatabase documentDb,
+                         com.yahoo.slime.Inspector root, boolean includeErrors) {
             com.yahoo.slime.Inspector errors = root.field("errors");
-            boolean hasErrors = errors.valid() && (errors.entries() > 0);
+            boolean hasErrors = includeErrors && errors.valid() && (errors.entries() > 0);
             if (hasErrors) {
                 addErrors(errors);
             }
@@ -267,13 +674,18 @@ public class Dispatcher extends AbstractComponent {
             Inspector summaries = new SlimeAdapter(root.field("docsums"));
             if ( ! summaries.valid())
                 return 0; // No summaries; Perhaps we requested a non-existing summary class
+            SentRequest request = sentRequests.get(hits);
+            boolean cacheSummaries = summaryCache != null && ! hasErrors && request != null;
             int skippedHits = 0;
             for (int i = 0; i < hits.size(); i++) {
-                Inspector summary = summaries.entry(i).field("docsum");
+                Inspector summary = summaries.entry(docsumsOffset + i).field("docsum");
                 if (summary.fieldCount() != 0) {
                     hits.get(i).setField(Hit.SDDOCNAME_FIELD, documentDb.getName());
                     hits.get(i).addSummary(documentDb.getDocsumDefinitionSet().getDocsum(summaryClass), summary);
                     hits.get(i).setFilled(summaryClass);
+                    if (cacheSummaries)
+                        cache(hits.get(i), summaryClass, documentDb, request.generationOf(hits),
+                              root.field("docsums").entry(docsumsOffset + i).field("docsum"));
                 } else {
                     skippedHits++;
                 }
@@ -281,15 +693,73 @@ public class Dispatcher extends AbstractComponent {
             return skippedHits;
         }
 
+        private void cache(FastHit hit, String summaryClass, DocumentDatabase documentDb, int generation,
+                           com.yahoo.slime.Inspector summary) {
+            summaryCache.put(hit.getGlobalId(), summaryClass, documentDb.getName(), generation, BinaryFormat.encode(summary));
+        }
+
+        /** A getDocsums request which has been sent to a node, possibly along with backups sent to other nodes */
+        static class SentRequest {
+
+            private final int nodeId;
+            /** The content generation of the node this was originally sent to, at the time it was sent */
+            private final int generation;
+            /** The content generation of the node any backup was sent to, at the time it was sent */
+            private int backupGeneration;
+            private final List<FastHit> hits;
+            private final long sentTime;
+            private final long sentNanos;
+            private long backupSentNanos;
+            private final List<Client.PendingRequest> attempts = new ArrayList<>(2);
+            private int outstandingAttempts = 1;
+            private boolean answered = false;
+
+            SentRequest(int nodeId, int generation, List<FastHit> hits, Client.PendingRequest request, long sentTime) {
+                this.nodeId = nodeId;
+                this.generation = generation;
+                this.hits = hits;
+                this.sentTime = sentTime;
+                this.sentNanos = System.nanoTime();
+                attempts.add(request);
+            }
+
+            /** Returns the id of the node this was originally sent to */
+            int nodeId() { return nodeId; }
+
+            /** Returns the hits whose summaries are requested */
+            List<FastHit> hits() { return hits; }
+
+            /**
+             * Returns the content generation, at the time of sending, of the node which answers with the given
+             * hits context: The original node if it is the hits of this, the backup node otherwise
+             */
+            int generationOf(List<FastHit> hitsContext) {
+                return hitsContext == hits ? generation : backupGeneration;
+            }
+
+        }
+
     }
 
-    public Optional<CloseableChannel> getDispatchedChannel(Query query) {
+    /**
+     * Returns a channel for dispatching the given query directly to a group of search nodes,
+     * or empty if the query cannot be dispatched from the container.
+     *
+     * @param query the query to dispatch
+     * @param summariesFromRpc whether the summaries of the result will be fetched over rpc, which routes each hit
+     *                         to the node it came from. This is required to dispatch to groups of multiple nodes.
+     */
+    public Optional<CloseableChannel> getDispatchedChannel(Query query, boolean summariesFromRpc) {
         Optional<SearchCluster.Group> groupInCluster = loadBalancer.takeGroupForQuery(query);
 
         return groupInCluster.flatMap(group -> {
             if(group.nodes().size() == 1) {
                 query.trace(false, 2, "Dispatching directly (anywhere) to ", group);
                 return Optional.of(new DispatchedChannel(fs4ResourcePool, loadBalancer, group));
+            } else if (summariesFromRpc && query.getRanking().getSorting() == null) {
+                query.trace(false, 2, "Dispatching interleaved to ", group);
+                return Optional.of(new InterleavedCloseableChannel(fs4ResourcePool, loadBalancer, group,
+                                                                   minSearchCoverage, maxWaitAfterCoverageFactor));
             } else {
                 loadBalancer.releaseGroup(group);
                 return Optional.empty();
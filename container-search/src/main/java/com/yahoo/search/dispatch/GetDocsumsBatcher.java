@@ -0,0 +1,250 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.compress.CompressionType;
+import com.yahoo.compress.Compressor;
+import com.yahoo.prelude.fastsearch.FastHit;
+import com.yahoo.slime.BinaryFormat;
+import com.yahoo.slime.Cursor;
+import com.yahoo.slime.Inspector;
+import com.yahoo.slime.Slime;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Collects the getDocsums requests to a single node which arrive within a short time window into batches,
+ * such that each batch can be sent as a single rpc. Only requests which are equal except for the documents
+ * requested can be batched together, and the response to a batch is shared between the requests making it up.
+ * Requests can be cancelled until their batch is sent.
+ *
+ * This class is multithread safe.
+ *
+ * @author agent
+ */
+class GetDocsumsBatcher {
+
+    /** The max number of documents to request in a single batch */
+    static final int maxBatchSize = 1000;
+
+    /** The time in microseconds to wait for more requests after the first request of a batch */
+    private final long window;
+    private final ScheduledExecutorService scheduler;
+    /** Called with each batch which is ready to be sent */
+    private final Consumer<Batch> sender;
+
+    /** The batches which are still accepting requests */
+    private final Map<BatchKey, Batch> openBatches = new HashMap<>();
+
+    /**
+     * Creates a batcher
+     *
+     * @param window the time in seconds to wait for more requests after the first request of a batch
+     * @param scheduler the executor used to send batches when their window ends
+     * @param sender receives each batch which is ready to be sent
+     */
+    GetDocsumsBatcher(double window, ScheduledExecutorService scheduler, Consumer<Batch> sender) {
+        this.window = Math.max(1, (long)(window * 1000 * 1000));
+        this.scheduler = scheduler;
+        this.sender = sender;
+    }
+
+    /**
+     * Adds a request to the batch of requests equal to it, which will be sent within the window of this
+     *
+     * @return the added request, which can be cancelled until its batch is sent
+     */
+    Client.PendingRequest add(String summaryClass, String documentType, String rankProfile, CompressionType compression,
+                              List<FastHit> hits, Dispatcher.GetDocsumsResponseReceiver receiver, double timeoutSeconds) {
+        BatchKey key = new BatchKey(summaryClass, documentType, rankProfile, compression);
+        Part part = new Part(hits, receiver, timeoutSeconds);
+        Batch batch;
+        Batch fullBatch = null;
+        synchronized (this) {
+            batch = openBatches.get(key);
+            if (batch == null) {
+                Batch newBatch = new Batch(key);
+                openBatches.put(key, newBatch);
+                scheduler.schedule(() -> sendWhenOpen(newBatch), window, TimeUnit.MICROSECONDS);
+                batch = newBatch;
+            }
+            batch.add(part);
+            if (batch.size() >= maxBatchSize) {
+                openBatches.remove(key);
+                fullBatch = batch;
+            }
+        }
+        if (fullBatch != null)
+            sender.accept(fullBatch);
+        Batch partBatch = batch;
+        return () -> cancel(part, partBatch);
+    }
+
+    /** Removes the given request from its batch if the batch is not sent yet. Otherwise this does nothing. */
+    private void cancel(Part part, Batch batch) {
+        synchronized (this) {
+            if (openBatches.get(batch.key) != batch) return; // already sent
+            batch.remove(part);
+            if (batch.size() == 0)
+                openBatches.remove(batch.key); // which makes the send at the end of the window a no-op
+        }
+    }
+
+    /** Sends the given batch unless it has been sent already */
+    private void sendWhenOpen(Batch batch) {
+        synchronized (this) {
+            if ( ! openBatches.remove(batch.key, batch)) return; // already sent
+        }
+        sender.accept(batch);
+    }
+
+    /** A set of getDocsums requests which will be sent as a single request */
+    static class Batch {
+
+        private final BatchKey key;
+        private final List<Part> parts = new ArrayList<>();
+        private int size = 0;
+
+        private Batch(BatchKey key) {
+            this.key = key;
+        }
+
+        private void add(Part part) {
+            parts.add(part);
+            size += part.hits.size();
+        }
+
+        private void remove(Part part) {
+            if (parts.remove(part))
+                size -= part.hits.size();
+        }
+
+        /** Returns the number of documents requested by this batch */
+        int size() { return size; }
+
+        /** Returns the longest timeout of the requests in this batch, in seconds */
+        double timeout() {
+            double timeout = 0;
+            for (Part part : parts)
+                timeout = Math.max(timeout, part.timeout);
+            return timeout;
+        }
+
+        CompressionType compression() { return key.compression; }
+
+        /** Returns the hits of all the requests in this, in the order their summaries are requested */
+        List<FastHit> hits() {
+            List<FastHit> hits = new ArrayList<>(size);
+            for (Part part : parts)
+                hits.addAll(part.hits);
+            return hits;
+        }
+
+        /** Returns the request of this as slime */
+        Slime toSlime() {
+            Slime slime = new Slime();
+            Cursor root = slime.setObject();
+            if (key.summaryClass != null)
+                root.setString("class", key.summaryClass);
+            if (key.documentType != null)
+                root.setString("doctype", key.documentType);
+            if (key.rankProfile != null)
+                root.setString("ranking", key.rankProfile);
+            Cursor gids = root.setArray("gids");
+            for (Part part : parts)
+                for (FastHit hit : part.hits)
+                    gids.addData(hit.getGlobalId().getRawId());
+            return slime;
+        }
+
+        /**
+         * Forwards the response to this batch to the receivers of the requests making it up.
+         * The response is decoded once, and each receiver gets the decoded response with an offset
+         * to the summaries of its own hits. As the errors of a response do not identify documents,
+         * they are only reported to the requests which are missing some of their summaries.
+         */
+        void receive(Client.GetDocsumsResponseOrError responseOrError, Compressor compressor) {
+            if (responseOrError.error().isPresent()) {
+                for (Part part : parts)
+                    part.receiver.receive(Client.GetDocsumsResponseOrError.fromError(responseOrError.error().get(),
+                                                                                     part.hits));
+                return;
+            }
+
+            Client.GetDocsumsResponse response = responseOrError.response().get();
+            byte[] slimeBytes = compressor.decompress(response.compressedSlimeBytes(),
+                                                      CompressionType.valueOf(response.compression()),
+                                                      response.uncompressedSize());
+            Inspector root = BinaryFormat.decode(slimeBytes).get();
+            Inspector docsums = root.field("docsums");
+            boolean hasErrors = root.field("errors").entries() > 0;
+            int offset = 0;
+            for (Part part : parts) {
+                boolean includeErrors = hasErrors && isMissingSummaries(docsums, offset, part.hits.size());
+                part.receiver.receive(Client.GetDocsumsResponseOrError.fromResponse(
+                        new Client.GetDocsumsResponse(root, part.hits, offset, includeErrors)));
+                offset += part.hits.size();
+            }
+        }
+
+        private static boolean isMissingSummaries(Inspector docsums, int offset, int count) {
+            for (int i = offset; i < offset + count; i++)
+                if (docsums.entry(i).field("docsum").fields() == 0) return true;
+            return false;
+        }
+
+    }
+
+    /** A request which is part of a batch */
+    private static class Part {
+
+        final List<FastHit> hits;
+        final Dispatcher.GetDocsumsResponseReceiver receiver;
+        final double timeout;
+
+        Part(List<FastHit> hits, Dispatcher.GetDocsumsResponseReceiver receiver, double timeout) {
+            this.hits = hits;
+            this.receiver = receiver;
+            this.timeout = timeout;
+        }
+
+    }
+
+    /** The properties which must be equal for requests to be sent in the same batch */
+    private static class BatchKey {
+
+        private final String summaryClass;
+        private final String documentType;
+        private final String rankProfile;
+        private final CompressionType compression;
+
+        BatchKey(String summaryClass, String documentType, String rankProfile, CompressionType compression) {
+            this.summaryClass = summaryClass;
+            this.documentType = documentType;
+            this.rankProfile = rankProfile;
+            this.compression = compression;
+        }
+
+        @Override
+        public int hashCode() { return Objects.hash(summaryClass, documentType, rankProfile, compression); }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if ( ! (o instanceof BatchKey)) return false;
+            BatchKey other = (BatchKey)o;
+            return Objects.equals(summaryClass, other.summaryClass)
+                   && Objects.equals(documentType, other.documentType)
+                   && Objects.equals(rankProfile, other.rankProfile)
+                   && compression == other.compression;
+        }
+
+    }
+
+}
@@ -0,0 +1,267 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.concurrent.SystemTimer;
+import com.yahoo.fs4.BasicPacket;
+import com.yahoo.fs4.ChannelTimeoutException;
+import com.yahoo.fs4.DocumentInfo;
+import com.yahoo.fs4.QueryPacket;
+import com.yahoo.fs4.QueryResultPacket;
+import com.yahoo.fs4.mplex.InvalidChannelException;
+import com.yahoo.io.GrowableByteBuffer;
+import com.yahoo.prelude.fastsearch.FS4ResourcePool;
+import com.yahoo.search.Query;
+import com.yahoo.search.dispatch.SearchCluster.Group;
+import com.yahoo.search.dispatch.SearchCluster.Node;
+import com.yahoo.searchlib.aggregation.Grouping;
+import com.yahoo.vespa.objects.BufferSerializer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A channel which scatters a query to all the nodes of a group and gathers and merges their results
+ * into a single result packet, such that it looks like a single node answered. This lets the container
+ * dispatch queries to groups consisting of multiple nodes without going through fdispatch.
+ *
+ * Only query packets can be sent over this channel. Summaries must be fetched from each node separately,
+ * see {@link Dispatcher#fill}. Results are merged on relevance, so this cannot be used for sorted queries.
+ *
+ * @author agent
+ */
+public class InterleavedCloseableChannel extends CloseableChannel {
+
+    private static final Logger log = Logger.getLogger(InterleavedCloseableChannel.class.getName());
+
+    // These mirror the degradation bits of com.yahoo.container.handler.Coverage
+    private static final int DEGRADED_BY_TIMEOUT = 2;
+    private static final int DEGRADED_BY_ADAPTIVE_TIMEOUT = 4;
+
+    private final LoadBalancer loadBalancer;
+    private final Group group;
+    private final double minSearchCoverage;
+    private final double maxWaitAfterCoverageFactor;
+
+    /** The channels to each node of the group, in the order they should be received from */
+    private final Map<Node, CloseableChannel> subchannels = new LinkedHashMap<>();
+    /** The nodes we have successfully sent the query to */
+    private final List<Node> queriedNodes = new ArrayList<>();
+
+    private Query query = null;
+    private boolean groupAllocated = true;
+
+    /** The time the query was sent, or -1 if it is not sent */
+    private long queryStartNanos = -1;
+    /** Whether a query result has been received from any node */
+    private boolean success = false;
+    /** The time from the query was sent until the merged result was ready, in milliseconds */
+    private double searchTimeMs = 0;
+
+    /**
+     * Creates a channel to all the nodes of the given group.
+     *
+     * @param minSearchCoverage the percentage of the nodes which must have replied before we stop waiting for
+     *                          the rest for the full timeout
+     * @param maxWaitAfterCoverageFactor once minSearchCoverage is reached, the remaining nodes are given this
+     *                                   factor times the time spent so far to reply
+     */
+    public InterleavedCloseableChannel(FS4ResourcePool fs4ResourcePool, LoadBalancer loadBalancer, Group group,
+                                       double minSearchCoverage, double maxWaitAfterCoverageFactor) {
+        this.loadBalancer = loadBalancer;
+        this.group = group;
+        this.minSearchCoverage = minSearchCoverage;
+        this.maxWaitAfterCoverageFactor = maxWaitAfterCoverageFactor;
+        for (Node node : group.nodes())
+            subchannels.put(node, new CloseableChannel(fs4ResourcePool.getBackend(node.hostname(), node.fs4port(),
+                                                                                  Optional.of(node.key()))));
+    }
+
+    @Override
+    public void setQuery(Query query) {
+        this.query = query;
+        for (CloseableChannel subchannel : subchannels.values())
+            subchannel.setQuery(query);
+    }
+
+    /**
+     * Sends the given query packet to all the nodes of this group.
+     *
+     * @return true if the packet could be sent to at least one node
+     */
+    @Override
+    public boolean sendPacket(BasicPacket packet) throws InvalidChannelException, IOException {
+        if ( ! (packet instanceof QueryPacket))
+            throw new IllegalArgumentException("Only query packets can be sent to multiple nodes, got " + packet);
+
+        // The window of the query is applied after merging, so each node must return everything up to its end
+        QueryPacket queryPacket = (QueryPacket)packet;
+        queryPacket.setResultWindow(0, queryPacket.getOffset() + queryPacket.getHits());
+
+        queryStartNanos = System.nanoTime();
+        for (Map.Entry<Node, CloseableChannel> subchannel : subchannels.entrySet()) {
+            try {
+                if (subchannel.getValue().sendPacket(queryPacket))
+                    queriedNodes.add(subchannel.getKey());
+            } catch (InvalidChannelException | IOException | IllegalStateException e) {
+                log.log(Level.FINE, "Could not send query to " + subchannel.getKey(), e);
+            }
+        }
+        return ! queriedNodes.isEmpty();
+    }
+
+    /**
+     * Receives the result from each queried node and returns a single merged result packet.
+     * If the minimum search coverage is reached before all nodes have replied, the remaining nodes are only waited
+     * for a limited additional time, and the coverage of the returned result will reflect the missing nodes.
+     *
+     * @throws ChannelTimeoutException if no node replied within the timeout
+     */
+    @Override
+    public BasicPacket[] receivePackets(long timeout, int packetCount) throws InvalidChannelException, ChannelTimeoutException {
+        long startTime = SystemTimer.INSTANCE.milliTime();
+        long deadline = startTime + timeout;
+        boolean adaptiveDeadline = false;
+
+        Map<Node, QueryResultPacket> results = new LinkedHashMap<>();
+        List<Node> missingNodes = new ArrayList<>(group.nodes());
+        BasicPacket firstUnexpectedPacket = null;
+        for (Node node : queriedNodes) {
+            long timeLeft = deadline - SystemTimer.INSTANCE.milliTime();
+            if (timeLeft <= 0) break;
+            try {
+                BasicPacket[] packets = subchannels.get(node).receivePackets(timeLeft, 1);
+                if (packets.length > 0 && packets[0] instanceof QueryResultPacket) {
+                    results.put(node, (QueryResultPacket)packets[0]);
+                    missingNodes.remove(node);
+                } else if (packets.length > 0 && firstUnexpectedPacket == null) {
+                    firstUnexpectedPacket = packets[0];
+                }
+            } catch (ChannelTimeoutException e) {
+                log.log(Level.FINE, "Timeout waiting for " + node);
+            }
+
+            if ( ! adaptiveDeadline && hasSufficientCoverage(results.size())) {
+                long now = SystemTimer.INSTANCE.milliTime();
+                deadline = Math.min(deadline, now + (long)((now - startTime) * maxWaitAfterCoverageFactor));
+                adaptiveDeadline = true;
+            }
+        }
+
+        if (results.isEmpty()) {
+            if (firstUnexpectedPacket != null)
+                return new BasicPacket[] { firstUnexpectedPacket }; // let the caller report the error
+            throw new ChannelTimeoutException("No replies from any node in " + group);
+        }
+        QueryResultPacket merged = merge(results, missingNodes, adaptiveDeadline);
+        if (queryStartNanos >= 0 && ! success) {
+            success = true;
+            searchTimeMs = (System.nanoTime() - queryStartNanos) / 1_000_000.0;
+        }
+        return new BasicPacket[] { merged };
+    }
+
+    private boolean hasSufficientCoverage(int replies) {
+        if (replies == queriedNodes.size()) return false; // nothing more to wait for
+        return 100.0 * replies / group.nodes().size() >= minSearchCoverage;
+    }
+
+    private QueryResultPacket merge(Map<Node, QueryResultPacket> results, List<Node> missingNodes, boolean adaptiveDeadline) {
+        QueryResultPacket merged = QueryResultPacket.create();
+
+        List<DocumentInfo> documents = new ArrayList<>();
+        long totalDocumentCount = 0;
+        long coverageDocs = 0;
+        long activeDocs = 0;
+        long soonActiveDocs = 0;
+        int degradedReason = 0;
+        for (Map.Entry<Node, QueryResultPacket> entry : results.entrySet()) {
+            QueryResultPacket result = entry.getValue();
+            for (DocumentInfo document : result.getDocuments()) // make sure summaries are fetched from the right node
+                documents.add(new DocumentInfo(document.getGlobalId(), document.getMetric(), document.getPartId(),
+                                               entry.getKey().key()));
+            totalDocumentCount += result.getTotalDocumentCount();
+            coverageDocs += result.getCoverageDocs();
+            activeDocs += result.getActiveDocs();
+            soonActiveDocs += result.getSoonActiveDocs();
+            degradedReason |= result.getDegradedReason();
+        }
+        for (Node node : missingNodes) { // what we know of the documents we did not search
+            activeDocs += node.getActiveDocuments();
+            soonActiveDocs += node.getActiveDocuments();
+        }
+        if ( ! missingNodes.isEmpty())
+            degradedReason |= adaptiveDeadline ? DEGRADED_BY_ADAPTIVE_TIMEOUT : DEGRADED_BY_TIMEOUT;
+
+        documents.sort((a, b) -> Double.compare(b.getMetric(), a.getMetric()));
+        int offset = query.getOffset();
+        int end = Math.min(documents.size(), offset + query.getHits());
+        for (int i = offset; i < end; i++)
+            merged.addDocument(documents.get(i));
+
+        merged.setOffset(offset);
+        merged.setTotalDocumentCount(totalDocumentCount);
+        merged.setMaxRank(documents.isEmpty() ? 0.0 : documents.get(0).getMetric());
+        merged.setCoverage(coverageDocs, activeDocs, soonActiveDocs, degradedReason,
+                           (short)group.nodes().size(), (short)results.size());
+        merged.setGroupData(mergeGroupData(results.values()));
+        return merged;
+    }
+
+    /** Merges the grouping results of all the given results, or returns null if there are none */
+    private byte[] mergeGroupData(Collection<QueryResultPacket> results) {
+        Map<Integer, Grouping> merged = new LinkedHashMap<>();
+        for (QueryResultPacket result : results) {
+            if (result.getGroupData() == null) continue;
+
+            BufferSerializer buf = new BufferSerializer(new GrowableByteBuffer(ByteBuffer.wrap(result.getGroupData())));
+            int count = buf.getInt(null);
+            for (int i = 0; i < count; i++) {
+                Grouping grouping = new Grouping();
+                grouping.deserialize(buf);
+                Grouping existing = merged.get(grouping.getId());
+                if (existing == null)
+                    merged.put(grouping.getId(), grouping);
+                else
+                    existing.merge(grouping);
+            }
+        }
+        if (merged.isEmpty()) return null;
+
+        BufferSerializer buf = new BufferSerializer(new GrowableByteBuffer());
+        buf.putInt(null, merged.size());
+        for (Grouping grouping : merged.values()) {
+            grouping.postMerge();
+            grouping.serialize(buf);
+        }
+        buf.getBuf().flip();
+        byte[] groupData = new byte[buf.getBuf().limit()];
+        buf.getBuf().get(groupData);
+        return groupData;
+    }
+
+    /** Returns empty, as hits from this channel resides on different nodes */
+    @Override
+    public Optional<Integer> distributionKey() {
+        return Optional.empty();
+    }
+
+    @Override
+    public void close() {
+        if (groupAllocated) {
+            groupAllocated = false;
+            loadBalancer.releaseGroup(group, success, searchTimeMs);
+        }
+        for (CloseableChannel subchannel : subchannels.values())
+            subchannel.close();
+        subchannels.clear();
+    }
+
+}
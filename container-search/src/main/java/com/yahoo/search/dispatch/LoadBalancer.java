@@ -8,6 +8,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,36 +18,62 @@ import java.util.logging.Logger;
  * LoadBalancer determines which group of content nodes should be accessed next for each search query when the internal java dispatcher is
  * used.
  *
+ * The selection policy is pluggable: The default is a simplistic least queries in flight + round-robin scheduler, while the
+ * adaptive scheduler uses the observed search latency of each group to send less traffic to groups which are currently slow.
+ *
  * @author ollivir
  */
 public class LoadBalancer {
-    // The implementation here is a simplistic least queries in flight + round-robin load balancer
-    // TODO: consider the options in com.yahoo.vespa.model.content.TuningDispatch
 
     private final static Logger log = Logger.getLogger(LoadBalancer.class.getName());
 
+    /** The number of samples after which latency observations are averaged with a constant weight */
+    private static final long DEFAULT_LATENCY_DECAY_RATE = 1000;
+    /** The lowest number of samples used to decay the average, such that the first observations are not given too much weight */
+    private static final long MIN_LATENCY_DECAY_RATE = 42;
+    /** The average search time assumed for a group before anything is observed, in milliseconds */
+    private static final double INITIAL_QUERY_TIME = 1.0;
+    /** The lowest average search time we will use when comparing groups, in milliseconds */
+    private static final double MIN_QUERY_TIME = 0.001;
+
     private final boolean isInternallyDispatchable;
-    private final List<GroupSchedule> scoreboard;
-    private int needle = 0;
+    private final List<GroupStatus> scoreboard;
+    private final GroupScheduler scheduler;
 
     public LoadBalancer(SearchCluster searchCluster) {
+        this(searchCluster, true);
+    }
+
+    public LoadBalancer(SearchCluster searchCluster, boolean roundRobin) {
+        this(searchCluster, roundRobin, false);
+    }
+
+    /**
+     * Creates a load balancer for the given cluster.
+     *
+     * @param roundRobin whether to use the round-robin scheduler rather than the adaptive one
+     * @param multiNodeGroups whether groups consisting of multiple nodes can be dispatched to internally
+     */
+    public LoadBalancer(SearchCluster searchCluster, boolean roundRobin, boolean multiNodeGroups) {
         if (searchCluster == null) {
             this.isInternallyDispatchable = false;
             this.scoreboard = null;
+            this.scheduler = null;
             return;
         }
-        this.isInternallyDispatchable = (searchCluster.groupSize() == 1);
+        this.isInternallyDispatchable = multiNodeGroups || (searchCluster.groupSize() == 1);
         this.scoreboard = new ArrayList<>(searchCluster.groups().size());
 
         for (Group group : searchCluster.groups().values()) {
-            scoreboard.add(new GroupSchedule(group));
+            scoreboard.add(new GroupStatus(group));
         }
         Collections.shuffle(scoreboard);
+        this.scheduler = roundRobin ? new RoundRobinScheduler(scoreboard) : new AdaptiveScheduler(scoreboard);
     }
 
     /**
      * Select and allocate the search cluster group which is to be used for the provided query. Callers <b>must</b> call
-     * {@link #releaseGroup(Group)} symmetrically for each taken allocation.
+     * {@link #releaseGroup} symmetrically for each taken allocation.
      *
      * @param query
      * @return The node group to target, or <i>empty</i> if the internal dispatch logic cannot be used
@@ -54,85 +83,188 @@ public class LoadBalancer {
             return Optional.empty();
         }
 
-        return allocateNextGroup();
+        Optional<GroupStatus> allocated = scheduler.takeNextGroup();
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Offering <" + allocated.map(status -> status.group).orElse(null) + "> for query connection");
+        }
+        return allocated.map(status -> status.group);
     }
 
     /**
-     * Release an allocation given by {@link #takeGroupForQuery(Query)}. The release must be done exactly once for each allocation.
+     * Release an allocation given by {@link #takeGroupForQuery(Query)} without providing any information
+     * about how the group performed. The release must be done exactly once for each allocation.
      *
      * @param group
      *            previously allocated group
      */
     public void releaseGroup(Group group) {
-        synchronized (this) {
-            for (GroupSchedule sched : scoreboard) {
-                if (sched.group.id() == group.id()) {
-                    sched.adjustScore(-1);
-                    break;
-                }
+        releaseGroup(group, false, 0);
+    }
+
+    /**
+     * Release an allocation given by {@link #takeGroupForQuery(Query)}. The release must be done exactly once for each allocation.
+     *
+     * @param group
+     *            previously allocated group
+     * @param success
+     *            whether the query completed successfully, such that searchTimeMs is a valid observation
+     * @param searchTimeMs
+     *            the time the group spent on the query, in milliseconds
+     */
+    public void releaseGroup(Group group, boolean success, double searchTimeMs) {
+        for (GroupStatus status : scoreboard) {
+            if (status.group.id() == group.id()) {
+                status.release(success, searchTimeMs);
+                return;
             }
         }
     }
 
-    private Optional<Group> allocateNextGroup() {
-        synchronized (this) {
-            GroupSchedule bestSchedule = null;
+    /** A policy for selecting the next group from the scoreboard. Implementations must be multithread safe. */
+    interface GroupScheduler {
+
+        /** Selects and allocates a group, or returns empty if no group is currently eligible */
+        Optional<GroupStatus> takeNextGroup();
+
+    }
 
-            int index = needle;
-            for (int i = 0; i < scoreboard.size(); i++) {
-                GroupSchedule sched = scoreboard.get(index);
-                if (sched.isPreferredOver(bestSchedule)) {
-                    bestSchedule = sched;
+    /** Selects the group with the least queries in flight, breaking ties by round-robin */
+    private static class RoundRobinScheduler implements GroupScheduler {
+
+        private final List<GroupStatus> scoreboard;
+        private int needle = 0;
+
+        public RoundRobinScheduler(List<GroupStatus> scoreboard) {
+            this.scoreboard = scoreboard;
+        }
+
+        @Override
+        public Optional<GroupStatus> takeNextGroup() {
+            synchronized (this) {
+                GroupStatus bestCandidate = null;
+
+                int index = needle;
+                for (int i = 0; i < scoreboard.size(); i++) {
+                    GroupStatus candidate = scoreboard.get(index);
+                    if (candidate.group.hasSufficientCoverage() &&
+                        (bestCandidate == null || candidate.allocations() < bestCandidate.allocations())) {
+                        bestCandidate = candidate;
+                    }
+                    index = nextScoreboardIndex(index);
                 }
-                index = nextScoreboardIndex(index);
-            }
-            needle = nextScoreboardIndex(needle);
+                needle = nextScoreboardIndex(needle);
 
-            Group ret = null;
-            if (bestSchedule != null) {
-                bestSchedule.adjustScore(1);
-                ret = bestSchedule.group;
+                if (bestCandidate != null) {
+                    bestCandidate.allocate();
+                }
+                return Optional.ofNullable(bestCandidate);
             }
-            if (log.isLoggable(Level.FINE)) {
-                log.fine("Offering <" + ret + "> for query connection");
+        }
+
+        private int nextScoreboardIndex(int current) {
+            int next = current + 1;
+            if (next >= scoreboard.size()) {
+                next %= scoreboard.size();
             }
-            return Optional.ofNullable(ret);
+            return next;
         }
+
     }
 
-    private int nextScoreboardIndex(int current) {
-        int next = current + 1;
-        if (next >= scoreboard.size()) {
-            next %= scoreboard.size();
+    /**
+     * Selects between two random groups (the "power of two choices") by preferring the one with the lowest
+     * product of queries in flight and average search time. This does not take any locks.
+     */
+    private static class AdaptiveScheduler implements GroupScheduler {
+
+        private final List<GroupStatus> scoreboard;
+
+        public AdaptiveScheduler(List<GroupStatus> scoreboard) {
+            this.scoreboard = scoreboard;
+        }
+
+        @Override
+        public Optional<GroupStatus> takeNextGroup() {
+            int size = scoreboard.size();
+            if (size == 0) return Optional.empty();
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(size);
+            GroupStatus bestCandidate = eligibleOrNull(scoreboard.get(first));
+            if (size > 1) {
+                int second = (first + 1 + random.nextInt(size - 1)) % size;
+                bestCandidate = preferred(bestCandidate, eligibleOrNull(scoreboard.get(second)));
+            }
+            if (bestCandidate == null) { // both choices lack coverage; take the first one which has it
+                for (int i = 0; i < size && bestCandidate == null; i++)
+                    bestCandidate = eligibleOrNull(scoreboard.get((first + i) % size));
+            }
+
+            if (bestCandidate != null) {
+                bestCandidate.allocate();
+            }
+            return Optional.ofNullable(bestCandidate);
+        }
+
+        private static GroupStatus eligibleOrNull(GroupStatus candidate) {
+            return candidate.group.hasSufficientCoverage() ? candidate : null;
+        }
+
+        private static GroupStatus preferred(GroupStatus a, GroupStatus b) {
+            if (a == null) return b;
+            if (b == null) return a;
+            return b.expectedCost() < a.expectedCost() ? b : a;
         }
-        return next;
+
     }
 
-    private static class GroupSchedule {
+    /** The allocation and latency scoreboard entry of a group. This class is multithread safe and lock-free. */
+    static class GroupStatus {
+
         private final Group group;
-        private int score;
+        private final AtomicInteger allocations = new AtomicInteger(0);
+        private final AtomicLong queries = new AtomicLong(0);
+        private final AtomicLong averageSearchTimeBits = new AtomicLong(Double.doubleToRawLongBits(INITIAL_QUERY_TIME));
 
-        public GroupSchedule(Group group) {
+        GroupStatus(Group group) {
             this.group = group;
-            this.score = 0;
         }
 
-        public boolean isPreferredOver(GroupSchedule other) {
-            if (! group.hasSufficientCoverage()) {
-                return false;
-            }
-            if (other == null) {
-                return true;
-            }
-            return this.score < other.score;
+        void allocate() {
+            allocations.incrementAndGet();
         }
 
-        public void adjustScore(int amount) {
-            this.score += amount;
-            if (score < 0) {
+        void release(boolean success, double searchTimeMs) {
+            int previous = allocations.getAndUpdate(current -> Math.max(0, current - 1));
+            if (previous <= 0) {
                 log.warning("Double free of query target group detected");
-                score = 0;
+                return;
+            }
+            if (success) {
+                updateAverageSearchTime(searchTimeMs);
             }
         }
+
+        private void updateAverageSearchTime(double searchTimeMs) {
+            long decayRate = Math.max(MIN_LATENCY_DECAY_RATE, Math.min(queries.incrementAndGet(), DEFAULT_LATENCY_DECAY_RATE));
+            double sample = Math.max(MIN_QUERY_TIME, searchTimeMs);
+            long currentBits, updatedBits;
+            do {
+                currentBits = averageSearchTimeBits.get();
+                double current = Double.longBitsToDouble(currentBits);
+                updatedBits = Double.doubleToRawLongBits(current + (sample - current) / decayRate);
+            } while ( ! averageSearchTimeBits.compareAndSet(currentBits, updatedBits));
+        }
+
+        /** Returns the number of queries currently allocated to this group */
+        int allocations() { return allocations.get(); }
+
+        /** Returns the exponentially weighted moving average search time of this group in milliseconds */
+        double averageSearchTime() { return Double.longBitsToDouble(averageSearchTimeBits.get()); }
+
+        /** Returns the expected cost of sending one more query to this group */
+        double expectedCost() { return averageSearchTime() * (allocations() + 1); }
+
     }
+
 }
@@ -2,6 +2,8 @@
 package com.yahoo.search.dispatch;
 
 import com.yahoo.compress.CompressionType;
+import com.yahoo.compress.Compressor;
+import com.yahoo.concurrent.DaemonThreadFactory;
 import com.yahoo.jrt.DataValue;
 import com.yahoo.jrt.Int32Value;
 import com.yahoo.jrt.Int8Value;
@@ -13,34 +15,119 @@ import com.yahoo.jrt.Target;
 import com.yahoo.jrt.Transport;
 import com.yahoo.jrt.Values;
 import com.yahoo.prelude.fastsearch.FastHit;
+import com.yahoo.slime.BinaryFormat;
 
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * A client which uses rpc request to search nodes to implement the Client API.
  *
+ * Each node is connected to by a pool of connections which are used in turn, and multiple requests
+ * may be outstanding on each connection. If a batch window is set, getDocsums requests to the same node
+ * which arrive within the window are sent as a single rpc when they are equal except for the documents requested.
+ *
  * @author bratseth
  */
 class RpcClient implements Client {
 
     private final Supervisor supervisor = new Supervisor(new Transport());
+    private final Compressor compressor = new Compressor();
+
+    private final int connectionsPerNode;
+    /** The time in seconds to wait for more getDocsums requests to batch with a request, or 0 to not batch */
+    private final double batchWindow;
+    /** The executor sending batches when their window ends, or null if not batching */
+    private final ScheduledExecutorService batchScheduler;
+
+    public RpcClient() {
+        this(1, 0);
+    }
+
+    /**
+     * Creates an rpc client
+     *
+     * @param connectionsPerNode the number of connections to open to each node
+     * @param batchWindow the time in seconds to wait for more getDocsums requests to batch with a request,
+     *                    or 0 to send each request separately
+     */
+    public RpcClient(int connectionsPerNode, double batchWindow) {
+        this.connectionsPerNode = Math.max(1, connectionsPerNode);
+        this.batchWindow = batchWindow;
+        this.batchScheduler = batchWindow > 0
+                              ? Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("getdocsums-batcher-"))
+                              : null;
+    }
 
     @Override
     public NodeConnection createConnection(String hostname, int port) {
-        return new RpcNodeConnection(hostname, port, supervisor);
+        RpcNodeConnection connection = new RpcNodeConnection(hostname, port, supervisor, connectionsPerNode);
+        if (batchScheduler != null)
+            connection.setBatcher(new GetDocsumsBatcher(batchWindow, batchScheduler,
+                                                        batch -> sendBatch(batch, connection)));
+        return connection;
     }
 
     @Override
-    public void getDocsums(List<FastHit> hits, NodeConnection node, CompressionType compression, int uncompressedLength,
-                           byte[] compressedSlime, Dispatcher.GetDocsumsResponseReceiver responseReceiver, double timeoutSeconds) {
+    public PendingRequest getDocsums(List<FastHit> hits, NodeConnection node, GetDocsumsRequestProperties properties,
+                                     CompressionType compression, int uncompressedLength, byte[] compressedSlime,
+                                     Dispatcher.GetDocsumsResponseReceiver responseReceiver, double timeoutSeconds) {
+        RpcNodeConnection rpcNode = ((RpcNodeConnection) node);
+        if (rpcNode.batcher() != null && ! properties.hasSession())
+            return addToBatch(hits, rpcNode, properties, compression, responseReceiver, timeoutSeconds);
+
         Request request = new Request("proton.getDocsums");
         request.parameters().add(new Int8Value(compression.getCode()));
         request.parameters().add(new Int32Value(uncompressedLength));
         request.parameters().add(new DataValue(compressedSlime));
 
         request.setContext(hits);
-        RpcNodeConnection rpcNode = ((RpcNodeConnection) node);
-        rpcNode.invokeAsync(request, timeoutSeconds, new RpcResponseWaiter(rpcNode, responseReceiver));
+        rpcNode.invokeAsync(request, timeoutSeconds, new RpcResponseWaiter(rpcNode, responseReceiver::receive));
+        return () -> abort(request);
+    }
+
+    private static void abort(Request request) {
+        try {
+            request.abort();
+        }
+        catch (IllegalStateException e) {
+            // the request was never sent
+        }
+    }
+
+    /**
+     * Adds the given request to a batch, from which it is removed if it is cancelled before the batch is sent.
+     * Requests using a query session must not be batched as their summaries may depend on the query.
+     */
+    private PendingRequest addToBatch(List<FastHit> hits, RpcNodeConnection node, GetDocsumsRequestProperties properties,
+                                      CompressionType compression, Dispatcher.GetDocsumsResponseReceiver responseReceiver,
+                                      double timeoutSeconds) {
+        if (compression == CompressionType.INCOMPRESSIBLE) // this request was too small to compress, but a batch may not be
+            compression = CompressionType.LZ4;
+        return node.batcher().add(properties.summaryClass(), properties.documentType(), properties.rankProfile(),
+                                  compression, hits, responseReceiver, timeoutSeconds);
+    }
+
+    private void sendBatch(GetDocsumsBatcher.Batch batch, RpcNodeConnection node) {
+        byte[] serializedSlime = BinaryFormat.encode(batch.toSlime());
+        Compressor.Compression compressionResult = compressor.compress(batch.compression(), serializedSlime);
+
+        Request request = new Request("proton.getDocsums");
+        request.parameters().add(new Int8Value(compressionResult.type().getCode()));
+        request.parameters().add(new Int32Value(serializedSlime.length));
+        request.parameters().add(new DataValue(compressionResult.data()));
+
+        request.setContext(batch.hits());
+        node.invokeAsync(request, batch.timeout(), new RpcResponseWaiter(node, response -> batch.receive(response, compressor)));
+    }
+
+    @Override
+    public void close() {
+        if (batchScheduler != null)
+            batchScheduler.shutdown();
     }
 
     private static class RpcNodeConnection implements NodeConnection {
@@ -51,29 +138,45 @@ class RpcClient implements Client {
         private final int port;
         private final String description;
 
-        // The current shared connection. This will be recycled when it becomes invalid.
-        // All access to this must be synchronized
-        private Target target = null;
+        // The current shared connections, used in turn. Each will be recycled when it becomes invalid.
+        // All access to an element must be synchronized on the array
+        private final Target[] targets;
+        private final AtomicInteger nextTarget = new AtomicInteger();
+
+        /** The batcher of getDocsums requests to this node, or null if requests are not batched */
+        private GetDocsumsBatcher batcher = null;
 
-        public RpcNodeConnection(String hostname, int port, Supervisor supervisor) {
+        public RpcNodeConnection(String hostname, int port, Supervisor supervisor, int connections) {
             this.supervisor = supervisor;
             this.hostname = hostname;
             this.port = port;
+            this.targets = new Target[connections];
             description = "rpc node connection to " + hostname + ":" + port;
         }
 
+        void setBatcher(GetDocsumsBatcher batcher) { this.batcher = batcher; }
+
+        GetDocsumsBatcher batcher() { return batcher; }
+
         public void invokeAsync(Request req, double timeout, RequestWaiter waiter) {
+            int index = Math.floorMod(nextTarget.getAndIncrement(), targets.length);
             // TODO: Consider replacing this by a watcher on the target
-            synchronized(this) { // ensure we have exactly 1 valid connection across threads
-                if (target == null || ! target.isValid())
-                    target = supervisor.connect(new Spec(hostname, port));
+            Target target;
+            synchronized(targets) { // ensure we have exactly 1 valid connection in each slot across threads
+                if (targets[index] == null || ! targets[index].isValid())
+                    targets[index] = supervisor.connect(new Spec(hostname, port));
+                target = targets[index];
             }
             target.invokeAsync(req, timeout, waiter);
         }
 
         @Override
         public void close() {
-            target.close();
+            synchronized (targets) {
+                for (Target target : targets)
+                    if (target != null)
+                        target.close();
+            }
         }
 
         @Override
@@ -89,34 +192,36 @@ class RpcClient implements Client {
         private final RpcNodeConnection node;
 
         /** The handler to which the response is forwarded */
-        private final Dispatcher.GetDocsumsResponseReceiver handler;
+        private final Consumer<GetDocsumsResponseOrError> handler;
 
-        public RpcResponseWaiter(RpcNodeConnection node, Dispatcher.GetDocsumsResponseReceiver handler) {
+        public RpcResponseWaiter(RpcNodeConnection node, Consumer<GetDocsumsResponseOrError> handler) {
             this.node = node;
             this.handler = handler;
         }
 
         @Override
         public void handleRequestDone(Request requestWithResponse) {
+            List<FastHit> hits = (List<FastHit>) requestWithResponse.getContext();
             if (requestWithResponse.isError()) {
-                handler.receive(GetDocsumsResponseOrError.fromError("Error response from " + node + ": " +
-                                                                    requestWithResponse.errorMessage()));
+                handler.accept(GetDocsumsResponseOrError.fromError("Error response from " + node + ": " +
+                                                                    requestWithResponse.errorMessage(),
+                                                                    hits));
                 return;
             }
 
             Values returnValues = requestWithResponse.returnValues();
             if (returnValues.size() < 3) {
-                handler.receive(GetDocsumsResponseOrError.fromError("Invalid getDocsums response from " + node +
+                handler.accept(GetDocsumsResponseOrError.fromError("Invalid getDocsums response from " + node +
                                                                     ": Expected 3 return arguments, got " +
-                                                                    returnValues.size()));
+                                                                    returnValues.size(),
+                                                                    hits));
                 return;
             }
 
             byte compression = returnValues.get(0).asInt8();
             int uncompressedSize = returnValues.get(1).asInt32();
             byte[] compressedSlimeBytes = returnValues.get(2).asData();
-            List<FastHit> hits = (List<FastHit>) requestWithResponse.getContext();
-            handler.receive(GetDocsumsResponseOrError.fromResponse(new GetDocsumsResponse(compression,
+            handler.accept(GetDocsumsResponseOrError.fromResponse(new GetDocsumsResponse(compression,
                                                                                           uncompressedSize,
                                                                                           compressedSlimeBytes,
                                                                                           hits)));
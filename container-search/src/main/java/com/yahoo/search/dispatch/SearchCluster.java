@@ -19,6 +19,9 @@ import com.yahoo.yolean.Exceptions;
 import com.yahoo.prelude.Pong;
 import com.yahoo.prelude.fastsearch.FS4ResourcePool;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -28,8 +31,10 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -49,6 +54,7 @@ public class SearchCluster implements NodeManager<SearchCluster.Node> {
     private final int size;
     private final ImmutableMap<Integer, Group> groups;
     private final ImmutableMultimap<String, Node> nodesByHost;
+    private final ImmutableMap<Integer, Node> nodesByKey;
     private final ClusterMonitor<Node> clusterMonitor;
     private final VipStatus vipStatus;
 
@@ -90,6 +96,12 @@ public class SearchCluster implements NodeManager<SearchCluster.Node> {
             nodesByHostBuilder.put(node.hostname(), node);
         this.nodesByHost = nodesByHostBuilder.build();
 
+        // Index nodes by key
+        Map<Integer, Node> nodesByKey = new HashMap<>();
+        for (Node node : nodes)
+            nodesByKey.put(node.key(), node);
+        this.nodesByKey = ImmutableMap.copyOf(nodesByKey);
+
         this.directDispatchTarget = findDirectDispatchTarget(HostName.getLocalhost(), size, containerClusterSize,
                                                              nodesByHost, groups);
 
@@ -158,6 +170,36 @@ public class SearchCluster implements NodeManager<SearchCluster.Node> {
      */
     public ImmutableMultimap<String, Node> nodesByHost() { return nodesByHost; }
 
+    /**
+     * Returns the working nodes in other groups than the given node which have all the documents of that node,
+     * in random order. As only nodes which are alone in their group have all documents, this is empty
+     * for clusters having multiple nodes per group.
+     */
+    public List<Node> replicasOf(int nodeKey) {
+        Node node = nodesByKey.get(nodeKey);
+        if (node == null) return Collections.emptyList();
+
+        List<Node> replicas = new ArrayList<>();
+        for (Group group : groups.values()) {
+            if (group.id() == node.group()) continue;
+            if (group.nodes().size() != 1) continue;
+            if ( ! group.hasSufficientCoverage()) continue;
+            if ( ! group.nodes().get(0).isWorking()) continue;
+            replicas.add(group.nodes().get(0));
+        }
+        Collections.shuffle(replicas, ThreadLocalRandom.current());
+        return replicas;
+    }
+
+    /**
+     * Returns the generation of the documents of the node with the given key, as last reported by the node,
+     * or 0 if it is not known. This changes when the documents of the node change.
+     */
+    public int contentGeneration(int nodeKey) {
+        Node node = nodesByKey.get(nodeKey);
+        return node == null ? 0 : node.getDocstamp();
+    }
+
     /**
      * Returns the recipient we should dispatch queries directly to (bypassing fdispatch),
      * or empty if we should not dispatch directly.
@@ -287,6 +329,8 @@ public class SearchCluster implements NodeManager<SearchCluster.Node> {
                                               fs4ResourcePool.getBackend(node.hostname(), node.fs4port()), node.toString());
                 if (pong.activeDocuments().isPresent())
                     node.setActiveDocuments(pong.activeDocuments().get());
+                if (pong.getPongPacket().isPresent())
+                    node.setDocstamp(pong.getPongPacket().get().getDocstamp());
                 return pong;
             } catch (RuntimeException e) {
                 return new Pong(ErrorMessage.createBackendCommunicationError("Exception when pinging " + node + ": "
@@ -366,6 +410,7 @@ public class SearchCluster implements NodeManager<SearchCluster.Node> {
 
         private final AtomicBoolean working = new AtomicBoolean(true);
         private final AtomicLong activeDocuments = new AtomicLong(0);
+        private final AtomicInteger docstamp = new AtomicInteger(0);
 
         public Node(int key, String hostname, int fs4port, int group) {
             this.key = key;
@@ -401,6 +446,16 @@ public class SearchCluster implements NodeManager<SearchCluster.Node> {
             return this.activeDocuments.get();
         }
 
+        /** Updates the docstamp of this node */
+        void setDocstamp(int docstamp) {
+            this.docstamp.set(docstamp);
+        }
+
+        /** Returns the docstamp last reported by this node, which changes when its documents change. If unknown, 0 is returned. */
+        public int getDocstamp() {
+            return this.docstamp.get();
+        }
+
         @Override
         public int hashCode() { return Objects.hash(hostname, fs4port); }
 
@@ -0,0 +1,324 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.document.GlobalId;
+import com.yahoo.jdisc.Metric;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of the serialized document summaries returned by search nodes, keyed by global id, summary class,
+ * document database and the generation of the content of the node returning the summary.
+ * The summary bytes are stored outside the Java heap, in a single direct buffer. The buffer is split into a number
+ * of segments, each written as a ring guarded by its own lock: When a segment is full, its oldest summaries are
+ * overwritten by new ones. Concurrent fills therefore only contend when their summaries hash to the same segment.
+ * Only the index of the cache, which is small compared to the summaries, resides on the heap.
+ *
+ * Summaries are no longer returned once the content generation of their node changes, and are additionally
+ * invalidated when they are older than the max age of the cache, or when they are explicitly invalidated
+ * by {@link #invalidate} or {@link #invalidateAll}.
+ *
+ * This class is multithread safe.
+ *
+ * @author agent
+ */
+public class SummaryCache {
+
+    /** The name of the metric counting lookups which returned a cached summary */
+    public static final String hitsMetricName = "summary_cache.hits";
+
+    /** The name of the metric counting lookups which did not return a cached summary */
+    public static final String missesMetricName = "summary_cache.misses";
+
+    /** The max size of a single summary as a fraction of the capacity */
+    private static final int maxEntryFraction = 16;
+
+    private static final int defaultSegmentCount = 16;
+
+    private final Segment[] segments;
+    private final int capacity;
+    private final int maxEntrySize;
+    private final long maxAge;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /** The metric receiving hits and misses, or null if none */
+    private final Metric metric;
+
+    /** For testing: Creates a cache having a single segment, such that summaries are overwritten in write order */
+    public SummaryCache(long capacity, long maxAge) {
+        this(capacity, maxAge, 1, null);
+    }
+
+    /**
+     * Creates a summary cache with the default number of segments
+     *
+     * @param capacity the size of the off-heap buffer holding the summaries, in bytes. Capped at 2Gb.
+     * @param maxAge the max age of a valid summary in milliseconds
+     * @param metric the metric to which hits and misses are reported, or null to not report them
+     */
+    public SummaryCache(long capacity, long maxAge, Metric metric) {
+        this(capacity, maxAge, defaultSegmentCount, metric);
+    }
+
+    /**
+     * Creates a summary cache
+     *
+     * @param capacity the size of the off-heap buffer holding the summaries, in bytes. Capped at 2Gb.
+     * @param maxAge the max age of a valid summary in milliseconds
+     * @param segmentCount the number of independently locked segments, rounded up to the nearest power of two
+     * @param metric the metric to which hits and misses are reported, or null to not report them
+     */
+    public SummaryCache(long capacity, long maxAge, int segmentCount, Metric metric) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Summary cache capacity must be positive, got " + capacity);
+        if (maxAge <= 0)
+            throw new IllegalArgumentException("Summary cache max age must be positive, got " + maxAge);
+        if (segmentCount <= 0)
+            throw new IllegalArgumentException("Summary cache segment count must be positive, got " + segmentCount);
+
+        this.capacity = (int)Math.min(capacity, Integer.MAX_VALUE);
+        int actualSegmentCount = Integer.highestOneBit(segmentCount);
+        if (actualSegmentCount < segmentCount)
+            actualSegmentCount <<= 1;
+        while (actualSegmentCount > 1 && this.capacity / actualSegmentCount < maxEntryFraction)
+            actualSegmentCount >>= 1;
+
+        int segmentCapacity = this.capacity / actualSegmentCount;
+        this.maxEntrySize = Math.min(segmentCapacity, this.capacity / maxEntryFraction);
+        this.maxAge = maxAge;
+        this.metric = metric;
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(this.capacity);
+        this.segments = new Segment[actualSegmentCount];
+        for (int i = 0; i < actualSegmentCount; i++) {
+            buffer.limit((i + 1) * segmentCapacity).position(i * segmentCapacity);
+            segments[i] = new Segment(buffer.slice());
+        }
+    }
+
+    /**
+     * Returns a copy of the cached summary of this document, or null if it is not cached
+     *
+     * @param generation the current generation of the content of the node having this document
+     */
+    public byte[] get(GlobalId globalId, String summaryClass, String documentDb, long generation) {
+        return get(globalId, summaryClass, documentDb, generation, System.currentTimeMillis());
+    }
+
+    /**
+     * Returns a copy of the cached summary of this document, or null if it is not cached
+     *
+     * @param generation the current generation of the content of the node having this document
+     * @param now the current time in milliseconds
+     */
+    public byte[] get(GlobalId globalId, String summaryClass, String documentDb, long generation, long now) {
+        Key key = new Key(globalId, summaryClass, documentDb, generation);
+        byte[] summary = segmentOf(key).lookup(key, now - maxAge);
+        if (summary == null)
+            misses.increment();
+        else
+            hits.increment();
+        if (metric != null)
+            metric.add(summary != null ? hitsMetricName : missesMetricName, 1, null);
+        return summary;
+    }
+
+    /**
+     * Caches the given serialized summary of this document. Summaries larger than 1/16 of the capacity,
+     * or larger than a segment, are ignored.
+     *
+     * @param generation the generation of the content of the node this summary was fetched from
+     */
+    public void put(GlobalId globalId, String summaryClass, String documentDb, long generation, byte[] summary) {
+        put(globalId, summaryClass, documentDb, generation, summary, System.currentTimeMillis());
+    }
+
+    /**
+     * Caches the given serialized summary of this document.
+     *
+     * @param generation the generation of the content of the node this summary was fetched from
+     * @param timestamp the time in milliseconds at which this summary was created, which determines when it expires
+     */
+    public void put(GlobalId globalId, String summaryClass, String documentDb, long generation,
+                    byte[] summary, long timestamp) {
+        Key key = new Key(globalId, summaryClass, documentDb, generation);
+        Segment segment = segmentOf(key);
+        if (summary.length > maxEntrySize)
+            segment.remove(key);
+        else
+            segment.put(key, summary, timestamp);
+    }
+
+    /** Invalidates all summaries of the given document database in this */
+    public void invalidate(String documentDb) {
+        for (Segment segment : segments)
+            segment.invalidate(documentDb);
+    }
+
+    /** Invalidates all summaries in this. The hit and miss counts are not reset. */
+    public void invalidateAll() {
+        for (Segment segment : segments)
+            segment.invalidateAll();
+    }
+
+    /** Returns the size of the off-heap buffer of this cache in bytes */
+    public int capacity() { return capacity; }
+
+    /** Returns the number of summaries currently available from this cache */
+    public int entryCount() {
+        int count = 0;
+        for (Segment segment : segments)
+            count += segment.entryCount();
+        return count;
+    }
+
+    /** Returns the number of lookups which returned a summary since this was created */
+    public long hitCount() { return hits.sum(); }
+
+    /** Returns the number of lookups which did not return a summary since this was created */
+    public long missCount() { return misses.sum(); }
+
+    private Segment segmentOf(Key key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16); // spread the high bits, as only the lowest are used to pick the segment
+        return segments[hash & (segments.length - 1)];
+    }
+
+    /** A part of the cache, which is a ring in its own region of the buffer, guarded by its own lock */
+    private static final class Segment {
+
+        private final ByteBuffer buffer;
+        private final int capacity;
+
+        /** The location of each valid (and some overwritten) summary */
+        private final Map<Key, Location> index = new HashMap<>();
+        /** The locations of the index in write order, used to remove the index entries of overwritten summaries */
+        private final Deque<Location> writeOrder = new ArrayDeque<>();
+
+        /** The total number of bytes written to the ring since this was created, including skipped bytes */
+        private long head = 0;
+
+        Segment(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.capacity = buffer.capacity();
+        }
+
+        synchronized byte[] lookup(Key key, long oldestValidTimestamp) {
+            Location location = index.get(key);
+            if (location == null) return null;
+            if ( ! isIntact(location) || location.timestamp < oldestValidTimestamp) {
+                index.remove(key);
+                return null;
+            }
+
+            byte[] summary = new byte[location.length];
+            buffer.position(offsetOf(location.position));
+            buffer.get(summary);
+            return summary;
+        }
+
+        synchronized void put(Key key, byte[] summary, long timestamp) {
+            if (offsetOf(head) + summary.length > capacity) // summaries are never split: Skip to the start of the ring
+                head += capacity - offsetOf(head);
+            Location location = new Location(key, head, summary.length, timestamp);
+            buffer.position(offsetOf(head));
+            buffer.put(summary);
+            head += summary.length;
+
+            index.put(key, location);
+            writeOrder.addLast(location);
+            removeOverwritten();
+        }
+
+        synchronized void remove(Key key) {
+            index.remove(key);
+        }
+
+        synchronized void invalidate(String documentDb) {
+            index.keySet().removeIf(key -> Objects.equals(key.documentDb, documentDb));
+        }
+
+        synchronized void invalidateAll() {
+            index.clear();
+            writeOrder.clear();
+        }
+
+        synchronized int entryCount() { return index.size(); }
+
+        /** Removes the index entries of the summaries which have been overwritten since they were written */
+        private void removeOverwritten() {
+            while ( ! writeOrder.isEmpty() && ! isIntact(writeOrder.peekFirst())) {
+                Location overwritten = writeOrder.removeFirst();
+                index.remove(overwritten.key, overwritten);
+            }
+        }
+
+        /** Returns whether the bytes of the summary at this location have not been overwritten by later summaries */
+        private boolean isIntact(Location location) {
+            return head - location.position <= capacity;
+        }
+
+        private int offsetOf(long position) {
+            return (int)(position % capacity);
+        }
+
+    }
+
+    private static final class Key {
+
+        private final GlobalId globalId;
+        private final String summaryClass;
+        private final String documentDb;
+        private final long generation;
+        private final int hashCode;
+
+        Key(GlobalId globalId, String summaryClass, String documentDb, long generation) {
+            this.globalId = globalId;
+            this.summaryClass = summaryClass;
+            this.documentDb = documentDb;
+            this.generation = generation;
+            this.hashCode = Objects.hash(globalId, summaryClass, documentDb, generation);
+        }
+
+        @Override
+        public int hashCode() { return hashCode; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if ( ! (o instanceof Key)) return false;
+            Key other = (Key)o;
+            return globalId.equals(other.globalId)
+                   && generation == other.generation
+                   && Objects.equals(summaryClass, other.summaryClass)
+                   && Objects.equals(documentDb, other.documentDb);
+        }
+
+    }
+
+    private static final class Location {
+
+        final Key key;
+        /** The position of the first byte of the summary in the ring, counted from the creation of this */
+        final long position;
+        final int length;
+        final long timestamp;
+
+        Location(Key key, long position, int length, long timestamp) {
+            this.key = key;
+            this.position = position;
+            this.length = length;
+            this.timestamp = timestamp;
+        }
+
+    }
+
+}
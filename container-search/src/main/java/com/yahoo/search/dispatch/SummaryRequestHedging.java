@@ -0,0 +1,110 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.statistics.Counter;
+import com.yahoo.statistics.Statistics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/**
+ * Decides when and where to send backup requests for summaries which are slow to arrive ("hedging"):
+ * When a getDocsums request has been outstanding for longer than a given percentile of the recent
+ * response times, the same request is sent to a replica node in another group, and the first response is used.
+ *
+ * As a node can only be replaced by a node having all its documents, requests are only hedged in clusters
+ * where groups consist of a single node.
+ *
+ * This class is multithread safe.
+ *
+ * @author agent
+ */
+class SummaryRequestHedging {
+
+    /** The number of recent response times to keep */
+    private static final int sampleCount = 1024;
+    /** The number of response times to collect before hedging starts */
+    private static final int minSampleCount = 100;
+    /** The number of new samples between each recalculation of the hedge delay */
+    private static final int recalculationInterval = 64;
+
+    private final SearchCluster searchCluster;
+    private final double percentile;
+
+    private final long[] responseTimes = new long[sampleCount];
+    /** The total number of response times recorded */
+    private long recordedCount = 0;
+    /** The current time in milliseconds to wait before hedging a request, or -1 if not known yet */
+    private volatile long hedgeDelay = -1;
+
+    private final Counter hedgedRequests;
+    private final Counter wonHedges;
+
+    /**
+     * Creates a hedging policy
+     *
+     * @param searchCluster the cluster to find replica nodes in
+     * @param percentile the percentile of recent response times after which a request is hedged
+     * @param statistics the statistics manager to report hedged requests to
+     * @param metricPrefix the prefix of the names of the metrics reported
+     */
+    SummaryRequestHedging(SearchCluster searchCluster, double percentile, Statistics statistics, String metricPrefix) {
+        if (percentile <= 0 || percentile >= 100)
+            throw new IllegalArgumentException("Hedging percentile must be between 0 and 100, got " + percentile);
+        this.searchCluster = searchCluster;
+        this.percentile = percentile;
+        this.hedgedRequests = new Counter(metricPrefix + "hedged_summary_requests", statistics, false);
+        this.wonHedges = new Counter(metricPrefix + "won_hedged_summary_requests", statistics, false);
+    }
+
+    /**
+     * Records the time in milliseconds from a getDocsums request was sent until it was answered,
+     * by the node it was sent to or by a backup
+     */
+    synchronized void recordResponseTime(long responseTime) {
+        responseTimes[(int)(recordedCount % sampleCount)] = responseTime;
+        recordedCount++;
+        if (recordedCount >= minSampleCount && recordedCount % recalculationInterval == 0)
+            hedgeDelay = calculatePercentile();
+    }
+
+    private long calculatePercentile() {
+        long[] sorted = Arrays.copyOf(responseTimes, (int)Math.min(recordedCount, sampleCount));
+        Arrays.sort(sorted);
+        int index = (int)Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    /**
+     * Returns the time in milliseconds after sending getDocsums requests at which those still outstanding
+     * should be hedged, or empty if not enough responses have been seen yet to tell
+     */
+    OptionalLong hedgeDelay() {
+        long delay = hedgeDelay;
+        return delay < 0 ? OptionalLong.empty() : OptionalLong.of(delay);
+    }
+
+    /** Returns the key of the node to send a backup of a request to the given node to, or empty if none */
+    Optional<Integer> backupNodeOf(int nodeKey) {
+        List<SearchCluster.Node> replicas = searchCluster.replicasOf(nodeKey);
+        return replicas.isEmpty() ? Optional.empty() : Optional.of(replicas.get(0).key());
+    }
+
+    /** Called when a backup request is sent */
+    void hedged() { hedgedRequests.increment(); }
+
+    /** Called when the response to a backup request arrives before the response to the original request */
+    void hedgeWon() { wonHedges.increment(); }
+
+    /** Returns the total number of response times recorded */
+    synchronized long recordedCount() { return recordedCount; }
+
+    /** Returns the number of backup requests sent */
+    long hedgedCount() { return hedgedRequests.get(); }
+
+    /** Returns the number of backup requests which were responded to before the request they backed up */
+    long wonCount() { return wonHedges.get(); }
+
+}
@@ -28,6 +28,7 @@ public final class HTTPParameters {
     private int connectionTimeout=2000;
     private int readTimeout=5000;
     private boolean persistentConnections=true;
+    private boolean nonBlocking=false;
     private boolean enableProxy = false;
     private String proxyHost = "localhost";
     private int proxyPort = 1080;
@@ -142,6 +143,20 @@ public final class HTTPParameters {
     /** Returns whether this should use persistent connections. Default is true. */
     public boolean getPersistentConnections() { return persistentConnections; }
 
+    /**
+     * Sets whether searchers which support it should talk to the backend using non-blocking I/O when
+     * searched from an async execution (such as in federation), such that no thread is held while
+     * waiting for the response. Proxies, https and redirects are not supported by non-blocking requests:
+     * Requests needing these are made by blocking calls as before.
+     */
+    public void setNonBlocking(boolean nonBlocking) {
+        ensureNotFrozen();
+        this.nonBlocking=nonBlocking;
+    }
+
+    /** Returns whether this should use non-blocking I/O when possible. Default is false. */
+    public boolean getNonBlocking() { return nonBlocking; }
+
     /** Returns whether proxying should be enabled. Default is false. */
     public boolean getEnableProxy() { return enableProxy; }
 
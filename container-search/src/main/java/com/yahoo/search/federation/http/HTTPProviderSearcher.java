@@ -9,10 +9,12 @@ import com.yahoo.search.cache.QrBinaryCacheRegionConfig;
 import com.yahoo.yolean.Exceptions;
 import com.yahoo.search.Query;
 import com.yahoo.search.Result;
+import com.yahoo.search.cluster.Hasher;
 import com.yahoo.search.federation.FederationSearcher;
 import com.yahoo.search.query.Properties;
 import com.yahoo.search.result.ErrorMessage;
 import com.yahoo.search.result.Hit;
+import com.yahoo.search.searchchain.AsyncSearcher;
 import com.yahoo.search.searchchain.Execution;
 import com.yahoo.statistics.Counter;
 import com.yahoo.statistics.Statistics;
@@ -26,6 +28,8 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,12 +39,16 @@ import java.util.logging.Logger;
  * <p>
  * Implementations must override one of the <code>unmarshal</code> methods to unmarshal the response.
  * </p>
+ * <p>
+ * If non-blocking requests are enabled in the {@link HTTPParameters} of this, searches done from an async
+ * execution (as in federation) do not hold a thread while waiting for the backend to respond.
+ * </p>
  *
  * @author Arne Bergene Fossaa
  * @author bratseth
  */
 @Deprecated
-public abstract class HTTPProviderSearcher extends HTTPSearcher {
+public abstract class HTTPProviderSearcher extends HTTPSearcher implements AsyncSearcher {
 
     private final Counter emptyResults;
     private final Value hitsPerQuery;
@@ -211,6 +219,93 @@ public abstract class HTTPProviderSearcher extends HTTPSearcher {
         }
     }
 
+    /**
+     * Searches without holding a thread while waiting for the backend if non-blocking requests are enabled
+     * and can be used for this query, and returns null otherwise.
+     * This fails over between connections like the search method.
+     */
+    @Override
+    public CompletableFuture<Result> searchAsync(Query query, Execution execution) {
+        if ( ! getParameters().getNonBlocking()) return null;
+
+        Hasher.NodeList<Connection> nodes = getHasher().getNodes();
+        if (nodes.getNodeCount() == 0) return null; // let search produce the error
+        int code = query.hashCode();
+        Connection connection = getFirstConnection(nodes, code, 0, query);
+        if (connection == null) return null;
+        return searchAsync(query, nodes, code, 0, connection);
+    }
+
+    private CompletableFuture<Result> searchAsync(Query query, Hasher.NodeList<Connection> nodes, int code,
+                                                  int tries, Connection connection) {
+        if (query.getTraceLevel() >= 8)
+            query.trace("Trying " + connection, false, 8);
+        CompletableFuture<Result> futureResult = searchAsync(query, connection);
+        if (futureResult == null) return null;
+
+        return futureResult.thenCompose(result -> {
+            if ( ! shouldRetry(query, result)) return CompletableFuture.completedFuture(result);
+            if (result.hits().getError().getCode() == com.yahoo.container.protect.Error.TIMEOUT.code)
+                return CompletableFuture.completedFuture(result); // Retry is unlikely to help
+            if (tries + 1 >= nodes.getNodeCount() || timedOut(query)) return CompletableFuture.completedFuture(result);
+
+            Connection next = nodes.select(code, tries + 1);
+            CompletableFuture<Result> retried = next == null ? null : searchAsync(query, nodes, code, tries + 1, next);
+            return retried == null ? CompletableFuture.completedFuture(result) : retried;
+        });
+    }
+
+    /** Searches the given connection using non-blocking I/O, or returns null if that cannot be done for this query */
+    private CompletableFuture<Result> searchAsync(Query query, Connection connection) {
+        Hit requestMeta = createRequestMeta();
+        Result result  = new Result(query);
+        result.hits().add(requestMeta);
+        query.trace("Created request information hit", false, 9);
+
+        try {
+            URI uri = getURI(query, requestMeta, connection);
+            long requestStartTime = System.currentTimeMillis();
+            CompletableFuture<HttpEntity> futureEntity = getEntityAsync(uri, requestMeta, query);
+            if (futureEntity == null) return null;
+            if (query.getTraceLevel()>=1)
+                query.trace("Fetching " + uri.toString(), false, 1);
+
+            // Unmarshal outside the thread doing the I/O of all requests
+            return futureEntity.handleAsync((entity, exception) -> {
+                if (exception != null)
+                    return statisticsBeforeInspection(result, requestMeta, toError(query, exception, result));
+                return entity == null
+                       ? statisticsBeforeInspection(result, requestMeta, null)
+                       : consumeEntity(entity, query, result, requestMeta, requestStartTime);
+            });
+        } catch (MalformedURLException|URISyntaxException e) {
+            result.hits().addError(createMalformedUrlError(query,e));
+            return CompletableFuture.completedFuture(statisticsBeforeInspection(result, requestMeta, e));
+        } catch (TimeoutException e) {
+            result.hits().addError(ErrorMessage.createTimeout("No time left for HTTP traffic in "
+                    + this
+                    + " for " + query + ": " + e.getMessage()));
+            return CompletableFuture.completedFuture(statisticsBeforeInspection(result, requestMeta, e));
+        }
+    }
+
+    /** Adds an error to the result for an exception completing a non-blocking request, and returns the exception */
+    private Exception toError(Query query, Throwable exception, Result result) {
+        if (exception instanceof CompletionException && exception.getCause() != null)
+            exception = exception.getCause();
+        if (exception instanceof TimeoutException) {
+            readTimeouts.increment();
+            result.hits().addError(ErrorMessage.createTimeout("Timed out waiting for the response from backend in "
+                    + this + " for " + query + ": " + exception.getMessage()));
+        }
+        else {
+            result.hits().addError(ErrorMessage.createBackendCommunicationError(
+                    "Error when trying to connect to HTTP backend in " + this
+                            + " for " + query + ": " + Exceptions.toMessageString(exception)));
+        }
+        return exception instanceof Exception ? (Exception)exception : new RuntimeException(exception);
+    }
+
     private Result consumeEntity(HttpEntity entity, Query query, Result result, Hit logHit, long requestStartTime) {
 
         try {
@@ -5,6 +5,7 @@ import com.google.inject.Inject;
 import com.yahoo.component.ComponentId;
 import com.yahoo.jdisc.http.CertificateStore;
 import com.yahoo.log.LogLevel;
+import com.yahoo.net.http.NonBlockingHttpClient;
 import com.yahoo.prelude.Ping;
 import com.yahoo.prelude.Pong;
 import com.yahoo.yolean.Exceptions;
@@ -31,10 +32,12 @@ import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.DefaultHttpRoutePlanner;
 import org.apache.http.impl.conn.SingleClientConnManager;
 import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.message.BasicStatusLine;
 import org.apache.http.params.HttpParams;
 import org.apache.http.params.HttpProtocolParams;
 import org.apache.http.protocol.BasicHttpContext;
@@ -55,6 +58,8 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -173,6 +178,9 @@ public abstract class HTTPSearcher extends ClusterSearcher<Connection> {
 
     private final Counter connectTimeouts;
 
+    /** The client doing the non-blocking requests of this, created on first use and closed when this is deconstructed */
+    private NonBlockingHttpClient nonBlockingClient = null;
+
     /** Whether to use certificates */
     protected boolean useCertificate = false;
 
@@ -756,6 +764,121 @@ public abstract class HTTPSearcher extends ClusterSearcher<Connection> {
         return response;
     }
 
+    /**
+     * Requests the HTTP entity holding the response contents using non-blocking I/O, if this is enabled in
+     * the parameters of this and the request can be made that way (it is plain http and no proxy is used).
+     * This produces the same request and request meta information as {@link #getEntity(URI, Hit, Query)},
+     * but returns a future which completes exceptionally with an IOException on status codes in the 300
+     * range and above, and with a TimeoutException if no response is received within the query timeout.
+     *
+     * @param uri the request URI.
+     * @param requestMeta a meta hit that holds logging information about this request (may be {@code null}).
+     * @param query the originating query
+     * @return the future http entity, which completes with null if there is no entity,
+     *         or null if this request cannot be made using non-blocking I/O
+     * @throws TimeoutException If query.timeLeft() equal to or lower than 0
+     */
+    protected CompletableFuture<HttpEntity> getEntityAsync(URI uri, Hit requestMeta, Query query) {
+        if ( ! httpParameters.getNonBlocking()) return null;
+        if ( ! "http".equals(uri.getScheme())) return null;
+        if (httpParameters.getEnableProxy() || certificateProxy != null) return null;
+
+        long timeLeft = query.getTimeLeft();
+        if (timeLeft <= 0) {
+            throw new TimeoutException("No time left for querying external backend.");
+        }
+        byte[] requestBody;
+        try {
+            HttpEntity reqEntity = getRequestEntity(query, requestMeta);
+            requestBody = reqEntity == null ? null : EntityUtils.toByteArray(reqEntity);
+        }
+        catch (IOException e) {
+            CompletableFuture<HttpEntity> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        Map<String, String> reqHeaders = getRequestHeaders(query, requestMeta);
+
+        // Logging
+        if (requestMeta != null && reqHeaders != null) {
+            for (Entry<String, String> entry : reqHeaders.entrySet())
+                requestMeta.setField(LOG_HEADER_PREFIX + entry.getKey(), entry.getValue());
+        }
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Accept-Encoding", "gzip");
+        if (reqHeaders != null)
+            headers.putAll(reqHeaders);
+
+        long start = System.currentTimeMillis();
+        return nonBlockingClient().execute(httpParameters.getMethod(), uri, headers, requestBody,
+                                           Math.max(1, timeLeft / 4), timeLeft)
+                .handle((response, exception) -> {
+                    if (exception != null)
+                        throw new CompletionException(toRequestException(exception));
+                    return toEntity(response, requestMeta, start);
+                });
+    }
+
+    private synchronized NonBlockingHttpClient nonBlockingClient() {
+        if (nonBlockingClient == null)
+            nonBlockingClient = new NonBlockingHttpClient("http-searcher-io", 64, 30 * 1000);
+        return nonBlockingClient;
+    }
+
+    @Override
+    public void deconstruct() {
+        super.deconstruct();
+        synchronized (this) {
+            if (nonBlockingClient != null) {
+                nonBlockingClient.close();
+                nonBlockingClient = null;
+            }
+        }
+    }
+
+    /** Returns the exception to fail a non-blocking request with, given the exception from the client */
+    private Throwable toRequestException(Throwable exception) {
+        if (exception instanceof CompletionException && exception.getCause() != null)
+            exception = exception.getCause();
+        if (exception instanceof NonBlockingHttpClient.ConnectTimeoutException) {
+            connectTimeouts.increment();
+            return new ConnectTimeoutException(exception.getMessage());
+        }
+        if (exception instanceof SocketTimeoutException)
+            return new TimeoutException(exception.getMessage());
+        return exception;
+    }
+
+    private HttpEntity toEntity(NonBlockingHttpClient.Response response, Hit requestMeta, long start) {
+        long latencyStart = System.currentTimeMillis() - start;
+        StatusLine statusLine = new BasicStatusLine(HttpVersion.HTTP_1_1, response.statusCode(), response.reasonPhrase());
+
+        // Logging
+        if (requestMeta != null) {
+            requestMeta.setField(LOG_IP_ADDRESS, response.remoteAddress());
+            requestMeta.setField(LOG_LATENCY_START, latencyStart);
+            requestMeta.setField(LOG_STATUS, statusLine.getStatusCode());
+            for (Entry<String, String> header : response.headers())
+                requestMeta.setField(LOG_RESPONSE_HEADER_PREFIX + header.getKey(), header.getValue());
+        }
+        logResponseLatency(latencyStart);
+
+        ByteArrayEntity entity = new ByteArrayEntity(response.body());
+        entity.setContentType(response.header("Content-Type"));
+        entity.setContentEncoding(response.header("Content-Encoding"));
+        try {
+            if (statusLine.getStatusCode() >= 300)
+                throw new IOException(createServerReporterErrorMessage(statusLine, entity));
+            if (entity.getContentEncoding() != null && entity.getContentEncoding().getValue().equalsIgnoreCase("gzip"))
+                return new GzipDecompressingEntity(entity);
+            return entity;
+        }
+        catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
     private String getIpAddress(HttpContext context) {
         HttpConnection connection = (HttpConnection) context.getAttribute(ExecutionContext.HTTP_CONNECTION);
         if (connection instanceof HttpInetConnection) {
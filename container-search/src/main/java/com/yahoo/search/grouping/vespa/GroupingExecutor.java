@@ -10,9 +10,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
+import com.google.inject.Inject;
 import com.yahoo.component.ComponentId;
 import com.yahoo.component.chain.dependencies.After;
 import com.yahoo.component.chain.dependencies.Provides;
+import com.yahoo.jdisc.Metric;
 import com.yahoo.log.LogLevel;
 import com.yahoo.prelude.fastsearch.GroupingListHit;
 import com.yahoo.prelude.query.Item;
@@ -21,6 +23,7 @@ import com.yahoo.processing.request.CompoundName;
 import com.yahoo.search.Query;
 import com.yahoo.search.Result;
 import com.yahoo.search.Searcher;
+import com.yahoo.search.cache.QueryCacheKey;
 import com.yahoo.search.grouping.GroupingRequest;
 import com.yahoo.search.grouping.GroupingValidator;
 import com.yahoo.search.grouping.result.Group;
@@ -50,12 +53,21 @@ public class GroupingExecutor extends Searcher {
     private final static CompoundName PROP_GROUPINGLIST = newCompoundName(GROUPING_LIST);
     private final static Logger log = Logger.getLogger(GroupingExecutor.class.getName());
 
+    /**
+     * The query property setting the max age in seconds of a cached grouping result this query will accept.
+     * Grouping results are only cached and looked up when this is set to a positive value.
+     */
+    public final static CompoundName PROP_RESULT_CACHE_MAX_AGE = new CompoundName("groupingResultCacheMaxAge");
+
+    private final GroupingResultCache resultCache;
+
     /**
      * Constructs a new instance of this searcher without configuration.
      * This makes the searcher completely useless for searching purposes,
      * and should only be used for testing its logic.
      */
     GroupingExecutor() {
+        this.resultCache = createResultCache(null);
     }
 
     /**
@@ -64,7 +76,23 @@ public class GroupingExecutor extends Searcher {
      * @param componentId The identifier to assign to this searcher.
      */
     public GroupingExecutor(ComponentId componentId) {
+        this(componentId, null);
+    }
+
+    /**
+     * Constructs a new instance of this searcher with the given component id.
+     *
+     * @param componentId The identifier to assign to this searcher.
+     * @param metric      The metric receiving the hits and misses of the grouping result cache, or null if none.
+     */
+    @Inject
+    public GroupingExecutor(ComponentId componentId, Metric metric) {
         super(componentId);
+        this.resultCache = createResultCache(metric);
+    }
+
+    private static GroupingResultCache createResultCache(Metric metric) {
+        return new GroupingResultCache(64 * 1024 * 1024, 60 * 60 * 1000, metric);
     }
 
     @Override
@@ -84,8 +112,17 @@ public class GroupingExecutor extends Searcher {
 
         if (groupingMap.isEmpty()) return execution.search(query);
 
-        // Perform the necessary passes to execute grouping.
-        Result result = performSearch(query, execution, groupingMap);
+        // Perform the necessary passes to execute grouping, unless the grouping result is cached.
+        long cacheMaxAge = (long)(query.properties().getDouble(PROP_RESULT_CACHE_MAX_AGE, 0.0) * 1000);
+        QueryCacheKey cacheKey = null;
+        if (cacheMaxAge > 0 && GroupingResultCache.isCacheable(groupingMap.values()))
+            cacheKey = QueryCacheKey.of(query, groupingMap.values());
+        Result result = cacheKey == null ? null : searchCached(query, execution, cacheKey, cacheMaxAge, groupingMap);
+        if (result == null) {
+            result = performSearch(query, execution, groupingMap);
+            if (cacheKey != null)
+                resultCache.put(cacheKey, groupingMap, result);
+        }
 
         // Convert Vespa style results to hits.
         HitConverter hitConverter = new HitConverter(this, query);
@@ -189,6 +226,35 @@ public class GroupingExecutor extends Searcher {
         return builder.getRoot();
     }
 
+    /** Returns the grouping result cache of this. For testing. */
+    GroupingResultCache resultCache() { return resultCache; }
+
+    /**
+     * Returns the result of this query with the cached grouping results written to the given grouping map,
+     * or null if there is no usable cached grouping result. If no hits are requested, this does not
+     * search the back end at all.
+     */
+    private Result searchCached(Query query, Execution execution, QueryCacheKey cacheKey, long maxAge,
+                                Map<Integer, Grouping> groupingMap) {
+        GroupingResultCache.Entry cached = resultCache.get(cacheKey, maxAge);
+        if (cached == null) return null;
+
+        if (query.isTraceable(3)) {
+            query.trace("Using cached grouping result.", 3);
+        }
+        Result result;
+        if (query.getHits() == 0) {
+            result = new Result(query);
+            result.setTotalHitCount(cached.totalHitCount());
+            result.setCoverage(cached.coverage());
+        } else {
+            result = execution.search(query);
+        }
+        groupingMap.clear();
+        groupingMap.putAll(cached.groupings());
+        return result;
+    }
+
     /**
      * Performs the actual search passes to complete all the given {@link Grouping} requests. This method uses the
      * grouping map argument as both an input and an output variable, as the contained {@link Grouping} objects are
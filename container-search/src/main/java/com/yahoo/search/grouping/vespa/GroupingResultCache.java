@@ -0,0 +1,150 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.grouping.vespa;
+
+import com.yahoo.jdisc.Metric;
+import com.yahoo.search.Result;
+import com.yahoo.search.cache.QueryCacheKey;
+import com.yahoo.search.cache.QueryResultCache;
+import com.yahoo.search.result.Coverage;
+import com.yahoo.searchlib.aggregation.AggregationResult;
+import com.yahoo.searchlib.aggregation.Group;
+import com.yahoo.searchlib.aggregation.Grouping;
+import com.yahoo.searchlib.aggregation.GroupingLevel;
+import com.yahoo.searchlib.aggregation.HitsAggregationResult;
+import com.yahoo.vespa.objects.BufferSerializer;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A cache of the grouping results of queries, such that identical grouping requests - the same facets
+ * requested for a popular query, or a continuation page which is requested again - are served without
+ * any backend round trip.
+ *
+ * Only groupings which do not output document hits are cached, as hits refer to the backend result
+ * they were produced in. Cached groupings are cloned when added and when returned.
+ * Grouping results cached by one GroupingExecutor instance are never visible to another, such that
+ * reconfiguring the container starts with an empty cache.
+ *
+ * This class is multithread safe.
+ *
+ * @author agent
+ */
+class GroupingResultCache {
+
+    /** The prefix of the names of the metrics reported by this */
+    static final String metricPrefix = "grouping_result_cache";
+
+    /** The name of the metric counting lookups which returned a cached grouping result */
+    public static final String hitsMetricName = metricPrefix + QueryResultCache.hitsMetricSuffix;
+
+    /** The name of the metric counting lookups which did not return a cached grouping result */
+    public static final String missesMetricName = metricPrefix + QueryResultCache.missesMetricSuffix;
+
+    /** The name of the metric counting grouping results removed to make room for others */
+    public static final String evictionsMetricName = metricPrefix + QueryResultCache.evictionsMetricSuffix;
+
+    private final QueryResultCache<QueryCacheKey, Entry> cache;
+
+    /**
+     * Creates a grouping result cache
+     *
+     * @param capacity the max total serialized size of the cached groupings in bytes
+     * @param maxAge the max age of any cached result in milliseconds
+     * @param metric the metric to which hits, misses and evictions are reported, or null to not report them
+     */
+    GroupingResultCache(long capacity, long maxAge, Metric metric) {
+        this.cache = new QueryResultCache<>(capacity, maxAge, 10, metric, metricPrefix);
+    }
+
+    /** Returns the cached result for the given key if it is no older than the given max age, or null if none */
+    Entry get(QueryCacheKey key, long maxAge) {
+        Entry entry = cache.get(key);
+        if (entry == null) return null;
+        if (System.currentTimeMillis() - entry.timestamp > maxAge) return null;
+        return entry;
+    }
+
+    /**
+     * Caches the given groupings produced for a query unless the result is incomplete,
+     * i.e has errors or degraded coverage
+     */
+    void put(QueryCacheKey key, Map<Integer, Grouping> groupings, Result result) {
+        if (result.hits().getError() != null) return;
+        Coverage coverage = result.getCoverage(false);
+        if (coverage != null && coverage.isDegraded()) return;
+
+        Entry entry = new Entry(groupings, result.getTotalHitCount(), coverage, System.currentTimeMillis());
+        cache.put(key, entry, entry.size, entry.timestamp);
+    }
+
+    /** Returns the number of lookups which returned a cached result since this was created */
+    long hitCount() { return cache.hitCount(); }
+
+    /** Returns the number of lookups which did not return a cached result since this was created */
+    long missCount() { return cache.missCount(); }
+
+    /** Returns whether the results of the given grouping requests can be cached */
+    static boolean isCacheable(Collection<Grouping> groupings) {
+        for (Grouping grouping : groupings) {
+            if (outputsHits(grouping.getRoot())) return false;
+            for (GroupingLevel level : grouping.getLevels())
+                if (outputsHits(level.getGroupPrototype())) return false;
+        }
+        return true;
+    }
+
+    private static boolean outputsHits(Group group) {
+        for (AggregationResult result : group.getAggregationResults())
+            if (result instanceof HitsAggregationResult) return true;
+        return false;
+    }
+
+    private static int serializedSize(Collection<Grouping> groupings) {
+        BufferSerializer buffer = new BufferSerializer();
+        for (Grouping grouping : groupings)
+            grouping.serialize(buffer);
+        return buffer.position();
+    }
+
+    /** A cached grouping result */
+    static final class Entry {
+
+        private final Map<Integer, Grouping> groupings;
+        private final long totalHitCount;
+        private final Coverage coverage;
+        private final long timestamp;
+        private final int size;
+
+        private Entry(Map<Integer, Grouping> groupings, long totalHitCount, Coverage coverage, long timestamp) {
+            this.groupings = cloned(groupings);
+            this.totalHitCount = totalHitCount;
+            this.coverage = coverage == null ? null : copyOf(coverage);
+            this.timestamp = timestamp;
+            this.size = serializedSize(groupings.values());
+        }
+
+        /** Returns a private copy of the cached groupings, by id */
+        Map<Integer, Grouping> groupings() { return cloned(groupings); }
+
+        /** Returns the total hit count of the query producing this */
+        long totalHitCount() { return totalHitCount; }
+
+        /** Returns a private copy of the coverage of the query producing this, or null if it did not have coverage */
+        Coverage coverage() { return coverage == null ? null : copyOf(coverage); }
+
+        private static Map<Integer, Grouping> cloned(Map<Integer, Grouping> groupings) {
+            Map<Integer, Grouping> clone = new HashMap<>(groupings.size());
+            for (Map.Entry<Integer, Grouping> entry : groupings.entrySet())
+                clone.put(entry.getKey(), entry.getValue().clone());
+            return clone;
+        }
+
+        private static Coverage copyOf(Coverage coverage) {
+            return new Coverage(coverage.getDocs(), coverage.getActive(), coverage.getNodes());
+        }
+
+    }
+
+}
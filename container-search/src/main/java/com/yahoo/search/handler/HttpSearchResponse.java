@@ -9,6 +9,7 @@ import java.util.Map;
 import java.util.Optional;
 
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.yahoo.collections.ListMap;
 import com.yahoo.container.jdisc.ExtendedResponse;
 import com.yahoo.container.handler.Coverage;
@@ -25,6 +26,7 @@ import com.yahoo.processing.rendering.Renderer;
 import com.yahoo.search.Query;
 import com.yahoo.search.Result;
 import com.yahoo.search.query.context.QueryContext;
+import com.yahoo.search.statistics.LatencyBreakdown;
 
 /**
  * Wrap the result of a query as an HTTP response.
@@ -81,8 +83,16 @@ public class HttpSearchResponse extends ExtendedResponse {
                                                            OutputStream stream) throws IOException {
         SearchResponse.trimHits(result);
         SearchResponse.removeEmptySummaryFeatureFields(result);
-        return renderer.render(stream, result, query.getModel().getExecution(), query);
-
+        LatencyBreakdown breakdown = query.getLatencyBreakdown();
+        if (breakdown == null)
+            return renderer.render(stream, result, query.getModel().getExecution(), query);
+
+        long startTime = System.nanoTime();
+        ListenableFuture<Boolean> rendered = renderer.render(stream, result, query.getModel().getExecution(), query);
+        rendered.addListener(() -> breakdown.record(LatencyBreakdown.Phase.RENDER, renderer.getId().stringValue(),
+                                                    System.nanoTime() - startTime),
+                             MoreExecutors.directExecutor());
+        return rendered;
     }
 
     @Override
@@ -41,6 +41,7 @@ import com.yahoo.search.Query;
 import com.yahoo.search.Result;
 import com.yahoo.search.Searcher;
 import com.yahoo.search.config.IndexInfoConfig;
+import com.yahoo.search.query.parser.ParsedQueryCache;
 import com.yahoo.search.query.profile.QueryProfileRegistry;
 import com.yahoo.search.query.profile.compiled.CompiledQueryProfile;
 import com.yahoo.search.query.profile.compiled.CompiledQueryProfileRegistry;
@@ -107,6 +108,11 @@ public class SearchHandler extends LoggingRequestHandler {
     private final Linguistics linguistics;
 
     private final CompiledQueryProfileRegistry queryProfileRegistry;
+
+    /** The max number of parsed query trees to cache */
+    private static final int parsedQueryCacheSize = 10000;
+
+    private final ParsedQueryCache parsedQueryCache;
     
     /** If present, responses from this will set the HTTP response header with this key to the host name of this */
     private final Optional<String> hostResponseHeaderKey;
@@ -153,6 +159,7 @@ public class SearchHandler extends LoggingRequestHandler {
         this.queryProfileRegistry = queryProfileRegistry.compile();
 
         this.linguistics = linguistics;
+        this.parsedQueryCache = new ParsedQueryCache(parsedQueryCacheSize, metric);
         this.maxThreads = examineExecutor(executor);
 
         searchConnections = new Value(SEARCH_CONNECTIONS, statistics,
@@ -381,8 +388,9 @@ public class SearchHandler extends LoggingRequestHandler {
         if (query.getPresentation().getSummary() == null && renderer instanceof com.yahoo.search.rendering.Renderer)
             query.getPresentation().setSummary(((com.yahoo.search.rendering.Renderer) renderer).getDefaultSummaryClass());
 
-        Execution execution = new Execution(searchChain,
-                                            new Execution.Context(registry, indexFacts, specialTokens, rendererRegistry, linguistics));
+        Execution.Context context = new Execution.Context(registry, indexFacts, specialTokens, rendererRegistry, linguistics);
+        context.setParsedQueryCache(parsedQueryCache);
+        Execution execution = new Execution(searchChain, context);
         query.getModel().setExecution(execution);
         execution.trace().setForceTimestamps(query.properties().getBoolean(FORCE_TIMESTAMPS, false));
         if (query.properties().getBoolean(DETAILED_TIMING_LOGGING, false)) {
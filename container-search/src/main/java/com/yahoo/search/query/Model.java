@@ -11,6 +11,7 @@ import com.yahoo.prelude.query.textualrepresentation.TextualQueryRepresentation;
 import com.yahoo.processing.request.CompoundName;
 import com.yahoo.search.Query;
 import com.yahoo.search.query.parser.Parsable;
+import com.yahoo.search.query.parser.ParsedQueryCache;
 import com.yahoo.search.query.parser.Parser;
 import com.yahoo.search.query.parser.ParserEnvironment;
 import com.yahoo.search.query.parser.ParserFactory;
@@ -256,8 +257,16 @@ public class Model implements Cloneable {
      */
     public QueryTree getQueryTree() {
         if (queryTree == null) {
-            Parser parser = ParserFactory.newInstance(type, ParserEnvironment.fromExecutionContext(execution.context()));
-            queryTree = parser.parse(Parsable.fromQueryModel(this));
+            ParsedQueryCache cache = execution.context().getParsedQueryCache();
+            ParsedQueryCache.Key key = cache == null ? null : ParsedQueryCache.Key.of(this, execution.context());
+            if (key != null)
+                queryTree = cache.get(key);
+            if (queryTree == null) {
+                Parser parser = ParserFactory.newInstance(type, ParserEnvironment.fromExecutionContext(execution.context()));
+                queryTree = parser.parse(Parsable.fromQueryModel(this));
+                if (key != null)
+                    cache.put(key, queryTree);
+            }
             if (parent.getTraceLevel() >= 2) {
                 parent.trace("Query parsed to: " + parent.yqlRepresentation(), 2);
             }
@@ -0,0 +1,154 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.query.parser;
+
+import com.google.common.annotations.Beta;
+import com.yahoo.jdisc.Metric;
+import com.yahoo.language.Language;
+import com.yahoo.search.Query;
+import com.yahoo.search.cache.QueryResultCache;
+import com.yahoo.search.query.Model;
+import com.yahoo.search.query.QueryTree;
+import com.yahoo.search.searchchain.Execution;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A bounded cache of the query trees parsed from query strings, such that each distinct query string
+ * is only tokenized, segmented and parsed once as long as it stays in the cache.
+ * Query trees are cloned both when added to and when returned from this, so the cached trees are never
+ * visible to (and modified by) queries.
+ *
+ * The cache key contains everything the parsed tree depends on: The query string and filter, the query type,
+ * language, encoding, default index, sources and restricts, and the index facts, linguistics and special tokens
+ * used to parse. The latter are compared by identity, such that entries parsed using a previous
+ * configuration are never returned.
+ *
+ * This class is multithread safe.
+ *
+ * @author agent
+ */
+@Beta
+public class ParsedQueryCache {
+
+    /** The name of the metric counting lookups which returned a cached query tree */
+    public static final String hitsMetricName = "parsed_query_cache.hits";
+
+    /** The name of the metric counting lookups which did not return a cached query tree */
+    public static final String missesMetricName = "parsed_query_cache.misses";
+
+    private final QueryResultCache<Key, QueryTree> cache;
+
+    /** The metric receiving hits and misses, or null if none */
+    private final Metric metric;
+
+    /**
+     * Creates a parsed query cache
+     *
+     * @param maxEntries the max number of query trees to keep in this
+     * @param metric the metric to which hits and misses are reported, or null to not report them
+     */
+    public ParsedQueryCache(int maxEntries, Metric metric) {
+        this.cache = new QueryResultCache<>(maxEntries, Long.MAX_VALUE, 100);
+        this.metric = metric;
+    }
+
+    /** Returns a private copy of the query tree cached for the given key, or null if none */
+    public QueryTree get(Key key) {
+        QueryTree cached = cache.get(key);
+        if (metric != null)
+            metric.add(cached != null ? hitsMetricName : missesMetricName, 1, null);
+        return cached == null ? null : cached.clone();
+    }
+
+    /** Caches a copy of the given query tree, parsed with the given key */
+    public void put(Key key, QueryTree queryTree) {
+        cache.put(key, queryTree.clone(), 1, System.currentTimeMillis());
+    }
+
+    /** Returns the number of lookups which returned a cached query tree since this was created */
+    public long hitCount() { return cache.hitCount(); }
+
+    /** Returns the number of lookups which did not return a cached query tree since this was created */
+    public long missCount() { return cache.missCount(); }
+
+    /** Returns the number of query trees currently cached in this */
+    public int entryCount() { return cache.entryCount(); }
+
+    /** Removes all entries from this cache */
+    public void clear() { cache.clear(); }
+
+    /** The values which determine the query tree produced by parsing a query model */
+    public static final class Key {
+
+        private final String queryString;
+        private final String filter;
+        private final Query.Type type;
+        private final Language language;
+        private final String encoding;
+        private final String defaultIndex;
+        private final List<String> sources;
+        private final List<String> restrict;
+        private final Object indexFacts;
+        private final Object linguistics;
+        private final Object tokenRegistry;
+        private final int hashCode;
+
+        private Key(Model model, Execution.Context context) {
+            this.queryString = model.getQueryString();
+            this.filter = model.getFilter();
+            this.type = model.getType();
+            this.language = model.getLanguage();
+            this.encoding = model.getEncoding();
+            this.defaultIndex = model.getDefaultIndex();
+            this.sources = new ArrayList<>(model.getSources());
+            this.restrict = new ArrayList<>(model.getRestrict());
+            this.indexFacts = context.getIndexFacts();
+            this.linguistics = context.getLinguistics();
+            this.tokenRegistry = context.getTokenRegistry();
+            this.hashCode = Objects.hash(queryString, filter, type, language, encoding, defaultIndex, sources, restrict,
+                                         System.identityHashCode(indexFacts),
+                                         System.identityHashCode(linguistics),
+                                         System.identityHashCode(tokenRegistry));
+        }
+
+        /**
+         * Returns the key of the query tree parsed from the given model in the given context,
+         * or null if the tree parsed from this model cannot be cached
+         */
+        public static Key of(Model model, Execution.Context context) {
+            if (model.getType() == Query.Type.SELECT) return null; // parsed from the select structure
+            return new Key(model, context);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if ( ! (o instanceof Key)) return false;
+            Key other = (Key)o;
+            if (this.hashCode != other.hashCode) return false;
+            return this.indexFacts == other.indexFacts
+                   && this.linguistics == other.linguistics
+                   && this.tokenRegistry == other.tokenRegistry
+                   && this.type == other.type
+                   && this.language == other.language
+                   && Objects.equals(this.queryString, other.queryString)
+                   && Objects.equals(this.filter, other.filter)
+                   && Objects.equals(this.encoding, other.encoding)
+                   && Objects.equals(this.defaultIndex, other.defaultIndex)
+                   && this.sources.equals(other.sources)
+                   && this.restrict.equals(other.restrict);
+        }
+
+        @Override
+        public int hashCode() { return hashCode; }
+
+        @Override
+        public String toString() {
+            return "parsed query key: " + type + " query '" + queryString + "'";
+        }
+
+    }
+
+}
@@ -34,6 +34,12 @@ public class QueryProfileProperties extends Properties {
     /** Query profile references which has been overridden at runtime, or null if none. Earlier values has precedence */
     private List<Pair<CompoundName, CompiledQueryProfile>> references = null;
 
+    /**
+     * Whether values and references may be shared with clones of this and must be copied before they are modified.
+     * They are shared when values contains no cloneable objects.
+     */
+    private boolean shared = false;
+
     /** Creates an instance from a profile, throws an exception if the given profile is null */
     public QueryProfileProperties(CompiledQueryProfile profile) {
         Validator.ensureNotNull("The profile wrapped by this cannot be null", profile);
@@ -116,6 +122,7 @@ public class QueryProfileProperties extends Properties {
                     throw new IllegalArgumentException("Query profile '" + queryProfileId + "' is not found");
             }
 
+            ownValuesAndReferences();
             if (value instanceof CompiledQueryProfile) { // this will be due to one of the two clauses above
                 if (references == null)
                     references = new ArrayList<>();
@@ -247,11 +254,29 @@ public class QueryProfileProperties extends Properties {
         return unaliasedName;
     }
 
+    /** Copies the values and references of this if they may be shared with another instance */
+    private void ownValuesAndReferences() {
+        if ( ! shared) return;
+        if (values != null)
+            values = new HashMap<>(values);
+        if (references != null)
+            references = new ArrayList<>(references);
+        shared = false;
+    }
+
     @Override
     public QueryProfileProperties clone() {
         QueryProfileProperties clone = (QueryProfileProperties)super.clone();
-        if (this.values != null)
+        if (this.values != null && PropertyMap.hasCloneableValues(this.values)) {
             clone.values = PropertyMap.cloneMap(this.values);
+            if (this.references != null)
+                clone.references = new ArrayList<>(this.references);
+            clone.shared = false;
+        }
+        else {
+            this.shared = true;
+            clone.shared = true;
+        }
         return clone;
     }
 
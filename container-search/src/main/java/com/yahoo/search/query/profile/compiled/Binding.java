@@ -6,6 +6,7 @@ import com.yahoo.search.query.profile.DimensionBinding;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -78,6 +79,17 @@ public class Binding implements Comparable<Binding> {
     /** Returns true only if this binding is null (contains no values for its dimensions (if any) */
     public boolean isNull() { return dimensions.length == 0; }
 
+    /** Returns the dimensions which have a value in this */
+    List<String> dimensions() { return Collections.unmodifiableList(Arrays.asList(dimensions)); }
+
+    /** Returns the value of the given dimension in this, or null if this has no value for it */
+    String valueOf(String dimension) {
+        for (int i = 0; i < dimensions.length; i++) {
+            if (dimensions[i].equals(dimension)) return dimensionValues[i];
+        }
+        return null;
+    }
+
     @Override
     public String toString() {
         StringBuilder b = new StringBuilder("Binding[");
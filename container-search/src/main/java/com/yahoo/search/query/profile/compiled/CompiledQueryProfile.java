@@ -9,10 +9,13 @@ import com.yahoo.search.query.profile.QueryProfileProperties;
 import com.yahoo.search.query.profile.SubstituteString;
 import com.yahoo.search.query.profile.types.QueryProfileType;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -25,6 +28,9 @@ public class CompiledQueryProfile extends AbstractComponent implements Cloneable
 
     private static final Pattern namePattern=Pattern.compile("[$a-zA-Z_/][-$a-zA-Z0-9_/()]*");
 
+    /** The max number of distinct dimension value combinations to keep resolved values for */
+    private static final int maxResolvedContexts = 256;
+
     private final CompiledQueryProfileRegistry registry;
 
     /** The type of this, or null if none */
@@ -42,6 +48,12 @@ public class CompiledQueryProfile extends AbstractComponent implements Cloneable
     /** Values which are not overridable in this. Used as a set. */
     private final DimensionalMap<CompoundName, Object> unoverridables;
 
+    /** The dimensions the values of this vary by, in the order used to key resolved values */
+    private final String[] dimensions;
+
+    /** The values of this resolved for each combination of dimension values seen so far */
+    private final Map<List<String>, Map<CompoundName, Object>> resolvedValues = new ConcurrentHashMap<>();
+
     /**
      * Creates a new query profile from an id.
      */
@@ -60,6 +72,7 @@ public class CompiledQueryProfile extends AbstractComponent implements Cloneable
         this.types = types;
         this.references = references;
         this.unoverridables = unoverridables;
+        this.dimensions = entries.dimensions().stream().sorted().toArray(String[]::new);
         if ( ! id.isAnonymous())
             validateName(id.getName());
     }
@@ -129,6 +142,23 @@ public class CompiledQueryProfile extends AbstractComponent implements Cloneable
      * will return {"d" =&gt; "a.d-value","e" =&gt; "a.e-value"}
      */
     public Map<String, Object> listValues(CompoundName prefix, Map<String, String> context, Properties substitution) {
+        Map<CompoundName, Object> resolved = resolvedValues(context);
+        if (resolved == null) return listUnresolvedValues(prefix, context, substitution);
+
+        Map<String, Object> values = new HashMap<>();
+        for (Map.Entry<CompoundName, Object> entry : resolved.entrySet()) {
+            if ( entry.getKey().size() <= prefix.size()) continue;
+            if ( ! entry.getKey().hasPrefix(prefix)) continue;
+
+            Object value = substitute(entry.getValue(), context, substitution);
+            CompoundName suffixName = entry.getKey().rest(prefix.size());
+            values.put(suffixName.toString(), value);
+        }
+        return values;
+    }
+
+    /** Lists values by looking up only the entries having the given prefix, for contexts whose values are not cached */
+    private Map<String, Object> listUnresolvedValues(CompoundName prefix, Map<String, String> context, Properties substitution) {
         Map<String, Object> values = new HashMap<>();
         for (Map.Entry<CompoundName, DimensionalValue<Object>> entry : entries.entrySet()) {
             if ( entry.getKey().size() <= prefix.size()) continue;
@@ -154,7 +184,42 @@ public class CompiledQueryProfile extends AbstractComponent implements Cloneable
         return get(new CompoundName(name), context, substitution);
     }
     public final Object get(CompoundName name, Map<String, String> context, Properties substitution) {
-        return substitute(entries.get(name, context), context, substitution);
+        Map<CompoundName, Object> resolved = resolvedValues(context);
+        Object value = resolved != null ? resolved.get(name) : entries.get(name, context);
+        return substitute(value, context, substitution);
+    }
+
+    /**
+     * Returns the values of this in the given context. Values are resolved once for each combination of
+     * values of the dimensions of this, which is then reused for all contexts having the same combination.
+     * When values are already cached for the max number of combinations, this returns null for other combinations,
+     * whose values should then be looked up individually instead.
+     */
+    private Map<CompoundName, Object> resolvedValues(Map<String, String> context) {
+        if (context == null)
+            context = Collections.emptyMap();
+        String[] dimensionValues = new String[dimensions.length];
+        for (int i = 0; i < dimensions.length; i++)
+            dimensionValues[i] = context.get(dimensions[i]);
+        List<String> key = Arrays.asList(dimensionValues);
+
+        Map<CompoundName, Object> values = resolvedValues.get(key);
+        if (values != null) return values;
+        if (resolvedValues.size() >= maxResolvedContexts) return null; // don't grow unboundedly with arbitrary dimension values
+
+        values = resolve(context);
+        resolvedValues.putIfAbsent(key, values);
+        return values;
+    }
+
+    private Map<CompoundName, Object> resolve(Map<String, String> context) {
+        Map<CompoundName, Object> values = new HashMap<>();
+        for (Map.Entry<CompoundName, DimensionalValue<Object>> entry : entries.entrySet()) {
+            Object value = entry.getValue().get(context);
+            if (value != null)
+                values.put(entry.getKey(), value);
+        }
+        return Collections.unmodifiableMap(values);
     }
 
     private Object substitute(Object value, Map<String, String> context, Properties substitution) {
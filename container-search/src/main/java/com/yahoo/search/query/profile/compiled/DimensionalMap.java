@@ -5,6 +5,7 @@ import com.google.common.collect.ImmutableMap;
 import com.yahoo.search.query.profile.DimensionBinding;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -36,6 +37,14 @@ public class DimensionalMap<KEY, VALUE> {
         return values.entrySet();
     }
 
+    /** Returns the dimensions which some value in this varies by */
+    public Set<String> dimensions() {
+        Set<String> dimensions = new HashSet<>();
+        for (DimensionalValue<VALUE> value : values.values())
+            dimensions.addAll(value.dimensions());
+        return dimensions;
+    }
+
     /** Returns true if this is empty for all contexts. */
     public boolean isEmpty() {
         return values.isEmpty();
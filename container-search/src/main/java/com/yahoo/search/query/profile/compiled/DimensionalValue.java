@@ -18,11 +18,19 @@ import java.util.Set;
  */
 public class DimensionalValue<VALUE> {
 
+    /** Variant sets larger than this are looked up in a decision tree rather than by checking each variant */
+    private static final int maxLinearVariants = 8;
+
+    /** The variants of this, in the order of precedence */
     private final List<Value<VALUE>> values;
 
+    /** A decision tree over the dimension values of the variants, or null if the variants are checked in order */
+    private final VariantTree<VALUE> tree;
+
     /** Create a set of variants which is a single value regardless of dimensions */
     public DimensionalValue(Value<VALUE> value) {
         this.values = Collections.singletonList(value);
+        this.tree = null;
     }
 
     public DimensionalValue(List<Value<VALUE>> valueVariants) {
@@ -33,12 +41,15 @@ public class DimensionalValue<VALUE> {
             this.values = new ArrayList<>(valueVariants);
             Collections.sort(this.values);
         }
+        this.tree = values.size() > maxLinearVariants ? new VariantTree<>(values) : null;
     }
 
     /** Returns the value matching this context, or null if none */
     public VALUE get(Map<String, String> context) {
         if (context == null)
             context = Collections.emptyMap();
+        if (tree != null)
+            return tree.get(context);
         for (Value<VALUE> value : values) {
             if (value.matches(context))
                 return value.value();
@@ -46,6 +57,14 @@ public class DimensionalValue<VALUE> {
         return null;
     }
 
+    /** Returns the dimensions which some variant of this has a value for */
+    public Set<String> dimensions() {
+        Set<String> dimensions = new HashSet<>();
+        for (Value<VALUE> value : values)
+            dimensions.addAll(value.binding().dimensions());
+        return dimensions;
+    }
+
     public boolean isEmpty() { return values.isEmpty(); }
 
     @Override
@@ -156,4 +175,152 @@ public class DimensionalValue<VALUE> {
 
         }
     }
+
+    /**
+     * A decision tree over the dimension values of a list of variants, which returns the same variant as
+     * checking each in order would, without checking the variants which cannot match a context.
+     * Each level of the tree branches on the value of one dimension, such that variants having a value for
+     * that dimension are only reached through the branch of that value, while those having no value
+     * for it are reached through the wildcard branch.
+     */
+    private static class VariantTree<VALUE> {
+
+        /** Subtrees with no more variants than this are leaves */
+        private static final int maxLeafSize = 4;
+
+        private final Node<VALUE> root;
+
+        VariantTree(List<Value<VALUE>> values) {
+            Map<String, Integer> bindingCounts = new HashMap<>();
+            for (Value<VALUE> value : values)
+                for (String dimension : value.binding().dimensions())
+                    bindingCounts.merge(dimension, 1, Integer::sum);
+
+            // Branch on the dimensions bound in the most variants first as they partition the variants the most
+            List<String> dimensions = new ArrayList<>(bindingCounts.keySet());
+            dimensions.sort((a, b) -> bindingCounts.get(a).equals(bindingCounts.get(b))
+                                      ? a.compareTo(b)
+                                      : Integer.compare(bindingCounts.get(b), bindingCounts.get(a)));
+
+            List<IndexedValue<VALUE>> indexedValues = new ArrayList<>(values.size());
+            for (int i = 0; i < values.size(); i++)
+                indexedValues.add(new IndexedValue<>(i, values.get(i)));
+            root = Node.create(indexedValues, dimensions, 0);
+        }
+
+        VALUE get(Map<String, String> context) {
+            IndexedValue<VALUE> match = root.find(context, null);
+            return match == null ? null : match.value.value();
+        }
+
+        private static abstract class Node<VALUE> {
+
+            /** The lowest index (highest precedence) of the variants in this subtree */
+            final int minIndex;
+
+            Node(int minIndex) {
+                this.minIndex = minIndex;
+            }
+
+            /**
+             * Returns the first variant in this subtree matching the context if it precedes the given best match,
+             * and the given best match otherwise
+             */
+            abstract IndexedValue<VALUE> find(Map<String, String> context, IndexedValue<VALUE> best);
+
+            /** Returns whether no variant in this subtree can precede the given best match */
+            boolean cannotImprove(IndexedValue<VALUE> best) {
+                return best != null && best.index < minIndex;
+            }
+
+            /** Creates a node for a list of variants which are sorted by index */
+            static <VALUE> Node<VALUE> create(List<IndexedValue<VALUE>> values, List<String> dimensions, int depth) {
+                if (values.isEmpty()) return null;
+                if (values.size() <= maxLeafSize || depth == dimensions.size()) return new Leaf<>(values);
+
+                String dimension = dimensions.get(depth);
+                Map<String, List<IndexedValue<VALUE>>> valuesByDimensionValue = new HashMap<>();
+                List<IndexedValue<VALUE>> wildcardValues = new ArrayList<>();
+                for (IndexedValue<VALUE> value : values) {
+                    String dimensionValue = value.value.binding().valueOf(dimension);
+                    if (dimensionValue == null)
+                        wildcardValues.add(value);
+                    else
+                        valuesByDimensionValue.computeIfAbsent(dimensionValue, k -> new ArrayList<>()).add(value);
+                }
+                if (valuesByDimensionValue.isEmpty()) // not a useful branching
+                    return create(values, dimensions, depth + 1);
+
+                Map<String, Node<VALUE>> children = new HashMap<>();
+                for (Map.Entry<String, List<IndexedValue<VALUE>>> entry : valuesByDimensionValue.entrySet())
+                    children.put(entry.getKey(), create(entry.getValue(), dimensions, depth + 1));
+                return new Branch<>(values.get(0).index, dimension, children, create(wildcardValues, dimensions, depth + 1));
+            }
+
+        }
+
+        private static class Branch<VALUE> extends Node<VALUE> {
+
+            private final String dimension;
+            private final Map<String, Node<VALUE>> children;
+            private final Node<VALUE> wildcard;
+
+            Branch(int minIndex, String dimension, Map<String, Node<VALUE>> children, Node<VALUE> wildcard) {
+                super(minIndex);
+                this.dimension = dimension;
+                this.children = children;
+                this.wildcard = wildcard;
+            }
+
+            @Override
+            IndexedValue<VALUE> find(Map<String, String> context, IndexedValue<VALUE> best) {
+                if (cannotImprove(best)) return best;
+                String contextValue = context.get(dimension);
+                if (contextValue != null) {
+                    Node<VALUE> child = children.get(contextValue);
+                    if (child != null)
+                        best = child.find(context, best);
+                }
+                if (wildcard != null)
+                    best = wildcard.find(context, best);
+                return best;
+            }
+
+        }
+
+        private static class Leaf<VALUE> extends Node<VALUE> {
+
+            private final List<IndexedValue<VALUE>> values;
+
+            Leaf(List<IndexedValue<VALUE>> values) {
+                super(values.get(0).index);
+                this.values = new ArrayList<>(values);
+            }
+
+            @Override
+            IndexedValue<VALUE> find(Map<String, String> context, IndexedValue<VALUE> best) {
+                for (IndexedValue<VALUE> value : values) {
+                    if (best != null && best.index < value.index) return best;
+                    if (value.value.matches(context)) return value;
+                }
+                return best;
+            }
+
+        }
+
+        /** A variant and its position in the order of precedence */
+        private static class IndexedValue<VALUE> {
+
+            final int index;
+            final Value<VALUE> value;
+
+            IndexedValue(int index, Value<VALUE> value) {
+                this.index = index;
+                this.value = value;
+            }
+
+        }
+
+    }
+
 }
@@ -10,7 +10,8 @@ import java.util.HashMap;
  * A Map backing of Properties.
  * <p>
  * When this is cloned it will deep copy not only the model object map, but also each
- * clonable member inside the map.
+ * clonable member inside the map. If the map contains no clonable members it is instead shared
+ * with the clone until either of them is modified.
  * <p>
  * Subclassing is supported, a hook can be implemented to provide conditional inclusion in the map.
  * By default - all properties are accepted, so set is never propagated.
@@ -26,9 +27,12 @@ public class PropertyMap extends Properties {
     /** The properties of this */
     private Map<CompoundName, Object> properties = new LinkedHashMap<>();
 
+    /** Whether the properties map may be shared with clones of this and must be copied before it is modified */
+    private boolean shared = false;
+
     public void set(CompoundName name, Object value, Map<String,String> context) {
         if (shouldSet(name, value))
-            properties.put(name, value);
+            ownProperties().put(name, value);
         else
             super.set(name, value, context);
     }
@@ -50,12 +54,27 @@ public class PropertyMap extends Properties {
      * Returns a direct reference to the map containing the properties set in this instance.
      */
     public Map<CompoundName, Object> propertyMap() {
+        return ownProperties();
+    }
+
+    /** Returns the properties map of this, after copying it if it may be shared with another instance */
+    private Map<CompoundName, Object> ownProperties() {
+        if (shared) {
+            properties = new LinkedHashMap<>(properties);
+            shared = false;
+        }
         return properties;
     }
 
     @Override
     public PropertyMap clone() {
         PropertyMap clone = (PropertyMap)super.clone();
+        if ( ! cloneHelper.hasCloneableValues(this.properties)) {
+            this.shared = true;
+            clone.shared = true;
+            return clone;
+        }
+        clone.shared = false;
         clone.properties = new HashMap<>();
         for (Map.Entry<CompoundName, Object> entry : this.properties.entrySet()) {
             Object cloneValue = cloneHelper.clone(entry.getValue());
@@ -19,24 +19,28 @@ import java.util.Optional;
  */
 public class RankFeatures implements Cloneable {
 
-    private final Map<String, Object> features;
+    private Map<String, Object> features;
+
+    /** Whether the features map may be shared with clones of this and must be copied before it is modified */
+    private boolean shared;
 
     public RankFeatures() {
-        this(new LinkedHashMap<>());
+        this(new LinkedHashMap<>(), false);
     }
 
-    private RankFeatures(Map<String, Object> features) {
+    private RankFeatures(Map<String, Object> features, boolean shared) {
         this.features = features;
+        this.shared = shared;
     }
 
     /** Sets a rank feature by full name to a value */
     public void put(String name, String value) {
-        features.put(name, value);
+        ownFeatures().put(name, value);
     }
 
     /** Sets a tensor rank feature */
     public void put(String name, Tensor value) {
-        features.put(name, value);
+        ownFeatures().put(name, value);
     }
 
     /** Returns a rank feature as a string by full name or null if not set */
@@ -67,7 +71,16 @@ public class RankFeatures implements Cloneable {
      * Returns the map holding the features of this.
      * This map may be modified to change the rank features of the query.
      */
-    public Map<String, Object> asMap() { return features; }
+    public Map<String, Object> asMap() { return ownFeatures(); }
+
+    /** Returns the features of this, after copying them if they may be shared with another instance */
+    private Map<String, Object> ownFeatures() {
+        if (shared) {
+            features = new LinkedHashMap<>(features);
+            shared = false;
+        }
+        return features;
+    }
 
     public boolean isEmpty() {
         return features.isEmpty();
@@ -96,7 +109,7 @@ public class RankFeatures implements Cloneable {
             }
         }
         for (int i = 0; i < featuresToRemove.size(); ++i) {
-            rankProperties.put(propertiesToInsert.get(i), features.remove(featuresToRemove.get(i)));
+            rankProperties.put(propertiesToInsert.get(i), ownFeatures().remove(featuresToRemove.get(i)));
         }
     }
 
@@ -119,7 +132,9 @@ public class RankFeatures implements Cloneable {
 
     @Override
     public RankFeatures clone() {
-        return new RankFeatures(new LinkedHashMap<>(features));
+        // Features are strings and immutable tensors, so the map can be shared until either instance is modified
+        shared = true;
+        return new RankFeatures(features, true);
     }
 
     @Override
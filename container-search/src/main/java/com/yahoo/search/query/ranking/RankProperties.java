@@ -20,14 +20,18 @@ import java.util.Map;
  */
 public class RankProperties implements Cloneable {
 
-    private Map<String, List<Object>> properties = new LinkedHashMap<>();
+    private Map<String, List<Object>> properties;
+
+    /** Whether the properties may be shared with clones of this and must be copied before they are modified */
+    private boolean shared;
 
     public RankProperties() {
-        this(new LinkedHashMap<>());
+        this(new LinkedHashMap<>(), false);
     }
 
-    private RankProperties(Map<String, List<Object>> properties) {
+    private RankProperties(Map<String, List<Object>> properties, boolean shared) {
         this.properties = properties;
+        this.shared = shared;
     }
 
     public void put(String name, String value) {
@@ -36,7 +40,7 @@ public class RankProperties implements Cloneable {
 
     /** Adds a property by full name to a value */
     public void put(String name, Object value) {
-        List<Object> list = properties.get(name);
+        List<Object> list = ownProperties().get(name);
         if (list == null) {
             list = new ArrayList<>();
             properties.put(name, list);
@@ -63,7 +67,7 @@ public class RankProperties implements Cloneable {
 
     /** Removes all properties properties for a given name */
     public void remove(String name) {
-        properties.remove(name);
+        ownProperties().remove(name);
     }
 
     public boolean isEmpty() {
@@ -71,7 +75,19 @@ public class RankProperties implements Cloneable {
     }
 
     /** Returns a modifiable map of the properties of this */
-    public Map<String, List<Object>> asMap() { return properties; }
+    public Map<String, List<Object>> asMap() { return ownProperties(); }
+
+    /** Returns the properties of this, after copying them if they may be shared with another instance */
+    private Map<String, List<Object>> ownProperties() {
+        if (shared) {
+            Map<String, List<Object>> copy = new LinkedHashMap<>();
+            for (Map.Entry<String, List<Object>> entry : properties.entrySet())
+                copy.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            properties = copy;
+            shared = false;
+        }
+        return properties;
+    }
 
     /** Encodes this in a binary internal representation and returns the number of property maps encoded (0 or 1) */
     public int encode(ByteBuffer buffer, boolean encodeQueryData) {
@@ -100,10 +116,9 @@ public class RankProperties implements Cloneable {
 
     @Override
     public RankProperties clone() {
-        Map<String, List<Object>> clone = new LinkedHashMap<>();
-        for (Map.Entry<String, List<Object>> entry : properties.entrySet())
-            clone.put(entry.getKey(), new ArrayList<>(entry.getValue()));
-        return new RankProperties(clone);
+        // The lists of values are copied along with the map when either instance is modified
+        shared = true;
+        return new RankProperties(properties, true);
     }
 
     @Override
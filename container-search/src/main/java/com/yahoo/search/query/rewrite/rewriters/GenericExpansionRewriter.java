@@ -96,6 +96,13 @@ public class GenericExpansionRewriter extends QueryRewriteSearcher {
         // Return all matches instead of only the longest match
         phraseMatcher.setMatchAll(true);
 
+        // Find all matches in a single pass over the query words
+        try {
+            phraseMatcher.setSinglePassMatching(true);
+        } catch (IllegalArgumentException e) {
+            RewriterUtils.log(logger, "Matching phrases from each query word: " + e.getMessage());
+        }
+
         return true;
     }
 
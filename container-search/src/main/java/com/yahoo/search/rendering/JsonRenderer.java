@@ -4,15 +4,15 @@ package com.yahoo.search.rendering;
 import com.fasterxml.jackson.core.JsonEncoding;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
 import com.fasterxml.jackson.core.TreeNode;
+import com.fasterxml.jackson.core.io.CharacterEscapes;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Preconditions;
 import com.yahoo.data.JsonProducer;
 import com.yahoo.data.access.Inspectable;
 import com.yahoo.data.access.Inspector;
 import com.yahoo.data.access.Type;
-import com.yahoo.data.access.simple.JsonRender;
-import com.yahoo.data.access.simple.Value;
 import com.yahoo.document.datatypes.FieldValue;
 import com.yahoo.document.datatypes.StringFieldValue;
 import com.yahoo.document.datatypes.TensorFieldValue;
@@ -60,7 +60,9 @@ import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -80,36 +82,36 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
     private static final CompoundName JSON_CALLBACK = new CompoundName("jsoncallback");
 
     // if this must be optimized, simply use com.fasterxml.jackson.core.SerializableString
-    private static final String BUCKET_LIMITS = "limits";
-    private static final String BUCKET_TO = "to";
-    private static final String BUCKET_FROM = "from";
-    private static final String CHILDREN = "children";
-    private static final String CONTINUATION = "continuation";
-    private static final String COVERAGE = "coverage";
-    private static final String COVERAGE_COVERAGE = "coverage";
-    private static final String COVERAGE_DOCUMENTS = "documents";
-    private static final String COVERAGE_DEGRADE = "degraded";
-    private static final String COVERAGE_DEGRADE_MATCHPHASE = "match-phase";
-    private static final String COVERAGE_DEGRADE_TIMEOUT = "timeout";
-    private static final String COVERAGE_DEGRADE_ADAPTIVE_TIMEOUT = "adaptive-timeout";
-    private static final String COVERAGE_DEGRADED_NON_IDEAL_STATE = "non-ideal-state";
-    private static final String COVERAGE_FULL = "full";
-    private static final String COVERAGE_NODES = "nodes";
-    private static final String COVERAGE_RESULTS = "results";
-    private static final String COVERAGE_RESULTS_FULL = "resultsFull";
-    private static final String ERRORS = "errors";
-    private static final String ERROR_CODE = "code";
-    private static final String ERROR_MESSAGE = "message";
-    private static final String ERROR_SOURCE = "source";
+    static final String BUCKET_LIMITS = "limits";
+    static final String BUCKET_TO = "to";
+    static final String BUCKET_FROM = "from";
+    static final String CHILDREN = "children";
+    static final String CONTINUATION = "continuation";
+    static final String COVERAGE = "coverage";
+    static final String COVERAGE_COVERAGE = "coverage";
+    static final String COVERAGE_DOCUMENTS = "documents";
+    static final String COVERAGE_DEGRADE = "degraded";
+    static final String COVERAGE_DEGRADE_MATCHPHASE = "match-phase";
+    static final String COVERAGE_DEGRADE_TIMEOUT = "timeout";
+    static final String COVERAGE_DEGRADE_ADAPTIVE_TIMEOUT = "adaptive-timeout";
+    static final String COVERAGE_DEGRADED_NON_IDEAL_STATE = "non-ideal-state";
+    static final String COVERAGE_FULL = "full";
+    static final String COVERAGE_NODES = "nodes";
+    static final String COVERAGE_RESULTS = "results";
+    static final String COVERAGE_RESULTS_FULL = "resultsFull";
+    static final String ERRORS = "errors";
+    static final String ERROR_CODE = "code";
+    static final String ERROR_MESSAGE = "message";
+    static final String ERROR_SOURCE = "source";
     private static final String ERROR_STACK_TRACE = "stackTrace";
-    private static final String ERROR_SUMMARY = "summary";
-    private static final String FIELDS = "fields";
-    private static final String ID = "id";
-    private static final String LABEL = "label";
-    private static final String RELEVANCE = "relevance";
-    private static final String ROOT = "root";
-    private static final String SOURCE = "source";
-    private static final String TOTAL_COUNT = "totalCount";
+    static final String ERROR_SUMMARY = "summary";
+    static final String FIELDS = "fields";
+    static final String ID = "id";
+    static final String LABEL = "label";
+    static final String RELEVANCE = "relevance";
+    static final String ROOT = "root";
+    static final String SOURCE = "source";
+    static final String TOTAL_COUNT = "totalCount";
     private static final String TRACE = "trace";
     private static final String TRACE_CHILDREN = "children";
     private static final String TRACE_MESSAGE = "message";
@@ -118,9 +120,9 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
     private static final String QUERY_TIME = "querytime";
     private static final String SUMMARY_FETCH_TIME = "summaryfetchtime";
     private static final String SEARCH_TIME = "searchtime";
-    private static final String TYPES = "types";
-    private static final String GROUPING_VALUE = "value";
-    private static final String VESPA_HIDDEN_FIELD_PREFIX = "$";
+    static final String TYPES = "types";
+    static final String GROUPING_VALUE = "value";
+    static final String VESPA_HIDDEN_FIELD_PREFIX = "$";
 
     private final JsonFactory generatorFactory;
 
@@ -551,15 +553,15 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
         }
     }
 
-    private static String getIdValue(ValueGroupId<?> id) {
+    static String getIdValue(ValueGroupId<?> id) {
         return (id instanceof RawId ? Arrays.toString(((RawId) id).getValue()) : id.getValue()).toString();
     }
 
-    private static String getBucketFrom(BucketGroupId<?> id) {
+    static String getBucketFrom(BucketGroupId<?> id) {
         return (id instanceof RawBucketId ? Arrays.toString(((RawBucketId) id).getFrom()) : id.getFrom()).toString();
     }
 
-    private static String getBucketTo(BucketGroupId<?> id) {
+    static String getBucketTo(BucketGroupId<?> id) {
         return (id instanceof RawBucketId ? Arrays.toString(((RawBucketId) id).getTo()) : id.getTo()).toString();
     }
 
@@ -660,6 +662,37 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
         this.timeSource = timeSource;
     }
 
+    /** Returns whether this is an array of key/value objects, which is rendered as a JSON object */
+    static boolean isMap(Inspector data) {
+        if (data.type() != Type.ARRAY) return false;
+        if (data.entryCount() == 0) return false;
+        for (int i = 0; i < data.entryCount(); i++) {
+            Inspector obj = data.entry(i);
+            if (obj.type() != Type.OBJECT) return false;
+            if (obj.fieldCount() != 2) return false;
+            if (obj.field("key").type() != Type.STRING) return false;
+            if ( ! obj.field("value").valid()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the entries of the given key/value array with the value of each repeated key replaced by its last value,
+     * or null if no key is repeated
+     */
+    static Map<String, Inspector> collapsedMapEntries(Inspector data) {
+        Set<String> keys = new HashSet<>();
+        for (int i = 0; i < data.entryCount(); i++) {
+            if (keys.add(data.entry(i).field("key").asString())) continue;
+
+            Map<String, Inspector> entries = new LinkedHashMap<>();
+            for (int j = 0; j < data.entryCount(); j++)
+                entries.put(data.entry(j).field("key").asString(), data.entry(j).field("value"));
+            return entries;
+        }
+        return null;
+    }
+
     /**
      * Received callbacks when fields of hits are encountered.
      * This instance is reused for all hits of a Result since we are in a single-threaded context
@@ -744,32 +777,133 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
             return true;
         }
 
-        private static Inspector wrapAsMap(Inspector data) {
-            if (data.type() != Type.ARRAY) return null;
-            if (data.entryCount() == 0) return null;
-            Value.ObjectValue map = new Value.ObjectValue();
-            for (int i = 0; i < data.entryCount(); i++) {
-                Inspector obj = data.entry(i);
-                if (obj.type() != Type.OBJECT) return null;
-                if (obj.fieldCount() != 2) return null;
-                Inspector key = obj.field("key");
-                Inspector value = obj.field("value");
-                if (key.type() != Type.STRING) return null;
-                if (! value.valid()) return null;
-                map.put(key.asString(), value);
+        /**
+         * Renders the data directly to the generator, producing the same JSON as the JsonRender of the data:
+         * Strings and names have all characters outside printable ASCII escaped, and an array of key/value
+         * objects is rendered as an object where the last value of a repeated key is used.
+         * ASCII strings are written as the utf-8 bytes held by the inspector, such that they are
+         * copied from the backend response buffer to the output without creating intermediate Java objects.
+         */
+        private void renderInspector(Inspector data) throws IOException {
+            int highestNonEscapedChar = generator.getHighestEscapedChar();
+            CharacterEscapes characterEscapes = generator.getCharacterEscapes();
+            generator.setHighestNonEscapedChar(126);
+            generator.setCharacterEscapes(jsonRenderEscapes);
+            try {
+                if (isMap(data)) {
+                    generator.writeStartObject();
+                    Map<String, Inspector> entries = collapsedMapEntries(data);
+                    if (entries == null) {
+                        for (int i = 0; i < data.entryCount(); i++) {
+                            Inspector entry = data.entry(i);
+                            generator.writeFieldName(entry.field("key").asString());
+                            renderInspectorValue(entry.field("value"));
+                        }
+                    }
+                    else {
+                        for (Map.Entry<String, Inspector> entry : entries.entrySet()) {
+                            generator.writeFieldName(entry.getKey());
+                            renderInspectorValue(entry.getValue());
+                        }
+                    }
+                    generator.writeEndObject();
+                } else {
+                    renderInspectorValue(data);
+                }
+            }
+            finally {
+                generator.setHighestNonEscapedChar(highestNonEscapedChar);
+                generator.setCharacterEscapes(characterEscapes);
             }
-            return map;
         }
 
-        private void renderInspector(Inspector data) throws IOException {
-            StringBuilder intermediate = new StringBuilder();
-            Inspector asMap = wrapAsMap(data);
-            if (asMap != null) {
-                JsonRender.render(asMap, intermediate, true);
-            } else {
-                JsonRender.render(data, intermediate, true);
+        private void renderInspectorValue(Inspector data) throws IOException {
+            switch (data.type()) {
+                case EMPTY:
+                    generator.writeNull();
+                    break;
+                case BOOL:
+                    generator.writeBoolean(data.asBool());
+                    break;
+                case LONG:
+                    generator.writeNumber(data.asLong());
+                    break;
+                case DOUBLE:
+                    double value = data.asDouble();
+                    if (Double.isFinite(value))
+                        generator.writeNumber(value);
+                    else
+                        generator.writeNull();
+                    break;
+                case STRING:
+                    byte[] utf8 = data.asUtf8();
+                    if (isAscii(utf8))
+                        generator.writeUTF8String(utf8, 0, utf8.length);
+                    else
+                        generator.writeString(data.asString()); // escaped by the generator
+                    break;
+                case DATA:
+                    generator.writeString(toHexString(data.asData()));
+                    break;
+                case ARRAY:
+                    generator.writeStartArray();
+                    for (int i = 0; i < data.entryCount(); i++)
+                        renderInspectorValue(data.entry(i));
+                    generator.writeEndArray();
+                    break;
+                case OBJECT:
+                    generator.writeStartObject();
+                    for (Map.Entry<String, Inspector> field : data.fields()) {
+                        generator.writeFieldName(field.getKey());
+                        renderInspectorValue(field.getValue());
+                    }
+                    generator.writeEndObject();
+                    break;
+            }
+        }
+
+        /**
+         * Returns whether the given utf-8 string is ASCII. Only non-ASCII characters must be written as a string
+         * to be escaped by the generator.
+         */
+        private static boolean isAscii(byte[] utf8) {
+            for (byte b : utf8)
+                if (b < 0) return false;
+            return true;
+        }
+
+        private static final CharacterEscapes jsonRenderEscapes = new JsonRenderEscapes();
+
+        /** The standard escapes, and DEL, which like all other characters outside printable ASCII is escaped by JsonRender */
+        private static class JsonRenderEscapes extends CharacterEscapes {
+
+            private final int[] asciiEscapes;
+
+            JsonRenderEscapes() {
+                asciiEscapes = standardAsciiEscapesForJSON();
+                asciiEscapes[0x7f] = ESCAPE_STANDARD;
+            }
+
+            @Override
+            public int[] getEscapeCodesForAscii() { return asciiEscapes; }
+
+            @Override
+            public SerializableString getEscapeSequence(int ch) { return null; }
+
+        }
+
+        private static final char[] hexDigits = "0123456789ABCDEF".toCharArray();
+
+        /** Renders raw data as "0x" followed by upper case hex digits, as done by JsonRender */
+        private static String toHexString(byte[] data) {
+            char[] hex = new char[2 + data.length * 2];
+            hex[0] = '0';
+            hex[1] = 'x';
+            for (int i = 0; i < data.length; i++) {
+                hex[2 + i * 2] = hexDigits[(data[i] >> 4) & 0xf];
+                hex[3 + i * 2] = hexDigits[data[i] & 0xf];
             }
-            generator.writeRawValue(intermediate.toString());
+            return new String(hex);
         }
 
         private void renderFieldContents(Object field) throws IOException {
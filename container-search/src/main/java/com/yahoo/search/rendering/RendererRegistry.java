@@ -25,6 +25,7 @@ public final class RendererRegistry extends ComponentRegistry<com.yahoo.processi
 
     public static final ComponentId xmlRendererId = ComponentId.fromString("DefaultRenderer");
     public static final ComponentId jsonRendererId = ComponentId.fromString("JsonRenderer");
+    public static final ComponentId slimeRendererId = ComponentId.fromString("SlimeRenderer");
     public static final ComponentId defaultRendererId = jsonRendererId;
     
     private final ComponentId tiledRendererId;
@@ -64,6 +65,11 @@ public final class RendererRegistry extends ComponentRegistry<com.yahoo.processi
         xmlRenderer.initId(xmlRendererId);
         register(xmlRenderer.getId(), xmlRenderer);
 
+        // Add binary slime renderer
+        Renderer slimeRenderer = new SlimeRenderer(executor);
+        slimeRenderer.initId(slimeRendererId);
+        register(slimeRenderer.getId(), slimeRenderer);
+
         // add application renderers
         for (Renderer renderer : renderers)
             register(renderer.getId(), renderer);
@@ -80,6 +86,7 @@ public final class RendererRegistry extends ComponentRegistry<com.yahoo.processi
         // deconstruct the renderers which was created by this
         getRenderer(jsonRendererId.toSpecification()).deconstruct();
         getRenderer(xmlRendererId.toSpecification()).deconstruct();
+        getRenderer(slimeRendererId.toSpecification()).deconstruct();
         getRenderer(tiledRendererId.toSpecification()).deconstruct();
         getRenderer(pageRendererId.toSpecification()).deconstruct();
     }
@@ -113,6 +120,7 @@ public final class RendererRegistry extends ComponentRegistry<com.yahoo.processi
         if (format == null || format.stringValue().equals("default")) return getDefaultRenderer();
         if (format.stringValue().equals("json")) return getComponent(jsonRendererId);
         if (format.stringValue().equals("xml")) return getComponent(xmlRendererId);
+        if (format.stringValue().equals("slime")) return getComponent(slimeRendererId);
 
         com.yahoo.processing.rendering.Renderer<Result> renderer = getComponent(format);
         if (renderer == null)
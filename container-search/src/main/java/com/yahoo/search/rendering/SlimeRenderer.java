@@ -0,0 +1,453 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.rendering;
+
+import com.fasterxml.jackson.core.TreeNode;
+import com.google.common.base.Preconditions;
+import com.yahoo.data.JsonProducer;
+import com.yahoo.data.access.Inspectable;
+import com.yahoo.data.access.Inspector;
+import com.yahoo.data.access.slime.SlimeAdapter;
+import com.yahoo.processing.Response;
+import com.yahoo.processing.rendering.AsynchronousSectionedRenderer;
+import com.yahoo.processing.request.CompoundName;
+import com.yahoo.processing.response.Data;
+import com.yahoo.processing.response.DataList;
+import com.yahoo.search.Result;
+import com.yahoo.search.grouping.Continuation;
+import com.yahoo.search.grouping.result.AbstractList;
+import com.yahoo.search.grouping.result.BucketGroupId;
+import com.yahoo.search.grouping.result.Group;
+import com.yahoo.search.grouping.result.GroupId;
+import com.yahoo.search.grouping.result.RootGroup;
+import com.yahoo.search.grouping.result.ValueGroupId;
+import com.yahoo.search.result.Coverage;
+import com.yahoo.search.result.DefaultErrorHit;
+import com.yahoo.search.result.ErrorHit;
+import com.yahoo.search.result.ErrorMessage;
+import com.yahoo.search.result.Hit;
+import com.yahoo.search.result.HitGroup;
+import com.yahoo.search.result.NanNumber;
+import com.yahoo.slime.BinaryFormat;
+import com.yahoo.slime.Cursor;
+import com.yahoo.slime.JsonDecoder;
+import com.yahoo.slime.Slime;
+import com.yahoo.text.Utf8;
+import com.yahoo.vespa.config.SlimeUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static com.yahoo.search.rendering.JsonRenderer.*;
+
+/**
+ * Renders search results as binary Slime, selected by format=slime. This produces the same tree as
+ * the {@link JsonRenderer}, but is cheaper to produce and to decode for clients which are able to read Slime.
+ *
+ * As the binary format writes the symbol table of all field names before any values, a result is written
+ * as a sequence of frames, each consisting of the length of the frame as a 4 byte big endian integer followed
+ * by a binary Slime: The first frame contains the root object without its children, and each following frame
+ * contains one child of the root, which is written as soon as it is complete. {@link #decode} assembles
+ * the frames into the tree rendered by the JSON renderer.
+ *
+ * Field values which are neither primitives, strings nor structured data (such as tensors and document api
+ * field values) are rendered as their string representation. Values which produce JSON are decoded
+ * into Slime structures. Trace and timing information is not rendered.
+ *
+ * @author agent
+ */
+public class SlimeRenderer extends AsynchronousSectionedRenderer<Result> {
+
+    private static final CompoundName DEBUG_RENDERING_KEY = new CompoundName("renderer.slime.debug");
+
+    private OutputStream stream;
+    /** The frame containing the child of the root which is currently being rendered */
+    private Slime frame;
+    /** The cursors of the hit groups which are currently being rendered, innermost first */
+    private Deque<Cursor> openGroups;
+    private FieldConsumer fieldConsumer;
+
+    public SlimeRenderer() {
+        this(null);
+    }
+
+    /**
+     * Creates a slime renderer using a custom executor.
+     * Using a custom executor is useful for tests to avoid creating new threads for each renderer registry.
+     */
+    public SlimeRenderer(Executor executor) {
+        super(executor);
+    }
+
+    @Override
+    public void init() {
+        super.init();
+        stream = null;
+        frame = null;
+        openGroups = null;
+        fieldConsumer = null;
+    }
+
+    @Override
+    public void beginResponse(OutputStream stream) throws IOException {
+        this.stream = stream;
+        this.openGroups = new ArrayDeque<>();
+        this.fieldConsumer = new FieldConsumer(getResult().getQuery().properties().getBoolean(DEBUG_RENDERING_KEY, false));
+    }
+
+    @Override
+    public void beginList(DataList<?> list) throws IOException {
+        Preconditions.checkArgument(list instanceof HitGroup,
+                                    "Expected subclass of com.yahoo.search.result.HitGroup, got %s.",
+                                    list.getClass());
+        HitGroup hitGroup = (HitGroup)list;
+        Slime rootFrame = openGroups.isEmpty() ? new Slime() : null;
+        Cursor group = rootFrame != null ? rootFrame.setObject().setObject(ROOT) : addChild();
+        openGroups.push(group);
+
+        renderHitContents(group, hitGroup);
+        if (getRecursionLevel() == 1)
+            renderCoverage(group);
+
+        ErrorHit errorHit = hitGroup.getErrorHit();
+        if (errorHit != null)
+            renderErrors(group, errorHit);
+
+        if (rootFrame != null)
+            write(rootFrame);
+    }
+
+    @Override
+    public void data(Data data) throws IOException {
+        Preconditions.checkArgument(data instanceof Hit,
+                                    "Expected subclass of com.yahoo.search.result.Hit, got %s.",
+                                    data.getClass());
+        if (data instanceof DefaultErrorHit) return;
+        renderHitContents(addChild(), (Hit)data);
+        if (openGroups.size() == 1)
+            write(frame);
+    }
+
+    @Override
+    public void endList(DataList<?> list) throws IOException {
+        openGroups.pop();
+        if (openGroups.size() == 1)
+            write(frame);
+    }
+
+    @Override
+    public void endResponse() throws IOException {
+        // each frame is written when it is complete
+    }
+
+    @Override
+    public String getEncoding() {
+        return null;
+    }
+
+    @Override
+    public String getMimeType() {
+        return "application/x-vespa-slime";
+    }
+
+    /** Returns a new object for a child of the innermost open group. Children of the root are added to a new frame */
+    private Cursor addChild() {
+        if (openGroups.size() == 1) {
+            frame = new Slime();
+            return frame.setObject();
+        }
+        Cursor group = openGroups.peek();
+        Cursor children = group.field(CHILDREN);
+        return (children.valid() ? children : group.setArray(CHILDREN)).addObject();
+    }
+
+    private void write(Slime frame) throws IOException {
+        byte[] bytes = BinaryFormat.encode(frame);
+        stream.write(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        stream.write(bytes);
+    }
+
+    /**
+     * Decodes a result rendered by this into the tree produced by the JSON renderer,
+     * where the children of the root are in the "children" array of the root object.
+     *
+     * @throws IllegalArgumentException if the data is not a complete result rendered by this
+     */
+    public static Slime decode(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        Slime result = null;
+        Cursor children = null;
+        while (buffer.hasRemaining()) {
+            if (buffer.remaining() < 4)
+                throw new IllegalArgumentException("Incomplete frame length at position " + buffer.position());
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining())
+                throw new IllegalArgumentException("Frame of length " + length + " at position " + buffer.position() +
+                                                   " exceeds the " + buffer.remaining() + " remaining bytes");
+            Slime frame = BinaryFormat.decode(data, buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            if (result == null) {
+                result = frame;
+            }
+            else {
+                if (children == null)
+                    children = result.get().field(ROOT).setArray(CHILDREN);
+                SlimeUtils.copyObject(frame.get(), children.addObject());
+            }
+        }
+        if (result == null)
+            throw new IllegalArgumentException("No frames in the given data");
+        return result;
+    }
+
+    private void renderHitContents(Cursor cursor, Hit hit) {
+        String id = hit.getDisplayId();
+        if (id != null)
+            cursor.setString(ID, id);
+
+        cursor.setDouble(RELEVANCE, hit.getRelevance().getScore());
+
+        if (hit.types().size() > 0) { // TODO: Remove types rendering on Vespa 7
+            Cursor types = cursor.setArray(TYPES);
+            for (String type : hit.types())
+                types.addString(type);
+        }
+
+        String source = hit.getSource();
+        if (source != null)
+            cursor.setString(SOURCE, source);
+
+        if (hit instanceof AbstractList)
+            renderGroupingListFields(cursor, (AbstractList)hit);
+        else if (hit instanceof Group)
+            renderGroupingGroupFields(cursor, (Group)hit);
+
+        fieldConsumer.startHitFields(cursor);
+        if (getRecursionLevel() == 1 && hit instanceof HitGroup)
+            fieldConsumer.fields().setLong(TOTAL_COUNT, getResult().getTotalHitCount());
+        hit.forEachFieldAsRaw(fieldConsumer);
+    }
+
+    private void renderGroupingListFields(Cursor cursor, AbstractList list) {
+        cursor.setString(LABEL, list.getLabel());
+        renderContinuations(cursor, list.continuations());
+    }
+
+    private void renderGroupingGroupFields(Cursor cursor, Group group) {
+        GroupId id = group.getGroupId();
+        if (id instanceof ValueGroupId) {
+            cursor.setString(GROUPING_VALUE, getIdValue((ValueGroupId<?>)id));
+        } else if (id instanceof BucketGroupId) {
+            Cursor limits = cursor.setObject(BUCKET_LIMITS);
+            limits.setString(BUCKET_FROM, getBucketFrom((BucketGroupId<?>)id));
+            limits.setString(BUCKET_TO, getBucketTo((BucketGroupId<?>)id));
+        }
+        if (group instanceof RootGroup)
+            renderContinuations(cursor, Collections.singletonMap(Continuation.THIS_PAGE, ((RootGroup)group).continuation()));
+    }
+
+    private void renderContinuations(Cursor cursor, Map<String, Continuation> continuations) {
+        if (continuations.isEmpty()) return;
+
+        Cursor continuationObject = cursor.setObject(CONTINUATION);
+        for (Map.Entry<String, Continuation> entry : continuations.entrySet())
+            continuationObject.setString(entry.getKey(), entry.getValue().toString());
+    }
+
+    private void renderCoverage(Cursor cursor) {
+        Coverage coverage = getResult().getCoverage(false);
+        if (coverage == null) return;
+
+        Cursor coverageObject = cursor.setObject(COVERAGE);
+        coverageObject.setLong(COVERAGE_COVERAGE, coverage.getResultPercentage());
+        coverageObject.setLong(COVERAGE_DOCUMENTS, coverage.getDocs());
+        if (coverage.isDegraded()) {
+            Cursor degraded = coverageObject.setObject(COVERAGE_DEGRADE);
+            degraded.setBool(COVERAGE_DEGRADE_MATCHPHASE, coverage.isDegradedByMatchPhase());
+            degraded.setBool(COVERAGE_DEGRADE_TIMEOUT, coverage.isDegradedByTimeout());
+            degraded.setBool(COVERAGE_DEGRADE_ADAPTIVE_TIMEOUT, coverage.isDegradedByAdapativeTimeout());
+            degraded.setBool(COVERAGE_DEGRADED_NON_IDEAL_STATE, coverage.isDegradedByNonIdealState());
+        }
+        coverageObject.setBool(COVERAGE_FULL, coverage.getFull());
+        coverageObject.setLong(COVERAGE_NODES, coverage.getNodes());
+        coverageObject.setLong(COVERAGE_RESULTS, coverage.getResultSets());
+        coverageObject.setLong(COVERAGE_RESULTS_FULL, coverage.getFullResultSets());
+    }
+
+    private void renderErrors(Cursor cursor, ErrorHit errorHit) {
+        if (errorHit.errors().isEmpty()) return;
+
+        Cursor errors = cursor.setArray(ERRORS);
+        for (ErrorMessage error : errorHit.errors()) {
+            Cursor errorObject = errors.addObject();
+            errorObject.setLong(ERROR_CODE, error.getCode());
+            errorObject.setString(ERROR_SUMMARY, error.getMessage());
+            if (error.getSource() != null)
+                errorObject.setString(ERROR_SOURCE, error.getSource());
+            if (error.getDetailedMessage() != null)
+                errorObject.setString(ERROR_MESSAGE, error.getDetailedMessage());
+        }
+    }
+
+    private Result getResult() {
+        Response r = getResponse();
+        Preconditions.checkArgument(r instanceof Result,
+                                    "SlimeRenderer can only render instances of com.yahoo.search.Result, got instance of %s.",
+                                    r.getClass());
+        return (Result) r;
+    }
+
+    /**
+     * Receives callbacks when fields of hits are encountered and adds them to the "fields" object of the hit.
+     * This instance is reused for all hits of a Result since we are in a single-threaded context
+     * and want to limit object creation.
+     */
+    private static class FieldConsumer implements Hit.RawUtf8Consumer {
+
+        private final boolean debugRendering;
+
+        /** The hit whose fields we are currently consuming */
+        private Cursor hit;
+        /** The fields object of the current hit, or null if it is not created yet */
+        private Cursor fields;
+
+        FieldConsumer(boolean debugRendering) {
+            this.debugRendering = debugRendering;
+        }
+
+        /** Call before using this for a hit */
+        void startHitFields(Cursor hit) {
+            this.hit = hit;
+            this.fields = null;
+        }
+
+        /** Returns the fields object of the current hit, creating it if necessary */
+        Cursor fields() {
+            if (fields == null)
+                fields = hit.setObject(FIELDS);
+            return fields;
+        }
+
+        @Override
+        public void accept(String name, Object value) {
+            if ( ! shouldRender(name, value)) return;
+
+            if (value == null)
+                fields().setNix(name);
+            else if (value instanceof Number)
+                setNumber(name, (Number)value);
+            else if (value instanceof Boolean)
+                fields().setBool(name, (Boolean)value);
+            else if (value instanceof Inspectable)
+                setInspector(name, ((Inspectable)value).inspect());
+            else if (value instanceof JsonProducer)
+                setJson(name, ((JsonProducer)value).toJson());
+            else if (value instanceof TreeNode || value instanceof JSONArray || value instanceof JSONObject)
+                setJson(name, value.toString());
+            else
+                fields().setString(name, value.toString());
+        }
+
+        @Override
+        public void accept(String name, byte[] utf8Data, int offset, int length) {
+            if ( ! debugRendering && (name.startsWith(VESPA_HIDDEN_FIELD_PREFIX) || length == 0)) return;
+
+            if (offset == 0 && length == utf8Data.length)
+                fields().setString(name, utf8Data);
+            else
+                fields().setString(name, Arrays.copyOfRange(utf8Data, offset, offset + length));
+        }
+
+        private boolean shouldRender(String name, Object value) {
+            if (debugRendering) return true;
+            if (name.startsWith(VESPA_HIDDEN_FIELD_PREFIX)) return false;
+            if (value instanceof CharSequence && ((CharSequence) value).length() == 0) return false;
+            if (value instanceof NanNumber) return false;
+            return true;
+        }
+
+        private void setNumber(String name, Number value) {
+            if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+                fields().setLong(name, value.longValue());
+            else if (value instanceof BigInteger || value instanceof BigDecimal)
+                fields().setString(name, value.toString()); // may not be representable as a long or double
+            else
+                fields().setDouble(name, value.doubleValue());
+        }
+
+        private void setJson(String name, String json) {
+            if (json == null) {
+                fields().setNix(name);
+                return;
+            }
+            Slime decoded = new JsonDecoder().decode(new Slime(), Utf8.toBytes(json));
+            setInspector(name, new SlimeAdapter(decoded.get()));
+        }
+
+        /** Adds the given data to the fields of this hit. Arrays of key/value objects are rendered as objects, as in the JSON renderer. */
+        private void setInspector(String name, Inspector value) {
+            if (isMap(value)) {
+                Cursor map = fields().setObject(name);
+                Map<String, Inspector> entries = collapsedMapEntries(value);
+                if (entries == null) {
+                    for (int i = 0; i < value.entryCount(); i++) {
+                        Inspector entry = value.entry(i);
+                        addTo(map, entry.field("key").asString(), entry.field("value"));
+                    }
+                }
+                else {
+                    for (Map.Entry<String, Inspector> entry : entries.entrySet())
+                        addTo(map, entry.getKey(), entry.getValue());
+                }
+            } else {
+                addTo(fields(), name, value);
+            }
+        }
+
+        private static void addTo(Cursor object, String name, Inspector value) {
+            switch (value.type()) {
+                case EMPTY: object.setNix(name); break;
+                case BOOL: object.setBool(name, value.asBool()); break;
+                case LONG: object.setLong(name, value.asLong()); break;
+                case DOUBLE: object.setDouble(name, value.asDouble()); break;
+                case STRING: object.setString(name, value.asUtf8()); break;
+                case DATA: object.setData(name, value.asData()); break;
+                case ARRAY: addEntries(object.setArray(name), value); break;
+                case OBJECT: addFields(object.setObject(name), value); break;
+            }
+        }
+
+        private static void addEntries(Cursor array, Inspector value) {
+            for (int i = 0; i < value.entryCount(); i++) {
+                Inspector entry = value.entry(i);
+                switch (entry.type()) {
+                    case EMPTY: array.addNix(); break;
+                    case BOOL: array.addBool(entry.asBool()); break;
+                    case LONG: array.addLong(entry.asLong()); break;
+                    case DOUBLE: array.addDouble(entry.asDouble()); break;
+                    case STRING: array.addString(entry.asUtf8()); break;
+                    case DATA: array.addData(entry.asData()); break;
+                    case ARRAY: addEntries(array.addArray(), entry); break;
+                    case OBJECT: addFields(array.addObject(), entry); break;
+                }
+            }
+        }
+
+        private static void addFields(Cursor object, Inspector value) {
+            for (Map.Entry<String, Inspector> field : value.fields())
+                addTo(object, field.getKey(), field.getValue());
+        }
+
+    }
+
+}
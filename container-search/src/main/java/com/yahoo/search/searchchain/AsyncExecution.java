@@ -34,6 +34,11 @@ import java.util.concurrent.*;
  * </pre>
  *
  * <p>
+ * If the first searcher to execute is an {@link AsyncSearcher}, the search is started in the calling thread
+ * and no thread is used while waiting for its result.
+ * </p>
+ *
+ * <p>
  * Note that the query is not a thread safe object and cannot be shared between
  * multiple concurrent executions - a clone() must be made, or a new query
  * created for each AsyncExecution instance.
@@ -118,6 +123,16 @@ public class AsyncExecution {
      * @see com.yahoo.search.searchchain.Execution
      */
     public FutureResult search(Query query) {
+        try {
+            CompletableFuture<Result> asyncResult = execution.searchAsync(query);
+            if (asyncResult != null)
+                return FutureResult.completedBy(asyncResult, execution, query);
+        }
+        catch (RuntimeException e) {
+            FutureResult failed = new FutureResult(() -> { throw e; }, execution, query);
+            failed.run(); // completes with the exception in this thread
+            return failed;
+        }
         return getFutureResult(() -> execution.search(query), query);
     }
 
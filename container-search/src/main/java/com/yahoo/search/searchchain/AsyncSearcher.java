@@ -0,0 +1,41 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.searchchain;
+
+import com.google.common.annotations.Beta;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Implemented by searchers which can produce their result without blocking a thread while waiting for it,
+ * typically because they wait for a remote backend using non-blocking I/O.
+ * <p>
+ * When such a searcher is the first in a chain executed by an {@link AsyncExecution}, searchAsync is called
+ * in the thread starting the execution, and the returned future result completes when the returned future does,
+ * such that no thread is held while waiting for the result. This is used by federation to search
+ * many such sources without needing a thread for each.
+ * <p>
+ * Searchers implementing this must still implement search, which is used when invoked from a regular execution.
+ *
+ * @author agent
+ */
+@Beta
+public interface AsyncSearcher {
+
+    /**
+     * Starts searching and returns a future which completes with the result.
+     * This should return quickly, without waiting for the result.
+     * <p>
+     * The given execution is positioned at the next searcher in the chain, but only until this returns.
+     * To invoke the rest of the chain after this has returned, create a new Execution(execution) before returning.
+     *
+     * @param query the query to search, which is not used by any other thread until the returned future completes
+     * @param execution the execution of this searcher
+     * @return a future completing with the result of this search, which never completes with null,
+     *         or null if this query cannot be searched without a thread, in which case search is called
+     *         in a thread instead
+     */
+    CompletableFuture<Result> searchAsync(Query query, Execution execution);
+
+}
@@ -16,9 +16,12 @@ import com.yahoo.search.Query;
 import com.yahoo.search.Result;
 import com.yahoo.search.Searcher;
 import com.yahoo.search.cluster.PingableSearcher;
+import com.yahoo.search.query.parser.ParsedQueryCache;
 import com.yahoo.search.rendering.RendererRegistry;
+import com.yahoo.search.statistics.LatencyBreakdown;
 import com.yahoo.search.statistics.TimeTracker;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
 /**
@@ -94,6 +97,9 @@ public class Execution extends com.yahoo.processing.execution.Execution {
          */
         private Linguistics linguistics = null;
 
+        /** The cache of parsed query trees, or null if parsed queries are not cached */
+        private ParsedQueryCache parsedQueryCache = null;
+
         /** Always set if this context belongs to an execution, never set if it does not. */
         private final Execution owner;
 
@@ -191,6 +197,9 @@ public class Execution extends com.yahoo.processing.execution.Execution {
             if (linguistics == null) {
                 linguistics = sourceContext.linguistics;
             }
+            if (parsedQueryCache == null) {
+                parsedQueryCache = sourceContext.parsedQueryCache;
+            }
         }
 
         /**
@@ -206,6 +215,7 @@ public class Execution extends com.yahoo.processing.execution.Execution {
             detailedDiagnostics = other.detailedDiagnostics;
             breakdown = other.breakdown;
             linguistics = other.linguistics;
+            parsedQueryCache = other.parsedQueryCache;
         }
 
         public boolean equals(Context other) {
@@ -217,7 +227,8 @@ public class Execution extends com.yahoo.processing.execution.Execution {
                     && other.searchChainRegistry == searchChainRegistry
                     && other.detailedDiagnostics == detailedDiagnostics
                     && other.breakdown == breakdown
-                    && other.linguistics == linguistics;
+                    && other.linguistics == linguistics
+                    && other.parsedQueryCache == parsedQueryCache;
         }
 
         @Override
@@ -225,7 +236,7 @@ public class Execution extends com.yahoo.processing.execution.Execution {
             return java.util.Objects.hash(indexFacts,
                                           rendererRegistry, tokenRegistry, searchChainRegistry,
                                           detailedDiagnostics, breakdown,
-                                          linguistics);
+                                          linguistics, parsedQueryCache);
         }
 
         @Override
@@ -374,6 +385,15 @@ public class Execution extends com.yahoo.processing.execution.Execution {
             this.linguistics = linguistics;
         }
 
+        /** Returns the cache of parsed query trees to use in this, or null if parsed queries should not be cached */
+        public ParsedQueryCache getParsedQueryCache() {
+            return parsedQueryCache;
+        }
+
+        public void setParsedQueryCache(ParsedQueryCache parsedQueryCache) {
+            this.parsedQueryCache = parsedQueryCache;
+        }
+
         /** Creates a child trace if this has an owner, or a root trace otherwise */
         private Trace createChildTrace() {
             return owner!=null ? owner.trace().createChild() : Trace.createRoot(0);
@@ -395,6 +415,9 @@ public class Execution extends com.yahoo.processing.execution.Execution {
     /** Time spent in each state of filling, searching or pinging. */
     private final TimeTracker timer;
 
+    /** Time spent in each searcher by queries sampled for latency measurement, created on first use */
+    private LatencyBreakdown.ChainTimer chainTimer = null;
+
     /** A searcher's view of state external to the search chain. */
     // Note that the context plays the same role as the Environment of the super.Execution
     // (although complicated by the need for stack-like behavior on changes).
@@ -510,6 +533,37 @@ public class Execution extends com.yahoo.processing.execution.Execution {
         return (Result)super.process(query);
     }
 
+    /**
+     * Starts the search on the next searcher in this chain without blocking, if it is an {@link AsyncSearcher}.
+     * The same hooks are invoked as by {@link #search}, with the returning hooks invoked when the returned
+     * future completes.
+     *
+     * @return the future result of the search, or null if the next searcher is not an AsyncSearcher
+     *         or cannot search this query without a thread
+     */
+    CompletableFuture<Result> searchAsync(Query query) {
+        Processor next = next();
+        if ( ! (next instanceof AsyncSearcher)) return null;
+
+        timer.sampleSearch(nextIndex(), context.getDetailedDiagnostics());
+        query.getModel().setExecution(this);
+        trace().setTraceLevel(query.getTraceLevel());
+        CompletableFuture<Result> futureResult;
+        try {
+            nextProcessor();
+            onInvoking(query, next);
+            futureResult = ((AsyncSearcher)next).searchAsync(query, this);
+        }
+        finally {
+            previousProcessor();
+        }
+        if (futureResult == null) return null; // search will be invoked instead
+
+        // Added after returning to this position, as the future may already be complete.
+        // As in search, the returning hooks are invoked also on failure, with no result
+        return futureResult.whenComplete((result, exception) -> onReturning(query, next, result));
+    }
+
     @Override
     protected void onInvoking(Request request, Processor processor) {
         super.onInvoking(request,processor);
@@ -518,6 +572,8 @@ public class Execution extends com.yahoo.processing.execution.Execution {
         if (query.getTraceLevel() >= traceDependencies) {
             query.trace(processor.getId() + " " + processor.getDependencies(), traceDependencies);
         }
+        if (query.getLatencyBreakdown() != null)
+            chainTimer().invoking(nextIndex() - 1);
     }
 
     /**
@@ -580,12 +636,17 @@ public class Execution extends com.yahoo.processing.execution.Execution {
     }
 
     private void onInvokingFill(Searcher searcher, Result result, String summaryClass) {
+        if (result.getQuery().getLatencyBreakdown() != null)
+            chainTimer().invoking(nextIndex() - 1);
         int traceFillAt = 5;
         if (trace().getTraceLevel() < traceFillAt) return;
         trace().trace("Invoke fill(" + summaryClass + ") on " + searcher, traceFillAt);
     }
 
     private void onReturningFill(Searcher searcher, Result result, String summaryClass) {
+        LatencyBreakdown breakdown = result.getQuery().getLatencyBreakdown();
+        if (breakdown != null)
+            chainTimer().returning(nextIndex(), searcher.getId().stringValue(), breakdown);
         int traceFillAt = 5;
         if (trace().getTraceLevel() < traceFillAt) return;
         trace().trace("Return fill(" + summaryClass + ") on " + searcher, traceFillAt);
@@ -617,9 +678,18 @@ public class Execution extends com.yahoo.processing.execution.Execution {
     @Override
     protected void onReturning(Request request, Processor processor,Response response) {
         super.onReturning(request, processor, response);
+        LatencyBreakdown breakdown = ((Query)request).getLatencyBreakdown();
+        if (breakdown != null)
+            chainTimer().returning(nextIndex(), processor.getId().stringValue(), breakdown);
         timer.sampleSearchReturn(nextIndex(), context.getDetailedDiagnostics(), (Result)response);
     }
 
+    private LatencyBreakdown.ChainTimer chainTimer() {
+        if (chainTimer == null)
+            chainTimer = new LatencyBreakdown.ChainTimer(chain().components().size());
+        return chainTimer;
+    }
+
     @Override
     protected void previousProcessor() {
         super.previousProcessor();
@@ -16,6 +16,10 @@ public abstract class ForkingSearcher extends Searcher {
 
     public ForkingSearcher() {}
 
+    public ForkingSearcher(ComponentId id) {
+        super(id);
+    }
+
     /** A search chain with a comment about when it is used. */
     public static class CommentedSearchChain {
         public final String comment;
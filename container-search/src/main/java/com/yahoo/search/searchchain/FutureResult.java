@@ -8,6 +8,7 @@ import com.yahoo.yolean.Exceptions;
 
 import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
@@ -35,6 +36,31 @@ public class FutureResult extends FutureTask<Result> {
         this.execution = execution;
     }
 
+    /**
+     * Returns a future result which completes when the given future does, without using a thread to wait for it.
+     * Exceptions completing the given future are treated as exceptions thrown by the callable of a future result.
+     */
+    static FutureResult completedBy(CompletableFuture<Result> future, Execution execution, Query query) {
+        FutureResult result = new FutureResult(() -> resultOf(future), execution, query);
+        future.whenComplete((value, exception) -> result.run());
+        return result;
+    }
+
+    /** Returns the result of a completed future, unwrapping the exception it completed with, if any */
+    private static Result resultOf(CompletableFuture<Result> future) throws Exception {
+        try {
+            Result result = future.get(); // completed: does not block
+            if (result == null)
+                throw new NullPointerException("A future result completed with null, not a Result");
+            return result;
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception)
+                throw (Exception)e.getCause();
+            throw e;
+        }
+    }
+
     /** 
      * Returns a Result containing the hits returned from this source, or an error otherwise.
      * This will block for however long it takes to get the result: Using this is a bad idea.
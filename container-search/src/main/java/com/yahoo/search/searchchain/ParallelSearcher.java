@@ -0,0 +1,241 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.searchchain;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+import com.yahoo.component.ComponentId;
+import com.yahoo.component.chain.Chain;
+import com.yahoo.component.chain.dependencies.Dependencies;
+import com.yahoo.prelude.query.Item;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.Searcher;
+import com.yahoo.search.result.ErrorMessage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Executes a set of independent branch chains of query preparing searchers (such as rewriters) concurrently,
+ * merges their effects on the query and then continues down this chain with the merged query.
+ * <p>
+ * Each branch is executed on a clone of the query, and its result is ignored except for errors,
+ * just as when searchers only preparing the query are executed sequentially.
+ * The effects of a branch which are merged are changes to the query tree and to the properties of the query;
+ * any other change made by a branch to its query clone is discarded.
+ * <p>
+ * Only conflicting changes are detected: If a branch changed a part of the query (the query tree, or a property)
+ * which an earlier branch also changed, that branch and all the branches following it are executed again,
+ * sequentially in the given order, on the query with the changes of the branches before it merged.
+ * A branch which reads a part of the query changed by another branch sees the original query, so
+ * branches must not depend on each other's changes to the query.
+ * <p>
+ * Property values are compared using equals to determine whether a branch changed them.
+ * <p>
+ * Branches must be independent: No searcher in one branch can be declared to be ordered before or after
+ * anything provided by a searcher in another branch.
+ * <p>
+ * The branches are either given programmatically, or configured in services.xml by the ids of search chains
+ * (see parallel-searcher.def), which are looked up in the search chain registry of the execution.
+ *
+ * @author agent
+ */
+@Beta
+public class ParallelSearcher extends ForkingSearcher {
+
+    private static final String queryTreePart = "query tree";
+
+    /** The branches of this, or null if they are configured by id and not resolved yet */
+    private volatile List<Chain<Searcher>> branches;
+
+    /** The ids of the branch chains, or empty if the branches are given programmatically */
+    private final List<String> branchIds;
+
+    /**
+     * Creates a parallel searcher executing the configured search chains as branches
+     *
+     * @param id the id of this
+     * @param config the ids of the chains to execute concurrently, in the order their effects are merged
+     */
+    @Inject
+    public ParallelSearcher(ComponentId id, ParallelSearcherConfig config) {
+        super(id);
+        this.branches = null;
+        this.branchIds = ImmutableList.copyOf(config.branch());
+    }
+
+    /**
+     * Creates a parallel searcher
+     *
+     * @param id the id of this
+     * @param branches the chains to execute concurrently, in the order their effects are merged
+     * @throws IllegalArgumentException if the given branches are not independent
+     */
+    public ParallelSearcher(ComponentId id, List<Chain<Searcher>> branches) {
+        super(id);
+        this.branches = ImmutableList.copyOf(branches);
+        this.branchIds = ImmutableList.of();
+        verifyIndependent(this.branches);
+    }
+
+    @Override
+    public Result search(Query query, Execution execution) {
+        List<Chain<Searcher>> branches = branches(execution.searchChainRegistry());
+        if (branches.isEmpty()) return execution.search(query);
+        if (branches.size() == 1) {
+            Result branchResult = new Execution(branches.get(0), execution.context()).search(query);
+            return withErrorsFrom(branchResult, execution.search(query));
+        }
+
+        Item originalRoot = query.getModel().getQueryTree().getRoot();
+        Map<String, Object> originalProperties = query.properties().listProperties();
+
+        List<Query> branchQueries = new ArrayList<>(branches.size());
+        List<FutureResult> futures = new ArrayList<>(branches.size());
+        for (Chain<Searcher> branch : branches) {
+            Query branchQuery = query.clone();
+            branchQueries.add(branchQuery);
+            futures.add(new AsyncExecution(branch, execution).search(branchQuery));
+        }
+        List<Result> branchResults = AsyncExecution.waitForAll(futures, query.getTimeLeft());
+
+        List<ErrorMessage> errors = new ArrayList<>();
+        Set<String> changedParts = new HashSet<>();
+        int firstConflict = branches.size();
+        for (int i = 0; i < branches.size(); i++) {
+            Result branchResult = branchResults.get(i);
+            if (branchResult.hits().getError() != null) { // failed or timed out: Its query may still be in use
+                errors.addAll(branchResult.hits().getErrorHit().errors());
+                continue;
+            }
+
+            Query branchQuery = branchQueries.get(i);
+            Map<String, Object> changedProperties = changedProperties(originalProperties,
+                                                                      branchQuery.properties().listProperties());
+            Item branchRoot = branchQuery.getModel().getQueryTree().getRoot();
+            boolean changedTree = ! Objects.equals(originalRoot, branchRoot);
+
+            if ( (changedTree && changedParts.contains(queryTreePart)) ||
+                 ! Collections.disjoint(changedParts, changedProperties.keySet())) {
+                firstConflict = i;
+                break;
+            }
+
+            if (changedTree) {
+                query.getModel().getQueryTree().setRoot(branchRoot);
+                changedParts.add(queryTreePart);
+            }
+            for (Map.Entry<String, Object> property : changedProperties.entrySet())
+                query.properties().set(property.getKey(), property.getValue());
+            changedParts.addAll(changedProperties.keySet());
+        }
+
+        for (int i = firstConflict; i < branches.size(); i++) {
+            Chain<Searcher> branch = branches.get(i);
+            if (query.isTraceable(3))
+                query.trace("Rerunning " + branch.getId() + " sequentially as it, or a branch before it, " +
+                            "changed the same query parts as a previous branch", 3);
+            Result branchResult = new Execution(branch, execution.context()).search(query);
+            if (branchResult.hits().getError() != null)
+                errors.addAll(branchResult.hits().getErrorHit().errors());
+        }
+
+        Result result = execution.search(query);
+        for (ErrorMessage error : errors)
+            result.hits().addError(error);
+        return result;
+    }
+
+    @Override
+    public Collection<CommentedSearchChain> getSearchChainsForwarded(SearchChainRegistry registry) {
+        List<CommentedSearchChain> searchChains = new ArrayList<>();
+        for (Chain<Searcher> branch : branches(registry))
+            searchChains.add(new CommentedSearchChain("Executed concurrently with the other branches.", branch));
+        return searchChains;
+    }
+
+    /**
+     * Returns the branches of this, in the order their effects are merged,
+     * or empty if they are configured by id and not resolved by an execution yet
+     */
+    public List<Chain<Searcher>> getBranches() { return branches == null ? ImmutableList.of() : branches; }
+
+    /** Returns the branches of this, resolving them in the given registry if they are configured by id */
+    private List<Chain<Searcher>> branches(SearchChainRegistry registry) {
+        List<Chain<Searcher>> branches = this.branches;
+        if (branches != null) return branches;
+
+        if (registry == null)
+            throw new IllegalStateException(getId() + " has configured branches, but there is no search chain registry");
+        List<Chain<Searcher>> resolved = new ArrayList<>(branchIds.size());
+        for (String branchId : branchIds) {
+            Chain<Searcher> branch = registry.getChain(branchId);
+            if (branch == null)
+                throw new IllegalArgumentException(getId() + " is configured with branch '" + branchId +
+                                                   "', but there is no search chain with that id");
+            resolved.add(branch);
+        }
+        verifyIndependent(resolved);
+        this.branches = ImmutableList.copyOf(resolved);
+        return this.branches;
+    }
+
+    private Result withErrorsFrom(Result branchResult, Result result) {
+        if (branchResult.hits().getError() != null)
+            for (ErrorMessage error : branchResult.hits().getErrorHit().errors())
+                result.hits().addError(error);
+        return result;
+    }
+
+    /**
+     * Returns the properties which are set to a different value in the given after map than in the before map.
+     * Properties which are only present in the before map are returned with a null value.
+     */
+    private static Map<String, Object> changedProperties(Map<String, Object> before, Map<String, Object> after) {
+        Map<String, Object> changed = new HashMap<>();
+        for (Map.Entry<String, Object> property : after.entrySet())
+            if ( ! Objects.equals(property.getValue(), before.get(property.getKey())))
+                changed.put(property.getKey(), property.getValue());
+        for (String name : before.keySet())
+            if ( ! after.containsKey(name))
+                changed.put(name, null);
+        return changed;
+    }
+
+    private static void verifyIndependent(List<Chain<Searcher>> branches) {
+        List<Set<String>> provided = new ArrayList<>(branches.size());
+        for (Chain<Searcher> branch : branches) {
+            Set<String> branchProvided = new HashSet<>();
+            for (Searcher searcher : branch.components()) {
+                branchProvided.add(searcher.getId().getName());
+                branchProvided.addAll(searcher.getDependencies().provides());
+            }
+            provided.add(branchProvided);
+        }
+
+        for (int i = 0; i < branches.size(); i++) {
+            for (Searcher searcher : branches.get(i).components()) {
+                Dependencies dependencies = searcher.getDependencies();
+                for (int j = 0; j < branches.size(); j++) {
+                    if (i == j) continue;
+                    for (String name : provided.get(j)) {
+                        if (dependencies.before().contains(name) || dependencies.after().contains(name))
+                            throw new IllegalArgumentException("Branches " + branches.get(i).getId() + " and " +
+                                                               branches.get(j).getId() + " are not independent: " +
+                                                               searcher.getId() + " is ordered relative to '" +
+                                                               name + "'");
+                    }
+                }
+            }
+        }
+    }
+
+}
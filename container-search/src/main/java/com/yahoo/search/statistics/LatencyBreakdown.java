@@ -0,0 +1,162 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.statistics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The time spent in each part of processing a single query, recorded as a list of spans.
+ * A breakdown is only attached to the queries which are sampled for latency measurement
+ * (see {@link LatencyBreakdownSearcher}), such that no work is done for queries which are not.
+ *
+ * This class is multithread safe.
+ *
+ * @author agent
+ */
+public final class LatencyBreakdown {
+
+    /** The kinds of work a query spends time on */
+    public enum Phase {
+
+        /** Time from the request arrived at the container until the query was created */
+        QUEUE("queue"),
+        /** Time spent in a searcher, exclusive of the time spent in the searchers it invokes */
+        SEARCHER("searcher"),
+        /** Time from a request was sent to a backend node until the response arrived */
+        RPC_WAIT("rpc_wait"),
+        /** Time spent decoding a response from a backend node */
+        DECODE("decode"),
+        /** Time spent rendering the result */
+        RENDER("render");
+
+        private final String metricName;
+
+        Phase(String metricName) {
+            this.metricName = metricName;
+        }
+
+        /** Returns the name of this phase as used in metrics */
+        public String metricName() { return metricName; }
+
+    }
+
+    private final List<Span> spans = new ArrayList<>();
+    private final Consumer<Span> exporter;
+
+    /** Creates a breakdown which only collects spans */
+    public LatencyBreakdown() {
+        this(span -> {});
+    }
+
+    /**
+     * Creates a breakdown
+     *
+     * @param exporter receives each span as it is recorded
+     */
+    public LatencyBreakdown(Consumer<Span> exporter) {
+        this.exporter = exporter;
+    }
+
+    /**
+     * Records a span of time spent by this query
+     *
+     * @param phase the kind of work the time was spent on
+     * @param source the searcher, node or renderer which spent the time
+     * @param nanos the length of the span in nanoseconds
+     */
+    public void record(Phase phase, String source, long nanos) {
+        Span span = new Span(phase, source, Math.max(0, nanos));
+        synchronized (this) {
+            spans.add(span);
+        }
+        exporter.accept(span);
+    }
+
+    /** Returns a snapshot of the spans recorded so far, in the order they were recorded */
+    public synchronized List<Span> spans() {
+        return Collections.unmodifiableList(new ArrayList<>(spans));
+    }
+
+    /** Returns the total time in nanoseconds recorded for the given phase */
+    public synchronized long totalNanos(Phase phase) {
+        long total = 0;
+        for (Span span : spans)
+            if (span.phase() == phase)
+                total += span.nanos();
+        return total;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "latency breakdown: " + spans;
+    }
+
+    /** A span of time spent by a query on some phase in some source */
+    public static final class Span {
+
+        private final Phase phase;
+        private final String source;
+        private final long nanos;
+
+        private Span(Phase phase, String source, long nanos) {
+            this.phase = phase;
+            this.source = source;
+            this.nanos = nanos;
+        }
+
+        public Phase phase() { return phase; }
+
+        /** Returns the name of the searcher, node or renderer which spent this time */
+        public String source() { return source; }
+
+        /** Returns the length of this span in nanoseconds */
+        public long nanos() { return nanos; }
+
+        /** Returns the length of this span in milliseconds */
+        public double millis() { return nanos / 1000000.0; }
+
+        @Override
+        public String toString() { return phase.metricName() + " in " + source + ": " + millis() + " ms"; }
+
+    }
+
+    /**
+     * Measures the time spent in each searcher of a chain, exclusive of the time spent in the searchers
+     * later in the same chain. An instance of this is owned by a single execution.
+     */
+    public static final class ChainTimer {
+
+        private final long[] starts;
+        private final long[] downstreamNanos;
+        private final boolean[] started;
+
+        /** Creates a timer for a chain of the given length */
+        public ChainTimer(int chainLength) {
+            starts = new long[chainLength];
+            downstreamNanos = new long[chainLength];
+            started = new boolean[chainLength];
+        }
+
+        /** Call when the searcher at the given index is invoked */
+        public void invoking(int index) {
+            if (index < 0 || index >= starts.length) return;
+            starts[index] = System.nanoTime();
+            downstreamNanos[index] = 0;
+            started[index] = true;
+        }
+
+        /** Call when the searcher at the given index returns, to record its time in the given breakdown */
+        public void returning(int index, String searcherName, LatencyBreakdown breakdown) {
+            if (index < 0 || index >= starts.length || ! started[index]) return; // sampling started inside it
+            started[index] = false;
+            long elapsed = System.nanoTime() - starts[index];
+            if (index > 0)
+                downstreamNanos[index - 1] += elapsed;
+            breakdown.record(Phase.SEARCHER, searcherName, elapsed - downstreamNanos[index]);
+        }
+
+    }
+
+}
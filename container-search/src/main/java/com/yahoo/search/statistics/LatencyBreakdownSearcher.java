@@ -0,0 +1,78 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.statistics;
+
+import com.google.inject.Inject;
+import com.yahoo.component.chain.dependencies.Before;
+import com.yahoo.metrics.simple.Gauge;
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.metrics.simple.MetricSettings;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.Searcher;
+import com.yahoo.search.searchchain.Execution;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Attaches a {@link LatencyBreakdown} to a sample of the queries passing through it,
+ * and exports the spans recorded in it as the histogram metric "query_latency_breakdown",
+ * with the dimensions "chain", "phase" and "source".
+ * Queries which are not sampled are passed on with no extra work done.
+ *
+ * This should be placed first in a search chain, as the time spent in searchers before it is not recorded.
+ *
+ * @author agent
+ */
+@Before("rawQuery")
+public class LatencyBreakdownSearcher extends Searcher {
+
+    static final String metricName = "query_latency_breakdown";
+
+    private final int sampleInterval;
+    private final AtomicLong queryCount = new AtomicLong();
+    private final Gauge latency;
+
+    @Inject
+    public LatencyBreakdownSearcher(LatencyBreakdownConfig config, MetricReceiver metrics) {
+        this(config.sampleinterval(), metrics);
+    }
+
+    LatencyBreakdownSearcher(int sampleInterval, MetricReceiver metrics) {
+        this.sampleInterval = sampleInterval;
+        this.latency = metrics.declareGauge(metricName, Optional.empty(),
+                                            new MetricSettings.Builder().histogram(true).build());
+    }
+
+    @Override
+    public Result search(Query query, Execution execution) {
+        if (query.getLatencyBreakdown() != null || ! sample()) return execution.search(query);
+
+        String chainName = execution.chain().getId().stringValue();
+        LatencyBreakdown breakdown = new LatencyBreakdown(span -> export(span, chainName));
+        query.setLatencyBreakdown(breakdown);
+        recordQueueTime(query, breakdown);
+        return execution.search(query);
+    }
+
+    private boolean sample() {
+        if (sampleInterval <= 0) return false;
+        return queryCount.getAndIncrement() % sampleInterval == 0;
+    }
+
+    private void recordQueueTime(Query query, LatencyBreakdown breakdown) {
+        if (query.getHttpRequest() == null || query.getHttpRequest().getJDiscRequest() == null) return;
+        long queueTime = query.getStartTime() - query.getHttpRequest().getJDiscRequest().creationTime(TimeUnit.MILLISECONDS);
+        breakdown.record(LatencyBreakdown.Phase.QUEUE, "container", TimeUnit.MILLISECONDS.toNanos(queueTime));
+    }
+
+    private void export(LatencyBreakdown.Span span, String chainName) {
+        latency.sample(span.millis(), latency.builder()
+                                             .set("chain", chainName)
+                                             .set("phase", span.phase().metricName())
+                                             .set("source", span.source())
+                                             .build());
+    }
+
+}
@@ -537,7 +537,7 @@ public class ClusterSearcherTestCase {
         ClusterSearcher searcher = new ClusterSearcher(id, qrsCfg, clusterCfg, documentDbCfg, emulationCfg, monitorCfg, 
                                                        new DispatchConfig(new DispatchConfig.Builder()), 
                                                        createClusterInfoConfig(),
-                                                       statistics, fs4ResourcePool, new VipStatus());
+                                                       statistics, null, fs4ResourcePool, new VipStatus());
         return searcher;
     }
 
@@ -4,10 +4,15 @@ package com.yahoo.prelude.fastsearch.test;
 import com.yahoo.fs4.QueryPacket;
 import com.yahoo.search.Query;
 import com.yahoo.prelude.fastsearch.CacheKey;
+import com.yahoo.search.grouping.vespa.GroupingExecutor;
+import com.yahoo.searchlib.aggregation.Grouping;
 import org.junit.Test;
 
+import java.util.Collections;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 
 /**
  * @author Steinar Knutsen
@@ -39,4 +44,22 @@ public class CacheKeyTestCase {
         assertFalse(ap.getQueryPacketData().equals(bp.getQueryPacketData()));
     }
 
+    @Test
+    public void testRankProfileIsPartOfKey() {
+        CacheKey a = new CacheKey(new Query("/?query=abcd"));
+        CacheKey b = new CacheKey(new Query("/?query=abcd&ranking=other"));
+        assertNotEquals(a, b);
+    }
+
+    @Test
+    public void testGroupingIsPartOfKey() {
+        Query a = new Query("/?query=abcd");
+        Query b = new Query("/?query=abcd");
+        GroupingExecutor.setGroupingList(b, Collections.singletonList(new Grouping(1)));
+        Query c = new Query("/?query=abcd");
+        GroupingExecutor.setGroupingList(c, Collections.singletonList(new Grouping(1)));
+        assertNotEquals(new CacheKey(a), new CacheKey(b));
+        assertEquals(new CacheKey(b), new CacheKey(c));
+    }
+
 }
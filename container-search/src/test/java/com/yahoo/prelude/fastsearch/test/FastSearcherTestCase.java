@@ -154,6 +154,39 @@ public class FastSearcherTestCase {
         }
     }
 
+    @Test
+    public void testDispatchDotSummariesWithResultCache() {
+        DocumentdbInfoConfig documentdbConfigWithOneDb =
+                new DocumentdbInfoConfig(new DocumentdbInfoConfig.Builder().documentdb(new DocumentdbInfoConfig.Documentdb.Builder()
+                        .name("testDb")
+                        .summaryclass(new DocumentdbInfoConfig.Documentdb.Summaryclass.Builder().name("simple").id(7))
+                        .rankprofile(new DocumentdbInfoConfig.Documentdb.Rankprofile.Builder()
+                                .name("simpler").hasRankFeatures(false).hasSummaryFeatures(false))));
+
+        List<SearchCluster.Node> nodes = new ArrayList<>();
+        nodes.add(new SearchCluster.Node(0, "host1", 5000, 0));
+        nodes.add(new SearchCluster.Node(2, "host2", 5000, 0));
+
+        MockFS4ResourcePool mockFs4ResourcePool = new MockFS4ResourcePool();
+        FastSearcher fastSearcher = new FastSearcher(new MockBackend(),
+                mockFs4ResourcePool,
+                new MockDispatcher(nodes, mockFs4ResourcePool, 1, new VipStatus()),
+                new SummaryParameters(null),
+                new ClusterParams("testhittype"),
+                new CacheParams(100, 1e64),
+                documentdbConfigWithOneDb);
+
+        String query = "?query=sddocname:a&dispatch.summaries&summary=simple&ranking=simpler";
+        for (int i = 0; i < 2; i++) { // the second result is cached
+            Result result = doSearch(fastSearcher, new Query(query), 0, 10);
+            doFill(fastSearcher, result);
+            ErrorMessage error = result.hits().getError();
+            assertEquals("Summaries are fetched by the Dispatcher also when the result cache is used",
+                         "Error response from rpc node connection to host1:0: Connection error", error.getDetailedMessage());
+        }
+        assertEquals(1, fastSearcher.getCacheControl().hitCount());
+    }
+
     @Test
     public void testQueryWithRestrict() {
         mockBackend = new MockBackend();
@@ -381,14 +414,14 @@ public class FastSearcherTestCase {
         ((WordItem) q.getModel().getQueryTree().getRoot()).setUniqueID(1);
         QueryPacket queryPacket = QueryPacket.create(q);
         CacheKey k = new CacheKey(queryPacket);
-        PacketWrapper p = c.lookup(k, q);
-        assertEquals(1, p.getResultPackets().size());
+        CachedResult p = c.lookup(k, q);
+        assertEquals(2, p.getDocuments(0, 2).size());
 
         result = doSearch(fastSearcher,new Query("?query=ignored"), 1, 1);
         p = c.lookup(k, q);
-        // ensure we don't get redundant QueryResultPacket instances
-        // in the cache
-        assertEquals(1, p.getResultPackets().size());
+        // ensure the cached window is not replaced by a smaller one
+        // which it contains
+        assertEquals(2, p.getDocuments(0, 2).size());
 
         assertEquals(1, result.getConcreteHitCount());
         for (int i = 0; i < result.getHitCount(); i++) {
@@ -397,7 +430,7 @@ public class FastSearcherTestCase {
 
         result = doSearch(fastSearcher,new Query("?query=ignored"), 0, 1);
         p = c.lookup(k, q);
-        assertEquals(1, p.getResultPackets().size());
+        assertEquals(2, p.getDocuments(0, 2).size());
         assertEquals(1, result.getConcreteHitCount());
         for (int i = 0; i < result.getHitCount(); i++) {
             assertTrue(result.hits().get(i).isCached());
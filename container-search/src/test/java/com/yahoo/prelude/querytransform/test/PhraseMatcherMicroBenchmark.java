@@ -0,0 +1,50 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.querytransform.test;
+
+import com.yahoo.prelude.query.AndItem;
+import com.yahoo.prelude.query.WordItem;
+import com.yahoo.prelude.querytransform.PhraseMatcher;
+
+/**
+ * Compares matching phrases in long queries by walking the phrase automaton from each word
+ * and by matching in a single pass.
+ *
+ * @author agent
+ */
+public class PhraseMatcherMicroBenchmark {
+
+    private static final String automaton = "src/test/java/com/yahoo/prelude/querytransform/test/proximity-segments.fsa";
+
+    private final AndItem query = createQuery(60);
+
+    public void run() {
+        for (boolean singlePass : new boolean[] { false, true }) {
+            PhraseMatcher matcher = new PhraseMatcher(automaton);
+            matcher.setMatchAll(true);
+            matcher.setSinglePassMatching(singlePass);
+            System.out.println("Running " + (singlePass ? "single pass" : "per word") + " matching ...");
+            for (int i = 0; i < 10*1000; i++)
+                matcher.matchPhrases(query);
+            long startTime = System.currentTimeMillis();
+            int repetitions = 1000 * 1000;
+            for (int i = 0; i < repetitions; i++)
+                matcher.matchPhrases(query);
+            long totalTime = System.currentTimeMillis() - startTime;
+            System.out.println("Total time: " + totalTime + " ms\nTime per match: " +
+                               1000*1000*totalTime/(float)repetitions + " ns");
+        }
+    }
+
+    private AndItem createQuery(int length) {
+        String[] words = { "with", "david", "bowie", "lord", "of", "the", "new", "york", "i", "am", "a", "man", "web" };
+        AndItem and = new AndItem();
+        for (int i = 0; i < length; i++)
+            and.addItem(new WordItem(words[i % words.length]));
+        return and;
+    }
+
+    public static void main(String[] args) {
+        new PhraseMatcherMicroBenchmark().run();
+    }
+
+}
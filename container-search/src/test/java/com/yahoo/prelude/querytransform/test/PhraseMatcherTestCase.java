@@ -3,11 +3,15 @@ package com.yahoo.prelude.querytransform.test;
 
 import com.yahoo.prelude.query.AndItem;
 import com.yahoo.prelude.query.IntItem;
+import com.yahoo.prelude.query.OrItem;
 import com.yahoo.prelude.query.WordItem;
 import com.yahoo.prelude.querytransform.PhraseMatcher;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -260,4 +264,53 @@ public class PhraseMatcherTestCase {
         assertFalse(i.hasNext());
     }
 
+    @Test
+    public void testSinglePassMatchingFindsTheSamePhrases() {
+        AndItem and = new AndItem();
+        String[] words = { "noise", "this", "is", "a", "test", "aword", "this", "is", "3", "tests", "tudor", "vidor",
+                           "this", "this", "is", "a", "aword", "tudor", "tudor", "vidor" };
+        for (int i = 0; i < 60; i++)
+            and.addItem(new WordItem(words[i % words.length]));
+        OrItem or = new OrItem();
+        or.addItem(new WordItem("tudor"));
+        or.addItem(new WordItem("vidor"));
+        and.addItem(or);
+
+        for (boolean matchAll : new boolean[] { false, true }) {
+            PhraseMatcher matcher = new PhraseMatcher("src/test/java/com/yahoo/prelude/querytransform/test/test-fsa.fsa");
+            matcher.setMatchAll(matchAll);
+            Set<String> expected = toStrings(matcher.matchPhrases(and));
+            matcher.setSinglePassMatching(true);
+            List<PhraseMatcher.Phrase> matches = matcher.matchPhrases(and);
+            assertEquals(expected.size(), matches.size());
+            assertEquals(new ArrayList<>(expected), new ArrayList<>(toStrings(matches)));
+        }
+    }
+
+    @Test
+    public void testSinglePassMatchingDoesNotMatchAcrossIndexes() {
+        PhraseMatcher matcher = new PhraseMatcher("src/test/java/com/yahoo/prelude/querytransform/test/test-fsa.fsa");
+        matcher.setSinglePassMatching(true);
+        AndItem and = new AndItem();
+        and.addItem(new WordItem("tudor", "title"));
+        and.addItem(new WordItem("vidor", "body"));
+        and.addItem(new WordItem("tudor", "body"));
+        and.addItem(new WordItem("vidor", "body"));
+        List<PhraseMatcher.Phrase> matches = matcher.matchPhrases(and);
+
+        assertNotNull(matches);
+        assertEquals(1, matches.size());
+        assertEquals(2, matches.get(0).getStartIndex());
+        assertEquals(2, matches.get(0).getLength());
+    }
+
+    /** Returns the distinct owner, start, length and data of the given phrases, in order */
+    private Set<String> toStrings(List<PhraseMatcher.Phrase> phrases) {
+        Set<String> strings = new LinkedHashSet<>();
+        for (PhraseMatcher.Phrase phrase : phrases)
+            strings.add(System.identityHashCode(phrase.getOwner()) + ":" + phrase.getStartIndex() + ":" +
+                        phrase.getLength() + ":" + phrase.getData());
+        return strings;
+    }
+
 }
@@ -0,0 +1,61 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.semantics.test;
+
+import com.yahoo.prelude.semantics.RuleBase;
+import com.yahoo.search.Query;
+import com.yahoo.search.test.QueryTestCase;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that looking up candidate rules in an index gives the same result as evaluating all rules
+ *
+ * @author agent
+ */
+public class RuleIndexTestCase {
+
+    private static final String rules =
+            "[brand] -> brand:[brand];\n" +
+            "[brand] :- sony, [computers];\n" +
+            "[computers] :- dell, lenovo;\n" +
+            "car +> vehicle;\n" +
+            "vehicle +> transport;\n" +
+            "transport -> moving;\n" +
+            "parameter.hits>='11' +> largepage;\n";
+
+    @Test
+    public void testIndexedEvaluationIsEquivalentToEvaluatingAllRules() throws Exception {
+        RuleBase ruleBase = RuleBase.createFromString("test", rules, null);
+        assertEquals("brand:sony", assertIndexedSemantics("sony", ruleBase));
+        assertIndexedSemantics("dell", ruleBase);
+        assertIndexedSemantics("cars", ruleBase); // stemmed, and each production enables the next rule
+        assertIndexedSemantics("vehicle", ruleBase);
+        assertIndexedSemantics("lenovo car", ruleBase);
+        assertIndexedSemantics("something", ruleBase);
+        assertIndexedSemantics("something&hits=20", ruleBase);
+    }
+
+    @Test
+    public void testRulesAddedAfterInitializationAreEvaluated() throws Exception {
+        RuleBase ruleBase = RuleBase.createFromString("test", rules, null);
+        ruleBase.addRule(RuleBase.createFromString("more", "hat -> cap;", null).rules().get(0));
+        assertEquals("cap", assertIndexedSemantics("hat", ruleBase));
+    }
+
+    /** Asserts that the input is rewritten equally with and without rule indexing, and returns the rewritten query */
+    private String assertIndexedSemantics(String input, RuleBase ruleBase) {
+        ruleBase.setRuleIndexing(false);
+        String expected = analyze(input, ruleBase);
+        ruleBase.setRuleIndexing(true);
+        assertEquals("Indexed evaluation of '" + input + "'", expected, analyze(input, ruleBase));
+        return expected;
+    }
+
+    private String analyze(String input, RuleBase ruleBase) {
+        Query query = new Query("?query=" + QueryTestCase.httpEncode(input) + "&language=und");
+        ruleBase.analyze(query, 0);
+        return query.getModel().getQueryTree().getRoot().toString();
+    }
+
+}
@@ -326,4 +326,36 @@ public class IndexFactsTestCase {
         assertEquals("url:\"https foo bar\"", query2.getModel().getQueryTree().toString());
     }
     
+    @Test
+    public void testFrozenSessionsAreEquivalentAndShared() {
+        IndexFacts unfrozen = createIndexFacts();
+        IndexFacts frozen = createIndexFacts();
+        frozen.freeze();
+
+        List<List<String>> sourcesAndRestricts = Arrays.asList(Collections.emptyList(),
+                                                               Collections.singletonList("clusterOne"),
+                                                               Collections.singletonList("clusterTwo"),
+                                                               Collections.singletonList("three"),
+                                                               Collections.singletonList("nonexisting"));
+        List<String> indexNames = Arrays.asList("a", "A", "b", "c", "d", "e", "twewm", "TWEWM", "nonexisting", "", null);
+        for (List<String> sources : sourcesAndRestricts) {
+            for (List<String> restrict : sourcesAndRestricts) {
+                IndexFacts.Session expected = unfrozen.newSession(sources, restrict);
+                IndexFacts.Session session = frozen.newSession(sources, restrict);
+                assertEquals(expected.documentTypes(), session.documentTypes());
+                for (String indexName : indexNames) {
+                    String context = "Index '" + indexName + "' in " + sources + ", " + restrict;
+                    assertEquals(context, expected.getIndex(indexName).getName(), session.getIndex(indexName).getName());
+                    assertEquals(context, expected.isIndex(indexName), session.isIndex(indexName));
+                    if (indexName != null)
+                        assertEquals(context, expected.getCanonicName(indexName), session.getCanonicName(indexName));
+                }
+            }
+        }
+
+        // Sessions for the same sources and restrict share the resolved document types
+        assertSame(frozen.newSession(Collections.singletonList("clusterOne"), Collections.emptyList()).documentTypes(),
+                   frozen.newSession(Collections.singletonList("clusterOne"), Collections.emptyList()).documentTypes());
+    }
+
 }
@@ -0,0 +1,142 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.cache;
+
+import com.yahoo.jdisc.Metric;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ */
+public class QueryResultCacheTest {
+
+    @Test
+    public void testPutAndGet() {
+        QueryResultCache<String, String> cache = new QueryResultCache<>(1000, 1000, 100, 1);
+        cache.put("key1", "value1", 100, 0);
+        cache.put("key2", "value2", 200, 0);
+        assertEquals("value1", cache.get("key1", 0));
+        assertEquals("value2", cache.get("key2", 0));
+        assertNull(cache.get("key3", 0));
+        assertEquals(300, cache.byteSize());
+        assertEquals(2, cache.entryCount());
+
+        cache.put("key1", "value1b", 50, 0);
+        assertEquals("value1b", cache.get("key1", 0));
+        assertEquals(250, cache.byteSize());
+
+        assertEquals(3, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvictedWhenFull() {
+        QueryResultCache<String, String> cache = new QueryResultCache<>(300, 1000, 100, 1);
+        cache.put("key1", "value1", 100, 0);
+        cache.put("key2", "value2", 100, 0);
+        cache.put("key3", "value3", 100, 0);
+        cache.get("key1", 0);
+
+        cache.put("key4", "value4", 100, 0);
+        assertNull(cache.get("key2", 0));
+        assertEquals("value1", cache.get("key1", 0));
+        assertEquals("value3", cache.get("key3", 0));
+        assertEquals("value4", cache.get("key4", 0));
+        assertEquals(300, cache.byteSize());
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    public void testCountsAreReportedToMetric() {
+        CountingMetric metric = new CountingMetric();
+        QueryResultCache<String, String> cache = new QueryResultCache<>(200, 1000, 100, 1, metric, "test_cache");
+        cache.put("key1", "value1", 100, 0);
+        cache.put("key2", "value2", 100, 0);
+        cache.get("key1", 0);
+        cache.put("key3", "value3", 100, 0);
+        cache.get("key1", 0);
+        cache.get("key2", 0);
+
+        assertEquals(2, (int)metric.counts.get("test_cache.hits"));
+        assertEquals(1, (int)metric.counts.get("test_cache.misses"));
+        assertEquals(1, (int)metric.counts.get("test_cache.evictions"));
+    }
+
+    @Test
+    public void testTooLargeEntriesAreNotCached() {
+        QueryResultCache<String, String> cache = new QueryResultCache<>(1000, 1000, 10, 1);
+        cache.put("key1", "value1", 100, 0);
+        assertEquals("value1", cache.get("key1", 0));
+
+        cache.put("key1", "value1b", 101, 0);
+        assertNull(cache.get("key1", 0));
+        assertEquals(0, cache.byteSize());
+    }
+
+    @Test
+    public void testExpiredEntriesAreRemoved() {
+        QueryResultCache<String, String> cache = new QueryResultCache<>(1000, 1000, 100, 1);
+        cache.put("key1", "value1", 100, 0);
+        assertEquals("value1", cache.get("key1", 1000));
+        assertNull(cache.get("key1", 1001));
+        assertEquals(0, cache.entryCount());
+        assertEquals(0, cache.byteSize());
+    }
+
+    @Test
+    public void testConcurrentAccessKeepsSizeWithinCapacity() throws Exception {
+        QueryResultCache<Integer, Integer> cache = new QueryResultCache<>(16 * 1000, 1000, 1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                int offset = thread * 10000;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        cache.put(offset + i, i, 10, 0);
+                        cache.get(offset + i / 2, 0);
+                    }
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(cache.byteSize() <= cache.capacity());
+        assertEquals(cache.entryCount() * 10, cache.byteSize());
+        assertEquals(8 * 10000, cache.entryCount() + cache.evictionCount());
+        assertEquals(8 * 10000, cache.hitCount() + cache.missCount());
+    }
+
+    private static class CountingMetric implements Metric {
+
+        final Map<String, Integer> counts = new HashMap<>();
+
+        @Override
+        public void set(String key, Number value, Context context) {
+            counts.put(key, value.intValue());
+        }
+
+        @Override
+        public void add(String key, Number value, Context context) {
+            counts.merge(key, value.intValue(), Integer::sum);
+        }
+
+        @Override
+        public Context createContext(Map<String, ?> properties) { return null; }
+
+    }
+
+}
@@ -2,6 +2,7 @@
 package com.yahoo.search.dispatch;
 
 import com.yahoo.compress.CompressionType;
+import com.yahoo.container.protect.Error;
 import com.yahoo.prelude.fastsearch.DocsumDefinition;
 import com.yahoo.prelude.fastsearch.DocsumDefinitionSet;
 import com.yahoo.prelude.fastsearch.DocsumField;
@@ -9,12 +10,21 @@ import com.yahoo.prelude.fastsearch.DocumentDatabase;
 import com.yahoo.prelude.fastsearch.FastHit;
 import com.yahoo.search.Query;
 import com.yahoo.search.Result;
+import com.yahoo.search.statistics.LatencyBreakdown;
+import com.yahoo.statistics.Statistics;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -121,6 +131,196 @@ public class FillTestCase {
         assertEquals("Malfunctioning", result.hits().getError().getDetailedMessage());
     }
 
+    @Test
+    public void testFillingFromUnknownNodeDoesNotWaitForTimeout() {
+        Map<Integer, Client.NodeConnection> nodes = new HashMap<>();
+        nodes.put(0, client.createConnection("host0", 123));
+        Dispatcher dispatcher = new Dispatcher(nodes, client);
+
+        Query query = new Query();
+        query.setTimeout(1000);
+        Result result = new Result(query);
+        result.hits().add(createHit(0, 0));
+        result.hits().add(createHit(7, 1));
+
+        client.setDocsumReponse("host0", 0, "summaryClass1", map("field1", "s.0.0", "field2", 0));
+
+        dispatcher.fill(result, "summaryClass1", db(), CompressionType.valueOf("LZ4"));
+
+        assertEquals("s.0.0", result.hits().get("hit:0").getField("field1").toString());
+        assertNull(result.hits().get("hit:1").getField("field1"));
+        assertEquals("Could not fill hits from unknown node 7", result.hits().getError().getDetailedMessage());
+        assertEquals("No timeout waiting for a response", 1, result.hits().getErrorHit().errors().size());
+    }
+
+    @Test
+    public void testFillingReturnsEarlyWhenMinSummaryCoverageIsReached() {
+        client.setUnresponsive("host2");
+
+        Map<Integer, Client.NodeConnection> nodes = new HashMap<>();
+        nodes.put(0, client.createConnection("host0", 123));
+        nodes.put(1, client.createConnection("host1", 123));
+        nodes.put(2, client.createConnection("host2", 123));
+        // The clock does not advance, so the adaptive deadline is reached as soon as coverage is sufficient
+        Clock clock = Clock.fixed(Instant.EPOCH, ZoneOffset.UTC);
+        Dispatcher dispatcher = new Dispatcher(nodes, client, 60, 1, null, null, clock);
+
+        Query query = new Query();
+        query.setTimeout(60000);
+        Result result = new Result(query);
+        result.hits().add(createHit(0, 0));
+        result.hits().add(createHit(1, 1));
+        result.hits().add(createHit(2, 2));
+
+        client.setDocsumReponse("host0", 0, "summaryClass1", map("field1", "s.0.0", "field2", 0));
+        client.setDocsumReponse("host1", 1, "summaryClass1", map("field1", "s.1.1", "field2", 1));
+
+        dispatcher.fill(result, "summaryClass1", db(), CompressionType.valueOf("LZ4"));
+
+        assertEquals("s.0.0", result.hits().get("hit:0").getField("field1").toString());
+        assertEquals("s.1.1", result.hits().get("hit:1").getField("field1").toString());
+        assertNull(result.hits().get("hit:2").getField("field1"));
+        assertEquals(Error.TIMEOUT.code, result.hits().getError().getCode());
+    }
+
+    @Test
+    public void testFillingFromSummaryCache() {
+        Map<Integer, Client.NodeConnection> nodes = new HashMap<>();
+        nodes.put(0, client.createConnection("host0", 123));
+        nodes.put(1, client.createConnection("host1", 123));
+        SummaryCache summaryCache = new SummaryCache(1024 * 1024, 60000);
+        Dispatcher dispatcher = new Dispatcher(nodes, client, 100, 1, summaryCache);
+
+        client.setDocsumReponse("host0", 0, "summaryClass1", map("field1", "s.0.0", "field2", 0));
+        client.setDocsumReponse("host1", 1, "summaryClass1", map("field1", "s.1.1", "field2", 1));
+
+        Result result = new Result(new Query());
+        result.hits().add(createHit(0, 0));
+        result.hits().add(createHit(1, 1));
+        dispatcher.fill(result, "summaryClass1", db(), CompressionType.valueOf("LZ4"));
+        assertEquals(2, summaryCache.entryCount());
+        assertFalse(result.hits().get("hit:0").isCached());
+
+        client.setMalfunctioning(true); // the second fill must not reach the nodes
+        Result cachedResult = new Result(new Query());
+        cachedResult.hits().add(createHit(0, 0));
+        cachedResult.hits().add(createHit(1, 1));
+        dispatcher.fill(cachedResult, "summaryClass1", db(), CompressionType.valueOf("LZ4"));
+
+        assertNull(cachedResult.hits().getError());
+        assertEquals("s.0.0", cachedResult.hits().get("hit:0").getField("field1").toString());
+        assertEquals("s.1.1", cachedResult.hits().get("hit:1").getField("field1").toString());
+        assertEquals(1L, cachedResult.hits().get("hit:1").getField("field2"));
+        assertTrue(cachedResult.hits().get("hit:0").isCached());
+        assertTrue(cachedResult.hits().get("hit:1").isFilled("summaryClass1"));
+        assertEquals(2, summaryCache.hitCount());
+    }
+
+    @Test
+    public void testSummariesAreCachedUnderTheGenerationOfTheNodeWhenRequested() {
+        Map<Integer, Client.NodeConnection> nodes = new HashMap<>();
+        nodes.put(0, client.createConnection("host0", 123));
+        SearchCluster.Node node0 = new SearchCluster.Node(0, "host0", 0, 0);
+        SearchCluster cluster = new SearchCluster(100.0, Collections.singletonList(node0), null, 1, null);
+        node0.setDocstamp(7);
+        SummaryCache summaryCache = new SummaryCache(1024 * 1024, 60000);
+        Dispatcher dispatcher = new Dispatcher(nodes, client, 100, 1, summaryCache, null, Clock.systemUTC(), cluster);
+
+        client.setDocsumReponse("host0", 0, "summaryClass1", map("field1", "s.0.0", "field2", 0));
+        client.setRequestListener(() -> node0.setDocstamp(8)); // the content changes while the request is served
+
+        Result result = new Result(new Query());
+        result.hits().add(createHit(0, 0));
+        dispatcher.fill(result, "summaryClass1", db(), CompressionType.valueOf("LZ4"));
+        assertEquals("s.0.0", result.hits().get("hit:0").getField("field1").toString());
+        assertEquals(1, summaryCache.entryCount());
+        assertNotNull(summaryCache.get(client.globalIdFrom(0), "summaryClass1", "default", 7));
+        assertNull("The summary is not cached as the content after the change",
+                   summaryCache.get(client.globalIdFrom(0), "summaryClass1", "default", 8));
+
+        Result refilledResult = new Result(new Query());
+        refilledResult.hits().add(createHit(0, 0));
+        dispatcher.fill(refilledResult, "summaryClass1", db(), CompressionType.valueOf("LZ4"));
+        assertFalse(refilledResult.hits().get("hit:0").isCached());
+        assertEquals(Arrays.asList("host0", "host0"), client.requestedNodes());
+    }
+
+    @Test
+    public void testSummaryCacheIsInvalidatedWhenTheDispatcherIsDeconstructed() {
+        Map<Integer, Client.NodeConnection> nodes = new HashMap<>();
+        nodes.put(0, client.createConnection("host0", 123));
+        SummaryCache summaryCache = new SummaryCache(1024 * 1024, 60000);
+        Dispatcher dispatcher = new Dispatcher(nodes, client, 100, 1, summaryCache);
+
+        client.setDocsumReponse("host0", 0, "summaryClass1", map("field1", "s.0.0", "field2", 0));
+        Result result = new Result(new Query());
+        result.hits().add(createHit(0, 0));
+        dispatcher.fill(result, "summaryClass1", db(), CompressionType.valueOf("LZ4"));
+        assertEquals(1, summaryCache.entryCount());
+
+        dispatcher.deconstruct();
+        assertEquals(0, summaryCache.entryCount());
+    }
+
+    @Test
+    public void testHedgingSlowSummaryRequests() {
+        Map<Integer, Client.NodeConnection> nodes = new HashMap<>();
+        nodes.put(0, client.createConnection("host0", 123));
+        nodes.put(1, client.createConnection("host1", 123));
+        SearchCluster cluster = new SearchCluster(88.0,
+                                                  Arrays.asList(new SearchCluster.Node(0, "host0", 0, 0),
+                                                                new SearchCluster.Node(1, "host1", 1, 1)),
+                                                  null, 1, null);
+        SummaryRequestHedging hedging = new SummaryRequestHedging(cluster, 95, Statistics.nullImplementation, "test.");
+        for (int i = 0; i < 128; i++)
+            hedging.recordResponseTime(0);
+        Dispatcher dispatcher = new Dispatcher(nodes, client, 100, 1, null, hedging);
+
+        client.setUnresponsive("host0");
+        client.setDocsumReponse("host1", 0, "summaryClass1", map("field1", "s.1.0", "field2", 0));
+        client.setDocsumReponse("host1", 1, "summaryClass1", map("field1", "s.1.1", "field2", 1));
+
+        Result result = new Result(new Query());
+        result.hits().add(createHit(0, 0));
+        result.hits().add(createHit(1, 1));
+        dispatcher.fill(result, "summaryClass1", db(), CompressionType.valueOf("LZ4"));
+
+        assertEquals("s.1.0", result.hits().get("hit:0").getField("field1").toString());
+        assertEquals("s.1.1", result.hits().get("hit:1").getField("field1").toString());
+        assertNull(result.hits().getError());
+        assertEquals(Arrays.asList("host0", "host1", "host1"), client.requestedNodes());
+        assertEquals("The slow request is cancelled", Arrays.asList("host0"), client.cancelledNodes());
+        assertEquals(1, hedging.hedgedCount());
+        assertEquals(1, hedging.wonCount());
+        assertEquals("The time until the backup answered is recorded", 128 + 2, hedging.recordedCount());
+    }
+
+    @Test
+    public void testLatencyBreakdownOfFilling() {
+        Map<Integer, Client.NodeConnection> nodes = new HashMap<>();
+        nodes.put(0, client.createConnection("host0", 123));
+        nodes.put(1, client.createConnection("host1", 123));
+        Dispatcher dispatcher = new Dispatcher(nodes, client);
+
+        Query query = new Query();
+        LatencyBreakdown breakdown = new LatencyBreakdown();
+        query.setLatencyBreakdown(breakdown);
+        Result result = new Result(query);
+        result.hits().add(createHit(0, 0));
+        result.hits().add(createHit(1, 1));
+        client.setDocsumReponse("host0", 0, "summaryClass1", map("field1", "s.0.0", "field2", 0));
+        client.setDocsumReponse("host1", 1, "summaryClass1", map("field1", "s.1.1", "field2", 1));
+
+        dispatcher.fill(result, "summaryClass1", db(), CompressionType.valueOf("LZ4"));
+
+        assertEquals("s.1.1", result.hits().get("hit:1").getField("field1").toString());
+        List<String> spans = new ArrayList<>();
+        for (LatencyBreakdown.Span span : breakdown.spans())
+            spans.add(span.phase().metricName() + " " + span.source());
+        Collections.sort(spans);
+        assertEquals(Arrays.asList("decode node.0", "decode node.1", "rpc_wait node.0", "rpc_wait node.1"), spans);
+    }
+
     private DocumentDatabase db() {
         List<DocsumField> fields = new ArrayList<>();
         fields.add(DocsumField.create("field1", "string"));
@@ -0,0 +1,219 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.compress.CompressionType;
+import com.yahoo.compress.Compressor;
+import com.yahoo.document.GlobalId;
+import com.yahoo.prelude.fastsearch.DocsumDefinition;
+import com.yahoo.prelude.fastsearch.DocsumDefinitionSet;
+import com.yahoo.prelude.fastsearch.DocsumField;
+import com.yahoo.prelude.fastsearch.DocumentDatabase;
+import com.yahoo.prelude.fastsearch.FastHit;
+import com.yahoo.prelude.fastsearch.TimeoutException;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.slime.BinaryFormat;
+import com.yahoo.slime.Cursor;
+import com.yahoo.slime.Inspector;
+import com.yahoo.slime.Slime;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author agent
+ */
+public class GetDocsumsBatcherTest {
+
+    private final MockClient client = new MockClient();
+    private final Compressor compressor = new Compressor();
+
+    @Test
+    public void testBatching() throws TimeoutException {
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        List<GetDocsumsBatcher.Batch> sentBatches = new ArrayList<>();
+        GetDocsumsBatcher batcher = new GetDocsumsBatcher(0.001, scheduler, sentBatches::add);
+
+        Result result1 = createResult(0, 1);
+        Result result2 = createResult(2);
+        Result result3 = createResult(3);
+        Dispatcher.GetDocsumsResponseReceiver receiver1 = new Dispatcher.GetDocsumsResponseReceiver(1, compressor, result1);
+        Dispatcher.GetDocsumsResponseReceiver receiver2 = new Dispatcher.GetDocsumsResponseReceiver(1, compressor, result2);
+        Dispatcher.GetDocsumsResponseReceiver receiver3 = new Dispatcher.GetDocsumsResponseReceiver(1, compressor, result3);
+        batcher.add("summaryClass1", "test", "default", CompressionType.LZ4, hitsOf(result1), receiver1, 1.0);
+        batcher.add("summaryClass1", "test", "default", CompressionType.LZ4, hitsOf(result2), receiver2, 2.0);
+        batcher.add("summaryClass2", "test", "default", CompressionType.LZ4, hitsOf(result3), receiver3, 1.0);
+        assertTrue("Nothing is sent before the window ends", sentBatches.isEmpty());
+
+        ArgumentCaptor<Runnable> windowEnds = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler, times(2)).schedule(windowEnds.capture(), anyLong(), any(TimeUnit.class));
+        for (Runnable windowEnd : windowEnds.getAllValues())
+            windowEnd.run();
+        assertEquals(2, sentBatches.size());
+
+        GetDocsumsBatcher.Batch batch = sentBatches.get(0);
+        assertEquals(3, batch.size());
+        assertEquals(2.0, batch.timeout(), 0.0000001);
+        Inspector request = batch.toSlime().get();
+        assertEquals("summaryClass1", request.field("class").asString());
+        assertEquals(3, request.field("gids").entries());
+        assertEquals(client.globalIdFrom(2).toString(),
+                     new GlobalId(request.field("gids").entry(2).asData()).toString());
+
+        batch.receive(Client.GetDocsumsResponseOrError.fromResponse(createResponse(batch.hits())), compressor);
+        receiver1.processResponses(result1.getQuery(), "summaryClass1", db());
+        receiver2.processResponses(result2.getQuery(), "summaryClass1", db());
+        assertEquals("s.0", result1.hits().get("hit:0").getField("field1").toString());
+        assertEquals("s.1", result1.hits().get("hit:1").getField("field1").toString());
+        assertEquals("s.2", result2.hits().get("hit:2").getField("field1").toString());
+        assertEquals(2L, result2.hits().get("hit:2").getField("field2"));
+    }
+
+    @Test
+    public void testFullBatchIsSentImmediately() {
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        List<GetDocsumsBatcher.Batch> sentBatches = new ArrayList<>();
+        GetDocsumsBatcher batcher = new GetDocsumsBatcher(0.001, scheduler, sentBatches::add);
+
+        List<FastHit> hits = new ArrayList<>();
+        for (int i = 0; i < GetDocsumsBatcher.maxBatchSize; i++)
+            hits.add(createHit(i));
+        Result result = new Result(new Query());
+        batcher.add("summaryClass1", "test", "default", CompressionType.LZ4, hits,
+                    new Dispatcher.GetDocsumsResponseReceiver(1, compressor, result), 1.0);
+        assertEquals(1, sentBatches.size());
+
+        ArgumentCaptor<Runnable> windowEnd = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(windowEnd.capture(), anyLong(), any(TimeUnit.class));
+        windowEnd.getValue().run();
+        assertEquals("A sent batch is not sent again", 1, sentBatches.size());
+    }
+
+    @Test
+    public void testCancelledRequestsAreRemovedFromTheirBatchUntilItIsSent() {
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        List<GetDocsumsBatcher.Batch> sentBatches = new ArrayList<>();
+        GetDocsumsBatcher batcher = new GetDocsumsBatcher(0.001, scheduler, sentBatches::add);
+
+        Result result1 = createResult(0, 1);
+        Result result2 = createResult(2);
+        Client.PendingRequest request1 = batcher.add("summaryClass1", "test", "default", CompressionType.LZ4, hitsOf(result1),
+                                                     new Dispatcher.GetDocsumsResponseReceiver(1, compressor, result1), 3.0);
+        Client.PendingRequest request2 = batcher.add("summaryClass1", "test", "default", CompressionType.LZ4, hitsOf(result2),
+                                                     new Dispatcher.GetDocsumsResponseReceiver(1, compressor, result2), 1.0);
+        request1.cancel();
+
+        ArgumentCaptor<Runnable> windowEnd = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(windowEnd.capture(), anyLong(), any(TimeUnit.class));
+        windowEnd.getValue().run();
+        assertEquals(1, sentBatches.size());
+        assertEquals(1, sentBatches.get(0).size());
+        assertEquals("The timeout of the cancelled request is not used", 1.0, sentBatches.get(0).timeout(), 0.0000001);
+        request2.cancel();
+        assertEquals("Cancelling after sending does nothing", 1, sentBatches.get(0).size());
+
+        Result result3 = createResult(3);
+        batcher.add("summaryClass1", "test", "default", CompressionType.LZ4, hitsOf(result3),
+                    new Dispatcher.GetDocsumsResponseReceiver(1, compressor, result3), 1.0).cancel();
+        verify(scheduler, times(2)).schedule(windowEnd.capture(), anyLong(), any(TimeUnit.class));
+        windowEnd.getValue().run();
+        assertEquals("A batch whose requests are all cancelled is not sent", 1, sentBatches.size());
+    }
+
+    @Test
+    public void testErrorsAreOnlyReportedToRequestsMissingSummaries() throws TimeoutException {
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        List<GetDocsumsBatcher.Batch> sentBatches = new ArrayList<>();
+        GetDocsumsBatcher batcher = new GetDocsumsBatcher(0.001, scheduler, sentBatches::add);
+
+        Result result1 = createResult(0, 1);
+        Result result2 = createResult(2);
+        Dispatcher.GetDocsumsResponseReceiver receiver1 = new Dispatcher.GetDocsumsResponseReceiver(1, compressor, result1);
+        Dispatcher.GetDocsumsResponseReceiver receiver2 = new Dispatcher.GetDocsumsResponseReceiver(1, compressor, result2);
+        batcher.add("summaryClass1", "test", "default", CompressionType.LZ4, hitsOf(result1), receiver1, 1.0);
+        batcher.add("summaryClass1", "test", "default", CompressionType.LZ4, hitsOf(result2), receiver2, 1.0);
+        ArgumentCaptor<Runnable> windowEnd = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(windowEnd.capture(), anyLong(), any(TimeUnit.class));
+        windowEnd.getValue().run();
+
+        GetDocsumsBatcher.Batch batch = sentBatches.get(0);
+        batch.receive(Client.GetDocsumsResponseOrError.fromResponse(createResponse(batch.hits(), 1, "Hit 1 timed out")),
+                      compressor);
+        receiver1.processResponses(result1.getQuery(), "summaryClass1", db());
+        receiver2.processResponses(result2.getQuery(), "summaryClass1", db());
+        assertNotNull(result1.hits().getError());
+        assertTrue(result1.hits().getErrorHit().errors().toString().contains("Hit 1 timed out"));
+        assertNull(result2.hits().getError());
+        assertEquals("s.2", result2.hits().get("hit:2").getField("field1").toString());
+    }
+
+    private Client.GetDocsumsResponse createResponse(List<FastHit> hits) {
+        return createResponse(hits, -1, null);
+    }
+
+    /** Creates a response with an empty summary for the hit with the given id and the given error, if any */
+    private Client.GetDocsumsResponse createResponse(List<FastHit> hits, int missingId, String error) {
+        Slime slime = new Slime();
+        Cursor docsums = slime.setObject().setArray("docsums");
+        for (FastHit hit : hits) {
+            int id = Integer.parseInt(hit.getId().toString().substring("hit:".length()));
+            Cursor docsum = docsums.addObject().setObject("docsum");
+            if (id == missingId) continue;
+            docsum.setString("field1", "s." + id);
+            docsum.setLong("field2", id);
+        }
+        if (error != null) {
+            Cursor errorObject = slime.get().setArray("errors").addObject();
+            errorObject.setString("type", "timeout");
+            errorObject.setString("message", error);
+        }
+        byte[] slimeBytes = BinaryFormat.encode(slime);
+        Compressor.Compression compressed = compressor.compress(CompressionType.LZ4, slimeBytes);
+        return new Client.GetDocsumsResponse(compressed.type().getCode(), slimeBytes.length, compressed.data(), hits);
+    }
+
+    private Result createResult(int ... hitIds) {
+        Result result = new Result(new Query());
+        for (int hitId : hitIds)
+            result.hits().add(createHit(hitId));
+        return result;
+    }
+
+    private List<FastHit> hitsOf(Result result) {
+        List<FastHit> hits = new ArrayList<>();
+        for (int i = 0; i < result.hits().size(); i++)
+            hits.add((FastHit)result.hits().get(i));
+        return hits;
+    }
+
+    private FastHit createHit(int hitId) {
+        FastHit hit = new FastHit("hit:" + hitId, 1.0);
+        hit.setGlobalId(client.globalIdFrom(hitId));
+        return hit;
+    }
+
+    private DocumentDatabase db() {
+        List<DocsumField> fields = new ArrayList<>();
+        fields.add(DocsumField.create("field1", "string"));
+        fields.add(DocsumField.create("field2", "int64"));
+        DocsumDefinitionSet docsums = new DocsumDefinitionSet(Collections.singleton(new DocsumDefinition("summaryClass1",
+                                                                                                         fields)));
+        return new DocumentDatabase("default", docsums, Collections.emptySet());
+    }
+
+}
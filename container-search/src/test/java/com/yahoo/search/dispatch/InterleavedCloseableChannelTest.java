@@ -0,0 +1,137 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.fs4.BasicPacket;
+import com.yahoo.fs4.DocumentInfo;
+import com.yahoo.fs4.QueryPacket;
+import com.yahoo.fs4.QueryResultPacket;
+import com.yahoo.prelude.fastsearch.test.fs4mock.MockFS4ResourcePool;
+import com.yahoo.search.Query;
+import com.yahoo.search.dispatch.SearchCluster.Group;
+import com.yahoo.search.dispatch.SearchCluster.Node;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author agent
+ */
+public class InterleavedCloseableChannelTest {
+
+    @Test
+    public void requireThatResultsFromAllNodesInGroupAreMerged() throws Exception {
+        MockFS4ResourcePool resourcePool = new MockFS4ResourcePool();
+        Node n1 = new SearchCluster.Node(0, "test-node1", 9999, 0);
+        Node n2 = new SearchCluster.Node(1, "test-node2", 9999, 0);
+        SearchCluster cluster = new SearchCluster(88.0, Arrays.asList(n1, n2), resourcePool, 1, null);
+        LoadBalancer lb = new LoadBalancer(cluster, true, true);
+
+        Query query = new Query("?query=test&hits=3");
+        Group group = lb.takeGroupForQuery(query).get();
+        assertThat(group.nodes().size(), equalTo(2));
+
+        try (InterleavedCloseableChannel channel = new InterleavedCloseableChannel(resourcePool, lb, group, 100, 1)) {
+            channel.setQuery(query);
+            channel.sendPacket(QueryPacket.create(query));
+            BasicPacket[] packets = channel.receivePackets(10000, 1);
+
+            assertThat(packets.length, equalTo(1));
+            assertThat(packets[0], instanceOf(QueryResultPacket.class));
+            QueryResultPacket result = (QueryResultPacket)packets[0];
+
+            // each mock node returns the same two documents
+            assertThat(result.getTotalDocumentCount(), equalTo(4L));
+            assertThat(result.getNodesQueried(), equalTo((short)2));
+            assertThat(result.getNodesReplied(), equalTo((short)2));
+            List<DocumentInfo> documents = result.getDocuments();
+            assertThat(documents.size(), equalTo(3));
+            assertThat(documents.get(0).getMetric(), equalTo(2003.0));
+            assertThat(documents.get(1).getMetric(), equalTo(2003.0));
+            assertThat(documents.get(2).getMetric(), equalTo(1855.0));
+            assertThat(documents.get(0).getDistributionKey(), not(equalTo(documents.get(1).getDistributionKey())));
+        }
+    }
+
+    @Test
+    public void requireThatResultWindowIsAppliedAfterMerging() throws Exception {
+        MockFS4ResourcePool resourcePool = new MockFS4ResourcePool();
+        Node n1 = new SearchCluster.Node(0, "test-node1", 9999, 0);
+        Node n2 = new SearchCluster.Node(1, "test-node2", 9999, 0);
+        SearchCluster cluster = new SearchCluster(88.0, Arrays.asList(n1, n2), resourcePool, 1, null);
+        LoadBalancer lb = new LoadBalancer(cluster, true, true);
+
+        Query query = new Query("?query=test&hits=2&offset=1");
+        Group group = lb.takeGroupForQuery(query).get();
+
+        try (InterleavedCloseableChannel channel = new InterleavedCloseableChannel(resourcePool, lb, group, 100, 1)) {
+            channel.setQuery(query);
+            QueryPacket queryPacket = QueryPacket.create(query);
+            channel.sendPacket(queryPacket);
+            assertThat(queryPacket.getOffset(), equalTo(0));
+            assertThat(queryPacket.getHits(), equalTo(3));
+
+            QueryResultPacket result = (QueryResultPacket)channel.receivePackets(10000, 1)[0];
+            assertThat(result.getOffset(), equalTo(1));
+            List<DocumentInfo> documents = result.getDocuments();
+            assertThat(documents.size(), equalTo(2));
+            assertThat(documents.get(0).getMetric(), equalTo(2003.0));
+            assertThat(documents.get(1).getMetric(), equalTo(1855.0));
+        }
+    }
+
+    @Test
+    public void requireThatGroupIsReleasedWithTheOutcomeOfTheQuery() throws Exception {
+        MockFS4ResourcePool resourcePool = new MockFS4ResourcePool();
+        Node n1 = new SearchCluster.Node(0, "test-node1", 9999, 0);
+        Node n2 = new SearchCluster.Node(1, "test-node2", 9999, 0);
+        SearchCluster cluster = new SearchCluster(88.0, Arrays.asList(n1, n2), resourcePool, 1, null);
+        RecordingLoadBalancer lb = new RecordingLoadBalancer(cluster);
+
+        Query query = new Query("?query=test&hits=3");
+        Group group = lb.takeGroupForQuery(query).get();
+        try (InterleavedCloseableChannel channel = new InterleavedCloseableChannel(resourcePool, lb, group, 100, 1)) {
+            channel.setQuery(query);
+        }
+        assertThat(lb.releases, equalTo(1));
+        assertThat(lb.success, equalTo(false));
+
+        group = lb.takeGroupForQuery(query).get();
+        try (InterleavedCloseableChannel channel = new InterleavedCloseableChannel(resourcePool, lb, group, 100, 1)) {
+            channel.setQuery(query);
+            channel.sendPacket(QueryPacket.create(query));
+            channel.receivePackets(10000, 1);
+        }
+        assertThat(lb.releases, equalTo(2));
+        assertThat(lb.success, equalTo(true));
+        assertThat(lb.searchTimeMs, greaterThan(0.0));
+    }
+
+    /** A load balancer which records the outcome of the last release */
+    static class RecordingLoadBalancer extends LoadBalancer {
+
+        int releases = 0;
+        boolean success;
+        double searchTimeMs;
+
+        RecordingLoadBalancer(SearchCluster cluster) {
+            super(cluster, true, true);
+        }
+
+        @Override
+        public void releaseGroup(Group group, boolean success, double searchTimeMs) {
+            releases++;
+            this.success = success;
+            this.searchTimeMs = searchTimeMs;
+            super.releaseGroup(group, success, searchTimeMs);
+        }
+
+    }
+
+}
@@ -0,0 +1,96 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.search.dispatch.SearchCluster.Group;
+import com.yahoo.search.dispatch.SearchCluster.Node;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A multithreaded JMH benchmark of group allocation throughput in the load balancer policies.
+ * Each thread repeatedly takes and releases a group, reporting a simulated search time
+ * where one group is consistently slower than the others. The allocations to the slow group are
+ * counted such that they can be compared to the fair share, which is one in {@link #groupCount}.
+ * Run with the main method of this, from the test classpath, which adds the GC profiler
+ * (as -prof gc does on the command line) to report the allocation rate along with the throughput.
+ *
+ * @author agent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Threads(64)
+@Fork(1)
+public class LoadBalancerBenchmark {
+
+    private static final int groupCount = 8;
+
+    /** Whether to use the round-robin scheduler rather than the adaptive one */
+    @Param({"true", "false"})
+    public boolean roundRobin;
+
+    private LoadBalancer loadBalancer;
+
+    @Setup
+    public void setup() {
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < groupCount; i++)
+            nodes.add(new Node(i, "test-node" + i, i, i));
+        SearchCluster cluster = new SearchCluster(88.0, nodes, null, 1, null);
+        loadBalancer = new LoadBalancer(cluster, roundRobin);
+    }
+
+    /** Counts the allocations of each thread, reported along with the throughput */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Allocations {
+
+        /** The number of allocations of the slow group */
+        public long slowGroup;
+
+        /** The total number of allocations */
+        public long total;
+
+    }
+
+    @Benchmark
+    public void takeAndReleaseGroup(Allocations allocations) {
+        Group group = loadBalancer.takeGroupForQuery(null).get();
+        double searchTime = ThreadLocalRandom.current().nextDouble(5.0, 10.0);
+        if (group.id() == 0) {
+            searchTime *= 10;
+            allocations.slowGroup++;
+        }
+        allocations.total++;
+        loadBalancer.releaseGroup(group, true, searchTime);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(LoadBalancerBenchmark.class.getSimpleName())
+                                       .addProfiler(GCProfiler.class)
+                                       .build()).run();
+    }
+
+}
@@ -114,4 +114,52 @@ public class LoadBalancerTest {
         group = grp.get();
         assertThat(group.id(), equalTo(id2));
     }
+
+    @Test
+    public void requreThatAdaptiveLoadBalancerReturnsGroupWithLowestLatency() {
+        Node n1 = new SearchCluster.Node(0, "test-node1", 0, 0);
+        Node n2 = new SearchCluster.Node(1, "test-node2", 1, 1);
+        SearchCluster cluster = new SearchCluster(88.0, Arrays.asList(n1, n2), null, 1, null);
+        LoadBalancer lb = new LoadBalancer(cluster, false);
+
+        // allocating two queries in parallel always hits both groups, so both get latency samples
+        for (int i = 0; i < 100; i++) {
+            Group first = lb.takeGroupForQuery(null).get();
+            Group second = lb.takeGroupForQuery(null).get();
+            lb.releaseGroup(first, true, first.id() == 0 ? 100.0 : 1.0);
+            lb.releaseGroup(second, true, second.id() == 0 ? 100.0 : 1.0);
+        }
+
+        for (int i = 0; i < 10; i++) {
+            Group group = lb.takeGroupForQuery(null).get();
+            assertThat(group.id(), equalTo(1));
+            lb.releaseGroup(group, true, 1.0);
+        }
+    }
+
+    @Test
+    public void requreThatAdaptiveLoadBalancerAvoidsGroupWithManyQueriesInFlight() {
+        Node n1 = new SearchCluster.Node(0, "test-node1", 0, 0);
+        Node n2 = new SearchCluster.Node(1, "test-node2", 1, 1);
+        SearchCluster cluster = new SearchCluster(88.0, Arrays.asList(n1, n2), null, 1, null);
+        LoadBalancer lb = new LoadBalancer(cluster, false);
+
+        Group first = lb.takeGroupForQuery(null).get();
+        Group second = lb.takeGroupForQuery(null).get();
+        assertThat(second.id(), not(equalTo(first.id())));
+
+        lb.releaseGroup(second, false, 0);
+        assertThat(lb.takeGroupForQuery(null).get().id(), equalTo(second.id()));
+    }
+
+    @Test
+    public void requreThatAdaptiveLoadBalancerIgnoresClusteredGroups() {
+        Node n1 = new SearchCluster.Node(0, "test-node1", 0, 0);
+        Node n2 = new SearchCluster.Node(1, "test-node2", 1, 0);
+        SearchCluster cluster = new SearchCluster(88.0, Arrays.asList(n1, n2), null, 2, null);
+        LoadBalancer lb = new LoadBalancer(cluster, false);
+
+        assertThat(lb.takeGroupForQuery(null).isPresent(), is(false));
+    }
+
 }
@@ -14,8 +14,10 @@ import com.yahoo.slime.Slime;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @author bratseth
@@ -24,23 +26,36 @@ public class MockClient implements Client {
 
     private final Map<DocsumKey, Map<String, Object>> docsums = new HashMap<>();
     private final Compressor compressor = new Compressor();
+    private final Set<String> unresponsiveNodes = new HashSet<>();
+    private final List<String> requestedNodes = new ArrayList<>();
+    private final List<String> cancelledNodes = new ArrayList<>();
     private boolean malfunctioning = false;
+    private Runnable requestListener = () -> {};
 
     /** Set to true to cause this to produce an error instead of a regular response */
     public void setMalfunctioning(boolean malfunctioning) { this.malfunctioning = malfunctioning; }
 
+    /** Causes requests to the given node to never get a response */
+    public void setUnresponsive(String nodeId) { unresponsiveNodes.add(nodeId); }
+
+    /** Sets an action to run each time a request is received, before it is responded to */
+    public void setRequestListener(Runnable requestListener) { this.requestListener = requestListener; }
+
     @Override
     public NodeConnection createConnection(String hostname, int port) {
         return new MockNodeConnection(hostname, port);
     }
 
     @Override
-    public void getDocsums(List<FastHit> hitsContext, NodeConnection node, CompressionType compression,
-                           int uncompressedSize, byte[] compressedSlime, Dispatcher.GetDocsumsResponseReceiver responseReceiver,
-                           double timeoutSeconds) {
+    public PendingRequest getDocsums(List<FastHit> hitsContext, NodeConnection node, GetDocsumsRequestProperties properties,
+                                     CompressionType compression, int uncompressedSize, byte[] compressedSlime,
+                                     Dispatcher.GetDocsumsResponseReceiver responseReceiver, double timeoutSeconds) {
+        requestedNodes.add(node.toString());
+        requestListener.run();
+        if (unresponsiveNodes.contains(node.toString())) return () -> cancelledNodes.add(node.toString());
         if (malfunctioning) {
-            responseReceiver.receive(GetDocsumsResponseOrError.fromError("Malfunctioning"));
-            return;
+            responseReceiver.receive(GetDocsumsResponseOrError.fromError("Malfunctioning", hitsContext));
+            return () -> {};
         }
 
         Inspector request = BinaryFormat.decode(compressor.decompress(compressedSlime, compression, uncompressedSize)).get();
@@ -70,8 +85,15 @@ public class MockClient implements Client {
         GetDocsumsResponse response = new GetDocsumsResponse(compressionResult.type().getCode(), slimeBytes.length,
                                                              compressionResult.data(), hitsContext);
         responseReceiver.receive(GetDocsumsResponseOrError.fromResponse(response));
+        return () -> {};
     }
 
+    /** Returns the nodes requests have been sent to, in the order they were sent */
+    public List<String> requestedNodes() { return requestedNodes; }
+
+    /** Returns the nodes of the requests which have been cancelled while waiting for a response */
+    public List<String> cancelledNodes() { return cancelledNodes; }
+
     public void setDocsumReponse(String nodeId, int docId, String docsumClass, Map<String, Object> docsumValues) {
         docsums.put(new DocsumKey(nodeId, globalIdFrom(docId), docsumClass), docsumValues);
     }
@@ -0,0 +1,198 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.document.GlobalId;
+import com.yahoo.document.idstring.IdIdString;
+import com.yahoo.jdisc.Metric;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author agent
+ */
+public class SummaryCacheTest {
+
+    @Test
+    public void testPutAndGet() {
+        SummaryCache cache = new SummaryCache(1600, 1000);
+        cache.put(gid(1), "class1", "db", 0, bytes(1, 10), 0);
+        cache.put(gid(1), "class2", "db", 0, bytes(2, 10), 0);
+        cache.put(gid(2), "class1", "db", 0, bytes(3, 10), 0);
+
+        assertArrayEquals(bytes(1, 10), cache.get(gid(1), "class1", "db", 0, 0));
+        assertArrayEquals(bytes(2, 10), cache.get(gid(1), "class2", "db", 0, 0));
+        assertArrayEquals(bytes(3, 10), cache.get(gid(2), "class1", "db", 0, 0));
+        assertNull(cache.get(gid(2), "class2", "db", 0, 0));
+        assertNull(cache.get(gid(2), "class1", "otherDb", 0, 0));
+        assertEquals(3, cache.hitCount());
+        assertEquals(2, cache.missCount());
+    }
+
+    @Test
+    public void testOldestSummariesAreOverwrittenWhenFull() {
+        SummaryCache cache = new SummaryCache(1600, 1000);
+        for (int i = 0; i < 20; i++)
+            cache.put(gid(i), "class1", "db", 0, bytes(i, 100), 0);
+
+        assertEquals(16, cache.entryCount());
+        for (int i = 0; i < 4; i++)
+            assertNull(cache.get(gid(i), "class1", "db", 0, 0));
+        for (int i = 4; i < 20; i++)
+            assertArrayEquals(bytes(i, 100), cache.get(gid(i), "class1", "db", 0, 0));
+    }
+
+    @Test
+    public void testSummariesAreNotSplitAcrossTheEndOfTheBuffer() {
+        SummaryCache cache = new SummaryCache(1000, 1000);
+        for (int i = 0; i < 16; i++)
+            cache.put(gid(i), "class1", "db", 0, bytes(i, 60), 0);
+        cache.put(gid(16), "class1", "db", 0, bytes(16, 60), 0); // does not fit in the last 40 bytes: Written at the start
+
+        assertArrayEquals(bytes(16, 60), cache.get(gid(16), "class1", "db", 0, 0));
+        assertNull(cache.get(gid(0), "class1", "db", 0, 0));
+        assertArrayEquals(bytes(1, 60), cache.get(gid(1), "class1", "db", 0, 0));
+    }
+
+    @Test
+    public void testTooLargeSummariesAreNotCached() {
+        SummaryCache cache = new SummaryCache(1600, 1000);
+        cache.put(gid(1), "class1", "db", 0, bytes(1, 101), 0);
+        assertNull(cache.get(gid(1), "class1", "db", 0, 0));
+    }
+
+    @Test
+    public void testExpiration() {
+        SummaryCache cache = new SummaryCache(1600, 1000);
+        cache.put(gid(1), "class1", "db", 0, bytes(1, 10), 0);
+        cache.put(gid(1), "class2", "db", 0, bytes(1, 10), 500);
+
+        assertNull(cache.get(gid(1), "class1", "db", 0, 1001));
+        assertArrayEquals(bytes(1, 10), cache.get(gid(1), "class2", "db", 0, 1001));
+    }
+
+    @Test
+    public void testSummariesAreOnlyReturnedInTheGenerationTheyWereCachedIn() {
+        SummaryCache cache = new SummaryCache(1600, 1000);
+        cache.put(gid(1), "class1", "db", 7, bytes(1, 10), 0);
+
+        assertNull(cache.get(gid(1), "class1", "db", 8, 0));
+        assertArrayEquals(bytes(1, 10), cache.get(gid(1), "class1", "db", 7, 0));
+        cache.put(gid(1), "class1", "db", 8, bytes(2, 10), 0);
+        assertArrayEquals(bytes(2, 10), cache.get(gid(1), "class1", "db", 8, 0));
+    }
+
+    @Test
+    public void testInvalidation() {
+        SummaryCache cache = new SummaryCache(1600, 1000);
+        cache.put(gid(1), "class1", "db1", 0, bytes(1, 10), 0);
+        cache.put(gid(2), "class1", "db1", 0, bytes(2, 10), 0);
+        cache.put(gid(1), "class1", "db2", 0, bytes(3, 10), 0);
+
+        cache.invalidate("db1");
+        assertEquals(1, cache.entryCount());
+        assertNull(cache.get(gid(1), "class1", "db1", 0, 0));
+        assertNull(cache.get(gid(2), "class1", "db1", 0, 0));
+        assertArrayEquals(bytes(3, 10), cache.get(gid(1), "class1", "db2", 0, 0));
+
+        cache.put(gid(1), "class1", "db1", 0, bytes(4, 10), 0);
+        assertArrayEquals(bytes(4, 10), cache.get(gid(1), "class1", "db1", 0, 0));
+
+        cache.invalidateAll();
+        assertEquals(0, cache.entryCount());
+        assertNull(cache.get(gid(1), "class1", "db1", 0, 0));
+        assertNull(cache.get(gid(1), "class1", "db2", 0, 0));
+    }
+
+    @Test
+    public void testSegmentedCache() {
+        SummaryCache cache = new SummaryCache(16000, 1000, 16, null);
+        for (int i = 0; i < 100; i++)
+            cache.put(gid(i), "class1", "db", 0, bytes(i, 10), 0);
+
+        assertEquals(100, cache.entryCount());
+        for (int i = 0; i < 100; i++)
+            assertArrayEquals(bytes(i, 10), cache.get(gid(i), "class1", "db", 0, 0));
+        cache.put(gid(100), "class1", "db", 0, bytes(100, 1001), 0);
+        assertNull("Summaries larger than a segment are not cached", cache.get(gid(100), "class1", "db", 0, 0));
+    }
+
+    @Test
+    public void testConcurrentPutsAndGets() throws InterruptedException {
+        SummaryCache cache = new SummaryCache(1024 * 1024, 60000, 16, null);
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < 1000; i++) {
+                        int id = thread * 1000 + i;
+                        cache.put(gid(id), "class1", "db", 0, bytes(id, 20), 0);
+                        assertArrayEquals(bytes(id, 20), cache.get(gid(id), "class1", "db", 0, 0));
+                    }
+                }
+                catch (Throwable e) {
+                    failures.add(e);
+                }
+            }));
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(Collections.emptyList(), failures);
+        assertEquals(8000, cache.entryCount());
+    }
+
+    @Test
+    public void testHitsAndMissesAreReportedAsMetrics() {
+        CountingMetric metric = new CountingMetric();
+        SummaryCache cache = new SummaryCache(1600, 1000, metric);
+        cache.put(gid(1), "class1", "db", 0, bytes(1, 10), 0);
+        cache.get(gid(1), "class1", "db", 0, 0);
+        cache.get(gid(1), "class1", "db", 0, 0);
+        cache.get(gid(2), "class1", "db", 0, 0);
+        assertEquals(2, metric.counts.get(SummaryCache.hitsMetricName).intValue());
+        assertEquals(1, metric.counts.get(SummaryCache.missesMetricName).intValue());
+    }
+
+    private GlobalId gid(int id) {
+        return new GlobalId(new IdIdString("", "test", "", String.valueOf(id)));
+    }
+
+    private byte[] bytes(int value, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = (byte)(value + i);
+        return bytes;
+    }
+
+    private static class CountingMetric implements Metric {
+
+        final Map<String, Integer> counts = new HashMap<>();
+
+        @Override
+        public void set(String key, Number value, Context context) {
+            counts.put(key, value.intValue());
+        }
+
+        @Override
+        public void add(String key, Number value, Context context) {
+            counts.merge(key, value.intValue(), Integer::sum);
+        }
+
+        @Override
+        public Context createContext(Map<String, ?> properties) { return null; }
+
+    }
+
+}
@@ -0,0 +1,145 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.federation.http;
+
+import com.yahoo.component.ComponentId;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.result.Hit;
+import com.yahoo.search.searchchain.Execution;
+import com.yahoo.statistics.Statistics;
+import com.yahoo.text.Utf8;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests requesting HTTP backends using non-blocking I/O
+ *
+ * @author agent
+ */
+public class NonBlockingHttpTestCase {
+
+    private KeepAliveServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new KeepAliveServer();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void testProviderSearcherSearchesWithoutThread() throws Exception {
+        HTTPParameters parameters = new HTTPParameters("/hello");
+        parameters.setNonBlocking(true);
+        TestProviderSearcher searcher = new TestProviderSearcher(parameters, server.port());
+        Query query = new Query("?query=test");
+        CompletableFuture<Result> futureResult = searcher.searchAsync(query, new Execution(Execution.Context.createContextStub()));
+        assertNotNull(futureResult);
+        Result result = futureResult.get(1, TimeUnit.MINUTES);
+        assertNull(result.hits().getError());
+        assertEquals("hello", result.hits().get("response").getField("body"));
+        Hit requestMeta = result.hits().get("logging:" + searcher.getId().toString());
+        assertEquals(200, requestMeta.getField(HTTPSearcher.LOG_STATUS));
+        assertEquals("127.0.0.1", requestMeta.getField(HTTPSearcher.LOG_IP_ADDRESS));
+    }
+
+    @Test
+    public void testProviderSearcherIsBlockingByDefault() {
+        TestProviderSearcher searcher = new TestProviderSearcher(new HTTPParameters("/hello"), server.port());
+        assertNull(searcher.searchAsync(new Query("?query=test"), new Execution(Execution.Context.createContextStub())));
+    }
+
+    private static class TestProviderSearcher extends HTTPProviderSearcher {
+
+        TestProviderSearcher(HTTPParameters parameters, int port) {
+            super(new ComponentId("test"), Collections.singletonList(new Connection("localhost", port)),
+                  parameters, Statistics.nullImplementation);
+        }
+
+        @Override
+        public void unmarshal(InputStream stream, long contentLength, Result result) throws IOException {
+            Hit hit = new Hit("response");
+            hit.setField("body", new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8)).readLine());
+            result.hits().add(hit);
+        }
+
+        @Override
+        public Map<String, String> getCacheKey(Query q) { return null; }
+
+    }
+
+    /** A server keeping connections alive which responds with "hello" to all requests */
+    private static class KeepAliveServer {
+
+        private final ServerSocket serverSocket;
+
+        KeepAliveServer() throws IOException {
+            serverSocket = new ServerSocket(0);
+            Thread acceptor = new Thread(this::accept);
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int port() { return serverSocket.getLocalPort(); }
+
+        void close() throws IOException { serverSocket.close(); }
+
+        private void accept() {
+            try {
+                while (true) {
+                    Socket socket = serverSocket.accept();
+                    Thread handler = new Thread(() -> serve(socket));
+                    handler.setDaemon(true);
+                    handler.start();
+                }
+            }
+            catch (IOException e) {
+                // closed
+            }
+        }
+
+        private void serve(Socket socket) {
+            try (Socket s = socket) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+                OutputStream out = s.getOutputStream();
+                while (in.readLine() != null) {
+                    int contentLength = 0;
+                    for (String line; (line = in.readLine()) != null && ! line.isEmpty(); )
+                        if (line.toLowerCase().startsWith("content-length:"))
+                            contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+                    for (int i = 0; i < contentLength; i++)
+                        in.read();
+
+                    out.write(Utf8.toBytes("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: 5\r\n\r\nhello"));
+                    out.flush();
+                }
+            }
+            catch (IOException e) {
+                // connection closed
+            }
+        }
+
+    }
+
+}
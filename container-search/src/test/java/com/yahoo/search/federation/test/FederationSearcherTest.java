@@ -19,6 +19,7 @@ import com.yahoo.search.federation.StrictContractsConfig;
 import com.yahoo.search.result.ErrorHit;
 import com.yahoo.search.result.Hit;
 import com.yahoo.search.result.HitGroup;
+import com.yahoo.search.searchchain.AsyncSearcher;
 import com.yahoo.search.searchchain.Execution;
 import com.yahoo.search.searchchain.Execution.Context;
 import com.yahoo.search.searchchain.model.federation.FederationOptions;
@@ -32,6 +33,8 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.*;
@@ -209,6 +212,73 @@ public class FederationSearcherTest {
         assertNotNull(result.hits().getError());
     }
 
+    @Test
+    public void require_that_async_searchers_are_searched_without_a_thread() throws InterruptedException {
+        AsyncAddHitSearcher async1 = new AsyncAddHitSearcher();
+        AsyncAddHitSearcher async2 = new AsyncAddHitSearcher();
+        FederationTester tester = new FederationTester();
+        tester.addSearchChain("chain1", async1);
+        tester.addSearchChain("chain2", async2);
+
+        Thread completer = new Thread(() -> { // completes each result when its search has started
+            async1.complete();
+            async2.complete();
+        });
+        completer.start();
+        Result result = tester.searchAndFill();
+        completer.join();
+
+        assertEquals(Thread.currentThread(), async1.searchThread);
+        assertEquals(Thread.currentThread(), async2.searchThread);
+        assertThat(getNonErrorHits(result).size(), is(2));
+        assertNull(result.hits().getError());
+        for (Iterator<Hit> i = result.hits().deepIterator(); i.hasNext();)
+            assertFilled(i.next());
+    }
+
+    @Test
+    public void require_that_async_searchers_time_out() {
+        FederationTester tester = new FederationTester();
+        tester.addSearchChain("chain1", new AsyncAddHitSearcher()); // never completed
+        tester.addSearchChain("chain2", new AddHitSearcher());
+
+        Query query = new Query();
+        query.setTimeout(50); // make the test run faster
+        Result result = tester.search(query);
+        assertThat(getNonErrorHits(result).size(), is(1));
+        assertNotNull(result.hits().getError());
+    }
+
+    /** Returns a future result which is completed with a hit, in the thread calling complete */
+    private static class AsyncAddHitSearcher extends AddHitSearcher implements AsyncSearcher {
+
+        private final CompletableFuture<Result> result = new CompletableFuture<>();
+        private final CountDownLatch started = new CountDownLatch(1);
+        private volatile Query query;
+        volatile Thread searchThread;
+
+        @Override
+        public CompletableFuture<Result> searchAsync(Query query, Execution execution) {
+            this.query = query;
+            searchThread = Thread.currentThread();
+            started.countDown();
+            return result;
+        }
+
+        void complete() {
+            try {
+                started.await();
+            }
+            catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            Result completed = new Result(query);
+            completed.hits().add(hit);
+            result.complete(completed);
+        }
+
+    }
+
     private Hit getFirstHit(Hit hitGroup) {
         if (hitGroup instanceof HitGroup)
             return ((HitGroup) hitGroup).get(0);
@@ -6,6 +6,7 @@ import com.yahoo.component.chain.dependencies.After;
 import com.yahoo.container.protect.Error;
 import com.yahoo.document.DocumentId;
 import com.yahoo.document.GlobalId;
+import com.yahoo.jdisc.Metric;
 import com.yahoo.prelude.fastsearch.FastHit;
 import com.yahoo.prelude.fastsearch.GroupingListHit;
 import com.yahoo.prelude.query.NotItem;
@@ -530,6 +531,101 @@ public class GroupingExecutorTestCase {
         }
     }
 
+    @Test
+    public void requireThatGroupingResultsAreCachedWhenRequested() {
+        GroupingExecutor executor = new GroupingExecutor();
+        PassCounter cnt = new PassCounter();
+        Execution exc = newExecution(executor, cnt);
+        for (int i = 0; i < 2; ++i) {
+            Query query = new Query("?query=dummy&hits=0&groupingResultCacheMaxAge=60");
+            GroupingRequest.newInstance(query).setRootOperation(
+                    GroupingOperation.fromString("all(group(foo) each(output(max(bar))))"));
+            Result res = exc.search(query);
+            assertEquals(1, res.hits().size());
+            assertNotNull(res.hits().get("group:root:0"));
+        }
+        assertEquals(2, cnt.numPasses);
+        assertEquals(1, executor.resultCache().hitCount());
+    }
+
+    @Test
+    public void requireThatCachedGroupingResultsAreCombinedWithRequestedHits() {
+        GroupingExecutor executor = new GroupingExecutor();
+        GroupingCounter cnt = new GroupingCounter();
+        Execution exc = newExecution(executor, cnt);
+        for (int i = 0; i < 2; ++i) {
+            Query query = new Query("?query=dummy&hits=" + (10 + i) + "&groupingResultCacheMaxAge=60");
+            GroupingRequest.newInstance(query).setRootOperation(GroupingOperation.fromString("all(output(count()))"));
+            Result res = exc.search(query);
+            assertNotNull(res.hits().get("group:root:0"));
+        }
+        assertEquals(Arrays.asList(1, 0), cnt.passList);
+    }
+
+    @Test
+    public void requireThatGroupingResultsAreNotCachedByDefault() {
+        GroupingExecutor executor = new GroupingExecutor();
+        PassCounter cnt = new PassCounter();
+        Execution exc = newExecution(executor, cnt);
+        for (int i = 0; i < 2; ++i) {
+            Query query = new Query("?query=dummy&hits=0");
+            GroupingRequest.newInstance(query).setRootOperation(GroupingOperation.fromString("all(output(count()))"));
+            exc.search(query);
+        }
+        assertEquals(2, cnt.numPasses);
+        assertEquals(0, executor.resultCache().hitCount() + executor.resultCache().missCount());
+    }
+
+    @Test
+    public void requireThatGroupingResultsContainingHitsAreNotCached() {
+        PassCounter cnt = new PassCounter();
+        Execution exc = newExecution(new GroupingExecutor(), cnt);
+        for (int i = 0; i < 2; ++i) {
+            Query query = new Query("?query=dummy&hits=0&groupingResultCacheMaxAge=60");
+            GroupingRequest.newInstance(query).setRootOperation(
+                    GroupingOperation.fromString("all(group(foo) each(each(output(summary()))))"));
+            exc.search(query);
+        }
+        assertEquals(4, cnt.numPasses);
+    }
+
+    @Test
+    public void requireThatDifferentGroupingRequestsAreNotServedFromCache() {
+        PassCounter cnt = new PassCounter();
+        Execution exc = newExecution(new GroupingExecutor(), cnt);
+        for (String expression : Arrays.asList("all(output(count()))", "all(output(sum(foo)))")) {
+            Query query = new Query("?query=dummy&hits=0&groupingResultCacheMaxAge=60");
+            GroupingRequest.newInstance(query).setRootOperation(GroupingOperation.fromString(expression));
+            exc.search(query);
+        }
+        assertEquals(2, cnt.numPasses);
+    }
+
+    @Test
+    public void requireThatDifferentQueriesAndSourcesAreNotServedFromCache() {
+        PassCounter cnt = new PassCounter();
+        Execution exc = newExecution(new GroupingExecutor(), cnt);
+        for (String request : Arrays.asList("query=foo", "query=bar", "query=bar&sources=music", "query=bar&sources=music")) {
+            Query query = new Query("?" + request + "&hits=0&groupingResultCacheMaxAge=60");
+            GroupingRequest.newInstance(query).setRootOperation(GroupingOperation.fromString("all(output(count()))"));
+            exc.search(query);
+        }
+        assertEquals(3, cnt.numPasses);
+    }
+
+    @Test
+    public void requireThatGroupingResultCacheReportsMetrics() {
+        CountingMetric metric = new CountingMetric();
+        Execution exc = newExecution(new GroupingExecutor(new ComponentId("grouping"), metric), new PassCounter());
+        for (int i = 0; i < 3; ++i) {
+            Query query = new Query("?query=dummy&hits=0&groupingResultCacheMaxAge=60");
+            GroupingRequest.newInstance(query).setRootOperation(GroupingOperation.fromString("all(output(count()))"));
+            exc.search(query);
+        }
+        assertEquals(2, (int)metric.counts.get(GroupingResultCache.hitsMetricName));
+        assertEquals(1, (int)metric.counts.get(GroupingResultCache.missesMetricName));
+    }
+
     @Test
     public void testIllegalQuery() {
         Execution exc = newExecution(new GroupingExecutor());
@@ -574,6 +670,25 @@ public class GroupingExecutorTestCase {
         return collector.lst;
     }
 
+    private static class CountingMetric implements Metric {
+
+        final Map<String, Integer> counts = new HashMap<>();
+
+        @Override
+        public void set(String key, Number value, Context context) {
+            counts.put(key, value.intValue());
+        }
+
+        @Override
+        public void add(String key, Number value, Context context) {
+            counts.merge(key, value.intValue(), Integer::sum);
+        }
+
+        @Override
+        public Context createContext(Map<String, ?> properties) { return null; }
+
+    }
+
     @After (GroupingExecutor.COMPONENT_NAME)
     private static class FillRequestThrower extends Searcher {
 
@@ -67,6 +67,45 @@ public class QueryProfileVariantsTestCase {
         assertGet("a.2.*.*","a",new String[] {"x2","y?","z?"}, profile, cprofile);
     }
 
+    /** Tests lookup among many variants, and in more contexts than are cached, against the uncompiled profile */
+    @Test
+    public void testManyVariants() {
+        QueryProfile profile = new QueryProfile("a");
+        profile.set("a", "a.deflt", null);
+        profile.setDimensions(new String[] {"x","y","z"});
+        for (int x = 0; x < 10; x++) {
+            profile.set("a", "a." + x + ".*.*", new String[] {"x" + x, null, null}, null);
+            for (int y = 0; y < 10; y += 2)
+                profile.set("a", "a." + x + "." + y + ".*", new String[] {"x" + x, "y" + y, null}, null);
+            for (int z = 0; z < 10; z += 3)
+                profile.set("a", "a." + x + ".*." + z, new String[] {"x" + x, null, "z" + z}, null);
+        }
+        for (int z = 0; z < 10; z += 5)
+            profile.set("a", "a.*.*." + z, new String[] {null, null, "z" + z}, null);
+        profile.set("a", "a.1.2.3", new String[] {"x1", "y2", "z3"}, null);
+        profile.set("b", "b.deflt", null);
+        CompiledQueryProfile cprofile = profile.compile(null);
+
+        assertGet("a.1.2.3", "a", new String[] {"x1","y2","z3"}, profile, cprofile);
+        assertGet("a.1.2.*", "a", new String[] {"x1","y2","z6"}, profile, cprofile);
+        assertGet("a.1.*.6", "a", new String[] {"x1","y3","z6"}, profile, cprofile);
+        assertGet("a.*.*.5", "a", new String[] {"x?","y2","z5"}, profile, cprofile);
+        assertGet("a.deflt", "a", new String[] {"x?","y?","z?"}, profile, cprofile);
+        for (int x = -1; x < 11; x++) {
+            for (int y = -1; y < 11; y++) {
+                for (int z = -1; z < 11; z++) {
+                    String[] dimensionValues = new String[] { x < 0 ? null : "x" + x,
+                                                              y < 0 ? null : "y" + y,
+                                                              z < 0 ? null : "z" + z };
+                    Map<String, String> context = toMap(profile, dimensionValues);
+                    assertGet(String.valueOf(profile.get("a", context)), "a", dimensionValues, profile, cprofile);
+                    assertGet("b.deflt", "b", dimensionValues, profile, cprofile);
+                    assertEquals(profile.get("a", context), cprofile.listValues("", context).get("a"));
+                }
+            }
+        }
+    }
+
     @Test
     public void testVariantsOfInlineCompound() {
         QueryProfile profile=new QueryProfile("test");
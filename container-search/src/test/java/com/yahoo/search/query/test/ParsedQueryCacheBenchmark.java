@@ -0,0 +1,77 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.query.test;
+
+import com.yahoo.prelude.query.Item;
+import com.yahoo.search.Query;
+import com.yahoo.search.query.parser.ParsedQueryCache;
+import com.yahoo.search.searchchain.Execution;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single threaded JMH benchmark of producing query trees by parsing with and without a parsed query cache,
+ * over a head heavy set of query strings.
+ * Run with the main method of this, from the test classpath.
+ *
+ * @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class ParsedQueryCacheBenchmark {
+
+    private static final int distinctQueries = 1000;
+
+    /** Whether to parse with a parsed query cache */
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private final String[] queryStrings = new String[distinctQueries];
+    private Execution.Context context;
+    private int count = 0;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < distinctQueries; i++)
+            queryStrings[i] = "?query=" + "title:foo%20bar" + i + "%20-baz%20%22quoted%20phrase" + i + "%22";
+        context = Execution.Context.createContextStub();
+        context.setParsedQueryCache(cached ? new ParsedQueryCache(10000, null) : null);
+    }
+
+    /** Returns the root of the parsed query tree, such that the parsing is not optimized away */
+    @Benchmark
+    public Item parse() {
+        count = (count + 1) % distinctQueries;
+        Query query = new Query(queryStrings[headHeavyIndex(count)]);
+        query.getModel().setExecution(new Execution(context));
+        return query.getModel().getQueryTree().getRoot();
+    }
+
+    /** Returns the index of a query string such that a few query strings make up most of the traffic */
+    private static int headHeavyIndex(int i) {
+        int index = (i * 31) % distinctQueries;
+        return index * index / distinctQueries;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ParsedQueryCacheBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
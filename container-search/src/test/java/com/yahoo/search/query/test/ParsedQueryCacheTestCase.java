@@ -0,0 +1,69 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.query.test;
+
+import com.yahoo.prelude.IndexFacts;
+import com.yahoo.prelude.query.AndItem;
+import com.yahoo.prelude.query.WordItem;
+import com.yahoo.search.Query;
+import com.yahoo.search.query.parser.ParsedQueryCache;
+import com.yahoo.search.searchchain.Execution;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+/**
+ * @author agent
+ */
+public class ParsedQueryCacheTestCase {
+
+    @Test
+    public void testParsedQueriesAreCachedAndCopied() {
+        ParsedQueryCache cache = new ParsedQueryCache(100, null);
+        Execution.Context context = Execution.Context.createContextStub();
+        context.setParsedQueryCache(cache);
+
+        Query first = parse("?query=foo%20bar", context);
+        assertEquals("AND foo bar", first.getModel().getQueryTree().getRoot().toString());
+        assertEquals(0, cache.hitCount());
+        assertEquals(1, cache.missCount());
+
+        ((AndItem)first.getModel().getQueryTree().getRoot()).addItem(new WordItem("baz"));
+
+        Query second = parse("?query=foo%20bar", context);
+        assertEquals("The cached tree is not changed by changes to the tree of the query",
+                     "AND foo bar", second.getModel().getQueryTree().getRoot().toString());
+        assertEquals(1, cache.hitCount());
+        assertNotSame(second.getModel().getQueryTree().getRoot(), parse("?query=foo%20bar", context).getModel().getQueryTree().getRoot());
+        assertEquals(2, cache.hitCount());
+        assertEquals(1, cache.entryCount());
+    }
+
+    @Test
+    public void testKeyContainsParsingParameters() {
+        ParsedQueryCache cache = new ParsedQueryCache(100, null);
+        Execution.Context context = Execution.Context.createContextStub();
+        context.setParsedQueryCache(cache);
+
+        assertEquals("AND foo bar", parse("?query=foo%20bar", context).getModel().getQueryTree().getRoot().toString());
+        assertEquals("OR foo bar", parse("?query=foo%20bar&type=any", context).getModel().getQueryTree().getRoot().toString());
+        assertEquals("AND title:foo title:bar",
+                     parse("?query=foo%20bar&default-index=title", context).getModel().getQueryTree().getRoot().toString());
+        parse("?query=foo%20bar&filter=baz", context);
+        assertEquals(0, cache.hitCount());
+        assertEquals(4, cache.entryCount());
+
+        Execution.Context otherContext = Execution.Context.createContextStub(new IndexFacts());
+        otherContext.setParsedQueryCache(cache);
+        parse("?query=foo%20bar", otherContext);
+        assertEquals("Queries parsed with other index facts are not cache hits", 0, cache.hitCount());
+    }
+
+    private Query parse(String queryString, Execution.Context context) {
+        Query query = new Query(queryString);
+        query.getModel().setExecution(new Execution(context));
+        query.getModel().getQueryTree();
+        return query;
+    }
+
+}
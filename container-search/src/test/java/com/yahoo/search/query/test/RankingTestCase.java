@@ -71,6 +71,28 @@ public class RankingTestCase {
     }
 
     /** Test setting sorting to null does not cause an exception. */
+    @Test
+    public void testClonesDoNotShareModifications() {
+        Query query = new Query("?query=test&ranking.properties.foo=bar1&ranking.features.query(name)=0.1&someProperty=a");
+        Query clone = query.clone();
+        Query cloneOfClone = clone.clone();
+
+        clone.getRanking().getProperties().put("foo", "bar2");
+        clone.getRanking().getFeatures().asMap().put("query(name)", "0.2");
+        clone.properties().set("someProperty", "b");
+        query.getRanking().getProperties().asMap().get("foo").add("bar3");
+
+        assertEquals("[bar1, bar3]", query.getRanking().getProperties().get("foo").toString());
+        assertEquals("[bar1, bar2]", clone.getRanking().getProperties().get("foo").toString());
+        assertEquals("[bar1]", cloneOfClone.getRanking().getProperties().get("foo").toString());
+        assertEquals("0.1", query.getRanking().getFeatures().get("query(name)"));
+        assertEquals("0.2", clone.getRanking().getFeatures().get("query(name)"));
+        assertEquals("0.1", cloneOfClone.getRanking().getFeatures().get("query(name)"));
+        assertEquals("a", query.properties().get("someProperty"));
+        assertEquals("b", clone.properties().get("someProperty"));
+        assertEquals("a", cloneOfClone.properties().get("someProperty"));
+    }
+
     @Test
     public void testResetSorting() {
         Query q=new Query();
@@ -0,0 +1,117 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.rendering;
+
+import com.yahoo.data.access.slime.SlimeAdapter;
+import com.yahoo.prelude.fastsearch.DocsumDefinition;
+import com.yahoo.prelude.fastsearch.DocsumField;
+import com.yahoo.prelude.fastsearch.FastHit;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.searchchain.Execution;
+import com.yahoo.slime.BinaryFormat;
+import com.yahoo.slime.Cursor;
+import com.yahoo.slime.Slime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single threaded JMH benchmark of rendering results of FastHits with summary data to JSON,
+ * which is the common case of rendering results from content nodes.
+ * Run with the main method of this, from the test classpath.
+ *
+ * @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class JsonRendererBenchmark {
+
+    private static final int hitCount = 400;
+
+    private final JsonRenderer prototype = new JsonRenderer();
+    private Result result;
+    private Execution execution;
+
+    @Setup
+    public void setup() {
+        result = createResult();
+        execution = new Execution(Execution.Context.createContextStub());
+    }
+
+    /** Returns the number of bytes rendered, such that the rendering is not optimized away */
+    @Benchmark
+    public int render() throws ExecutionException, InterruptedException {
+        JsonRenderer renderer = (JsonRenderer)prototype.clone();
+        renderer.init();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        renderer.render(stream, result, execution, null).get();
+        return stream.size();
+    }
+
+    private static Result createResult() {
+        List<DocsumField> fields = new ArrayList<>();
+        fields.add(DocsumField.create("title", "string"));
+        fields.add(DocsumField.create("body", "longstring"));
+        fields.add(DocsumField.create("popularity", "int64"));
+        fields.add(DocsumField.create("price", "double"));
+        fields.add(DocsumField.create("tags", "jsonstring"));
+        fields.add(DocsumField.create("attributes", "jsonstring"));
+        DocsumDefinition docsum = new DocsumDefinition("default", fields);
+
+        Result result = new Result(new Query("?query=test&hits=" + hitCount));
+        for (int i = 0; i < hitCount; i++) {
+            FastHit hit = new FastHit("hit:" + i, 1.0 / (i + 1));
+            hit.addSummary(docsum, createSummary(i));
+            hit.setFilled("default");
+            result.hits().add(hit);
+        }
+        result.setTotalHitCount(hitCount);
+        return result;
+    }
+
+    /** Returns a summary in the same form as received from content nodes: Decoded from binary slime */
+    private static SlimeAdapter createSummary(int i) {
+        Slime slime = new Slime();
+        Cursor summary = slime.setObject();
+        summary.setString("title", "Title of document number " + i);
+        summary.setString("body", "The body text of document number " + i + ", which is a good deal longer than the title, " +
+                                  "as is usually the case for bodies. Bl\u00e5b\u00e6rsyltet\u00f8y.");
+        summary.setLong("popularity", i * 1000L);
+        summary.setDouble("price", i * 1.25);
+        Cursor tags = summary.setArray("tags");
+        for (int t = 0; t < 5; t++)
+            tags.addString("tag" + t);
+        Cursor attributes = summary.setArray("attributes");
+        for (int a = 0; a < 5; a++) {
+            Cursor entry = attributes.addObject();
+            entry.setString("key", "attribute" + a);
+            entry.setLong("value", a * i);
+        }
+        return new SlimeAdapter(BinaryFormat.decode(BinaryFormat.encode(slime)).get());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(JsonRendererBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
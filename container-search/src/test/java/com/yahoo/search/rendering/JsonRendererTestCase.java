@@ -9,6 +9,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.yahoo.component.chain.Chain;
+import com.yahoo.data.access.simple.JsonRender;
 import com.yahoo.data.access.simple.Value;
 import com.yahoo.data.access.slime.SlimeAdapter;
 import com.yahoo.document.DataType;
@@ -1178,6 +1179,81 @@ public class JsonRendererTestCase {
         assertEqualJson(expected, summary);
     }
 
+    @Test
+    public void testStructuredDataRendering() throws IOException, InterruptedException, ExecutionException {
+        String expected = "{\n"
+                + "    \"root\": {\n"
+                + "        \"children\": [\n"
+                + "            {\n"
+                + "                \"fields\": {\n"
+                + "                    \"structured\": {\n"
+                + "                        \"string\": \"bl\u00e5b\u00e6r\",\n"
+                + "                        \"long\": 7809531904,\n"
+                + "                        \"double\": 0.5,\n"
+                + "                        \"nan\": null,\n"
+                + "                        \"bool\": true,\n"
+                + "                        \"data\": \"0x0AFF\",\n"
+                + "                        \"array\": [ 1, [ \"a\" ], { \"f\": false } ]\n"
+                + "                    }\n"
+                + "                },\n"
+                + "                \"id\": \"structuredData\",\n"
+                + "                \"relevance\": 1.0\n"
+                + "            }\n"
+                + "        ],\n"
+                + "        \"fields\": {\n"
+                + "            \"totalCount\": 1\n"
+                + "        },\n"
+                + "        \"id\": \"toplevel\",\n"
+                + "        \"relevance\": 1.0\n"
+                + "    }\n"
+                + "}\n";
+        Slime slime = new Slime();
+        Cursor root = slime.setObject();
+        root.setString("string", "bl\u00e5b\u00e6r");
+        root.setLong("long", 7809531904L);
+        root.setDouble("double", 0.5);
+        root.setDouble("nan", Double.NaN);
+        root.setBool("bool", true);
+        root.setData("data", new byte[] { 0x0a, (byte)0xff });
+        Cursor array = root.setArray("array");
+        array.addLong(1);
+        array.addArray().addString("a");
+        array.addObject().setBool("f", false);
+
+        Result r = newEmptyResult();
+        Hit h = new Hit("structuredData");
+        h.setField("structured", new StructuredData(new SlimeAdapter(slime.get())));
+        r.hits().add(h);
+        r.setTotalHitCount(1L);
+        String summary = render(r);
+        assertEqualJson(expected, summary);
+    }
+
+    @Test
+    public void testStructuredDataIsRenderedAsByJsonRender() throws IOException, InterruptedException, ExecutionException {
+        Slime slime = new Slime();
+        Cursor map = slime.setArray();
+        Cursor entry1 = map.addObject();
+        entry1.setString("key", "bl\u00e5");
+        entry1.setString("value", "b\u00e6r \ud83d\ude00 \u007f \n \"quoted\"");
+        Cursor entry2 = map.addObject();
+        entry2.setString("key", "plain");
+        entry2.setLong("value", 1);
+        Cursor entry3 = map.addObject();
+        entry3.setString("key", "bl\u00e5");
+        entry3.setString("value", "last");
+
+        Result r = newEmptyResult();
+        Hit h = new Hit("structuredData");
+        h.setField("map", new StructuredData(new SlimeAdapter(slime.get())));
+        h.setField("entry", new StructuredData(new SlimeAdapter(slime.get().entry(0))));
+        r.hits().add(h);
+        String summary = render(r);
+        assertTrue(summary, summary.contains("\"map\":{\"bl\\u00E5\":\"last\",\"plain\":1}"));
+        assertTrue(summary, summary.contains("\"entry\":" +
+                                             JsonRender.render(new SlimeAdapter(slime.get().entry(0)), new StringBuilder(), true)));
+    }
+
     @Test
     public void testThatTheJsonValidatorCanCatchErrors() {
         String json = "{"
@@ -0,0 +1,218 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.rendering;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.yahoo.component.ComponentSpecification;
+import com.yahoo.data.access.slime.SlimeAdapter;
+import com.yahoo.processing.rendering.AsynchronousSectionedRenderer;
+import com.yahoo.processing.rendering.Renderer;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.grouping.Continuation;
+import com.yahoo.search.grouping.result.DoubleBucketId;
+import com.yahoo.search.grouping.result.Group;
+import com.yahoo.search.grouping.result.GroupList;
+import com.yahoo.search.grouping.result.RootGroup;
+import com.yahoo.search.grouping.result.StringId;
+import com.yahoo.search.result.Coverage;
+import com.yahoo.search.result.ErrorMessage;
+import com.yahoo.search.result.Hit;
+import com.yahoo.search.result.HitGroup;
+import com.yahoo.search.result.NanNumber;
+import com.yahoo.search.result.Relevance;
+import com.yahoo.search.result.StructuredData;
+import com.yahoo.search.searchchain.Execution;
+import com.yahoo.slime.BinaryFormat;
+import com.yahoo.slime.Cursor;
+import com.yahoo.slime.Inspector;
+import com.yahoo.slime.JsonFormat;
+import com.yahoo.slime.Slime;
+import com.yahoo.text.Utf8;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ */
+public class SlimeRendererTest {
+
+    @Test
+    public void testRenderingHitsAndFields() throws Exception {
+        Result result = new Result(new Query("/?query=a"));
+        Hit hit = new Hit("hit:1", 0.5);
+        hit.setSource("music");
+        hit.setField("title", "A title");
+        hit.setField("count", 7);
+        hit.setField("price", 2.5);
+        hit.setField("available", true);
+        hit.setField("empty", "");
+        hit.setField("notANumber", new NanNumber());
+        hit.setField("$hidden", "secret");
+        hit.setField("structured", new StructuredData(new SlimeAdapter(createStructuredData().get())));
+        result.hits().add(hit);
+        result.setTotalHitCount(1);
+
+        Inspector root = SlimeRenderer.decode(render(new SlimeRenderer(), result)).get().field("root");
+        assertEquals(1, root.field("fields").field("totalCount").asLong());
+        Inspector renderedHit = root.field("children").entry(0);
+        assertEquals("hit:1", renderedHit.field("id").asString());
+        assertEquals(0.5, renderedHit.field("relevance").asDouble(), 0.0000001);
+        assertEquals("music", renderedHit.field("source").asString());
+
+        Inspector fields = renderedHit.field("fields");
+        assertEquals("A title", fields.field("title").asString());
+        assertEquals(7, fields.field("count").asLong());
+        assertEquals(2.5, fields.field("price").asDouble(), 0.0000001);
+        assertTrue(fields.field("available").asBool());
+        assertFalse(fields.field("empty").valid());
+        assertFalse(fields.field("notANumber").valid());
+        assertFalse(fields.field("$hidden").valid());
+
+        Inspector structured = fields.field("structured");
+        assertEquals("b", structured.field("a").asString());
+        assertEquals(3, structured.field("map").field("key1").asLong());
+        assertEquals(2, structured.field("array").entryCount());
+    }
+
+    @Test
+    public void testRenderingIsEquivalentToJson() throws Exception {
+        Result result = new Result(new Query("/?query=a"));
+        result.setCoverage(new Coverage(500, 600).setDegradedReason(5));
+        HitGroup group = new HitGroup("group");
+        Hit hit = new Hit("hit:1", 0.5);
+        hit.setField("title", "A title");
+        hit.setField("structured", new StructuredData(new SlimeAdapter(createStructuredData().get())));
+        group.add(hit);
+        group.add(new Hit("hit:2", 0.25));
+        result.hits().add(group);
+        result.hits().add(createGrouping());
+        result.hits().addError(new ErrorMessage(1234, "hello", "top of the day"));
+        result.setTotalHitCount(3);
+
+        Slime rendered = SlimeRenderer.decode(render(new SlimeRenderer(), result));
+        String json = Utf8.toString(render(new JsonRenderer(), result));
+        assertEqualJson(json, Utf8.toString(JsonFormat.toJsonBytes(rendered)));
+    }
+
+    @Test
+    public void testEachChildOfTheRootIsWrittenAsAFrame() throws Exception {
+        Result result = new Result(new Query("/?query=a"));
+        HitGroup group = new HitGroup("group");
+        group.add(new Hit("hit:1", 0.5));
+        result.hits().add(group);
+        result.hits().add(new Hit("hit:2", 0.25));
+        result.setTotalHitCount(2);
+
+        ByteBuffer rendered = ByteBuffer.wrap(render(new SlimeRenderer(), result));
+        Inspector root = nextFrame(rendered).get().field("root");
+        assertEquals(2, root.field("fields").field("totalCount").asLong());
+        assertFalse(root.field("children").valid());
+        Inspector first = nextFrame(rendered).get();
+        assertEquals("group", first.field("id").asString());
+        assertEquals("hit:1", first.field("children").entry(0).field("id").asString());
+        assertEquals("hit:2", nextFrame(rendered).get().field("id").asString());
+        assertFalse(rendered.hasRemaining());
+    }
+
+    @Test
+    public void testHiddenFieldsAreRenderedWhenDebugging() throws Exception {
+        Result result = new Result(new Query("/?query=a&renderer.slime.debug=true"));
+        Hit hit = new Hit("hit:1", 0.5);
+        hit.setField("$hidden", "secret");
+        result.hits().add(hit);
+
+        Inspector fields = SlimeRenderer.decode(render(new SlimeRenderer(), result)).get()
+                                        .field("root").field("children").entry(0).field("fields");
+        assertEquals("secret", fields.field("$hidden").asString());
+    }
+
+    @Test
+    public void testRendererIsSelectedByFormat() {
+        RendererRegistry registry = new RendererRegistry(MoreExecutors.directExecutor());
+        try {
+            Renderer<Result> renderer = registry.getRenderer(ComponentSpecification.fromString("slime"));
+            assertTrue(renderer instanceof SlimeRenderer);
+            assertNull(((SlimeRenderer)renderer).getEncoding());
+        }
+        finally {
+            registry.deconstruct();
+        }
+    }
+
+    private RootGroup createGrouping() {
+        RootGroup root = new RootGroup(0, new StringContinuation("AAAA"));
+        GroupList list = new GroupList("customer");
+        list.continuations().put("next", new StringContinuation("BBBB"));
+        Group valueGroup = new Group(new StringId("Jones"), new Relevance(1.0));
+        valueGroup.setField("count()", 7);
+        list.add(valueGroup);
+        list.add(new Group(new DoubleBucketId(1.0, 2.0), new Relevance(0.5)));
+        root.add(list);
+        return root;
+    }
+
+    private Slime createStructuredData() {
+        Slime slime = new Slime();
+        Cursor data = slime.setObject();
+        data.setString("a", "b");
+        Cursor map = data.setArray("map");
+        Cursor entry = map.addObject();
+        entry.setString("key", "key1");
+        entry.setLong("value", 2);
+        Cursor repeated = map.addObject();
+        repeated.setString("key", "key1");
+        repeated.setLong("value", 3);
+        Cursor array = data.setArray("array");
+        array.addDouble(1.5);
+        array.addString("c");
+        return slime;
+    }
+
+    private Slime nextFrame(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        Slime frame = BinaryFormat.decode(buffer.array(), buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        return frame;
+    }
+
+    private byte[] render(AsynchronousSectionedRenderer<Result> prototype, Result result) throws Exception {
+        @SuppressWarnings("unchecked")
+        AsynchronousSectionedRenderer<Result> renderer = (AsynchronousSectionedRenderer<Result>)prototype.clone();
+        renderer.init();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        assertTrue(renderer.render(stream, result, new Execution(Execution.Context.createContextStub()), null).get());
+        return stream.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void assertEqualJson(String expected, String actual) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        assertEquals(mapper.readValue(expected, Map.class), mapper.readValue(actual, Map.class));
+    }
+
+    private static class StringContinuation extends Continuation {
+
+        private final String value;
+
+        StringContinuation(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public Continuation copy() { return this; }
+
+        @Override
+        public String toString() { return value; }
+
+    }
+
+}
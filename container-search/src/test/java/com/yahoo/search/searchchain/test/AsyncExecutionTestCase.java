@@ -8,13 +8,17 @@ import com.yahoo.search.Result;
 import com.yahoo.search.Searcher;
 import com.yahoo.search.result.Hit;
 import com.yahoo.search.searchchain.AsyncExecution;
+import com.yahoo.search.searchchain.AsyncSearcher;
 import com.yahoo.search.searchchain.Execution;
 import com.yahoo.search.searchchain.FutureResult;
+import com.yahoo.yolean.trace.TraceNode;
+import com.yahoo.yolean.trace.TraceVisitor;
 import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
@@ -165,4 +169,51 @@ public class AsyncExecutionTestCase {
         future.get(1, TimeUnit.MILLISECONDS);
     }
 
+    @Test
+    public void testAsyncSearcherInvocationsAreTraced() {
+        CompletableFuture<Result> backendResult = new CompletableFuture<>();
+        Chain<Searcher> chain = new Chain<>(new AsyncBackend(backendResult));
+        Query query = new Query("?query=test&tracelevel=4");
+        FutureResult future = new AsyncExecution(chain, Execution.Context.createContextStub()).search(query);
+        assertEquals(Arrays.asList("Invoke searcher 'asyncBackend'"), collectTrace(query));
+
+        backendResult.complete(new Result(query));
+        assertNotNull(future.get(1000, TimeUnit.MILLISECONDS));
+        assertEquals(Arrays.asList("Invoke searcher 'asyncBackend'", "Return searcher 'asyncBackend'"),
+                     collectTrace(query));
+    }
+
+    private List<String> collectTrace(Query query) {
+        List<String> trace = new ArrayList<>();
+        query.getContext(false).getTrace().accept(new TraceVisitor() {
+            @Override
+            public void visit(TraceNode node) {
+                if (node.payload() != null && node.payload().toString().endsWith("'asyncBackend'"))
+                    trace.add(node.payload().toString());
+            }
+        });
+        return trace;
+    }
+
+    private static class AsyncBackend extends Searcher implements AsyncSearcher {
+
+        private final CompletableFuture<Result> result;
+
+        AsyncBackend(CompletableFuture<Result> result) {
+            super(new ComponentId("asyncBackend"));
+            this.result = result;
+        }
+
+        @Override
+        public Result search(Query query, Execution execution) {
+            throw new IllegalStateException("Expected to be invoked through searchAsync");
+        }
+
+        @Override
+        public CompletableFuture<Result> searchAsync(Query query, Execution execution) {
+            return result;
+        }
+
+    }
+
 }
@@ -0,0 +1,269 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.searchchain.test;
+
+import com.yahoo.component.ComponentId;
+import com.yahoo.component.chain.Chain;
+import com.yahoo.component.chain.dependencies.After;
+import com.yahoo.component.chain.dependencies.Provides;
+import com.yahoo.prelude.query.AndItem;
+import com.yahoo.prelude.query.WordItem;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.Searcher;
+import com.yahoo.search.result.ErrorMessage;
+import com.yahoo.search.searchchain.Execution;
+import com.yahoo.search.searchchain.ParallelSearcher;
+import com.yahoo.search.searchchain.ParallelSearcherConfig;
+import com.yahoo.search.searchchain.SearchChainRegistry;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests executing independent branches concurrently with the parallel searcher
+ *
+ * @author agent
+ */
+public class ParallelSearcherTestCase {
+
+    @Test
+    public void testBranchesAreExecutedConcurrentlyAndMerged() {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        ParallelSearcher parallel = new ParallelSearcher(new ComponentId("parallel"),
+                Arrays.asList(new Chain<>("property", new AwaitingSearcher(bothStarted), new PropertySetter("a", "1")),
+                              new Chain<>("tree", new AwaitingSearcher(bothStarted), new WordAdder("b"))));
+        QueryCollector collector = new QueryCollector();
+        Result result = execute(new Query("?query=a&timeout=60s"), parallel, collector);
+
+        assertNull(result.hits().getError());
+        assertEquals(0, bothStarted.getCount());
+        assertEquals("1", collector.query.properties().get("a"));
+        assertEquals("AND a b", collector.query.getModel().getQueryTree().getRoot().toString());
+    }
+
+    @Test
+    public void testConflictingBranchesAreRerunSequentially() {
+        ParallelSearcher parallel = new ParallelSearcher(new ComponentId("parallel"),
+                                                         Arrays.asList(new Chain<>("b", new WordAdder("b")),
+                                                                       new Chain<>("c", new WordAdder("c"))));
+        QueryCollector collector = new QueryCollector();
+        execute(new Query("?query=a&timeout=60s"), parallel, collector);
+        assertEquals("AND (AND a b) c", collector.query.getModel().getQueryTree().getRoot().toString());
+    }
+
+    @Test
+    public void testBranchesAfterAConflictAreRerunInOrder() {
+        PropertyObserver observer = new PropertyObserver("a");
+        ParallelSearcher parallel = new ParallelSearcher(new ComponentId("parallel"),
+                                                         Arrays.asList(new Chain<>("b", new WordAdder("b")),
+                                                                       new Chain<>("c", observer, new WordAdder("c")),
+                                                                       new Chain<>("property", new PropertySetter("a", "1"))));
+        QueryCollector collector = new QueryCollector();
+        execute(new Query("?query=a&timeout=60s"), parallel, collector);
+        assertEquals("AND (AND a b) c", collector.query.getModel().getQueryTree().getRoot().toString());
+        assertEquals("1", collector.query.properties().get("a"));
+        assertNull("The rerun branch does not see the changes of the branches after it", observer.lastSeen);
+    }
+
+    @Test
+    public void testBranchesCanBeConfiguredById() {
+        SearchChainRegistry registry = new SearchChainRegistry();
+        registry.register(new Chain<>("property", new PropertySetter("a", "1")));
+        registry.register(new Chain<>("tree", new WordAdder("b")));
+        registry.freeze();
+        ParallelSearcher parallel = new ParallelSearcher(new ComponentId("parallel"),
+                                                         new ParallelSearcherConfig(new ParallelSearcherConfig.Builder()
+                                                                                            .branch("property")
+                                                                                            .branch("tree")));
+        QueryCollector collector = new QueryCollector();
+        Execution.Context context = Execution.Context.createContextStub(registry, null);
+        Result result = new Execution(new Chain<>(parallel, collector), context).search(new Query("?query=a&timeout=60s"));
+
+        assertNull(result.hits().getError());
+        assertEquals("1", collector.query.properties().get("a"));
+        assertEquals("AND a b", collector.query.getModel().getQueryTree().getRoot().toString());
+        assertEquals(2, parallel.getBranches().size());
+    }
+
+    @Test
+    public void testRemovedPropertiesAreMerged() {
+        ParallelSearcher parallel = new ParallelSearcher(new ComponentId("parallel"),
+                                                         Arrays.asList(new Chain<>("remover", new PropertyRemover("a")),
+                                                                       new Chain<>("property", new PropertySetter("b", "2"))));
+        QueryCollector collector = new QueryCollector();
+        execute(new Query("?query=a&a=1&timeout=60s"), parallel, collector);
+        assertNull(collector.query.properties().get("a"));
+        assertEquals("2", collector.query.properties().get("b"));
+    }
+
+    @Test
+    public void testErrorsFromBranchesAreAddedToResult() {
+        ParallelSearcher parallel = new ParallelSearcher(new ComponentId("parallel"),
+                                                         Arrays.asList(new Chain<>("failing", new FailingSearcher()),
+                                                                       new Chain<>("property", new PropertySetter("a", "1"))));
+        QueryCollector collector = new QueryCollector();
+        Result result = execute(new Query("?query=a&timeout=60s"), parallel, collector);
+        assertNotNull(result.hits().getError());
+        assertEquals("Branch failed", result.hits().getError().getDetailedMessage());
+        assertEquals("1", collector.query.properties().get("a"));
+    }
+
+    @Test
+    public void testDependentBranchesAreRejected() {
+        try {
+            new ParallelSearcher(new ComponentId("parallel"),
+                                 Arrays.asList(new Chain<>("providing", new ProvidingSearcher()),
+                                               new Chain<>("depending", new DependingSearcher())));
+            fail("Expected exception");
+        }
+        catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("are not independent"));
+        }
+    }
+
+    private Result execute(Query query, Searcher ... searchers) {
+        return new Execution(new Chain<>(searchers), Execution.Context.createContextStub()).search(query);
+    }
+
+    private static class AwaitingSearcher extends Searcher {
+
+        private final CountDownLatch latch;
+
+        AwaitingSearcher(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public Result search(Query query, Execution execution) {
+            latch.countDown();
+            try {
+                if ( ! latch.await(1, TimeUnit.MINUTES))
+                    throw new IllegalStateException("Branches were not executed concurrently");
+            }
+            catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return execution.search(query);
+        }
+
+    }
+
+    private static class PropertySetter extends Searcher {
+
+        private final String name, value;
+
+        PropertySetter(String name, String value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public Result search(Query query, Execution execution) {
+            query.properties().set(name, value);
+            return execution.search(query);
+        }
+
+    }
+
+    private static class PropertyRemover extends Searcher {
+
+        private final String name;
+
+        PropertyRemover(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Result search(Query query, Execution execution) {
+            query.properties().set(name, null);
+            return execution.search(query);
+        }
+
+    }
+
+    private static class PropertyObserver extends Searcher {
+
+        private final String name;
+        volatile Object lastSeen;
+
+        PropertyObserver(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Result search(Query query, Execution execution) {
+            lastSeen = query.properties().get(name);
+            return execution.search(query);
+        }
+
+    }
+
+    private static class WordAdder extends Searcher {
+
+        private final String word;
+
+        WordAdder(String word) {
+            this.word = word;
+        }
+
+        @Override
+        public Result search(Query query, Execution execution) {
+            AndItem and = new AndItem();
+            and.addItem(query.getModel().getQueryTree().getRoot());
+            and.addItem(new WordItem(word));
+            query.getModel().getQueryTree().setRoot(and);
+            return execution.search(query);
+        }
+
+    }
+
+    private static class FailingSearcher extends Searcher {
+
+        @Override
+        public Result search(Query query, Execution execution) {
+            return new Result(query, ErrorMessage.createBackendCommunicationError("Branch failed"));
+        }
+
+    }
+
+    @Provides("Spelling")
+    private static class ProvidingSearcher extends Searcher {
+
+        @Override
+        public Result search(Query query, Execution execution) {
+            return execution.search(query);
+        }
+
+    }
+
+    @After("Spelling")
+    private static class DependingSearcher extends Searcher {
+
+        @Override
+        public Result search(Query query, Execution execution) {
+            return execution.search(query);
+        }
+
+    }
+
+    private static class QueryCollector extends Searcher {
+
+        Query query;
+
+        @Override
+        public Result search(Query query, Execution execution) {
+            this.query = query;
+            return execution.search(query);
+        }
+
+    }
+
+}
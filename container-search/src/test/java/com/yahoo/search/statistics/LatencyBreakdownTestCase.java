@@ -0,0 +1,125 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.statistics;
+
+import com.yahoo.component.ComponentId;
+import com.yahoo.component.chain.Chain;
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.metrics.simple.Point;
+import com.yahoo.metrics.simple.UntypedMetric;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.Searcher;
+import com.yahoo.search.result.Hit;
+import com.yahoo.search.searchchain.Execution;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author agent
+ */
+public class LatencyBreakdownTestCase {
+
+    @Test
+    public void testSearcherSpansAreRecordedAndExported() {
+        MetricReceiver.MockReceiver metrics = new MetricReceiver.MockReceiver();
+        LatencyBreakdownSearcher sampler = new LatencyBreakdownSearcher(1, metrics);
+        Chain<Searcher> chain = new Chain<>("test", sampler, new PassingSearcher("first"), new ResultSearcher("second"));
+        Execution execution = new Execution(chain, Execution.Context.createContextStub());
+
+        Result result = execution.search(new Query("?query=test"));
+        execution.fill(result, "summary");
+        assertEquals("filled", result.hits().get(0).getField("field"));
+
+        LatencyBreakdown breakdown = result.getQuery().getLatencyBreakdown();
+        assertNotNull(breakdown);
+        assertEquals("The sampling searcher itself is only timed in fill as sampling starts inside it",
+                     Arrays.asList("second", "first", "second", "first", sampler.getId().stringValue()),
+                     sourcesOf(breakdown.spans(), LatencyBreakdown.Phase.SEARCHER));
+
+        Point first = metrics.pointBuilder().set("chain", "test")
+                                            .set("phase", "searcher")
+                                            .set("source", "first")
+                                            .build();
+        UntypedMetric exported = metrics.getSnapshot().getMapForMetric(LatencyBreakdownSearcher.metricName).get(first);
+        assertNotNull(exported);
+        assertEquals(2, exported.getCount());
+    }
+
+    @Test
+    public void testSampling() {
+        LatencyBreakdownSearcher sampler = new LatencyBreakdownSearcher(3, new MetricReceiver.MockReceiver());
+        Chain<Searcher> chain = new Chain<>("test", sampler, new ResultSearcher("result"));
+        for (int i = 0; i < 6; i++) {
+            Result result = new Execution(chain, Execution.Context.createContextStub()).search(new Query("?query=test"));
+            if (i % 3 == 0)
+                assertNotNull(result.getQuery().getLatencyBreakdown());
+            else
+                assertNull(result.getQuery().getLatencyBreakdown());
+        }
+    }
+
+    @Test
+    public void testChainTimerRecordsExclusiveTime() {
+        LatencyBreakdown breakdown = new LatencyBreakdown();
+        LatencyBreakdown.ChainTimer timer = new LatencyBreakdown.ChainTimer(2);
+        timer.invoking(0);
+        timer.invoking(1);
+        timer.returning(1, "inner", breakdown);
+        timer.returning(0, "outer", breakdown);
+        timer.returning(0, "outer", breakdown); // not started: ignored
+
+        List<LatencyBreakdown.Span> spans = breakdown.spans();
+        assertEquals(Arrays.asList("inner", "outer"), sourcesOf(spans, LatencyBreakdown.Phase.SEARCHER));
+        assertEquals(spans.get(0).nanos() + spans.get(1).nanos(), breakdown.totalNanos(LatencyBreakdown.Phase.SEARCHER));
+    }
+
+    private List<String> sourcesOf(List<LatencyBreakdown.Span> spans, LatencyBreakdown.Phase phase) {
+        return spans.stream().filter(span -> span.phase() == phase).map(LatencyBreakdown.Span::source).collect(Collectors.toList());
+    }
+
+    private static class PassingSearcher extends Searcher {
+
+        PassingSearcher(String id) {
+            super(new ComponentId(id));
+        }
+
+        @Override
+        public Result search(Query query, Execution execution) {
+            return execution.search(query);
+        }
+
+    }
+
+    private static class ResultSearcher extends Searcher {
+
+        ResultSearcher(String id) {
+            super(new ComponentId(id));
+        }
+
+        @Override
+        public Result search(Query query, Execution execution) {
+            Result result = new Result(query);
+            Hit hit = new Hit("hit:1");
+            hit.setFillable();
+            result.hits().add(hit);
+            return result;
+        }
+
+        @Override
+        public void fill(Result result, String summaryClass, Execution execution) {
+            for (Hit hit : result.hits()) {
+                hit.setField("field", "filled");
+                hit.setFilled(summaryClass);
+            }
+        }
+
+    }
+
+}
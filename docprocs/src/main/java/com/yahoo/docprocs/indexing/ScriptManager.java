@@ -6,7 +6,10 @@ import com.yahoo.document.DocumentTypeManager;
 import com.yahoo.language.Linguistics;
 import com.yahoo.log.LogLevel;
 import com.yahoo.vespa.configdefinition.IlscriptsConfig;
+import com.yahoo.vespa.indexinglanguage.ConstantExpressionFolder;
 import com.yahoo.vespa.indexinglanguage.ScriptParserContext;
+import com.yahoo.vespa.indexinglanguage.UnusedVariableRemover;
+import com.yahoo.vespa.indexinglanguage.expressions.Expression;
 import com.yahoo.vespa.indexinglanguage.expressions.InputExpression;
 import com.yahoo.vespa.indexinglanguage.expressions.ScriptExpression;
 import com.yahoo.vespa.indexinglanguage.expressions.StatementExpression;
@@ -77,11 +80,12 @@ public class ScriptManager {
         ScriptParserContext parserContext = new ScriptParserContext(linguistics);
         parserContext.getAnnotatorConfig().setMaxTermOccurrences(config.maxtermoccurrences());
         parserContext.getAnnotatorConfig().setMaxTokenLength(config.fieldmatchmaxlength());
+        boolean optimize = config.optimizescripts();
 
         for (IlscriptsConfig.Ilscript ilscript : config.ilscript()) {
             InputExpression.FieldPathOptimizer fieldPathOptimizer = new InputExpression.FieldPathOptimizer(docTypeMgr.getDocumentType(ilscript.doctype()));
             List<StatementExpression> expressions = new ArrayList<>(ilscript.content().size());
-            Map<String, DocumentScript> fieldScripts = new HashMap<>(ilscript.content().size());
+            Map<String, List<StatementExpression>> fieldStatements = new HashMap<>(ilscript.content().size());
             for (String content : ilscript.content()) {
                 expressions.add(parse(ilscript.doctype(), parserContext, content));
                 StatementExpression statement = parse(ilscript.doctype(), parserContext, content);
@@ -90,33 +94,45 @@ public class ScriptManager {
                 statement.select(fieldPathOptimizer, fieldPathOptimizer);
                 if (inputFieldNameExtractor.getInputFieldNames().size() == 1) {
                     String fieldName = inputFieldNameExtractor.getInputFieldNames().get(0);
-                    ScriptExpression script;
-                    if (fieldScripts.containsKey(fieldName)) {
-                        DocumentScript prev = fieldScripts.get(fieldName);
-                        List<StatementExpression> appendedList = new ArrayList<>(((ScriptExpression)prev.getExpression()).asList());
-                        appendedList.add(statement);
-                        script = new ScriptExpression(appendedList);
+                    List<StatementExpression> statements = fieldStatements.computeIfAbsent(fieldName, name -> new ArrayList<>());
+                    statements.add(statement);
+                    if (statements.size() > 1) {
                         log.log(Level.FINE, "Appending script for field '" + fieldName + "' = " + statement);
-                        log.log(Level.FINE, "Full script for field '" + fieldName + "' = " + appendedList);
+                        log.log(Level.FINE, "Full script for field '" + fieldName + "' = " + statements);
                     } else {
-                        script = new ScriptExpression(statement);
                         log.log(Level.FINE, "Setting script for field '" + fieldName + "' = " + statement);
                     }
-                    DocumentScript documentScript = new DocumentScript(ilscript.doctype(), inputFieldNameExtractor.getInputFieldNames(), script);
-                    fieldScripts.put(fieldName, documentScript);
                 } else {
                     log.log(Level.FINE, "Non single(" + inputFieldNameExtractor.getInputFieldNames().size() +") inputs = " + inputFieldNameExtractor.getInputFieldNames() + ". Script = " + statement);
                 }
             }
 
+            Map<String, DocumentScript> fieldScripts = new HashMap<>(fieldStatements.size() + 1);
+            for (Map.Entry<String, List<StatementExpression>> entry : fieldStatements.entrySet()) {
+                ScriptExpression script = new ScriptExpression(entry.getValue());
+                if (optimize)
+                    script = optimize(script);
+                fieldScripts.put(entry.getKey(), new DocumentScript(ilscript.doctype(), Collections.singletonList(entry.getKey()), script));
+            }
             ScriptExpression script = new ScriptExpression(expressions);
             script.select(fieldPathOptimizer, fieldPathOptimizer);
-            fieldScripts.put(FULL, new DocumentScript(ilscript.doctype(), ilscript.docfield(),script));
+            if (optimize)
+                script = optimize(script);
+            fieldScripts.put(FULL, new DocumentScript(ilscript.doctype(), ilscript.docfield(), script));
             documentFieldScripts.put(ilscript.doctype(), Collections.unmodifiableMap(fieldScripts));
         }
         return Collections.unmodifiableMap(documentFieldScripts);
     }
 
+    /**
+     * Returns the given script with constant values computed once, and without setting variables which are never read.
+     * Statements without effect are already removed when the scripts are derived by the config model.
+     */
+    static ScriptExpression optimize(ScriptExpression script) {
+        Expression optimized = UnusedVariableRemover.removeFrom(script);
+        return (ScriptExpression)new ConstantExpressionFolder().convert(optimized);
+    }
+
     private static StatementExpression parse(String docType, ScriptParserContext parserConfig, String content) {
         parserConfig.setInputStream(new IndexingInput(content));
         try {
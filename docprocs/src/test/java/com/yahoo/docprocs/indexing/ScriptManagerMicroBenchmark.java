@@ -0,0 +1,77 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.docprocs.indexing;
+
+import com.yahoo.document.ArrayDataType;
+import com.yahoo.document.DataType;
+import com.yahoo.document.Document;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.Field;
+import com.yahoo.document.datatypes.Array;
+import com.yahoo.document.datatypes.IntegerFieldValue;
+import com.yahoo.document.datatypes.StringFieldValue;
+import com.yahoo.vespa.indexinglanguage.AdapterFactory;
+import com.yahoo.vespa.indexinglanguage.SimpleAdapterFactory;
+import com.yahoo.vespa.indexinglanguage.expressions.ScriptExpression;
+import com.yahoo.vespa.indexinglanguage.parser.ParseException;
+
+/**
+ * Compares the time used to execute an indexing script as written and as optimized by the script manager.
+ *
+ * @author agent
+ */
+public class ScriptManagerMicroBenchmark {
+
+    private final AdapterFactory adapterFactory = new SimpleAdapterFactory();
+    private final Document[] documents;
+
+    public ScriptManagerMicroBenchmark(int distinctDocuments) {
+        DocumentType type = new DocumentType("music");
+        type.addField(new Field("title", DataType.STRING));
+        type.addField(new Field("artist", DataType.STRING));
+        type.addField(new Field("year", DataType.INT));
+        type.addField(new Field("tags", new ArrayDataType(DataType.STRING)));
+        type.addField(new Field("source", DataType.STRING));
+        type.addField(new Field("kind", DataType.STRING));
+
+        documents = new Document[distinctDocuments];
+        for (int i = 0; i < distinctDocuments; i++) {
+            Document document = new Document(type, "id:music:music::" + i);
+            document.setFieldValue("title", new StringFieldValue("Title number " + i + " of the benchmark"));
+            document.setFieldValue("artist", new StringFieldValue("The Benchmarkers"));
+            document.setFieldValue("year", new IntegerFieldValue(1950 + i % 70));
+            Array<StringFieldValue> tags = new Array<>(type.getField("tags").getDataType());
+            tags.add(new StringFieldValue(" Rock "));
+            tags.add(new StringFieldValue("Tag" + i));
+            document.setFieldValue("tags", tags);
+            documents[i] = document;
+        }
+    }
+
+    public void benchmark(String description, ScriptExpression script, int count) {
+        execute(100000, script); // warm-up
+        long startTime = System.nanoTime();
+        execute(count, script);
+        long totalTime = System.nanoTime() - startTime;
+        System.out.println(description + ": " + (totalTime / count) + " nanoseconds per document");
+    }
+
+    private void execute(int count, ScriptExpression script) {
+        for (int i = 0; i < count; i++)
+            script.execute(adapterFactory, documents[i % documents.length]);
+    }
+
+    public static void main(String[] args) throws ParseException {
+        int count = 1000000;
+        ScriptManagerMicroBenchmark benchmark = new ScriptManagerMicroBenchmark(1000);
+        ScriptExpression script = ScriptExpression.fromString(
+                "{ input title | set_var title | tokenize normalize | summary title | index title;" +
+                "  input artist | set_var artist | lowercase | attribute artist | summary artist;" +
+                "  input year | attribute year | summary year;" +
+                "  input tags | for_each { trim | lowercase } | attribute tags;" +
+                "  'Music Catalog' | lowercase | trim | attribute source | summary source;" +
+                "  '  Album  ' | trim | lowercase | summary kind; }");
+        benchmark.benchmark("As written", script, count);
+        benchmark.benchmark("Optimized ", ScriptManager.optimize(script), count);
+    }
+
+}
@@ -9,6 +9,7 @@ import org.junit.Test;
 
 import java.util.Iterator;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
@@ -48,6 +49,37 @@ public class ScriptManagerTestCase {
         assertNull(scriptMgr.getScript(new DocumentType("unknown")));
     }
 
+    @Test
+    public void requireThatScriptsAreNotOptimizedByDefault() {
+        DocumentTypeManager typeMgr = new DocumentTypeManager();
+        typeMgr.configure("file:src/test/cfg/documentmanager_inherit.cfg");
+        DocumentType docType = typeMgr.getDocumentType("newssummary");
+
+        IlscriptsConfig.Builder config = new IlscriptsConfig.Builder();
+        config.ilscript(new IlscriptsConfig.Ilscript.Builder().doctype("newssummary")
+                                                              .content("input title | set_var unused | summary title"));
+        ScriptManager scriptMgr = new ScriptManager(typeMgr, new IlscriptsConfig(config), null);
+        assertEquals("{ input title | set_var unused | summary title; }",
+                     scriptMgr.getScript(docType).getExpression().toString());
+    }
+
+    @Test
+    public void requireThatScriptsAreOptimizedWhenConfigured() {
+        DocumentTypeManager typeMgr = new DocumentTypeManager();
+        typeMgr.configure("file:src/test/cfg/documentmanager_inherit.cfg");
+        DocumentType docType = typeMgr.getDocumentType("newssummary");
+
+        IlscriptsConfig.Builder config = new IlscriptsConfig.Builder().optimizescripts(true);
+        config.ilscript(new IlscriptsConfig.Ilscript.Builder().doctype("newssummary")
+                                                              .content("input title | set_var unused | summary title")
+                                                              .content("'News' | lowercase | summary where"));
+        ScriptManager scriptMgr = new ScriptManager(typeMgr, new IlscriptsConfig(config), null);
+        assertEquals("{ input title | summary title; \"news\" | summary where; }",
+                     scriptMgr.getScript(docType).getExpression().toString());
+        assertEquals("{ input title | summary title; }",
+                     scriptMgr.getScript(docType, "title").getExpression().toString());
+    }
+
     @Test
     public void requireThatEmptyConfigurationDoesNotThrow() {
         DocumentTypeManager typeMgr = new DocumentTypeManager();
@@ -32,6 +32,9 @@ import java.util.Map;
  * A document represents an instance of some entity of interest
  * in an application, like an article, a web document, a product, etc.
  *
+ * Documents decoded from messages deserialize their field values when first accessed, see {@link Struct}.
+ * Such documents must therefore not be accessed by multiple threads without synchronization, even if they are only read.
+ *
  * Deprecation: Try to use document set and get methods only with FieldValue types,
  * not with primitive types. Support for direct access to primitive types will
  * be removed soon.
@@ -5,6 +5,7 @@ import com.yahoo.collections.Hashlet;
 import com.yahoo.document.*;
 import com.yahoo.document.serialization.FieldReader;
 import com.yahoo.document.serialization.FieldWriter;
+import com.yahoo.document.serialization.SerializedStructFields;
 import com.yahoo.document.serialization.XmlSerializationHelper;
 import com.yahoo.document.serialization.XmlStream;
 import com.yahoo.vespa.objects.Ids;
@@ -13,6 +14,11 @@ import java.util.*;
 
 /**
  * Date: Apr 15, 2008
+ * <p>
+ * The fields of a struct created by a lazy deserializer are deserialized when first accessed, so reading
+ * field values modifies the struct: Such structs must not be accessed by multiple threads without synchronization,
+ * even if they are only read. Values which cannot be deserialized cause a
+ * {@link com.yahoo.document.serialization.DeserializationException} when accessed.
  *
  * @author humbe
  */
@@ -22,14 +28,21 @@ public class Struct extends StructuredFieldValue {
     private Hashlet<Integer, FieldValue> values = new Hashlet<>();
     private int [] order = null;
 
+    /** The fields which are not deserialized yet, or null if there are none */
+    private SerializedStructFields serialized = null;
+
     private int version;
 
     private int [] getInOrder() {
         if (order == null) {
-            order = new int[values.size()];
+            int serializedCount = serialized == null ? 0 : serialized.size();
+            order = new int[values.size() + serializedCount];
             for (int i = 0; i < values.size(); i++) {
                 order[i] = values.key(i);
             }
+            for (int i = 0; i < serializedCount; i++) {
+                order[values.size() + i] = serialized.id(i);
+            }
             Arrays.sort(order);
         }
         return order;
@@ -71,6 +84,41 @@ public class Struct extends StructuredFieldValue {
         return getDataType().getCompressionConfig().compressionLevel;
     }
 
+    /**
+     * Clears this and sets its fields to the given serialized fields, which are deserialized when first accessed.
+     * This is used by deserializers.
+     */
+    public void setSerializedFields(SerializedStructFields serialized) {
+        clear();
+        this.serialized = serialized.isEmpty() ? null : serialized;
+    }
+
+    /**
+     * Returns the fields of this which have not yet been accessed, and therefore are not deserialized,
+     * or null if there are none. Serializers can write these by copying their bytes.
+     */
+    public SerializedStructFields getSerializedFields() {
+        return serialized;
+    }
+
+    private FieldValue getValue(int id) {
+        FieldValue value = values.get(id);
+        if (value == null && serialized != null && serialized.contains(id)) {
+            value = serialized.deserialize(getDataType().getField(id));
+            if (serialized.isEmpty()) {
+                serialized = null;
+            }
+            values.put(id, value);
+        }
+        return value;
+    }
+
+    private void deserializeAll() {
+        while (serialized != null) {
+            getValue(serialized.id(0));
+        }
+    }
+
     public float getCompressionThreshold() {
         if (getDataType().getCompressionConfig() == null) {
             return .95f;
@@ -81,6 +129,7 @@ public class Struct extends StructuredFieldValue {
     @Override
     public Struct clone() {
         Struct struct = (Struct) super.clone();
+        struct.serialized = serialized == null ? null : serialized.copy();
         struct.values = new Hashlet<>();
         struct.values.reserve(values.size());
         for (int i = 0; i < values.size(); i++) {
@@ -92,6 +141,7 @@ public class Struct extends StructuredFieldValue {
     @Override
     public void clear() {
         values = new Hashlet<>();
+        serialized = null;
         invalidateOrder();
     }
 
@@ -119,7 +169,7 @@ public class Struct extends StructuredFieldValue {
 
     @Override
     public FieldValue getFieldValue(Field field) {
-        return values.get(field.getId());
+        return getValue(field.getId());
     }
 
 
@@ -130,7 +180,7 @@ public class Struct extends StructuredFieldValue {
 
     @Override
     public int getFieldCount() {
-        return values.size();
+        return values.size() + (serialized == null ? 0 : serialized.size());
     }
 
     @Override
@@ -156,9 +206,16 @@ public class Struct extends StructuredFieldValue {
                     "Inconsistent field: " + field);
         }
 
-        int index = values.getIndexOfKey(field.getId());
+        putValue(field.getId(), value);
+    }
+
+    private void putValue(int id, FieldValue value) {
+        if (serialized != null && serialized.remove(id) && serialized.isEmpty()) {
+            serialized = null;
+        }
+        int index = values.getIndexOfKey(id);
         if (index == -1) {
-            values.put(field.getId(), value);
+            values.put(id, value);
             invalidateOrder();
         } else {
             values.setValue(index, value);
@@ -167,21 +224,25 @@ public class Struct extends StructuredFieldValue {
 
     @Override
     public FieldValue removeFieldValue(Field field) {
-        FieldValue found = values.get(field.getId());
+        FieldValue found = getValue(field.getId());
         if (found != null) {
-            Hashlet<Integer, FieldValue> copy = new Hashlet<>();
-            copy.reserve(values.size() - 1);
-            for (int i=0; i < values.size(); i++) {
-                if (values.key(i) != field.getId()) {
-                    copy.put(values.key(i), values.value(i));
-                }
-            }
-            values = copy;
-            invalidateOrder();
+            removeValue(field.getId());
         }
         return found;
     }
 
+    private void removeValue(int id) {
+        Hashlet<Integer, FieldValue> copy = new Hashlet<>();
+        copy.reserve(values.size() - 1);
+        for (int i=0; i < values.size(); i++) {
+            if (values.key(i) != id) {
+                copy.put(values.key(i), values.value(i));
+            }
+        }
+        values = copy;
+        invalidateOrder();
+    }
+
     @Override
     public void assign(Object o) {
         if ((o instanceof Struct) && ((Struct) o).getDataType().equals(getDataType())) {
@@ -215,11 +276,14 @@ public class Struct extends StructuredFieldValue {
         if (!super.equals(o)) return false;
 
         Struct struct = (Struct) o;
+        deserializeAll();
+        struct.deserializeAll();
         return values.equals(struct.values);
     }
 
     @Override
     public int hashCode() {
+        deserializeAll();
         int result = super.hashCode();
         result = 31 * result + values.hashCode();
         return result;
@@ -232,7 +296,7 @@ public class Struct extends StructuredFieldValue {
         int [] increasing = getInOrder();
         for (int i = 0; i < increasing.length; i++) {
             int id = increasing[i];
-            retVal.append(getDataType().getField(id)).append("=").append(values.get(id)).append(", ");
+            retVal.append(getDataType().getField(id)).append("=").append(getValue(id)).append(", ");
         }
         return retVal.toString();
     }
@@ -249,7 +313,7 @@ public class Struct extends StructuredFieldValue {
             return cmp;
         }
         Struct rhs = (Struct)obj;
-        cmp = values.size() - rhs.values.size();
+        cmp = getFieldCount() - rhs.getFieldCount();
         if (cmp != 0) {
             return cmp;
         }
@@ -290,7 +354,7 @@ public class Struct extends StructuredFieldValue {
         }
 
         public FieldValue getValue() {
-            return values.get(id);
+            return Struct.this.getValue(id);
         }
 
         public FieldValue setValue(FieldValue value) {
@@ -298,16 +362,8 @@ public class Struct extends StructuredFieldValue {
                 throw new NullPointerException("Null values in Struct not supported, use removeFieldValue() to remove value instead.");
             }
 
-            int index = values.getIndexOfKey(id);
-            FieldValue retVal = null;
-            if (index == -1) {
-                values.put(id, value);
-                invalidateOrder();
-            } else {
-                retVal = values.value(index);
-                values.setValue(index, value);
-            }
-
+            FieldValue retVal = Struct.this.getValue(id);
+            putValue(id, value);
             return retVal;
         }
 
@@ -327,7 +383,7 @@ public class Struct extends StructuredFieldValue {
     private class FieldSet extends AbstractSet<Map.Entry<Field, FieldValue>> {
         @Override
         public int size() {
-            return values.size();
+            return getFieldCount();
         }
 
         @Override
@@ -0,0 +1,637 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.annotations.Beta;
+import com.yahoo.compress.CompressionType;
+import com.yahoo.compress.Compressor;
+import com.yahoo.document.ArrayDataType;
+import com.yahoo.document.DataType;
+import com.yahoo.document.Document;
+import com.yahoo.document.DocumentId;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.document.Field;
+import com.yahoo.document.MapDataType;
+import com.yahoo.document.PositionDataType;
+import com.yahoo.document.StructDataType;
+import com.yahoo.document.WeightedSetDataType;
+import com.yahoo.document.datatypes.UriFieldValue;
+import com.yahoo.document.json.document.DocumentParser;
+import com.yahoo.document.json.readers.MapReader;
+import com.yahoo.io.GrowableByteBuffer;
+import com.yahoo.text.Text;
+import com.yahoo.text.Utf8;
+import org.apache.commons.codec.binary.Base64;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalInt;
+
+/**
+ * Transcodes JSON document puts directly to the binary document format, driven by the document type
+ * and without creating the document in between.
+ * The result is the same as reading the put with {@link JsonReader} and serializing the document
+ * with the head serializer, except that map and weighted set entries may be in a different order.
+ * <p>
+ * Only documents of types accepted by {@link #canTranscode(DocumentType)} can be transcoded, and only puts
+ * without conditions where the document id precedes the fields. Other operations must be read by JsonReader.
+ * When the document itself is needed, it can be deserialized from the transcoded bytes.
+ * <p>
+ * Instances reuse their internal buffers between documents and are not thread safe.
+ *
+ * @author agent
+ */
+@Beta
+public class JsonDocumentTranscoder {
+
+    private static final int ENTRY_SIZE = 4;
+    private static final int REMOVED = -1;
+
+    private final DocumentTypeManager types;
+
+    /** The buffers and entries used by each level of nesting, where level 0 is unused */
+    private final List<Level> levels = new ArrayList<>();
+
+    public JsonDocumentTranscoder(DocumentTypeManager types) {
+        this.types = types;
+    }
+
+    /** Returns the document type manager of this */
+    public DocumentTypeManager getDocumentTypeManager() { return types; }
+
+    /** Returns whether documents of the given type can be transcoded */
+    public static boolean canTranscode(DocumentType type) {
+        for (Field field : type.getFields()) {
+            if ( ! canTranscode(field.getDataType())) return false;
+        }
+        return true;
+    }
+
+    private static boolean canTranscode(DataType type) {
+        if (isPrimitive(type)) return true;
+        if (type instanceof ArrayDataType)
+            return canTranscode(((ArrayDataType)type).getNestedType());
+        if (type instanceof WeightedSetDataType) {
+            DataType keyType = ((WeightedSetDataType)type).getNestedType();
+            return isPrimitive(keyType) && ! keyType.equals(DataType.RAW);
+        }
+        if (type instanceof MapDataType)
+            return isPrimitive(((MapDataType)type).getKeyType()) && canTranscode(((MapDataType)type).getValueType());
+        if (type instanceof StructDataType && ! type.equals(PositionDataType.INSTANCE)) {
+            for (Field field : ((StructDataType)type).getFields()) {
+                if ( ! canTranscode(field.getDataType())) return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isPrimitive(DataType type) {
+        return type.equals(DataType.STRING) || type.equals(DataType.INT) || type.equals(DataType.LONG) ||
+               type.equals(DataType.BYTE) || type.equals(DataType.FLOAT) || type.equals(DataType.DOUBLE) ||
+               type.equals(DataType.URI) || type.equals(DataType.RAW);
+    }
+
+    /**
+     * Transcodes the put operation starting at the next or current token of the given parser and appends
+     * the serialized document to the given buffer.
+     *
+     * @return the id of the transcoded document
+     * @throws IllegalArgumentException if the operation can not be transcoded, and IllegalArgumentException or
+     *         JsonReaderException if it is invalid. Nothing is appended to the buffer in these cases
+     */
+    public DocumentId transcodePut(JsonParser parser, GrowableByteBuffer buffer) throws IOException {
+        int startPosition = buffer.position();
+        try {
+            JsonToken token = parser.currentToken() == null ? parser.nextToken() : parser.currentToken();
+            expect(JsonToken.START_OBJECT, token);
+            DocumentId id = null;
+            boolean transcoded = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                token = parser.nextToken();
+                if (("put".equals(name) || "id".equals(name)) && token == JsonToken.VALUE_STRING && id == null) {
+                    id = new DocumentId(parser.getText());
+                }
+                else if (DocumentParser.FIELDS.equals(name) && token == JsonToken.START_OBJECT && ! transcoded) {
+                    if (id == null)
+                        throw new IllegalArgumentException("Can not transcode a document where the fields precede the id");
+                    transcode(id, parser, buffer);
+                    transcoded = true;
+                }
+                else {
+                    throw new IllegalArgumentException("Can not transcode '" + name + "': Only puts without a condition " +
+                                                       "can be transcoded");
+                }
+            }
+            if (id == null)
+                throw new IllegalArgumentException("Missing a document put");
+            if ( ! transcoded)
+                throw new IllegalArgumentException("put of document " + id + " is missing a 'fields' map");
+            return id;
+        }
+        catch (IOException | RuntimeException e) {
+            buffer.position(startPosition);
+            throw e;
+        }
+    }
+
+    /**
+     * Transcodes the fields of the document with the given id, starting at the current start object token
+     * of the given parser, and appends the serialized document to the given buffer.
+     *
+     * @throws IllegalArgumentException if the fields can not be transcoded, and IllegalArgumentException or
+     *         JsonReaderException if they are invalid
+     */
+    public void transcode(DocumentId id, JsonParser parser, GrowableByteBuffer buffer) throws IOException {
+        DocumentType type = documentType(id);
+        readFields(type.getName(), type::getField, parser, 1);
+        writeDocument(id, type, buffer);
+    }
+
+    private DocumentType documentType(DocumentId id) {
+        if ( ! id.hasDocType())
+            throw new IllegalArgumentException("Can not transcode document '" + id + "' which does not specify a document type");
+        DocumentType type = types.getDocumentType(id.getDocType());
+        if (type == null)
+            throw new IllegalArgumentException(String.format("Document type %s does not exist", id.getDocType()));
+        if ( ! canTranscode(type))
+            throw new IllegalArgumentException("Documents of type " + type.getName() + " can not be transcoded");
+        return type;
+    }
+
+    /** Writes the document whose fields are held by level 1 */
+    private void writeDocument(DocumentId id, DocumentType type, GrowableByteBuffer buffer) {
+        Level fields = level(1);
+        fields.sortById();
+
+        int headerFields = 0;
+        int bodyFields = 0;
+        for (int i = 0; i < fields.count; i++) {
+            if (fields.isRemoved(i)) continue;
+            if (fields.entry(i, 3) == 1)
+                headerFields++;
+            else
+                bodyFields++;
+        }
+
+        int startPosition = buffer.position();
+        buffer.putShort(Document.SERIALIZED_VERSION);
+        buffer.putInt(0); // Length, filled in below
+        buffer.put(id.getScheme().toUtf8().getBytes());
+        buffer.put((byte)0);
+        byte contents = 0x01; // document type
+        if (headerFields > 0) contents |= 0x02;
+        if (bodyFields > 0) contents |= 0x04;
+        buffer.put(contents);
+        buffer.put(Utf8.toBytes(type.getName()));
+        buffer.put((byte)0);
+        buffer.putShort((short)0); // document type version
+        if (headerFields > 0)
+            writeStruct(fields, 1, type.getHeaderType().getCompressor(), buffer);
+        if (bodyFields > 0)
+            writeStruct(fields, 0, type.getBodyType().getCompressor(), buffer);
+        buffer.putInt(startPosition + 2, buffer.position() - startPosition - 2 - 4);
+    }
+
+    /**
+     * Reads the fields of a struct or document at the current start object token into the given level,
+     * with the field id, start and end of the value and whether the field is a header field as entries.
+     */
+    private void readFields(String typeName, FieldResolver fieldResolver, JsonParser parser, int depth) throws IOException {
+        expect(JsonToken.START_OBJECT, parser.currentToken());
+        Level fields = level(depth);
+        fields.clear();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            Field field = fieldResolver.getField(name);
+            if (field == null)
+                throw new IllegalArgumentException("No field '" + name + "' in the structure of type '" + typeName + "'");
+            parser.nextToken();
+            int start = fields.buffer.position();
+            try {
+                writeValue(field.getDataType(), parser, depth);
+            }
+            catch (IllegalArgumentException e) {
+                throw new JsonReaderException(field, e);
+            }
+            fields.add(field.getId(Document.SERIALIZED_VERSION), start, fields.buffer.position(), field.isHeader() ? 1 : 0);
+        }
+        expect(JsonToken.END_OBJECT, parser.currentToken());
+    }
+
+    /** Writes the value at the current token of the given parser to the buffer of the given level */
+    private void writeValue(DataType type, JsonParser parser, int depth) throws IOException {
+        GrowableByteBuffer buffer = level(depth).buffer;
+        JsonToken token = parser.currentToken();
+        if (isPrimitive(type)) {
+            if ( ! token.isScalarValue())
+                throw new IllegalArgumentException("Expected a " + type.getName() + " value, got " + token);
+            writePrimitive(type, parser.getText(), buffer);
+        }
+        else if (type instanceof ArrayDataType) {
+            expect(JsonToken.START_ARRAY, token);
+            Level elements = level(depth + 1);
+            elements.clear();
+            int count = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                writeValue(((ArrayDataType)type).getNestedType(), parser, depth + 1);
+                count++;
+            }
+            buffer.putInt1_2_4Bytes(count);
+            buffer.put(elements.buffer.array(), 0, elements.buffer.position());
+        }
+        else if (type instanceof WeightedSetDataType) {
+            writeWeightedSet((WeightedSetDataType)type, parser, depth);
+        }
+        else if (type instanceof MapDataType) {
+            writeMap((MapDataType)type, parser, depth);
+        }
+        else if (type instanceof StructDataType) {
+            StructDataType structType = (StructDataType)type;
+            readFields(structType.getName(), structType::getField, parser, depth + 1);
+            Level fields = level(depth + 1);
+            fields.sortById();
+            writeStruct(fields, -1, structType.getCompressor(), buffer);
+        }
+        else {
+            throw new IllegalArgumentException("Can not transcode values of type " + type.getName());
+        }
+    }
+
+    private void writeWeightedSet(WeightedSetDataType type, JsonParser parser, int depth) throws IOException {
+        expect(JsonToken.START_OBJECT, parser.currentToken());
+        Level entries = level(depth + 1);
+        entries.clear();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            int keyStart = entries.buffer.position();
+            writePrimitive(type.getNestedType(), parser.getCurrentName(), entries.buffer);
+            int keyEnd = entries.buffer.position();
+            parser.nextToken();
+            entries.buffer.putInt(weight(parser));
+            entries.add(keyStart, keyEnd, keyEnd, entries.buffer.position());
+        }
+        entries.removeDuplicateKeys();
+
+        GrowableByteBuffer buffer = level(depth).buffer;
+        buffer.putInt(type.getNestedType().getId());
+        buffer.putInt(entries.liveCount());
+        for (int i = 0; i < entries.count; i++) {
+            if (entries.isRemoved(i)) continue;
+            buffer.putInt(entries.entry(i, 3) - entries.entry(i, 0));
+            entries.copyTo(buffer, entries.entry(i, 0), entries.entry(i, 3));
+        }
+    }
+
+    /** Returns the weight at the current token, which is a number or, as accepted by JsonReader, a string */
+    private static int weight(JsonParser parser) throws IOException {
+        switch (parser.currentToken()) {
+            case VALUE_NUMBER_INT:
+                if (parser.getNumberType() != JsonParser.NumberType.INT)
+                    throw new IllegalArgumentException("Weight " + parser.getText() + " is out of range");
+                return parser.getIntValue();
+            case VALUE_STRING:
+                return Integer.parseInt(parser.getText());
+            default:
+                throw new IllegalArgumentException("Expected a weight, got " + parser.currentToken());
+        }
+    }
+
+    private void writeMap(MapDataType type, JsonParser parser, int depth) throws IOException {
+        Level entries = level(depth + 1);
+        entries.clear();
+        if (parser.currentToken() == JsonToken.START_ARRAY) { // [ { "key": key, "value": value }, ... ]
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                expect(JsonToken.START_OBJECT, parser.currentToken());
+                int keyStart = -1, keyEnd = -1, valueStart = -1, valueEnd = -1;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    int start = entries.buffer.position();
+                    if (MapReader.MAP_KEY.equals(name) && keyStart < 0) {
+                        writeValue(type.getKeyType(), parser, depth + 1);
+                        keyStart = start;
+                        keyEnd = entries.buffer.position();
+                    }
+                    else if (MapReader.MAP_VALUE.equals(name) && valueStart < 0) {
+                        writeValue(type.getValueType(), parser, depth + 1);
+                        valueStart = start;
+                        valueEnd = entries.buffer.position();
+                    }
+                    else {
+                        throw new IllegalArgumentException("Expected map entries with a key and a value, got '" + name + "'");
+                    }
+                }
+                if (keyStart < 0 || valueStart < 0)
+                    throw new IllegalArgumentException("Missing key or value for map entry.");
+                entries.add(keyStart, keyEnd, valueStart, valueEnd);
+            }
+        }
+        else { // { key: value, ... }
+            expect(JsonToken.START_OBJECT, parser.currentToken());
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                int keyStart = entries.buffer.position();
+                writePrimitive(type.getKeyType(), parser.getCurrentName(), entries.buffer);
+                int keyEnd = entries.buffer.position();
+                parser.nextToken();
+                writeValue(type.getValueType(), parser, depth + 1);
+                entries.add(keyStart, keyEnd, keyEnd, entries.buffer.position());
+            }
+        }
+        entries.removeDuplicateKeys();
+
+        GrowableByteBuffer buffer = level(depth).buffer;
+        buffer.putInt1_2_4Bytes(entries.liveCount());
+        for (int i = 0; i < entries.count; i++) {
+            if (entries.isRemoved(i)) continue;
+            entries.copyTo(buffer, entries.entry(i, 0), entries.entry(i, 1));
+            entries.copyTo(buffer, entries.entry(i, 2), entries.entry(i, 3));
+        }
+    }
+
+    /**
+     * Writes the struct whose fields are held by the given level, sorted by id.
+     *
+     * @param header 1 to write only header fields, 0 to write only body fields, and -1 to write all fields
+     */
+    private void writeStruct(Level fields, int header, Compressor compressor, GrowableByteBuffer buffer) {
+        int fieldCount = 0;
+        int uncompressedSize = 0;
+        for (int i = 0; i < fields.count; i++) {
+            if (fields.isRemoved(i) || (header >= 0 && fields.entry(i, 3) != header)) continue;
+            fieldCount++;
+            uncompressedSize += fields.entry(i, 2) - fields.entry(i, 1);
+        }
+
+        Compressor.Compression compression = null;
+        byte[] uncompressed = null;
+        if (compressor.type() != CompressionType.NONE) {
+            uncompressed = new byte[uncompressedSize];
+            int position = 0;
+            for (int i = 0; i < fields.count; i++) {
+                if (fields.isRemoved(i) || (header >= 0 && fields.entry(i, 3) != header)) continue;
+                int length = fields.entry(i, 2) - fields.entry(i, 1);
+                System.arraycopy(fields.buffer.array(), fields.entry(i, 1), uncompressed, position, length);
+                position += length;
+            }
+            compression = compressor.compress(uncompressed, uncompressedSize);
+        }
+        boolean compressed = compression != null && compression.data() != null && compression.type().isCompressed();
+
+        int lengthPosition = buffer.position();
+        buffer.putInt(0); // Length, filled in below
+        buffer.put(compression != null ? compression.type().getCode() : CompressionType.NONE.getCode());
+        if (compressed)
+            buffer.putInt2_4_8Bytes(uncompressedSize);
+        buffer.putInt1_4Bytes(fieldCount);
+        for (int i = 0; i < fields.count; i++) {
+            if (fields.isRemoved(i) || (header >= 0 && fields.entry(i, 3) != header)) continue;
+            buffer.putInt1_4Bytes(fields.entry(i, 0));
+            buffer.putInt2_4_8Bytes(fields.entry(i, 2) - fields.entry(i, 1));
+        }
+
+        int dataPosition = buffer.position();
+        if (compressed) {
+            buffer.put(compression.data());
+        }
+        else if (uncompressed != null) {
+            buffer.put(uncompressed);
+        }
+        else {
+            for (int i = 0; i < fields.count; i++) {
+                if (fields.isRemoved(i) || (header >= 0 && fields.entry(i, 3) != header)) continue;
+                fields.copyTo(buffer, fields.entry(i, 1), fields.entry(i, 2));
+            }
+        }
+        buffer.putInt(lengthPosition, buffer.position() - dataPosition);
+    }
+
+    /** Writes a primitive value given as text the way the document reader would parse it */
+    private static void writePrimitive(DataType type, String text, GrowableByteBuffer buffer) {
+        if (type.equals(DataType.STRING)) {
+            writeString(validated(text), buffer);
+        }
+        else if (type.equals(DataType.INT)) {
+            buffer.putInt(Integer.parseInt(text));
+        }
+        else if (type.equals(DataType.LONG)) {
+            buffer.putLong(Long.parseLong(text));
+        }
+        else if (type.equals(DataType.DOUBLE)) {
+            buffer.putDouble(Double.parseDouble(text));
+        }
+        else if (type.equals(DataType.FLOAT)) {
+            buffer.putFloat(Float.parseFloat(text));
+        }
+        else if (type.equals(DataType.BYTE)) {
+            buffer.put(Byte.parseByte(text));
+        }
+        else if (type.equals(DataType.URI)) {
+            writeString(new UriFieldValue(text).getString(), buffer);
+        }
+        else if (type.equals(DataType.RAW)) {
+            byte[] raw = new Base64().decode(text);
+            buffer.putInt(raw.length);
+            buffer.put(raw);
+        }
+        else {
+            throw new IllegalArgumentException("Can not transcode values of type " + type.getName());
+        }
+    }
+
+    private static String validated(String text) {
+        OptionalInt illegalCodePoint = Text.validateTextString(text);
+        if (illegalCodePoint.isPresent())
+            throw new IllegalArgumentException("The string field value contains illegal code point 0x" +
+                                               Integer.toHexString(illegalCodePoint.getAsInt()).toUpperCase());
+        return text;
+    }
+
+    /** Writes a string without span trees */
+    private static void writeString(String value, GrowableByteBuffer buffer) {
+        buffer.put((byte)0); // coding: no span trees
+        buffer.putInt1_4Bytes(utf8Length(value) + 1);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte)c);
+            }
+            else if (c < 0x800) {
+                buffer.put((byte)(0xc0 | (c >> 6)));
+                buffer.put((byte)(0x80 | (c & 0x3f)));
+            }
+            else if (Character.isSurrogate(c)) {
+                if (isSurrogatePair(value, i)) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer.put((byte)(0xf0 | (codePoint >> 18)));
+                    buffer.put((byte)(0x80 | ((codePoint >> 12) & 0x3f)));
+                    buffer.put((byte)(0x80 | ((codePoint >> 6) & 0x3f)));
+                    buffer.put((byte)(0x80 | (codePoint & 0x3f)));
+                }
+                else {
+                    buffer.put((byte)'?'); // as replaced by the UTF-8 encoder
+                }
+            }
+            else {
+                buffer.put((byte)(0xe0 | (c >> 12)));
+                buffer.put((byte)(0x80 | ((c >> 6) & 0x3f)));
+                buffer.put((byte)(0x80 | (c & 0x3f)));
+            }
+        }
+        buffer.put((byte)0);
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            }
+            else if (c < 0x800) {
+                length += 2;
+            }
+            else if (Character.isSurrogate(c)) {
+                if (isSurrogatePair(value, i)) {
+                    length += 4;
+                    i++;
+                }
+                else {
+                    length += 1;
+                }
+            }
+            else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static boolean isSurrogatePair(String value, int index) {
+        return Character.isHighSurrogate(value.charAt(index)) &&
+               index + 1 < value.length() && Character.isLowSurrogate(value.charAt(index + 1));
+    }
+
+    private static void expect(JsonToken expected, JsonToken actual) {
+        if (actual != expected)
+            throw new IllegalArgumentException("Expected " + expected + ", got " + actual);
+    }
+
+    private Level level(int depth) {
+        while (levels.size() <= depth)
+            levels.add(new Level());
+        return levels.get(depth);
+    }
+
+    @FunctionalInterface
+    private interface FieldResolver {
+
+        Field getField(String name);
+
+    }
+
+    /**
+     * The bytes written at one level of nesting, and entries of four ints referencing them,
+     * whose meaning depends on the composite being written.
+     */
+    private static class Level {
+
+        final GrowableByteBuffer buffer = new GrowableByteBuffer(4096, 2.0f);
+        private int[] entries = new int[ENTRY_SIZE * 16];
+        private int[] hashTable = new int[0];
+        private final int[] movedEntry = new int[ENTRY_SIZE];
+        int count = 0;
+
+        void clear() {
+            buffer.clear();
+            count = 0;
+        }
+
+        void add(int a, int b, int c, int d) {
+            if (entries.length < (count + 1) * ENTRY_SIZE)
+                entries = Arrays.copyOf(entries, entries.length * 2);
+            int offset = count * ENTRY_SIZE;
+            entries[offset] = a;
+            entries[offset + 1] = b;
+            entries[offset + 2] = c;
+            entries[offset + 3] = d;
+            count++;
+        }
+
+        int entry(int index, int slot) {
+            return entries[index * ENTRY_SIZE + slot];
+        }
+
+        boolean isRemoved(int index) {
+            return entries[index * ENTRY_SIZE + 1] == REMOVED;
+        }
+
+        int liveCount() {
+            int live = 0;
+            for (int i = 0; i < count; i++)
+                if ( ! isRemoved(i)) live++;
+            return live;
+        }
+
+        void copyTo(GrowableByteBuffer target, int start, int end) {
+            target.put(buffer.array(), start, end - start);
+        }
+
+        /** Stably sorts the entries by the id in their first slot, and removes all but the last entry of each id */
+        void sortById() {
+            for (int i = 1; i < count; i++) {
+                int j = i;
+                while (j > 0 && entries[(j - 1) * ENTRY_SIZE] > entries[i * ENTRY_SIZE]) j--;
+                if (j == i) continue;
+                System.arraycopy(entries, i * ENTRY_SIZE, movedEntry, 0, ENTRY_SIZE);
+                System.arraycopy(entries, j * ENTRY_SIZE, entries, (j + 1) * ENTRY_SIZE, (i - j) * ENTRY_SIZE);
+                System.arraycopy(movedEntry, 0, entries, j * ENTRY_SIZE, ENTRY_SIZE);
+            }
+            for (int i = 1; i < count; i++) {
+                if (entries[(i - 1) * ENTRY_SIZE] == entries[i * ENTRY_SIZE])
+                    entries[(i - 1) * ENTRY_SIZE + 1] = REMOVED;
+            }
+        }
+
+        /** Removes all but the last of the entries having the same key bytes, referenced by the first two slots */
+        void removeDuplicateKeys() {
+            if (count < 2) return;
+            int capacity = Integer.highestOneBit(count * 2 - 1) << 1;
+            if (hashTable.length < capacity)
+                hashTable = new int[capacity];
+            Arrays.fill(hashTable, 0, capacity, -1);
+            for (int i = 0; i < count; i++) {
+                int slot = hash(entry(i, 0), entry(i, 1)) & (capacity - 1);
+                while (hashTable[slot] >= 0 && ! keysEqual(hashTable[slot], i))
+                    slot = (slot + 1) & (capacity - 1);
+                if (hashTable[slot] >= 0)
+                    entries[hashTable[slot] * ENTRY_SIZE + 1] = REMOVED;
+                hashTable[slot] = i;
+            }
+        }
+
+        private int hash(int start, int end) {
+            byte[] bytes = buffer.array();
+            int hash = 1;
+            for (int i = start; i < end; i++)
+                hash = 31 * hash + bytes[i];
+            return hash ^ (hash >>> 16);
+        }
+
+        private boolean keysEqual(int a, int b) {
+            int aStart = entry(a, 0), aLength = entry(a, 1) - aStart;
+            int bStart = entry(b, 0), bLength = entry(b, 1) - bStart;
+            if (aLength != bLength) return false;
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < aLength; i++)
+                if (bytes[aStart + i] != bytes[bStart + i]) return false;
+            return true;
+        }
+
+    }
+
+}
@@ -1,14 +1,20 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.document.json;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.yahoo.document.Document;
 import com.yahoo.document.DocumentOperation;
 import com.yahoo.document.DocumentPut;
 import com.yahoo.document.DocumentRemove;
 import com.yahoo.document.DocumentTypeManager;
 import com.yahoo.document.DocumentUpdate;
+import com.yahoo.document.serialization.DocumentDeserializerFactory;
+import com.yahoo.io.GrowableByteBuffer;
 import com.yahoo.vespaxmlparser.FeedReader;
 import com.yahoo.vespaxmlparser.VespaXMLFeedReader.Operation;
 
@@ -20,6 +26,11 @@ import com.yahoo.vespaxmlparser.VespaXMLFeedReader.Operation;
  * The feed reader will take ownership of the input stream and close it when the
  * last parseable document has been read.
  *
+ * <p>
+ * A feed reader of a single operation given as bytes may be created with a {@link JsonDocumentTranscoder}.
+ * If the operation is a put the transcoder supports, the document is then transcoded to the binary format and
+ * its field values deserialized lazily, while other operations are read by JsonReader as usual.
+ *
  * @author steinar
  */
 public class JsonFeedReader implements FeedReader {
@@ -28,13 +39,58 @@ public class JsonFeedReader implements FeedReader {
     private InputStream stream;
     private static final JsonFactory jsonFactory = new JsonFactory().disable(JsonFactory.Feature.CANONICALIZE_FIELD_NAMES);
 
+    /** The buffers puts are transcoded to, whose contents are copied when the documents are deserialized */
+    private static final ThreadLocal<GrowableByteBuffer> transcodeBuffer = ThreadLocal.withInitial(GrowableByteBuffer::new);
+
+    /** The document of a transcoded put, to be returned by the first read, or null if none */
+    private Document transcodedDocument = null;
+
     public JsonFeedReader(InputStream stream, DocumentTypeManager docMan) {
         reader = new JsonReader(docMan, stream, jsonFactory);
         this.stream = stream;
     }
 
+    /**
+     * Creates a reader of a single operation, which is transcoded by the given transcoder if possible.
+     *
+     * @param operation the JSON of the operation
+     * @param docMan the document types of the operation, which must be those of the transcoder
+     * @param transcoder the transcoder to use. This is used during this call only, such that it may be reused
+     *                   by other readers created in the same thread
+     */
+    public JsonFeedReader(byte[] operation, DocumentTypeManager docMan, JsonDocumentTranscoder transcoder) {
+        this(new ByteArrayInputStream(operation), docMan);
+        this.transcodedDocument = transcode(operation, docMan, transcoder);
+    }
+
+    /** Returns the document of the given put operation, or null if it can not be transcoded */
+    private static Document transcode(byte[] operation, DocumentTypeManager docMan, JsonDocumentTranscoder transcoder) {
+        GrowableByteBuffer buffer = transcodeBuffer.get();
+        buffer.clear();
+        try (JsonParser parser = jsonFactory.createParser(operation)) {
+            transcoder.transcodePut(parser, buffer);
+            if (parser.nextToken() != null) return null; // more than one operation
+        }
+        catch (IOException | IllegalArgumentException | JsonReaderException e) {
+            return null; // unsupported or invalid: Leave it to JsonReader, which also produces the right error messages
+        }
+        buffer.flip();
+        return new Document(DocumentDeserializerFactory.createLazyHead(docMan, buffer));
+    }
+
     @Override
     public void read(Operation operation) throws Exception {
+        if (transcodedDocument != null) {
+            operation.setDocument(transcodedDocument);
+            transcodedDocument = null;
+            stream = null;
+            return;
+        }
+        if (stream == null) { // the transcoded document was the only operation
+            operation.setInvalid();
+            return;
+        }
+
         DocumentOperation documentOperation = reader.next();
 
         if (documentOperation == null) {
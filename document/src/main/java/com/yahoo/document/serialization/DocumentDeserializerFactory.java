@@ -19,6 +19,17 @@ public class DocumentDeserializerFactory {
         return new VespaDocumentDeserializerHead(manager, buf);
     }
 
+    /**
+     * Creates a de-serializer for the current head document format which defers deserializing the field values
+     * of documents and structs until they are accessed. Values which are never accessed are serialized
+     * again by copying their bytes.
+     */
+    public static DocumentDeserializer createLazyHead(DocumentTypeManager manager, GrowableByteBuffer buf) {
+        VespaDocumentDeserializerHead deserializer = new VespaDocumentDeserializerHead(manager, buf);
+        deserializer.setLazyStructs(true);
+        return deserializer;
+    }
+
     /**
      * Creates a de-serializer for the document format that was created on Vespa 4.2.
      */
@@ -0,0 +1,139 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.serialization;
+
+import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.document.Field;
+import com.yahoo.document.datatypes.FieldValue;
+import com.yahoo.io.GrowableByteBuffer;
+
+import java.util.Arrays;
+
+/**
+ * The serialized values of the fields of a struct which are not deserialized yet.
+ * Each value is deserialized when its field is first accessed, and values which are never accessed
+ * are serialized again by copying their bytes.
+ * <p>
+ * This is not thread safe.
+ *
+ * @author agent
+ */
+public class SerializedStructFields {
+
+    private final DocumentTypeManager manager;
+
+    /** The uncompressed field data of the struct, which is never modified */
+    private final byte[] data;
+
+    private int[] ids;
+    private int[] starts;
+    private int[] lengths;
+    private int size = 0;
+
+    /** The deserializer used to read values from the data, created on first use */
+    private VespaDocumentDeserializerHead deserializer = null;
+
+    SerializedStructFields(DocumentTypeManager manager, byte[] data, int capacity) {
+        this.manager = manager;
+        this.data = data;
+        this.ids = new int[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+    }
+
+    private SerializedStructFields(SerializedStructFields other) {
+        this.manager = other.manager;
+        this.data = other.data;
+        this.ids = Arrays.copyOf(other.ids, other.size);
+        this.starts = Arrays.copyOf(other.starts, other.size);
+        this.lengths = Arrays.copyOf(other.lengths, other.size);
+        this.size = other.size;
+    }
+
+    void add(int id, int start, int length) {
+        if (size == ids.length) {
+            int capacity = Math.max(4, size * 2);
+            ids = Arrays.copyOf(ids, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        ids[size] = id;
+        starts[size] = start;
+        lengths[size] = length;
+        size++;
+    }
+
+    /** Returns the number of fields which are not deserialized */
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    /** Returns the id of the field at the given index, in no particular order */
+    public int id(int index) { return ids[index]; }
+
+    /** Returns whether the field with the given id is held here, not deserialized */
+    public boolean contains(int id) {
+        return indexOf(id) >= 0;
+    }
+
+    /**
+     * Deserializes and returns the value of the given field and removes it from this.
+     *
+     * @return the deserialized value, or null if the field is not held here
+     * @throws DeserializationException if the value could not be deserialized
+     */
+    public FieldValue deserialize(Field field) {
+        int index = indexOf(field.getId());
+        if (index < 0) return null;
+
+        if (deserializer == null)
+            deserializer = new VespaDocumentDeserializerHead(manager, GrowableByteBuffer.wrap(data));
+        deserializer.position(starts[index]);
+        FieldValue value = field.getDataType().createFieldValue();
+        try {
+            value.deserialize(field, deserializer);
+        }
+        catch (DeserializationException e) {
+            throw e;
+        }
+        catch (RuntimeException e) {
+            throw new DeserializationException("Could not deserialize the value of " + field, e);
+        }
+        removeAt(index);
+        return value;
+    }
+
+    /** Removes the field with the given id from this, if present. Returns whether it was present */
+    public boolean remove(int id) {
+        int index = indexOf(id);
+        if (index < 0) return false;
+        removeAt(index);
+        return true;
+    }
+
+    /** Writes the serialized value of the field with the given id to the given buffer */
+    public void copyTo(int id, GrowableByteBuffer buffer) {
+        int index = indexOf(id);
+        if (index < 0)
+            throw new IllegalArgumentException("Field " + id + " is not held here");
+        buffer.put(data, starts[index], lengths[index]);
+    }
+
+    /** Returns a copy of this, sharing the immutable data */
+    public SerializedStructFields copy() {
+        return new SerializedStructFields(this);
+    }
+
+    private int indexOf(int id) {
+        for (int i = 0; i < size; i++)
+            if (ids[i] == id) return i;
+        return -1;
+    }
+
+    private void removeAt(int index) {
+        size--;
+        ids[index] = ids[size];
+        starts[index] = starts[size];
+        lengths[index] = lengths[size];
+    }
+
+}
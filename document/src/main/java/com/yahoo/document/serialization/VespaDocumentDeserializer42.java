@@ -90,6 +90,7 @@ public class VespaDocumentDeserializer42 extends VespaDocumentSerializer42 imple
     private List<SpanNode> spanNodes;
     private List<Annotation> annotations;
     private int[] stringPositions;
+    private boolean lazyStructs = false;
 
     VespaDocumentDeserializer42(DocumentTypeManager manager, GrowableByteBuffer header, GrowableByteBuffer body, short version) {
         super(header);
@@ -108,6 +109,12 @@ public class VespaDocumentDeserializer42 extends VespaDocumentSerializer42 imple
 
     final public DocumentTypeManager getDocumentTypeManager() { return manager; }
 
+    /**
+     * Sets whether the fields of structs, including the header and body of documents, should be deserialized
+     * when first accessed rather than when the struct is read. This is only done for the current format version.
+     */
+    void setLazyStructs(boolean lazyStructs) { this.lazyStructs = lazyStructs; }
+
     public void read(Document document) {
          read(null, document);
     }
@@ -358,6 +365,19 @@ public class VespaDocumentDeserializer42 extends VespaDocumentSerializer42 imple
 
         s.clear();
         StructDataType type = s.getDataType();
+        if (lazyStructs && version == Document.SERIALIZED_VERSION) {
+            SerializedStructFields serializedFields = new SerializedStructFields(manager, destination, numberOfFields);
+            for (int i=0; i<numberOfFields; ++i) {
+                int fieldLength = fieldIdsAndLengths.get(i).second.intValue();
+                if (type.getField(fieldIdsAndLengths.get(i).first, version) != null) { // ignoring unknown fields
+                    serializedFields.add(fieldIdsAndLengths.get(i).first, position(), fieldLength);
+                }
+                position(position() + fieldLength);
+            }
+            s.setSerializedFields(serializedFields);
+            buf = bigBuf;
+            return;
+        }
         for (int i=0; i<numberOfFields; ++i) {
             Field structField = type.getField(fieldIdsAndLengths.get(i).first, version);
             if (structField == null) {
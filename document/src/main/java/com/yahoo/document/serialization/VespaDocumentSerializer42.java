@@ -310,10 +310,17 @@ public class VespaDocumentSerializer42 extends BufferSerializer implements Docum
         List<Integer> fieldIds = new LinkedList<>();
         List<java.lang.Integer> fieldLengths = new LinkedList<>();
 
+        // Fields which have not been accessed since the struct was deserialized are copied as-is
+        SerializedStructFields serializedFields = s.getSerializedFields();
+
         for (Map.Entry<Field, FieldValue> value : s.getFields()) {
 
             int startPos = buffer.position();
-            value.getValue().serialize(value.getKey(), this);
+            if (serializedFields != null && serializedFields.contains(value.getKey().getId())) {
+                serializedFields.copyTo(value.getKey().getId(), buffer);
+            } else {
+                value.getValue().serialize(value.getKey(), this);
+            }
 
             fieldLengths.add(buffer.position() - startPos);
             fieldIds.add(value.getKey().getId(s.getVersion()));
@@ -0,0 +1,124 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.yahoo.document.ArrayDataType;
+import com.yahoo.document.DataType;
+import com.yahoo.document.Document;
+import com.yahoo.document.DocumentPut;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.document.Field;
+import com.yahoo.document.MapDataType;
+import com.yahoo.document.StructDataType;
+import com.yahoo.document.serialization.DocumentSerializerFactory;
+import com.yahoo.io.GrowableByteBuffer;
+import com.yahoo.text.Utf8;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single threaded JMH benchmark comparing the time and memory used to produce serialized documents from JSON puts
+ * by reading them into documents and serializing those, and by transcoding them directly.
+ * Run with the main method of this, from the test classpath, which adds the GC profiler
+ * (as -prof gc does on the command line) to report the bytes allocated per operation.
+ *
+ * @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class JsonDocumentTranscoderBenchmark {
+
+    private static final int distinctDocuments = 1000;
+
+    private final DocumentTypeManager types = new DocumentTypeManager();
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final byte[][] puts = new byte[distinctDocuments][];
+    private final GrowableByteBuffer buffer = new GrowableByteBuffer();
+    private JsonDocumentTranscoder transcoder;
+    private int count = 0;
+
+    @Setup
+    public void setup() {
+        DocumentType type = new DocumentType("music");
+        StructDataType track = new StructDataType("track");
+        track.addField(new Field("name", DataType.STRING));
+        track.addField(new Field("seconds", DataType.INT));
+        type.addField(new Field("title", DataType.STRING));
+        type.addField(new Field("artist", DataType.STRING));
+        type.addField(new Field("year", DataType.INT));
+        type.addField(new Field("popularity", DataType.DOUBLE));
+        type.addField(new Field("url", DataType.URI));
+        type.addField(new Field("tags", new ArrayDataType(DataType.STRING)));
+        type.addField(new Field("tracks", new ArrayDataType(track)));
+        type.addField(new Field("ratings", new MapDataType(DataType.STRING, DataType.INT)));
+        types.registerDocumentType(type);
+        transcoder = new JsonDocumentTranscoder(types);
+
+        for (int i = 0; i < distinctDocuments; i++)
+            puts[i] = Utf8.toBytes("[{ \"put\": \"id:music:music::" + i + "\", \"fields\": {" +
+                                   "  \"title\": \"Title number " + i + " of the benchmark\"," +
+                                   "  \"artist\": \"The benchmarkers\", \"year\": " + (1950 + i % 70) + "," +
+                                   "  \"popularity\": " + (i % 100) / 10.0 + "," +
+                                   "  \"url\": \"http://music.example.com/album/" + i + "\"," +
+                                   "  \"tags\": [ \"rock\", \"pop\", \"tag" + i + "\" ]," +
+                                   "  \"tracks\": [ { \"name\": \"First\", \"seconds\": 180 }," +
+                                   "               { \"name\": \"Second\", \"seconds\": 240 }," +
+                                   "               { \"name\": \"Third\", \"seconds\": " + i % 600 + " } ]," +
+                                   "  \"ratings\": { \"critics\": " + i % 5 + ", \"users\": " + i % 3 + " } } }]");
+    }
+
+    /** Returns the number of serialized bytes, such that the serialization is not optimized away */
+    @Benchmark
+    public int readAndSerialize() {
+        buffer.clear();
+        JsonReader reader = new JsonReader(types, new ByteArrayInputStream(nextPut()), jsonFactory);
+        Document document = ((DocumentPut)reader.next()).getDocument();
+        DocumentSerializerFactory.createHead(buffer).write(document);
+        return buffer.position();
+    }
+
+    /** Returns the number of serialized bytes, such that the transcoding is not optimized away */
+    @Benchmark
+    public int transcode() throws IOException {
+        buffer.clear();
+        try (JsonParser parser = jsonFactory.createParser(nextPut())) {
+            parser.nextToken(); // the start of the feed array
+            transcoder.transcodePut(parser, buffer);
+        }
+        return buffer.position();
+    }
+
+    private byte[] nextPut() {
+        count = (count + 1) % distinctDocuments;
+        return puts[count];
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(JsonDocumentTranscoderBenchmark.class.getSimpleName())
+                                       .addProfiler(GCProfiler.class)
+                                       .build()).run();
+    }
+
+}
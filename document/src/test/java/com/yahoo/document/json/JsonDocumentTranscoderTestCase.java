@@ -0,0 +1,270 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.yahoo.compress.CompressionType;
+import com.yahoo.document.ArrayDataType;
+import com.yahoo.document.CompressionConfig;
+import com.yahoo.document.DataType;
+import com.yahoo.document.Document;
+import com.yahoo.document.DocumentId;
+import com.yahoo.document.DocumentPut;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.document.Field;
+import com.yahoo.document.MapDataType;
+import com.yahoo.document.StructDataType;
+import com.yahoo.document.TensorDataType;
+import com.yahoo.document.WeightedSetDataType;
+import com.yahoo.document.serialization.DocumentDeserializerFactory;
+import com.yahoo.document.serialization.DocumentSerializerFactory;
+import com.yahoo.io.GrowableByteBuffer;
+import com.yahoo.tensor.TensorType;
+import com.yahoo.text.Utf8;
+import com.yahoo.vespaxmlparser.VespaXMLFeedReader;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that transcoding JSON puts gives the same result as reading and serializing the documents.
+ *
+ * @author agent
+ */
+public class JsonDocumentTranscoderTestCase {
+
+    private final DocumentTypeManager types = createTypes();
+    private final JsonDocumentTranscoder transcoder = new JsonDocumentTranscoder(types);
+
+    @Test
+    public void requireThatTranscodingGivesTheSameBytesAsReadingAndSerializing() throws IOException {
+        assertSameBytes("{ \"put\": \"id:unittest:primitives::1\", \"fields\": {" +
+                        "  \"title\": \"Transcoded\", \"count\": 17, \"big\": -123456789012," +
+                        "  \"small\": 8, \"ratio\": 0.25, \"exact\": 1.0E-5, \"uri\": \"http://www.example.com/path?q=1\"," +
+                        "  \"raw\": \"AAECAwQF\", \"body\": \"In the body\" } }");
+        assertSameBytes("{ \"put\": \"id:unittest:primitives::2\", \"fields\": {" +
+                        "  \"body\": \"Only a body field\" } }");
+        assertSameBytes("{ \"put\": \"id:unittest:primitives::3\", \"fields\": {} }");
+    }
+
+    @Test
+    public void requireThatStringsAreEncodedAsUtf8() throws IOException {
+        assertSameBytes("{ \"put\": \"id:unittest:primitives::1\", \"fields\": {" +
+                        "  \"title\": \"blåbær € 😀 \\ud83d\\ude03 \\u00e6\\n\" } }");
+    }
+
+    @Test
+    public void requireThatTheLastValueOfARepeatedFieldIsUsed() throws IOException {
+        assertSameBytes("{ \"put\": \"id:unittest:primitives::1\", \"fields\": {" +
+                        "  \"title\": \"first\", \"count\": 1, \"title\": \"second\" } }");
+    }
+
+    @Test
+    public void requireThatArraysAndStructsAreTranscoded() throws IOException {
+        assertSameBytes("{ \"put\": \"id:unittest:composites::1\", \"fields\": {" +
+                        "  \"tags\": [ \"a\", \"b\", \"c\" ], \"numbers\": [ 1, 2, 3 ], \"empty\": []," +
+                        "  \"person\": { \"name\": \"Ola\", \"age\": 42, \"nicknames\": [ \"o\" ] }," +
+                        "  \"people\": [ { \"age\": 1 }, { \"name\": \"Kari\", \"age\": 2 }, {} ]," +
+                        "  \"matrix\": [ [ 1, 2 ], [], [ 3 ] ] } }");
+    }
+
+    @Test
+    public void requireThatWeightedSetsAndMapsAreTranscoded() throws IOException {
+        assertSameDocument("{ \"put\": \"id:unittest:composites::1\", \"fields\": {" +
+                           "  \"weighted\": { \"a\": 1, \"b\": -2, \"a\": 3, \"c\": \"4\" }," +
+                           "  \"weightedNumbers\": { \"1\": 10, \"2\": 20 }," +
+                           "  \"map\": { \"x\": \"one\", \"y\": \"two\", \"x\": \"three\" }," +
+                           "  \"structs\": [ { \"key\": 1, \"value\": { \"name\": \"one\" } }," +
+                           "               { \"value\": { \"age\": 2 }, \"key\": 2 } ] } }");
+    }
+
+    @Test
+    public void requireThatCompressedStructsAreTranscoded() throws IOException {
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 200; i++)
+            longText.append("aaaaaaaaaa");
+        assertSameBytes("{ \"put\": \"id:unittest:compressed::1\", \"fields\": {" +
+                        "  \"text\": \"" + longText + "\", \"number\": 7 } }");
+        assertSameBytes("{ \"put\": \"id:unittest:compressed::2\", \"fields\": { \"text\": \"short\" } }");
+    }
+
+    @Test
+    public void requireThatUnsupportedDocumentsAndOperationsAreRejectedWithoutWritingAnything() throws IOException {
+        assertTrue(JsonDocumentTranscoder.canTranscode(types.getDocumentType("composites")));
+        assertFalse(JsonDocumentTranscoder.canTranscode(types.getDocumentType("tensors")));
+
+        assertRejected("{ \"put\": \"id:unittest:tensors::1\", \"fields\": {} }",
+                       "Documents of type tensors can not be transcoded");
+        assertRejected("{ \"fields\": { \"title\": \"foo\" }, \"put\": \"id:unittest:primitives::1\" }",
+                       "Can not transcode a document where the fields precede the id");
+        assertRejected("{ \"put\": \"id:unittest:primitives::1\", \"condition\": \"primitives.count==1\", \"fields\": {} }",
+                       "Can not transcode 'condition': Only puts without a condition can be transcoded");
+        assertRejected("{ \"update\": \"id:unittest:primitives::1\", \"fields\": {} }",
+                       "Can not transcode 'update': Only puts without a condition can be transcoded");
+        assertRejected("{ \"put\": \"id:unittest:primitives::1\" }",
+                       "put of document id:unittest:primitives::1 is missing a 'fields' map");
+        assertRejected("{ \"put\": \"id:unittest:primitives::1\", \"fields\": { \"count\": \"many\" } }",
+                       "Error in document 'null' - could not parse field 'count' of type 'int': For input string: \"many\"");
+        assertRejected("{ \"put\": \"id:unittest:primitives::1\", \"fields\": { \"nonexisting\": 1 } }",
+                       "No field 'nonexisting' in the structure of type 'primitives'");
+    }
+
+    @Test
+    public void requireThatWeightsMustBeIntegers() throws IOException {
+        assertRejectedWeight("1.5", "Expected a weight, got VALUE_NUMBER_FLOAT");
+        assertRejectedWeight("4294967296", "Weight 4294967296 is out of range");
+        assertRejectedWeight("[ 1 ]", "Expected a weight, got START_ARRAY");
+    }
+
+    @Test
+    public void requireThatTheBufferIsReusedBetweenDocuments() throws IOException {
+        String first = "{ \"put\": \"id:unittest:primitives::1\", \"fields\": { \"title\": \"first\" } }";
+        String second = "{ \"put\": \"id:unittest:composites::2\", \"fields\": { \"tags\": [ \"second\" ] } }";
+        GrowableByteBuffer buffer = new GrowableByteBuffer();
+        DocumentId firstId = transcoder.transcodePut(new JsonFactory().createParser(first), buffer);
+        int firstEnd = buffer.position();
+        DocumentId secondId = transcoder.transcodePut(new JsonFactory().createParser(second), buffer);
+        assertEquals("id:unittest:primitives::1", firstId.toString());
+        assertEquals("id:unittest:composites::2", secondId.toString());
+
+        byte[] bytes = Arrays.copyOf(buffer.getByteBuffer().array(), buffer.position());
+        assertArrayEquals(readAndSerialize(first), Arrays.copyOfRange(bytes, 0, firstEnd));
+        assertArrayEquals(readAndSerialize(second), Arrays.copyOfRange(bytes, firstEnd, bytes.length));
+    }
+
+    @Test
+    public void requireThatTheFeedReaderTranscodesPutsAndReadsOtherOperations() throws Exception {
+        String put = "{ \"put\": \"id:unittest:composites::1\", \"fields\": { \"tags\": [ \"a\" ], \"weighted\": { \"b\": 2 } } }";
+        VespaXMLFeedReader.Operation operation = readWithFeedReader(put);
+        Document document = operation.getDocument();
+        assertTrue("Transcoded and lazily deserialized",
+                   document.getHeader().getSerializedFields() != null || document.getBody().getSerializedFields() != null);
+        assertEquals(((DocumentPut)new JsonReader(types, new ByteArrayInputStream(Utf8.toBytes("[" + put + "]")),
+                                                  new JsonFactory()).next()).getDocument(),
+                     document);
+
+        String tensorPut = "{ \"put\": \"id:unittest:tensors::1\", \"fields\": { } }";
+        assertEquals("id:unittest:tensors::1", readWithFeedReader(tensorPut).getDocument().getId().toString());
+
+        String update = "{ \"update\": \"id:unittest:primitives::1\", \"fields\": { \"count\": { \"assign\": 2 } } }";
+        assertEquals("id:unittest:primitives::1", readWithFeedReader(update).getDocumentUpdate().getId().toString());
+    }
+
+    private VespaXMLFeedReader.Operation readWithFeedReader(String json) throws Exception {
+        JsonFeedReader reader = new JsonFeedReader(Utf8.toBytes(json), types, transcoder);
+        VespaXMLFeedReader.Operation operation = new VespaXMLFeedReader.Operation();
+        reader.read(operation);
+        VespaXMLFeedReader.Operation end = new VespaXMLFeedReader.Operation();
+        reader.read(end);
+        assertEquals(VespaXMLFeedReader.OperationType.INVALID, end.getType());
+        return operation;
+    }
+
+    private void assertSameBytes(String json) throws IOException {
+        assertArrayEquals(readAndSerialize(json), transcode(json));
+    }
+
+    /** For documents containing maps and weighted sets, whose entries may be serialized in a different order */
+    private void assertSameDocument(String json) throws IOException {
+        assertEquals(deserialize(readAndSerialize(json)), deserialize(transcode(json)));
+    }
+
+    private void assertRejected(String json, String expectedMessage) throws IOException {
+        GrowableByteBuffer buffer = new GrowableByteBuffer();
+        buffer.putInt(17);
+        try {
+            transcoder.transcodePut(new JsonFactory().createParser(json), buffer);
+            fail("Expected an exception");
+        }
+        catch (RuntimeException e) {
+            assertEquals(expectedMessage, e.getMessage());
+        }
+        assertEquals(4, buffer.position());
+    }
+
+    private void assertRejectedWeight(String weight, String expectedMessageEnd) throws IOException {
+        try {
+            transcode("{ \"put\": \"id:unittest:composites::1\", \"fields\": { \"weighted\": { \"a\": " + weight + " } } }");
+            fail("Expected an exception");
+        }
+        catch (JsonReaderException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith(expectedMessageEnd));
+        }
+    }
+
+    private byte[] transcode(String json) throws IOException {
+        GrowableByteBuffer buffer = new GrowableByteBuffer();
+        transcoder.transcodePut(new JsonFactory().createParser(json), buffer);
+        return Arrays.copyOf(buffer.getByteBuffer().array(), buffer.position());
+    }
+
+    private byte[] readAndSerialize(String json) {
+        JsonReader reader = new JsonReader(types, new ByteArrayInputStream(Utf8.toBytes("[" + json + "]")), new JsonFactory());
+        Document document = ((DocumentPut)reader.next()).getDocument();
+        GrowableByteBuffer buffer = new GrowableByteBuffer();
+        DocumentSerializerFactory.createHead(buffer).write(document);
+        return Arrays.copyOf(buffer.getByteBuffer().array(), buffer.position());
+    }
+
+    private Document deserialize(byte[] bytes) {
+        return new Document(DocumentDeserializerFactory.createHead(types, new GrowableByteBuffer(ByteBuffer.wrap(bytes))));
+    }
+
+    private static DocumentTypeManager createTypes() {
+        DocumentTypeManager types = new DocumentTypeManager();
+        {
+            DocumentType type = new DocumentType("primitives");
+            type.addField(new Field("title", DataType.STRING, true));
+            type.addField(new Field("count", DataType.INT, true));
+            type.addField(new Field("big", DataType.LONG, true));
+            type.addField(new Field("small", DataType.BYTE, true));
+            type.addField(new Field("ratio", DataType.FLOAT, true));
+            type.addField(new Field("exact", DataType.DOUBLE, true));
+            type.addField(new Field("uri", DataType.URI, true));
+            type.addField(new Field("raw", DataType.RAW, true));
+            type.addField(new Field("body", DataType.STRING, false));
+            types.registerDocumentType(type);
+        }
+        {
+            DocumentType type = new DocumentType("composites");
+            StructDataType person = new StructDataType("person");
+            person.addField(new Field("name", DataType.STRING));
+            person.addField(new Field("age", DataType.INT));
+            person.addField(new Field("nicknames", new ArrayDataType(DataType.STRING)));
+            type.addField(new Field("tags", new ArrayDataType(DataType.STRING)));
+            type.addField(new Field("numbers", new ArrayDataType(DataType.INT)));
+            type.addField(new Field("empty", new ArrayDataType(DataType.STRING)));
+            type.addField(new Field("person", person));
+            type.addField(new Field("people", new ArrayDataType(person)));
+            type.addField(new Field("matrix", new ArrayDataType(new ArrayDataType(DataType.INT))));
+            type.addField(new Field("weighted", new WeightedSetDataType(DataType.STRING, false, false)));
+            type.addField(new Field("weightedNumbers", new WeightedSetDataType(DataType.LONG, false, false)));
+            type.addField(new Field("map", new MapDataType(DataType.STRING, DataType.STRING)));
+            type.addField(new Field("structs", new MapDataType(DataType.INT, person)));
+            types.registerDocumentType(type);
+        }
+        {
+            DocumentType type = new DocumentType("compressed");
+            type.getHeaderType().setCompressionConfig(new CompressionConfig(CompressionType.LZ4, 9, 95, 0));
+            type.addField(new Field("text", DataType.STRING, true));
+            type.addField(new Field("number", DataType.INT, true));
+            types.registerDocumentType(type);
+        }
+        {
+            DocumentType type = new DocumentType("tensors");
+            type.addField(new Field("tensor", new TensorDataType(new TensorType.Builder().mapped("x").build())));
+            types.registerDocumentType(type);
+        }
+        return types;
+    }
+
+}
@@ -0,0 +1,182 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.serialization;
+
+import com.yahoo.compress.CompressionType;
+import com.yahoo.document.ArrayDataType;
+import com.yahoo.document.CompressionConfig;
+import com.yahoo.document.DataType;
+import com.yahoo.document.Document;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.document.Field;
+import com.yahoo.document.StructDataType;
+import com.yahoo.document.datatypes.Array;
+import com.yahoo.document.datatypes.FieldValue;
+import com.yahoo.document.datatypes.IntegerFieldValue;
+import com.yahoo.document.datatypes.StringFieldValue;
+import com.yahoo.document.datatypes.Struct;
+import com.yahoo.io.GrowableByteBuffer;
+import com.yahoo.text.Utf8;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests deserializing documents whose field values are deserialized when accessed.
+ *
+ * @author agent
+ */
+public class SerializedStructFieldsTestCase {
+
+    private final DocumentTypeManager types = new DocumentTypeManager();
+    private final DocumentType type;
+
+    public SerializedStructFieldsTestCase() {
+        type = new DocumentType("lazy");
+        StructDataType person = new StructDataType("person");
+        person.addField(new Field("name", DataType.STRING));
+        type.addField(new Field("title", DataType.STRING, true));
+        type.addField(new Field("count", DataType.INT, true));
+        type.addField(new Field("people", new ArrayDataType(person), true));
+        type.addField(new Field("body", DataType.STRING, false));
+        types.registerDocumentType(type);
+    }
+
+    @Test
+    public void requireThatFieldsAreDeserializedOnAccess() {
+        Document document = deserializeLazily(serialize(createDocument()));
+        assertNotNull(document.getHeader().getSerializedFields());
+        assertEquals(3, document.getHeader().getSerializedFields().size());
+        assertEquals(4, document.getFieldCount());
+
+        assertEquals(new StringFieldValue("Lazy"), document.getFieldValue("title"));
+        assertEquals(2, document.getHeader().getSerializedFields().size());
+        assertEquals(4, document.getFieldCount());
+
+        assertEquals(3, document.getHeader().getFields().size());
+        assertEquals(new StringFieldValue("In the body"), document.getFieldValue("body"));
+        assertNull(document.getBody().getSerializedFields());
+
+        assertEquals(createDocument(), document);
+        assertNull(document.getHeader().getSerializedFields());
+    }
+
+    @Test
+    public void requireThatIterationGivesAllFieldsInOrder() {
+        Document document = deserializeLazily(serialize(createDocument()));
+        document.getFieldValue("count");
+        List<String> names = new ArrayList<>();
+        for (Map.Entry<Field, FieldValue> entry : document) {
+            names.add(entry.getKey().getName());
+            assertEquals(createDocument().getFieldValue(entry.getKey()), entry.getValue());
+        }
+        List<String> expected = new ArrayList<>();
+        for (Map.Entry<Field, FieldValue> entry : createDocument())
+            expected.add(entry.getKey().getName());
+        assertEquals(expected, names);
+    }
+
+    @Test
+    public void requireThatUntouchedFieldsAreReserializedAsTheOriginal() {
+        byte[] serialized = serialize(createDocument());
+        assertArrayEquals(serialized, serialize(deserializeLazily(serialized)));
+
+        Document document = deserializeLazily(serialized);
+        document.getFieldValue("title");
+        assertArrayEquals(serialized, serialize(document));
+    }
+
+    @Test
+    public void requireThatModifiedFieldsAreReserializedFromTheirValues() {
+        Document document = deserializeLazily(serialize(createDocument()));
+        document.setFieldValue("title", new StringFieldValue("Modified"));
+        document.removeFieldValue("count");
+
+        Document expected = createDocument();
+        expected.setFieldValue("title", new StringFieldValue("Modified"));
+        expected.removeFieldValue("count");
+        assertEquals(3, document.getFieldCount());
+        assertArrayEquals(serialize(expected), serialize(document));
+    }
+
+    @Test
+    public void requireThatClonesAreIndependent() {
+        Document document = deserializeLazily(serialize(createDocument()));
+        Document clone = document.clone();
+        clone.setFieldValue("count", new IntegerFieldValue(13));
+        assertEquals(new IntegerFieldValue(7), document.getFieldValue("count"));
+        assertEquals(new IntegerFieldValue(13), clone.getFieldValue("count"));
+        assertEquals(3, document.getHeader().getFieldCount());
+        assertEquals(3, clone.getHeader().getFieldCount());
+    }
+
+    @Test
+    public void requireThatCorruptValuesFailWhenAccessed() {
+        byte[] serialized = serialize(createDocument());
+        int bodyStart = indexOf(Utf8.toBytes("In the body"), serialized);
+        serialized[bodyStart - 1] = 0; // the string length, including the terminating 0
+        Document document = deserializeLazily(serialized);
+        assertEquals(new StringFieldValue("Lazy"), document.getFieldValue("title"));
+        try {
+            document.getFieldValue("body");
+            fail("Expected exception");
+        }
+        catch (DeserializationException e) {
+            assertEquals("Could not deserialize the value of " + type.getField("body"), e.getMessage());
+        }
+    }
+
+    @Test
+    public void requireThatCompressedStructsAreDeserializedLazily() {
+        type.getHeaderType().setCompressionConfig(new CompressionConfig(CompressionType.LZ4, 9, 95, 0));
+        Document original = createDocument();
+        StringBuilder title = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+            title.append("compressible ");
+        original.setFieldValue("title", new StringFieldValue(title.toString()));
+
+        Document document = deserializeLazily(serialize(original));
+        assertNotNull(document.getHeader().getSerializedFields());
+        assertEquals(original.getFieldValue("title"), document.getFieldValue("title"));
+        assertEquals(original, document);
+    }
+
+    private Document createDocument() {
+        Document document = new Document(type, "id:test:lazy::1");
+        document.setFieldValue("title", new StringFieldValue("Lazy"));
+        document.setFieldValue("count", new IntegerFieldValue(7));
+        Array<Struct> people = new Array<>(type.getField("people").getDataType());
+        Struct person = ((StructDataType)((ArrayDataType)type.getField("people").getDataType()).getNestedType()).createFieldValue();
+        person.setFieldValue("name", new StringFieldValue("Kari"));
+        people.add(person);
+        document.setFieldValue("people", people);
+        document.setFieldValue("body", new StringFieldValue("In the body"));
+        return document;
+    }
+
+    private byte[] serialize(Document document) {
+        GrowableByteBuffer buffer = new GrowableByteBuffer();
+        DocumentSerializerFactory.createHead(buffer).write(document);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static int indexOf(byte[] part, byte[] whole) {
+        for (int i = 0; i <= whole.length - part.length; i++)
+            if (Arrays.equals(part, Arrays.copyOfRange(whole, i, i + part.length))) return i;
+        throw new IllegalArgumentException("Not found");
+    }
+
+    private Document deserializeLazily(byte[] serialized) {
+        return new Document(DocumentDeserializerFactory.createLazyHead(types, GrowableByteBuffer.wrap(serialized)));
+    }
+
+}
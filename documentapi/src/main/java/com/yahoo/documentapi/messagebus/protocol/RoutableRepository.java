@@ -38,6 +38,9 @@ final class RoutableRepository {
      * Decodes a {@link Routable} from the given byte array. This uses the content of the byte array to dispatch the
      * decode request to the appropriate {@link RoutableFactory} that was previously registered.
      *
+     * The field values of decoded documents are deserialized when first accessed, so corrupt field values
+     * cause a DeserializationException when they are accessed rather than here.
+     *
      * If a routable can not be decoded, this method returns null.
      *
      * @param version The version of the encoded routable.
@@ -52,7 +55,7 @@ final class RoutableRepository {
         DocumentDeserializer in;
 
         if (version.getMajor() >= 5) {
-            in = DocumentDeserializerFactory.createHead(docMan, GrowableByteBuffer.wrap(data));
+            in = DocumentDeserializerFactory.createLazyHead(docMan, GrowableByteBuffer.wrap(data));
         } else {
             in = DocumentDeserializerFactory.create42(docMan, GrowableByteBuffer.wrap(data));
         }
@@ -0,0 +1,119 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.indexinglanguage;
+
+import com.yahoo.document.PrimitiveDataType;
+import com.yahoo.document.datatypes.FieldValue;
+import com.yahoo.vespa.indexinglanguage.expressions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces sequences of expressions in statements which always produce the same value, such as
+ * <code>"Foo" | lowercase</code>, by a single expression setting the value they produce.
+ * The value is computed once here instead of for each document.
+ *
+ * @author agent
+ */
+public class ConstantExpressionFolder extends ExpressionConverter {
+
+    @Override
+    protected boolean shouldConvert(Expression exp) {
+        return exp instanceof StatementExpression;
+    }
+
+    @Override
+    protected Expression doConvert(Expression exp) {
+        List<Expression> expressionList = new ArrayList<>();
+        List<Expression> constantList = new ArrayList<>();
+        for (Expression inner : (StatementExpression)exp) {
+            if ( ! constantList.isEmpty() && isPure(inner)) {
+                constantList.add(inner);
+                continue;
+            }
+            fold(constantList, expressionList);
+            if (isConstant(inner)) {
+                constantList.add(inner);
+            } else {
+                expressionList.add(convert(inner));
+            }
+        }
+        fold(constantList, expressionList);
+        return new StatementExpression(expressionList);
+    }
+
+    /** Adds an expression setting the value produced by the given constant expressions to the given list, and clears them */
+    private void fold(List<Expression> constantList, List<Expression> expressionList) {
+        if (constantList.isEmpty()) return;
+        if (constantList.size() == 1 && constantList.get(0) instanceof SetValueExpression) {
+            expressionList.add(constantList.get(0));
+        }
+        else {
+            FieldValue value = evaluate(new StatementExpression(constantList));
+            if (value != null && value.getDataType() instanceof PrimitiveDataType) { // don't share mutable composites
+                expressionList.add(new SetValueExpression(value));
+            }
+            else {
+                for (Expression constant : constantList)
+                    expressionList.add(convert(constant));
+            }
+        }
+        constantList.clear();
+    }
+
+    /** Returns the value produced by the given expression, or null if it fails, to fail when the script is executed */
+    private static FieldValue evaluate(Expression exp) {
+        try {
+            return exp.execute(new ExecutionContext());
+        }
+        catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /** Returns whether the given expression always produces the same value */
+    static boolean isConstant(Expression exp) {
+        return isPure(exp) && exp.requiredInputType() == null && ExpressionOptimizer.ignoresInput(exp);
+    }
+
+    /**
+     * Returns whether the value produced by the given expression only depends on its input,
+     * without side effects and without reading anything else.
+     */
+    static boolean isPure(Expression exp) {
+        if (exp instanceof ArithmeticExpression) {
+            return isPure(((ArithmeticExpression)exp).getLeftHandSide()) &&
+                   isPure(((ArithmeticExpression)exp).getRightHandSide());
+        }
+        if (exp instanceof ParenthesisExpression) {
+            return isPure(((ParenthesisExpression)exp).getInnerExpression());
+        }
+        if (exp instanceof StatementExpression || exp instanceof CatExpression) {
+            for (Expression inner : (ExpressionList<?>)exp) {
+                if ( ! isPure(inner)) return false;
+            }
+            return true;
+        }
+        return exp instanceof SetValueExpression ||
+               exp instanceof LowerCaseExpression ||
+               exp instanceof TrimExpression ||
+               exp instanceof SubstringExpression ||
+               exp instanceof SplitExpression ||
+               exp instanceof JoinExpression ||
+               exp instanceof Base64DecodeExpression ||
+               exp instanceof Base64EncodeExpression ||
+               exp instanceof HexDecodeExpression ||
+               exp instanceof HexEncodeExpression ||
+               exp instanceof ToArrayExpression ||
+               exp instanceof ToByteExpression ||
+               exp instanceof ToDoubleExpression ||
+               exp instanceof ToFloatExpression ||
+               exp instanceof ToIntegerExpression ||
+               exp instanceof ToLongExpression ||
+               exp instanceof ToPositionExpression ||
+               exp instanceof ToStringExpression ||
+               exp instanceof ToWsetExpression ||
+               exp instanceof ZCurveExpression;
+    }
+
+}
@@ -0,0 +1,72 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.indexinglanguage;
+
+import com.yahoo.document.DataType;
+import com.yahoo.vespa.indexinglanguage.expressions.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Removes the expressions setting variables which are never read in the converted expression.
+ * Since variables are only read within the execution of a script, this must be given
+ * entire scripts rather than single statements of a larger script.
+ *
+ * @author agent
+ */
+public class UnusedVariableRemover extends ExpressionConverter {
+
+    private final Set<String> usedVariables;
+
+    private UnusedVariableRemover(Set<String> usedVariables) {
+        this.usedVariables = usedVariables;
+    }
+
+    /** Returns the given expression without the expressions setting variables which are never read */
+    public static Expression removeFrom(Expression exp) {
+        return new UnusedVariableRemover(findUsedVariables(exp)).convert(exp);
+    }
+
+    @Override
+    protected boolean shouldConvert(Expression exp) {
+        return exp instanceof StatementExpression;
+    }
+
+    @Override
+    protected Expression doConvert(Expression exp) {
+        StatementExpression statement = (StatementExpression)exp;
+        List<Expression> expressionList = new ArrayList<>();
+        for (Expression inner : statement) {
+            if (inner instanceof SetVarExpression &&
+                ! usedVariables.contains(((SetVarExpression)inner).getVariableName())) {
+                continue;
+            }
+            expressionList.add(convert(inner));
+        }
+        StatementExpression converted = new StatementExpression(expressionList);
+        if ( ! equals(statement.requiredInputType(), converted.requiredInputType())) {
+            return statement; // a statement requiring input is skipped when there is none, so it must keep requiring it
+        }
+        return converted;
+    }
+
+    private static boolean equals(DataType a, DataType b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static Set<String> findUsedVariables(Expression exp) {
+        Set<String> usedVariables = new HashSet<>();
+        new ExpressionVisitor() {
+            @Override
+            protected void doVisit(Expression expression) {
+                if (expression instanceof GetVarExpression) {
+                    usedVariables.add(((GetVarExpression)expression).getVariableName());
+                }
+            }
+        }.visit(exp);
+        return usedVariables;
+    }
+
+}
@@ -0,0 +1,69 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.indexinglanguage;
+
+import com.yahoo.document.datatypes.StringFieldValue;
+import com.yahoo.vespa.indexinglanguage.expressions.*;
+import com.yahoo.vespa.indexinglanguage.parser.ParseException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author agent
+ */
+public class ConstantExpressionFolderTestCase {
+
+    @Test
+    public void requireThatConstantSequencesAreFolded() {
+        assertFolded("'Foo' | lowercase | attribute foo", "'foo' | attribute foo");
+        assertFolded("'  Foo ' | trim | lowercase | index foo", "'foo' | index foo");
+        assertFolded("input foo | 'BAR' | lowercase | attribute bar", "input foo | 'bar' | attribute bar");
+        assertFolded("'17' | to_int | attribute foo", "17 | attribute foo");
+        assertFolded("1 + 2 | attribute foo", "3 | attribute foo");
+        assertFolded("('a' . 'b') | attribute foo", "'ab' | attribute foo");
+        assertFolded("'Foo' | lowercase | attribute foo | 'Bar' | lowercase | attribute bar",
+                     "'foo' | attribute foo | 'bar' | attribute bar");
+        assertFolded("input foo | for_each { 'Foo' | lowercase } | attribute foo",
+                     "input foo | for_each { 'foo' } | attribute foo");
+    }
+
+    @Test
+    public void requireThatExpressionsDependingOnInputOrStateAreNotFolded() {
+        assertNotFolded("input foo | lowercase | attribute foo");
+        assertNotFolded("'foo' | attribute foo");
+        assertNotFolded("now | to_string | attribute foo");
+        assertNotFolded("'foo' | set_var bar | lowercase | attribute foo");
+        assertNotFolded("get_var foo | lowercase | attribute foo");
+        assertNotFolded("'Foo' | tokenize | index foo");
+        assertNotFolded("'Foo' | attribute foo | lowercase | attribute bar");
+        assertNotFolded("1 + now | attribute foo");
+    }
+
+    @Test
+    public void requireThatFailingAndCompositeValuesAreNotFolded() {
+        assertNotFolded("'foo' | to_int | attribute foo");
+        assertNotFolded("'a,b' | split ',' | attribute foo");
+    }
+
+    @Test
+    public void requireThatFoldedExpressionsProduceTheSameValue() throws ParseException {
+        Expression exp = Expression.fromString("'  Foo ' | trim | lowercase");
+        assertEquals(new StringFieldValue("foo"), exp.execute(new ExecutionContext()));
+        assertEquals(new StringFieldValue("foo"), new ConstantExpressionFolder().convert(exp).execute(new ExecutionContext()));
+    }
+
+    private static void assertFolded(String input, String expected) {
+        try {
+            assertEquals(Expression.fromString(expected).toString(),
+                         new ConstantExpressionFolder().convert(Expression.fromString(input)).toString());
+        } catch (ParseException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    private static void assertNotFolded(String script) {
+        assertFolded(script, script);
+    }
+
+}
@@ -0,0 +1,54 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.indexinglanguage;
+
+import com.yahoo.vespa.indexinglanguage.expressions.Expression;
+import com.yahoo.vespa.indexinglanguage.parser.ParseException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author agent
+ */
+public class UnusedVariableRemoverTestCase {
+
+    @Test
+    public void requireThatUnusedVariablesAreRemoved() {
+        assertRemoved("input foo | set_var bar | attribute foo", "input foo | attribute foo");
+        assertRemoved("{ input foo | set_var bar | attribute foo; input baz | set_var bar | index baz; }",
+                      "{ input foo | attribute foo; input baz | index baz; }");
+        assertRemoved("{ input foo | set_var bar | attribute foo; get_var bar | summary bar; input baz | set_var qux; }",
+                      "{ input foo | set_var bar | attribute foo; get_var bar | summary bar; input baz; }");
+        assertRemoved("input foo | for_each { lowercase | set_var bar } | attribute foo",
+                      "input foo | for_each { lowercase } | attribute foo");
+    }
+
+    @Test
+    public void requireThatUsedVariablesAreKept() {
+        assertNotRemoved("{ 0 | set_var tmp; " +
+                         "  input foo | split ';' | for_each { to_int + get_var tmp | set_var tmp };" +
+                         "  get_var tmp | attribute bar; }");
+        assertNotRemoved("input foo | set_var bar | get_var bar | attribute foo");
+    }
+
+    @Test
+    public void requireThatStatementsKeepRequiringInput() {
+        assertNotRemoved("set_var foo | 'bar' | attribute bar");
+        assertNotRemoved("input foo | for_each { set_var bar | 'baz' } | attribute foo");
+    }
+
+    private static void assertRemoved(String input, String expected) {
+        try {
+            assertEquals(Expression.fromString(expected).toString(),
+                         UnusedVariableRemover.removeFrom(Expression.fromString(input)).toString());
+        } catch (ParseException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    private static void assertNotRemoved(String script) {
+        assertRemoved(script, script);
+    }
+
+}
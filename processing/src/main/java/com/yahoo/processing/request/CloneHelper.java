@@ -107,6 +107,18 @@ public class CloneHelper {
         }
     }
 
+    /**
+     * Returns whether any value in the given map is cloneable, i.e whether {@link #cloneMap} would
+     * produce a map with other values than the given one. If not, the map may be shared by the clones
+     * of its owner as long as it is copied before being modified.
+     */
+    public boolean hasCloneableValues(Map<CompoundName, Object> map) {
+        for (Object value : map.values()) {
+            if (value instanceof Cloneable) return true;
+        }
+        return false;
+    }
+
     /**
      * Clones a map by deep cloning each value which is cloneable and shallow copying all other values.
      */
@@ -577,6 +577,14 @@ public class Properties implements Cloneable {
     public static Map<CompoundName, Object> cloneMap(Map<CompoundName, Object> map) {
         return cloneHelper.cloneMap(map);
     }
+
+    /**
+     * Returns whether any value in the given map is cloneable, such that {@link #cloneMap} must be used to
+     * clone it. If not, the map may instead be shared between clones until one of them modifies it.
+     */
+    public static boolean hasCloneableValues(Map<CompoundName, Object> map) {
+        return cloneHelper.hasCloneableValues(map);
+    }
     /** Clones this object if it is clonable, and the clone is public. Returns null if not */
     public static Object clone(Object object) {
         return cloneHelper.clone(object);
@@ -10,6 +10,7 @@ import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -55,6 +56,31 @@ public class PropertyMapTestCase {
         assertTrue("Array was cloned", mapClone.get("byteArray") != byteArray);
     }
 
+    @Test
+    public void testCopyOnWriteCloning() {
+        PropertyMap map = new PropertyMap();
+        map.set("a", "a1");
+        map.set("b", "b1");
+
+        PropertyMap clone = map.clone();
+        PropertyMap cloneOfClone = clone.clone();
+        clone.set("a", "a2");
+        assertEquals("a1", map.get("a"));
+        assertEquals("a2", clone.get("a"));
+        assertEquals("a1", cloneOfClone.get("a"));
+
+        map.set("b", "b3");
+        assertEquals("b3", map.get("b"));
+        assertEquals("b1", clone.get("b"));
+        assertEquals("b1", cloneOfClone.get("b"));
+
+        map.set("clonable", new ClonableObject());
+        PropertyMap deepClone = map.clone();
+        assertTrue(map.get("clonable") != deepClone.get("clonable"));
+        deepClone.set("a", "a4");
+        assertEquals("a1", map.get("a"));
+    }
+
     private Object first(Object object) {
         if (object instanceof Object[])
             return ((Object[])object)[0];
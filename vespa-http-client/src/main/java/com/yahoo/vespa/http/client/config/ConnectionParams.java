@@ -50,6 +50,7 @@ public final class ConnectionParams {
         private int traceLevel = 0;
         private int traceEveryXOperation = 0;
         private boolean printTraceToStdErr = true;
+        private int nonBlockingIoThreads = 0;
 
         /**
          * Sets the SSLContext for the connection to the gateway when SSL is enabled for Endpoint.
@@ -231,6 +232,24 @@ public final class ConnectionParams {
         }
 
 
+        /**
+         * Sets the number of threads doing the network I/O of all the persistent connections to the endpoints
+         * of each cluster using non-blocking sockets, such that the connections do not need a thread each.
+         * Zero (the default) uses one thread with blocking I/O per connection.
+         * Non-blocking I/O is only used with the v3 protocol, for endpoints not using SSL and when no proxy is set.
+         *
+         * @param nonBlockingIoThreads the number of I/O threads per cluster, or 0 to use a thread per connection
+         * @return pointer to builder.
+         */
+        @Beta
+        public Builder setNonBlockingIoThreads(int nonBlockingIoThreads) {
+            if (nonBlockingIoThreads < 0) {
+                throw new IllegalArgumentException("Number of non-blocking I/O threads can not be negative.");
+            }
+            this.nonBlockingIoThreads = nonBlockingIoThreads;
+            return this;
+        }
+
         public ConnectionParams build() {
             return new ConnectionParams(
                     sslContext,
@@ -248,7 +267,8 @@ public final class ConnectionParams {
                     enableV3Protocol,
                     traceLevel,
                     traceEveryXOperation,
-                    printTraceToStdErr);
+                    printTraceToStdErr,
+                    nonBlockingIoThreads);
         }
 
         public int getNumPersistentConnectionsPerEndpoint() {
@@ -277,6 +297,10 @@ public final class ConnectionParams {
             return printTraceToStdErr;
         }
 
+        public int getNonBlockingIoThreads() {
+            return nonBlockingIoThreads;
+        }
+
         public int getProxyPort() {
             return proxyPort;
         }
@@ -305,6 +329,7 @@ public final class ConnectionParams {
     private final int traceLevel;
     private final int traceEveryXOperation;
     private final boolean printTraceToStdErr;
+    private final int nonBlockingIoThreads;
 
     private ConnectionParams(
             SSLContext sslContext,
@@ -322,7 +347,8 @@ public final class ConnectionParams {
             boolean enableV3Protocol,
             int traceLevel,
             int traceEveryXOperation,
-            boolean printTraceToStdErr) {
+            boolean printTraceToStdErr,
+            int nonBlockingIoThreads) {
         this.sslContext = sslContext;
         this.hostnameVerifier = hostnameVerifier;
         this.connectionTimeout = connectionTimeout;
@@ -339,6 +365,7 @@ public final class ConnectionParams {
         this.traceLevel = traceLevel;
         this.traceEveryXOperation = traceEveryXOperation;
         this.printTraceToStdErr = printTraceToStdErr;
+        this.nonBlockingIoThreads = nonBlockingIoThreads;
     }
 
     @JsonIgnore
@@ -401,6 +428,10 @@ public final class ConnectionParams {
         return printTraceToStdErr;
     }
 
+    public int getNonBlockingIoThreads() {
+        return nonBlockingIoThreads;
+    }
+
     /**
      * A header provider that provides a header value. {@link #getHeaderValue()} is called each time a new HTTP request
      * is constructed by {@link com.yahoo.vespa.http.client.FeedClient}.
@@ -144,6 +144,23 @@ class ApacheGatewayConnection implements GatewayConnection {
 
     private InputStream write(List<Document> docs, boolean drain, boolean useCompression)
             throws ServerResponseException, IOException {
+        return executePost(createWritePost(docs, drain, useCompression));
+    }
+
+    /**
+     * Returns the request writing the given operations, or draining results if drain is true.
+     * The response must be handled by {@link #handleResponse}.
+     */
+    HttpPost createWritePost(List<Document> docs, boolean drain) throws IOException {
+        return createWritePost(docs, drain, !drain && connectionParams.getUseCompression());
+    }
+
+    /** Returns the request performing a handshake. The response must be handled by {@link #handleHandshakeResponse}. */
+    HttpPost createHandshakePost() {
+        return createPost(false /* drain */, false /* use compression */, true /* handshake */);
+    }
+
+    private HttpPost createWritePost(List<Document> docs, boolean drain, boolean useCompression) throws IOException {
         HttpPost httpPost = createPost(drain, useCompression, false /* this is not hanshake */);
 
         final ByteBuffer[] buffers = getDataWithStartAndEndOfFeed(docs, negotiatedVersion);
@@ -156,7 +173,7 @@ class ApacheGatewayConnection implements GatewayConnection {
         }
         reqEntity.setChunked(true);
         httpPost.setEntity(reqEntity);
-        return executePost(httpPost);
+        return httpPost;
     }
 
     private ByteBuffer[] getDataWithStartAndEndOfFeed(List<Document> docs, int version) {
@@ -257,13 +274,18 @@ class ApacheGatewayConnection implements GatewayConnection {
             throw e;
         }
         try {
-            verifyServerResponseCode(response);
-            verifyServerVersion(response.getFirstHeader(Headers.VERSION));
-            verifySessionHeader(response.getFirstHeader(Headers.SESSION_ID));
+            return handleResponse(response);
         } catch (ServerResponseException e) {
             httpPost.abort();
             throw e;
         }
+    }
+
+    /** Verifies the response to a request created by this and returns its content */
+    InputStream handleResponse(HttpResponse response) throws ServerResponseException, IOException {
+        verifyServerResponseCode(response);
+        verifyServerVersion(response.getFirstHeader(Headers.VERSION));
+        verifySessionHeader(response.getFirstHeader(Headers.SESSION_ID));
         return response.getEntity().getContent();
     }
 
@@ -368,24 +390,34 @@ class ApacheGatewayConnection implements GatewayConnection {
 
     @Override
     public void handshake() throws ServerResponseException, IOException {
-        final boolean useCompression = false;
-        final boolean drain = false;
-        final boolean handshake = true;
-        HttpPost httpPost = createPost(drain, useCompression, handshake);
+        HttpPost httpPost = createHandshakePost();
 
         final String oldSessionID = sessionId;
         sessionId = null;
         try (InputStream stream = executePost(httpPost)) {
-            if (oldSessionID != null && !oldSessionID.equals(sessionId)) {
-                throw new ServerResponseException(
-                        "Session ID changed after new handshake, some documents might not be acked to correct thread. "
-                                + getEndpoint() + " old " + oldSessionID + " new " + sessionId);
-            }
-            if (stream == null) {
-                log.fine("Stream is null.");
-            }
-            log.fine("Got session ID " + sessionId);
+            verifyHandshake(oldSessionID, stream);
+        }
+    }
+
+    /** Verifies the response to a request created by {@link #createHandshakePost} */
+    void handleHandshakeResponse(HttpResponse response) throws ServerResponseException, IOException {
+        final String oldSessionID = sessionId;
+        sessionId = null;
+        try (InputStream stream = handleResponse(response)) {
+            verifyHandshake(oldSessionID, stream);
+        }
+    }
+
+    private void verifyHandshake(String oldSessionID, InputStream stream) throws ServerResponseException {
+        if (oldSessionID != null && !oldSessionID.equals(sessionId)) {
+            throw new ServerResponseException(
+                    "Session ID changed after new handshake, some documents might not be acked to correct thread. "
+                            + getEndpoint() + " old " + oldSessionID + " new " + sessionId);
+        }
+        if (stream == null) {
+            log.fine("Stream is null.");
         }
+        log.fine("Got session ID " + sessionId);
     }
 
     @Override
@@ -4,6 +4,7 @@ package com.yahoo.vespa.http.client.core.communication;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yahoo.net.http.NonBlockingHttpClient;
 import com.yahoo.vespa.http.client.config.Cluster;
 import com.yahoo.vespa.http.client.config.ConnectionParams;
 import com.yahoo.vespa.http.client.config.Endpoint;
@@ -17,6 +18,8 @@ import java.io.IOException;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -26,7 +29,10 @@ import java.util.concurrent.TimeUnit;
 public class ClusterConnection implements AutoCloseable {
 
     private final OperationProcessor operationProcessor;
-    private final List<IOThread> ioThreads = new ArrayList<>();
+    private final List<IOSession> ioThreads = new ArrayList<>();
+    private final List<NonBlockingHttpClient> nonBlockingClients = new ArrayList<>();
+    /** Delivers the results received by non-blocking sessions, or null if none are used */
+    private ExecutorService nonBlockingResultExecutor = null;
     private final int clusterId;
     private final SessionParams.ErrorReporter errorReporter;
     private static JsonFactory jsonFactory = new JsonFactory();
@@ -86,20 +92,72 @@ public class ClusterConnection implements AutoCloseable {
                 } else {
                     documentQueue = new DocumentQueue(clientQueueSizePerCluster / cluster.getEndpoints().size());
                 }
-                final IOThread ioThread = new IOThread(
-                        endpointResultQueue,
-                        gatewayConnection,
-                        clusterId,
-                        feedParams.getMaxChunkSizeBytes(),
-                        maxInFlightPerSession,
-                        feedParams.getLocalQueueTimeOut(),
-                        documentQueue,
-                        connectionParams.isEnableV3Protocol() ? feedParams.getMaxSleepTimeMs() : 0);
+                final IOSession ioThread;
+                if (useNonBlockingIo(connectionParams, endpoint)) {
+                    ioThread = new NonBlockingIOSession(
+                            endpointResultQueue,
+                            (ApacheGatewayConnection) gatewayConnection,
+                            nonBlockingClient(connectionParams, ioThreads.size()),
+                            nonBlockingResultExecutor(),
+                            clusterId,
+                            feedParams.getMaxChunkSizeBytes(),
+                            maxInFlightPerSession,
+                            feedParams.getLocalQueueTimeOut(),
+                            documentQueue,
+                            feedParams.getMaxSleepTimeMs(),
+                            feedParams.getServerTimeout(TimeUnit.MILLISECONDS)
+                                    + feedParams.getClientTimeout(TimeUnit.MILLISECONDS));
+                } else {
+                    ioThread = new IOThread(
+                            endpointResultQueue,
+                            gatewayConnection,
+                            clusterId,
+                            feedParams.getMaxChunkSizeBytes(),
+                            maxInFlightPerSession,
+                            feedParams.getLocalQueueTimeOut(),
+                            documentQueue,
+                            connectionParams.isEnableV3Protocol() ? feedParams.getMaxSleepTimeMs() : 0);
+                }
                 ioThreads.add(ioThread);
             }
         }
     }
 
+    /**
+     * Returns whether the connections to the given endpoint should share non-blocking I/O threads
+     * rather than having a thread each. This is only supported with the v3 protocol, for plain http without proxy.
+     */
+    private static boolean useNonBlockingIo(ConnectionParams connectionParams, Endpoint endpoint) {
+        return connectionParams.getNonBlockingIoThreads() > 0
+               && connectionParams.isEnableV3Protocol()
+               && ! connectionParams.isDryRun()
+               && ! endpoint.isUseSsl()
+               && connectionParams.getProxyHost() == null;
+    }
+
+    /** Returns the non-blocking client to use for the connection with the given index, assigned round robin */
+    private NonBlockingHttpClient nonBlockingClient(ConnectionParams connectionParams, int connectionIndex) {
+        int index = connectionIndex % connectionParams.getNonBlockingIoThreads();
+        while (nonBlockingClients.size() <= index) {
+            nonBlockingClients.add(new NonBlockingHttpClient("feed-io-" + clusterId + "-" + nonBlockingClients.size(),
+                                                             connectionParams.getNumPersistentConnectionsPerEndpoint(),
+                                                             60 * 1000));
+        }
+        return nonBlockingClients.get(index);
+    }
+
+    /** Returns the single thread delivering results in order to the result callbacks for non-blocking sessions */
+    private ExecutorService nonBlockingResultExecutor() {
+        if (nonBlockingResultExecutor == null) {
+            nonBlockingResultExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "feed-results-" + clusterId);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return nonBlockingResultExecutor;
+    }
+
     public int getClusterId() {
         return clusterId;
     }
@@ -109,7 +167,7 @@ public class ClusterConnection implements AutoCloseable {
         //the same document ID must always go to the same destination
         // In noHandshakeMode this has no effect as the documentQueue is shared between the IOThreads.
         int hash = documentIdStr.hashCode() & 0x7FFFFFFF;  //strip sign bit
-        IOThread ioThread = ioThreads.get(hash % ioThreads.size());
+        IOSession ioThread = ioThreads.get(hash % ioThreads.size());
         try {
             ioThread.post(document);
         } catch (Throwable t) {
@@ -121,13 +179,19 @@ public class ClusterConnection implements AutoCloseable {
     @Override
     public void close() {
         List<Exception> exceptions = new ArrayList<>();
-        for (IOThread ioThread : ioThreads) {
+        for (IOSession ioThread : ioThreads) {
             try {
                 ioThread.close();
             } catch (Exception e) {
                 exceptions.add(e);
             }
         }
+        for (NonBlockingHttpClient client : nonBlockingClients) {
+            client.close();
+        }
+        if (nonBlockingResultExecutor != null) {
+            nonBlockingResultExecutor.shutdown();
+        }
         if (exceptions.isEmpty()) {
             return;
         }
@@ -155,7 +219,7 @@ public class ClusterConnection implements AutoCloseable {
         JsonGenerator jsonGenerator = jsonFactory.createGenerator(stringWriter);
         jsonGenerator.writeStartObject();
         jsonGenerator.writeArrayFieldStart("session");
-        for (IOThread ioThread : ioThreads) {
+        for (IOSession ioThread : ioThreads) {
             jsonGenerator.writeStartObject();
             jsonGenerator.writeObjectFieldStart("endpoint");
             jsonGenerator.writeStringField("host", ioThread.getEndpoint().getHostname());
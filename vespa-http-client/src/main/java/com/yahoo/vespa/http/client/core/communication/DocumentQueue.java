@@ -21,6 +21,7 @@ class DocumentQueue {
     private final Deque<Document> queue;
     private final int maxSize;
     private boolean closed = false;
+    private final List<Runnable> nonEmptyListeners = new ArrayList<>();
 
     DocumentQueue(int maxSize) {
         this.maxSize = maxSize;
@@ -50,6 +51,7 @@ class DocumentQueue {
             queue.add(document);
             queue.notifyAll();
         }
+        runNonEmptyListeners();
     }
 
     Document poll(long timeout, TimeUnit unit) throws InterruptedException {
@@ -103,9 +105,39 @@ class DocumentQueue {
             closed = true;
             queue.notifyAll();
         }
+        runNonEmptyListeners();
         return previousState;
     }
 
+    /**
+     * Runs the given listener once as soon as this queue is non-empty or closed, which may be immediately
+     * in this thread. Otherwise it is run by the thread adding the next document or closing the queue,
+     * so the listener must not block.
+     */
+    void whenNonEmpty(Runnable listener) {
+        synchronized (queue) {
+            if (queue.isEmpty() && !closed) {
+                nonEmptyListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    private void runNonEmptyListeners() {
+        List<Runnable> listeners;
+        synchronized (queue) {
+            if (nonEmptyListeners.isEmpty()) {
+                return;
+            }
+            listeners = new ArrayList<>(nonEmptyListeners);
+            nonEmptyListeners.clear();
+        }
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
     Optional<Document> pollDocumentIfTimedoutInQueue(long localQueueTimeOut) {
         synchronized (queue) {
             if (queue.isEmpty()) {
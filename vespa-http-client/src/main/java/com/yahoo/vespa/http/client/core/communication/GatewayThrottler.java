@@ -20,12 +20,20 @@ public class GatewayThrottler {
     }
 
     public void handleCall(int transientErrors) {
+        sleepMs(backOff(transientErrors));
+    }
+
+    /**
+     * Adjusts the back off time by the number of transient errors returned by the last call
+     * and returns the time to wait before the next call, without sleeping.
+     */
+    public long backOff(int transientErrors) {
         if (transientErrors > 0) {
             backOffTimeMs = Math.min(maxSleepTimeMs, backOffTimeMs + distribute(100));
         } else {
             backOffTimeMs = Math.max(0, backOffTimeMs - distribute(10));
         }
-        sleepMs(backOffTimeMs);
+        return backOffTimeMs;
     }
 
     protected void sleepMs(long sleepTime) {
@@ -0,0 +1,24 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.http.client.core.communication;
+
+import com.yahoo.vespa.http.client.config.Endpoint;
+import com.yahoo.vespa.http.client.core.Document;
+
+/**
+ * A session feeding documents to an endpoint and processing the results.
+ *
+ * @author agent
+ */
+interface IOSession extends AutoCloseable {
+
+    Endpoint getEndpoint();
+
+    void post(Document document) throws InterruptedException;
+
+    /** Returns a snapshot of counters. Threadsafe. */
+    IOThread.ConnectionStats getConnectionStats();
+
+    @Override
+    void close();
+
+}
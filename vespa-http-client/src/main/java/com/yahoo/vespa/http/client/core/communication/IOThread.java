@@ -28,7 +28,7 @@ import java.util.logging.Logger;
  * 
  * @author Einar M R Rosenvinge
  */
-class IOThread implements Runnable, AutoCloseable {
+class IOThread implements Runnable, IOSession {
 
     private static Logger log = Logger.getLogger(IOThread.class.getName());
     private final Endpoint endpoint;
@@ -78,6 +78,7 @@ class IOThread implements Runnable, AutoCloseable {
         thread.start();
     }
 
+    @Override
     public Endpoint getEndpoint() {
         return endpoint;
     }
@@ -118,6 +119,7 @@ class IOThread implements Runnable, AutoCloseable {
     /**
      * Returns a snapshot of counters. Threadsafe.
      */
+    @Override
     public ConnectionStats getConnectionStats() {
         return new ConnectionStats(
                 wrongSessionDetectedCounter.get(),
@@ -164,6 +166,7 @@ class IOThread implements Runnable, AutoCloseable {
     }
 
 
+    @Override
     public void post(final Document document) throws InterruptedException {
         documentQueue.put(document);
     }
@@ -0,0 +1,521 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.http.client.core.communication;
+
+import com.yahoo.component.Vtag;
+import com.yahoo.net.http.NonBlockingHttpClient;
+import com.yahoo.vespa.http.client.FeedConnectException;
+import com.yahoo.vespa.http.client.FeedProtocolException;
+import com.yahoo.vespa.http.client.Result;
+import com.yahoo.vespa.http.client.config.Endpoint;
+import com.yahoo.vespa.http.client.core.Document;
+import com.yahoo.vespa.http.client.core.EndpointResult;
+import com.yahoo.vespa.http.client.core.Exceptions;
+import com.yahoo.vespa.http.client.core.ServerResponseException;
+import com.yahoo.vespa.http.client.core.operationProcessor.EndPointResultFactory;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Feeds documents to an endpoint and processes the results like {@link IOThread}, but does so in response
+ * to I/O events and timers of a {@link NonBlockingHttpClient} shared with other sessions instead of by a thread
+ * of its own, such that many sessions may have requests in flight at the same time without a thread each.
+ *
+ * All the state of this, except the counters, is only accessed in the thread of the client.
+ * Results are delivered to the result queue by a separate executor, such that slow result callbacks
+ * do not hold up the I/O of the other sessions using the same client.
+ *
+ * @author agent
+ */
+class NonBlockingIOSession implements IOSession {
+
+    private static Logger log = Logger.getLogger(NonBlockingIOSession.class.getName());
+    private static final String userAgent = String.format("vespa-http-client (%s)", Vtag.currentVersion);
+
+    private final Endpoint endpoint;
+    private final ApacheGatewayConnection connection;
+    private final NonBlockingHttpClient client;
+    private final DocumentQueue documentQueue;
+    private final EndpointResultQueue resultQueue;
+    private final Executor resultExecutor;
+    private final int clusterId;
+    private final int maxChunkSizeBytes;
+    private final int maxInFlightRequests;
+    private final long localQueueTimeOut;
+    private final long requestTimeoutMs;
+    private final GatewayThrottler gatewayThrottler;
+    private final CompletableFuture<Void> finished = new CompletableFuture<>();
+    private volatile boolean stopped = false;
+
+    /** The thread which last delivered results of this, to detect being closed from a result callback */
+    private volatile Thread resultThread = null;
+
+    /** Whether a handshake has been done since the last failure */
+    private boolean synced = false;
+
+    /** Whether this is waiting for a timer or for documents, rather than for a response */
+    private boolean waiting = false;
+
+    /** The id of the current wait, such that events ending earlier waits are ignored */
+    private int waitId = 0;
+
+    /** Whether this is listening for documents being added to the document queue */
+    private boolean listening = false;
+
+    /** Whether the last cycle found nothing to send while results were pending */
+    private boolean waitedForDocuments = false;
+
+    private final AtomicInteger wrongSessionDetectedCounter = new AtomicInteger(0);
+    private final AtomicInteger wrongVersionDetectedCounter = new AtomicInteger(0);
+    private final AtomicInteger problemStatusCodeFromServerCounter = new AtomicInteger(0);
+    private final AtomicInteger executeProblemsCounter = new AtomicInteger(0);
+    private final AtomicInteger docsReceivedCounter = new AtomicInteger(0);
+    private final AtomicInteger statusReceivedCounter = new AtomicInteger(0);
+    private final AtomicInteger pendingDocumentStatusCount = new AtomicInteger(0);
+    private final AtomicInteger successfullHandshakes = new AtomicInteger(0);
+    private final AtomicInteger lastGatewayProcessTimeMillis = new AtomicInteger(0);
+
+    NonBlockingIOSession(
+            EndpointResultQueue endpointResultQueue,
+            ApacheGatewayConnection connection,
+            NonBlockingHttpClient client,
+            Executor resultExecutor,
+            int clusterId,
+            int maxChunkSizeBytes,
+            int maxInFlightRequests,
+            long localQueueTimeOut,
+            DocumentQueue documentQueue,
+            long maxSleepTimeMs,
+            long requestTimeoutMs) {
+        this.documentQueue = documentQueue;
+        this.endpoint = connection.getEndpoint();
+        this.connection = connection;
+        this.client = client;
+        this.resultQueue = endpointResultQueue;
+        this.resultExecutor = resultExecutor;
+        this.clusterId = clusterId;
+        this.maxChunkSizeBytes = maxChunkSizeBytes;
+        this.maxInFlightRequests = maxInFlightRequests;
+        this.localQueueTimeOut = localQueueTimeOut;
+        this.requestTimeoutMs = requestTimeoutMs;
+        this.gatewayThrottler = new GatewayThrottler(maxSleepTimeMs);
+        client.execute(this::cycle);
+    }
+
+    @Override
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    @Override
+    public IOThread.ConnectionStats getConnectionStats() {
+        return new IOThread.ConnectionStats(
+                wrongSessionDetectedCounter.get(),
+                wrongVersionDetectedCounter.get(),
+                problemStatusCodeFromServerCounter.get(),
+                executeProblemsCounter.get(),
+                docsReceivedCounter.get(),
+                statusReceivedCounter.get(),
+                pendingDocumentStatusCount.get(),
+                successfullHandshakes.get(),
+                lastGatewayProcessTimeMillis.get());
+    }
+
+    @Override
+    public void post(final Document document) throws InterruptedException {
+        documentQueue.put(document);
+    }
+
+    /**
+     * Stops feeding, makes a last attempt to get results of operations in flight, and fails all
+     * documents which were not sent. This waits until done, at most the request timeout.
+     */
+    @Override
+    public void close() {
+        stopped = true;
+        documentQueue.close();
+        if (finished.isDone()) {
+            return;
+        }
+        log.finer("Closed called.");
+
+        try {
+            inClientThread(() -> wakeUp(waitId));
+            finished.get(requestTimeoutMs + 1000, TimeUnit.MILLISECONDS);
+            if (Thread.currentThread() != resultThread) { // let results already received be delivered first
+                CompletableFuture.runAsync(() -> {}, resultExecutor).get(requestTimeoutMs, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.log(Level.WARNING, "Session to " + endpoint + " did not close in time.", e);
+        } finally {
+            // If there is still documents in the queue, fail them.
+            drainDocumentQueueWhenFailingPermanently(new Exception(
+                    "Closed call, did not manage to process everything so failing this document."));
+        }
+        log.fine("Session to " + endpoint + " closed.");
+    }
+
+    @Override
+    public String toString() {
+        return "Non-blocking I/O session (for " + endpoint + ")";
+    }
+
+    /** Does the next thing to do when not waiting for anything */
+    private void cycle() {
+        if (finished.isDone()) {
+            return;
+        }
+        if (stopped) {
+            stop();
+            return;
+        }
+        if ( ! synced) {
+            handshake();
+            return;
+        }
+
+        final int pendingResultQueueSize = resultQueue.getPendingSize();
+        pendingDocumentStatusCount.set(pendingResultQueueSize);
+        boolean queueIsFull = pendingResultQueueSize > maxInFlightRequests;
+        List<Document> docs = queueIsFull
+                ? new ArrayList<>()       // The queue is full, will not send more documents.
+                : getNextDocsForFeeding();
+        if (docs.isEmpty() && ! queueIsFull) {
+            if (pendingResultQueueSize == 0) {
+                // We have no unfinished business with the server now.
+                await(-1);
+                return;
+            }
+            if ( ! waitedForDocuments) {
+                // Wait a bit for documents to send before asking for results only.
+                waitedForDocuments = true;
+                await(100);
+                return;
+            }
+        }
+        waitedForDocuments = false;
+        write(docs, queueIsFull);
+    }
+
+    private void handshake() {
+        try {
+            execute(connection.createHandshakePost()).whenComplete(this::handleHandshakeResponse);
+        } catch (IOException | RuntimeException e) {
+            handleHandshakeResponse(null, e);
+        }
+    }
+
+    private void handleHandshakeResponse(HttpResponse response, Throwable exception) {
+        try {
+            if (exception != null) {
+                throw exception;
+            }
+            connection.handleHandshakeResponse(response);
+            successfullHandshakes.getAndIncrement();
+        } catch (ServerResponseException ser) {
+            executeProblemsCounter.incrementAndGet();
+            log.info("Handshake did not work out " + endpoint + ": " + Exceptions.toMessageString(ser));
+            drainFirstDocumentsInQueueIfOld();
+            deliver(() -> resultQueue.onEndpointError(new FeedProtocolException(ser.getResponseCode(), ser.getResponseString(), ser, endpoint)));
+            sleep(gatewayThrottler.distribute(3000));
+            return;
+        } catch (Throwable throwable) { // This cover IOException as well
+            executeProblemsCounter.incrementAndGet();
+            deliver(() -> resultQueue.onEndpointError(new FeedConnectException(throwable, endpoint)));
+            log.info("Problem with Handshake " + endpoint + ": " + Exceptions.toMessageString(throwable));
+            drainFirstDocumentsInQueueIfOld();
+            sleep(gatewayThrottler.distribute(3000));
+            return;
+        }
+        synced = true;
+        cycle();
+    }
+
+    private void write(List<Document> docs, boolean queueIsFull) {
+        HttpPost post;
+        try {
+            post = connection.createWritePost(docs, false);
+        } catch (IOException | RuntimeException e) {
+            log.info("Problems while handing data over to gateway " + endpoint + ": " + Exceptions.toMessageString(e));
+            addDocumentsToResultQueue(docs);
+            markDocumentAsFailed(docs, new ServerResponseException(e.getMessage()));
+            disconnected();
+            return;
+        }
+        addDocumentsToResultQueue(docs);
+        long startTime = System.currentTimeMillis();
+        CompletableFuture<HttpResponse> futureResponse;
+        try {
+            futureResponse = execute(post);
+        } catch (IOException e) {
+            log.info("Problems while handing data over to gateway " + endpoint + ": " + Exceptions.toMessageString(e));
+            markDocumentAsFailed(docs, new ServerResponseException(e.getMessage()));
+            disconnected();
+            return;
+        }
+        futureResponse.whenComplete((response, exception) -> handleWriteResponse(docs, queueIsFull, startTime, response, exception));
+    }
+
+    private void handleWriteResponse(List<Document> docs, boolean queueIsFull, long startTime,
+                                     HttpResponse response, Throwable exception) {
+        long sleepTime;
+        try {
+            InputStream serverResponse;
+            try {
+                if (exception != null) {
+                    throw exception;
+                }
+                serverResponse = connection.handleResponse(response);
+            } catch (ServerResponseException ser) {
+                markDocumentAsFailed(docs, ser);
+                throw ser;
+            } catch (Throwable e) {
+                markDocumentAsFailed(docs, new ServerResponseException(e.getMessage()));
+                throw e;
+            }
+            ProcessResponse processResponse = processResponse(serverResponse);
+            lastGatewayProcessTimeMillis.set((int) (System.currentTimeMillis() - startTime));
+            sleepTime = gatewayThrottler.backOff(processResponse.transitiveErrorCount);
+            if (queueIsFull && processResponse.processResultsCount == 0) {
+                // Max outstanding document operations, no more results on server side, wait a bit
+                // before asking again.
+                sleepTime = Math.max(sleepTime, 300);
+            }
+        } catch (Throwable e) { // Covers ServerResponseException and IOException as well
+            log.info("Problems while handing data over to gateway " + endpoint + ": " + Exceptions.toMessageString(e));
+            disconnected();
+            return;
+        }
+        sleep(sleepTime);
+    }
+
+    /** Makes a last attempt to get results from previous operations and stops this */
+    private void stop() {
+        int size = resultQueue.getPendingSize();
+        if ( ! synced || size == 0) {
+            finish();
+            return;
+        }
+
+        log.info("We have outstanding operations (" + size + ") , trying to fetch responses.");
+        try {
+            execute(connection.createWritePost(Collections.<Document>emptyList(), true))
+                  .whenComplete((response, exception) -> {
+                      try {
+                          if (exception != null) {
+                              throw exception;
+                          }
+                          processResponse(connection.handleResponse(response));
+                      } catch (Throwable e) {
+                          log.log(Level.SEVERE, "Some failures while trying to get latest responses from vespa.", e);
+                      }
+                      finish();
+                  });
+        } catch (IOException | RuntimeException e) {
+            log.log(Level.SEVERE, "Some failures while trying to get latest responses from vespa.", e);
+            finish();
+        }
+    }
+
+    private void finish() {
+        log.finer(toString() + " exiting, documentQueue.size()=" + documentQueue.size());
+        finished.complete(null);
+    }
+
+    private void disconnected() {
+        synced = false;
+        waitedForDocuments = false;
+        sleep(gatewayThrottler.distribute(3000));
+    }
+
+    /** Continues after the given time */
+    private void sleep(long sleepTimeMs) {
+        if (sleepTimeMs <= 0) {
+            cycle();
+            return;
+        }
+        waiting = true;
+        int id = ++waitId;
+        client.schedule(() -> wakeUp(id), sleepTimeMs);
+    }
+
+    /** Continues when there are documents to send, or after the given time unless it is negative */
+    private void await(long timeoutMs) {
+        waiting = true;
+        int id = ++waitId;
+        if ( ! listening) {
+            listening = true;
+            documentQueue.whenNonEmpty(() -> inClientThread(() -> {
+                listening = false;
+                wakeUp(waitId);
+            }));
+        }
+        if (timeoutMs >= 0) {
+            client.schedule(() -> wakeUp(id), timeoutMs);
+        }
+    }
+
+    private void wakeUp(int id) {
+        if ( ! waiting || id != waitId) {
+            return;
+        }
+        waiting = false;
+        cycle();
+    }
+
+    /**
+     * Sends a request created by the gateway connection and returns the future response,
+     * which is completed in the client thread
+     */
+    private CompletableFuture<HttpResponse> execute(HttpPost post) throws IOException {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("User-Agent", userAgent);
+        for (Header header : post.getAllHeaders()) {
+            headers.put(header.getName(), header.getValue());
+        }
+        byte[] body = post.getEntity() == null ? new byte[0] : EntityUtils.toByteArray(post.getEntity());
+        return client.execute("POST", post.getURI(), headers, body, requestTimeoutMs, requestTimeoutMs)
+                     .thenApply(NonBlockingIOSession::toHttpResponse);
+    }
+
+    private static HttpResponse toHttpResponse(NonBlockingHttpClient.Response response) {
+        BasicHttpResponse httpResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, response.statusCode(),
+                                                               response.reasonPhrase());
+        for (Map.Entry<String, String> header : response.headers()) {
+            httpResponse.addHeader(header.getKey(), header.getValue());
+        }
+        ByteArrayEntity entity = new ByteArrayEntity(response.body());
+        entity.setContentType(response.header("Content-Type"));
+        httpResponse.setEntity(entity);
+        return httpResponse;
+    }
+
+    /** Delivers results to the result queue, outside the client thread */
+    private void deliver(Runnable delivery) {
+        resultExecutor.execute(() -> {
+            resultThread = Thread.currentThread();
+            delivery.run();
+        });
+    }
+
+    private void inClientThread(Runnable task) {
+        try {
+            client.execute(task);
+        } catch (IllegalStateException e) {
+            log.finer("Client of " + endpoint + " is closed.");
+        }
+    }
+
+    private List<Document> getNextDocsForFeeding() {
+        final List<Document> docsForSendChunk = new ArrayList<>();
+        int chunkSizeBytes = 0;
+        int pendingSize = resultQueue.getPendingSize();
+        // get as many documents as we can without blocking
+        while (chunkSizeBytes < maxChunkSizeBytes && (docsForSendChunk.isEmpty() || pendingSize < maxInFlightRequests)) {
+            drainFirstDocumentsInQueueIfOld();
+            Document d = documentQueue.poll();
+            if (d == null) {
+                break;
+            }
+            docsForSendChunk.add(d);
+            chunkSizeBytes += d.size();
+            pendingSize++;
+        }
+        log.finest("Chunk has " + docsForSendChunk.size() + " docs with a size " + chunkSizeBytes + " bytes.");
+        docsReceivedCounter.addAndGet(docsForSendChunk.size());
+        return docsForSendChunk;
+    }
+
+    private void addDocumentsToResultQueue(List<Document> docs) {
+        for (Document doc : docs) {
+            resultQueue.operationSent(doc.getOperationId());
+        }
+    }
+
+    private void markDocumentAsFailed(List<Document> docs, ServerResponseException servletException) {
+        deliver(() -> {
+            for (Document doc : docs) {
+                resultQueue.failOperation(
+                        EndPointResultFactory.createTransientError(
+                                endpoint, doc.getOperationId(), servletException), clusterId);
+            }
+        });
+    }
+
+    private static class ProcessResponse {
+        private final int transitiveErrorCount;
+        private final int processResultsCount;
+        ProcessResponse(int transitiveErrorCount, int processResultsCount) {
+            this.transitiveErrorCount = transitiveErrorCount;
+            this.processResultsCount = processResultsCount;
+        }
+    }
+
+    private ProcessResponse processResponse(InputStream serverResponse) throws IOException {
+        final Collection<EndpointResult> endpointResults =
+                EndPointResultFactory.createResult(endpoint, serverResponse);
+        statusReceivedCounter.addAndGet(endpointResults.size());
+        int transientErrors = 0;
+        for (EndpointResult endpointResult : endpointResults) {
+            if (endpointResult.getDetail().getResultType() == Result.ResultType.TRANSITIVE_ERROR) {
+                transientErrors++;
+            }
+        }
+        deliver(() -> {
+            for (EndpointResult endpointResult : endpointResults) {
+                resultQueue.resultReceived(endpointResult, clusterId);
+            }
+        });
+        return new ProcessResponse(transientErrors, endpointResults.size());
+    }
+
+    private void drainFirstDocumentsInQueueIfOld() {
+        while (true) {
+            Optional<Document> document = documentQueue.pollDocumentIfTimedoutInQueue(localQueueTimeOut);
+            if (! document.isPresent()) {
+                return;
+            }
+            EndpointResult endpointResult = EndPointResultFactory.createTransientError(
+                    endpoint, document.get().getOperationId(),
+                    new Exception("Not sending document operation, timed out in queue after "
+                            + document.get().timeInQueueMillis() + " ms."));
+            deliver(() -> resultQueue.failOperation(endpointResult, clusterId));
+        }
+    }
+
+    private void drainDocumentQueueWhenFailingPermanently(Exception exception) {
+        //first, clear sentOperations:
+        resultQueue.failPending(exception);
+
+        for (Document document : documentQueue.removeAllDocuments()) {
+            EndpointResult endpointResult=
+                    EndPointResultFactory.createError(endpoint, document.getOperationId(), exception);
+            resultQueue.failOperation(endpointResult, clusterId);
+        }
+    }
+
+}
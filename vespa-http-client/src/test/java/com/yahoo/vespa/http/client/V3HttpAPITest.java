@@ -58,6 +58,11 @@ public class V3HttpAPITest extends TestOnCiBuildingSystemOnly {
     }
 
     private void testServerWithMock(V3MockParsingRequestHandler serverMock, boolean failFast, boolean conditionNotMet) throws Exception {
+        testServerWithMock(serverMock, failFast, conditionNotMet, 0);
+    }
+
+    private void testServerWithMock(V3MockParsingRequestHandler serverMock, boolean failFast, boolean conditionNotMet,
+                                    int nonBlockingIoThreads) throws Exception {
         try (Server server = new Server(serverMock, 0);
              Session session = SessionFactory.create(
                      new SessionParams.Builder()
@@ -65,6 +70,7 @@ public class V3HttpAPITest extends TestOnCiBuildingSystemOnly {
                                      new ConnectionParams.Builder()
                                              .setNumPersistentConnectionsPerEndpoint(1)
                                              .setMaxRetries(0)
+                                             .setNonBlockingIoThreads(nonBlockingIoThreads)
                                              .build())
                              .setFeedParams(new FeedParams.Builder()
                                      .setLocalQueueTimeOut(failFast ? 0 : 120000)
@@ -110,6 +116,44 @@ public class V3HttpAPITest extends TestOnCiBuildingSystemOnly {
         }
     }
 
+    @Test
+    public void requireThatSingleDestinationWorksWithNonBlockingIo() throws Exception {
+        try (Server server = new Server(new V3MockParsingRequestHandler(), 0);
+             Session session = SessionFactory.create(
+                     new SessionParams.Builder()
+                             .setConnectionParams(
+                                     new ConnectionParams.Builder()
+                                             .setNumPersistentConnectionsPerEndpoint(4)
+                                             .setNonBlockingIoThreads(2)
+                                             .build())
+                             .addCluster(
+                                     new Cluster.Builder()
+                                             .addEndpoint(Endpoint.create("localhost", server.getPort(), false))
+                                             .build())
+                             .build())) {
+
+            writeDocuments(session);
+            Map<String, Result> results = getResults(session, documents.size());
+            assertThat(results.size(), is(documents.size()));
+
+            for (TestDocument document : documents) {
+                Result r = results.remove(document.getDocumentId());
+                assertThat(r, not(nullValue()));
+                assertThat(r.getDetails().toString(), r.isSuccess(), is(true));
+            }
+            assertThat(results.isEmpty(), is(true));
+        }
+    }
+
+    @Test
+    public void requireThatErrorsAreHandledProperlyWithNonBlockingIo() throws Exception {
+        testServerWithMock(new V3MockParsingRequestHandler(403/*Forbidden*/), true, false, 1);
+        testServerWithMock(new V3MockParsingRequestHandler(
+                200, V3MockParsingRequestHandler.Scenario.MBUS_RETURNED_ERROR), false, false, 1);
+        testServerWithMock(new V3MockParsingRequestHandler(
+                200, V3MockParsingRequestHandler.Scenario.DISCONNECT_IMMEDIATELY), true, false, 1);
+    }
+
     @Test
     public void requireThatBadResponseCodeFails() throws Exception {
         testServerWithMock(new V3MockParsingRequestHandler(401/*Unauthorized*/), true, false);
@@ -27,6 +27,7 @@ public class ConnectionParamsTest {
         assertThat(params.getHeaders().isEmpty(), is(true));
         assertThat(params.getNumPersistentConnectionsPerEndpoint(), is(8));
         assertThat(params.getSslContext(), nullValue());
+        assertThat(params.getNonBlockingIoThreads(), is(0));
     }
 
     @Test
@@ -37,9 +38,11 @@ public class ConnectionParamsTest {
                 .addHeader("Banana", "Apple")
                 .setNumPersistentConnectionsPerEndpoint(2)
                 .setSslContext(SSLContext.getDefault())
+                .setNonBlockingIoThreads(3)
                 .build();
 
         assertThat(params.getNumPersistentConnectionsPerEndpoint(), is(2));
+        assertThat(params.getNonBlockingIoThreads(), is(3));
 
         assertThat(params.getHeaders().isEmpty(), is(false));
         assertThat(params.getHeaders().size(), is(3));
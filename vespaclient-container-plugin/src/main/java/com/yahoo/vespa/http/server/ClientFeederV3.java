@@ -26,8 +26,14 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Optional;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
@@ -41,6 +47,10 @@ import static com.yahoo.messagebus.ErrorCode.SEND_QUEUE_FULL;
  * avoid using a threadpool that has no effect with all the extra that comes with it. V2 has one instance per thread
  * on the client, while this is one instance for all threads.
  *
+ * When given a parser executor, the operations of a request are parsed in parallel by that executor while the
+ * request thread keeps reading the stream, and the parsed operations are sent by the request thread in the order
+ * they appear in the stream. This keeps operations on the same document in order.
+ *
  * @author dybis
  */
 class ClientFeederV3 {
@@ -61,6 +71,10 @@ class ClientFeederV3 {
     private final AtomicInteger ongoingRequests = new AtomicInteger(0);
     private String hostName;
     private AtomicInteger threadsAvailableForFeeding;
+    /** The executor parsing operations, or null to parse them in the request thread */
+    private final Executor parserExecutor;
+    /** The max number of operations of a request which may be parsed ahead of the one being sent */
+    private final int maxOperationsParsedAhead;
 
     ClientFeederV3(
             ReferencedResource<SharedSourceSession> sourceSession,
@@ -70,6 +84,24 @@ class ClientFeederV3 {
             Metric metric,
             ReplyHandler feedReplyHandler,
             AtomicInteger threadsAvailableForFeeding) {
+        this(sourceSession, feedReaderFactory, docTypeManager, clientId, metric, feedReplyHandler,
+             threadsAvailableForFeeding, null, 0);
+    }
+
+    ClientFeederV3(
+            ReferencedResource<SharedSourceSession> sourceSession,
+            FeedReaderFactory feedReaderFactory,
+            DocumentTypeManager docTypeManager,
+            String clientId,
+            Metric metric,
+            ReplyHandler feedReplyHandler,
+            AtomicInteger threadsAvailableForFeeding,
+            Executor parserExecutor,
+            int maxOperationsParsedAhead) {
+        if (parserExecutor != null && maxOperationsParsedAhead < 1)
+            throw new IllegalArgumentException("maxOperationsParsedAhead must be positive, was " + maxOperationsParsedAhead);
+        this.parserExecutor = parserExecutor;
+        this.maxOperationsParsedAhead = maxOperationsParsedAhead;
         this.sourceSession = sourceSession;
         this.clientId = clientId;
         this.feedReplyHandler = feedReplyHandler;
@@ -226,6 +258,10 @@ class ClientFeederV3 {
             InputStream requestInputStream,
             BlockingQueue<OperationStatus> repliesFromOldMessages,
             AtomicInteger threadsAvailableForFeeding) throws InterruptedException {
+        if (parserExecutor != null) {
+            feedParsingInParallel(settings, requestInputStream, repliesFromOldMessages, threadsAvailableForFeeding);
+            return;
+        }
         while (true) {
 
             Optional<DocumentOperationMessageV3> msg = pullMessageFromRequest(settings, requestInputStream, repliesFromOldMessages);
@@ -233,34 +269,123 @@ class ClientFeederV3 {
             if (! msg.isPresent()) {
                 break;
             }
-            setMessageParameters(msg.get(), settings);
+            send(settings, msg.get(), repliesFromOldMessages, threadsAvailableForFeeding);
+        }
+    }
+
+    /**
+     * Reads the operations of the request in this thread, parses them in the parser executor and sends them
+     * from this thread in the order they were read. At most maxOperationsParsedAhead operations are read
+     * before the oldest of them is sent.
+     */
+    private void feedParsingInParallel(
+            FeederSettings settings,
+            InputStream requestInputStream,
+            BlockingQueue<OperationStatus> repliesFromOldMessages,
+            AtomicInteger threadsAvailableForFeeding) throws InterruptedException {
+        Deque<ParsingOperation> parsing = new ArrayDeque<>(maxOperationsParsedAhead);
+        while (true) {
+            if ( ! sendParsed(parsing, parsing.size() >= maxOperationsParsedAhead,
+                              settings, repliesFromOldMessages, threadsAvailableForFeeding)) {
+                return; // end of feed
+            }
 
-            Result result;
+            Optional<String> operationId;
             try {
-                result = sendMessage(settings, msg.get(), threadsAvailableForFeeding);
+                operationId = streamReaderV3.getNextOperationId(requestInputStream);
+            } catch (IOException ioe) {
+                if (log.isLoggable(LogLevel.DEBUG)) {
+                    log.log(LogLevel.DEBUG, Exceptions.toMessageString(ioe), ioe);
+                }
+                break;
+            }
+            if (! operationId.isPresent()) {
+                break;
+            }
 
-            } catch  (RuntimeException e) {
-                repliesFromOldMessages.add(createOperationStatus(msg.get().getOperationId(), Exceptions.toMessageString(e),
-                        ErrorCode.ERROR, false, msg.get().getMessage()));
-                continue;
+            CompletableFuture<DocumentOperationMessageV3> message;
+            try {
+                byte[] data = streamReaderV3.readOperationBytes(requestInputStream);
+                message = CompletableFuture.supplyAsync(() -> parseMessage(operationId.get(), data, settings), parserExecutor);
+            } catch (Exception e) {
+                message = new CompletableFuture<>();
+                message.completeExceptionally(e);
+            }
+            parsing.addLast(new ParsingOperation(operationId.get(), message));
+        }
+        while ( ! parsing.isEmpty()) {
+            if ( ! sendParsed(parsing, true, settings, repliesFromOldMessages, threadsAvailableForFeeding)) {
+                return;
             }
+        }
+    }
 
-            if (result.isAccepted()) {
-                outstandingOperations.incrementAndGet();
-                updateOpsPerSec();
-                log(LogLevel.DEBUG, "Sent message successfully, document id: ", msg.get().getOperationId());
-            } else if (!result.getError().isFatal()) {
-                repliesFromOldMessages.add(createOperationStatus(msg.get().getOperationId(), result.getError().getMessage(),
-                        ErrorCode.TRANSIENT_ERROR, false, msg.get().getMessage()));
-                continue;
-            } else {
-                // should probably not happen, but everybody knows stuff that
-                // shouldn't happen, happens all the time
-                boolean isConditionNotMet = result.getError().getCode() == DocumentProtocol.ERROR_TEST_AND_SET_CONDITION_FAILED;
-                repliesFromOldMessages.add(createOperationStatus(msg.get().getOperationId(), result.getError().getMessage(),
-                        ErrorCode.ERROR, isConditionNotMet, msg.get().getMessage()));
+    /**
+     * Sends the operations at the head of the given queue which are parsed, and waits for the first one
+     * to be parsed if waitForFirst is true.
+     *
+     * @return false if the end of the feed was reached
+     */
+    private boolean sendParsed(
+            Deque<ParsingOperation> parsing,
+            boolean waitForFirst,
+            FeederSettings settings,
+            BlockingQueue<OperationStatus> repliesFromOldMessages,
+            AtomicInteger threadsAvailableForFeeding) throws InterruptedException {
+        while ( ! parsing.isEmpty() && (waitForFirst || parsing.peekFirst().message.isDone())) {
+            waitForFirst = false;
+            ParsingOperation operation = parsing.removeFirst();
+            DocumentOperationMessageV3 message;
+            try {
+                message = operation.message.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (log.isLoggable(LogLevel.DEBUG)) {
+                    log.log(LogLevel.DEBUG, Exceptions.toMessageString(cause), cause);
+                }
+                repliesFromOldMessages.add(new OperationStatus(
+                        Exceptions.toMessageString(cause), operation.operationId, ErrorCode.ERROR, false, ""));
                 continue;
             }
+            if (message == null) {
+                return false;
+            }
+            setRoute(message, settings);
+            send(settings, message, repliesFromOldMessages, threadsAvailableForFeeding);
+        }
+        return true;
+    }
+
+    private void send(
+            FeederSettings settings,
+            DocumentOperationMessageV3 msg,
+            BlockingQueue<OperationStatus> repliesFromOldMessages,
+            AtomicInteger threadsAvailableForFeeding) throws InterruptedException {
+        setMessageParameters(msg, settings);
+
+        Result result;
+        try {
+            result = sendMessage(settings, msg, threadsAvailableForFeeding);
+
+        } catch  (RuntimeException e) {
+            repliesFromOldMessages.add(createOperationStatus(msg.getOperationId(), Exceptions.toMessageString(e),
+                    ErrorCode.ERROR, false, msg.getMessage()));
+            return;
+        }
+
+        if (result.isAccepted()) {
+            outstandingOperations.incrementAndGet();
+            updateOpsPerSec();
+            log(LogLevel.DEBUG, "Sent message successfully, document id: ", msg.getOperationId());
+        } else if (!result.getError().isFatal()) {
+            repliesFromOldMessages.add(createOperationStatus(msg.getOperationId(), result.getError().getMessage(),
+                    ErrorCode.TRANSIENT_ERROR, false, msg.getMessage()));
+        } else {
+            // should probably not happen, but everybody knows stuff that
+            // shouldn't happen, happens all the time
+            boolean isConditionNotMet = result.getError().getCode() == DocumentProtocol.ERROR_TEST_AND_SET_CONDITION_FAILED;
+            repliesFromOldMessages.add(createOperationStatus(msg.getOperationId(), result.getError().getMessage(),
+                    ErrorCode.ERROR, isConditionNotMet, msg.getMessage()));
         }
     }
 
@@ -277,7 +402,21 @@ class ClientFeederV3 {
     protected DocumentOperationMessageV3 getNextMessage(
             String operationId, InputStream requestInputStream, FeederSettings settings) throws Exception {
         VespaXMLFeedReader.Operation operation = streamReaderV3.getNextOperation(requestInputStream, settings);
+        return createMessage(operationId, operation);
+    }
+
+    /** Parses the given operation bytes into a message, or null if it is the end of the feed. Called in the parser executor. */
+    private DocumentOperationMessageV3 parseMessage(String operationId, byte[] data, FeederSettings settings) {
+        try {
+            return createMessage(operationId, streamReaderV3.parseOperation(data, settings));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
 
+    private DocumentOperationMessageV3 createMessage(String operationId, VespaXMLFeedReader.Operation operation) {
         // This is a bit hard to set up while testing, so we accept that things are not perfect.
         if (sourceSession.getResource().session() != null) {
             metric.set(
@@ -335,6 +474,18 @@ class ClientFeederV3 {
         log.log(level, s.toString());
     }
 
+    private static class ParsingOperation {
+
+        final String operationId;
+        final CompletableFuture<DocumentOperationMessageV3> message;
+
+        ParsingOperation(String operationId, CompletableFuture<DocumentOperationMessageV3> message) {
+            this.operationId = operationId;
+            this.message = message;
+        }
+
+    }
+
     private void updateOpsPerSec() {
         Instant now = Instant.now();
         synchronized (monitor) {
@@ -23,7 +23,8 @@ import com.yahoo.yolean.Exceptions;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -33,15 +34,25 @@ import java.util.logging.Logger;
  * This code is based on v2 code, however, in v3, one client has one ClientFeederV3 shared between all client threads.
  * The new API has more logic for shutting down cleanly as the server is more likely to be upgraded.
  * The code is restructured a bit.
+ * <p>
+ * JSON puts are transcoded directly to the binary document format, where their document types allow it,
+ * if the system property {@value #TRANSCODE_JSON_PUTS_PROPERTY} is set to true.
  * 
  * @author dybis
  */
 public class FeedHandlerV3 extends LoggingRequestHandler {
 
+    /** The system property which turns on transcoding of JSON puts, see {@link com.yahoo.document.json.JsonDocumentTranscoder} */
+    public static final String TRANSCODE_JSON_PUTS_PROPERTY = "vespa.http.server.transcodejsonputs";
+
     private DocumentTypeManager docTypeManager;
     private final Map<String, ClientFeederV3> clientFeederByClientId = new HashMap<>();
     private final ScheduledThreadPoolExecutor cron;
+    /** Parses the operations of all requests, such that a single request can use more than one core */
+    private final ExecutorService parser;
+    private final int parserThreads;
     private final SessionCache sessionCache;
+    private final FeedReaderFactory feedReaderFactory;
     protected final ReplyHandler feedReplyHandler;
     private final Metric metric;
     private final Object monitor = new Object();
@@ -57,9 +68,12 @@ public class FeedHandlerV3 extends LoggingRequestHandler {
         super(parentCtx);
         docTypeManager = new DocumentTypeManager(documentManagerConfig);
         this.sessionCache = sessionCache;
+        feedReaderFactory = new FeedReaderFactory(Boolean.getBoolean(TRANSCODE_JSON_PUTS_PROPERTY));
         feedReplyHandler = new FeedReplyReader(parentCtx.getMetric(), metricsHelper);
         cron = new ScheduledThreadPoolExecutor(1, ThreadFactoryFactory.getThreadFactory("feedhandlerv3.cron"));
         cron.scheduleWithFixedDelay(this::removeOldClients, 16, 11, TimeUnit.MINUTES);
+        parserThreads = Runtime.getRuntime().availableProcessors();
+        parser = Executors.newFixedThreadPool(parserThreads, ThreadFactoryFactory.getThreadFactory("feedhandlerv3.parser"));
         this.metric = parentCtx.getMetric();
         // 40% of the threads can be blocking on feeding before we deny requests.
         if (threadpoolConfig != null) {
@@ -87,12 +101,14 @@ public class FeedHandlerV3 extends LoggingRequestHandler {
                         clientId,
                         new ClientFeederV3(
                                 retainSource(sessionCache, sourceSessionParams),
-                                new FeedReaderFactory(),
+                                feedReaderFactory,
                                 docTypeManager,
                                 clientId,
                                 metric,
                                 feedReplyHandler,
-                                threadsAvailableForFeeding));
+                                threadsAvailableForFeeding,
+                                parserThreads > 1 ? parser : null,
+                                2 * parserThreads));
             }
             clientFeederV3 = clientFeederByClientId.get(clientId);
         }
@@ -122,6 +138,7 @@ public class FeedHandlerV3 extends LoggingRequestHandler {
         Thread destroyer = new Thread(() -> {
             super.destroy();
             cron.shutdown();
+            parser.shutdown();
             synchronized (monitor) {
                 for (ClientFeederV3 client : clientFeederByClientId.values()) {
                     client.kill();
@@ -2,11 +2,13 @@
 package com.yahoo.vespa.http.server;
 
 import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.document.json.JsonDocumentTranscoder;
 import com.yahoo.document.json.JsonFeedReader;
 import com.yahoo.vespa.http.client.config.FeedParams;
 import com.yahoo.vespaxmlparser.FeedReader;
 import com.yahoo.vespaxmlparser.VespaXMLFeedReader;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 
 /**
@@ -15,6 +17,27 @@ import java.io.InputStream;
  */
 public class FeedReaderFactory {
 
+    private final boolean transcodeJsonPuts;
+
+    /** The transcoder of each thread, as transcoders are not thread safe */
+    private final ThreadLocal<JsonDocumentTranscoder> transcoders = new ThreadLocal<>();
+
+    public FeedReaderFactory() {
+        this(false);
+    }
+
+    /**
+     * @param transcodeJsonPuts whether JSON puts of single operations should be transcoded directly to the
+     *                          binary document format when their document type allows it.
+     *                          See {@link JsonDocumentTranscoder}
+     */
+    public FeedReaderFactory(boolean transcodeJsonPuts) {
+        this.transcodeJsonPuts = transcodeJsonPuts;
+    }
+
+    /** Returns whether this transcodes JSON puts given to {@link #createReader(byte[], DocumentTypeManager, FeedParams.DataFormat)} */
+    public boolean transcodesJsonPuts() { return transcodeJsonPuts; }
+
     /**
      * Creates FeedReader
      * @param inputStream source of feed data
@@ -40,4 +63,31 @@ public class FeedReaderFactory {
         }
     }
 
+    /**
+     * Creates FeedReader of a single operation. If this transcodes JSON puts, puts of documents having types
+     * supported by the transcoder are transcoded, while all other operations are parsed as usual.
+     *
+     * @param operation the bytes of the operation
+     * @param docTypeManager handles the parsing of the document
+     * @param dataFormat specifies the format
+     * @return a feedreader
+     */
+    public FeedReader createReader(
+            byte[] operation,
+            DocumentTypeManager docTypeManager,
+            FeedParams.DataFormat dataFormat)  {
+        if (transcodeJsonPuts && dataFormat == FeedParams.DataFormat.JSON_UTF8)
+            return new JsonFeedReader(operation, docTypeManager, transcoder(docTypeManager));
+        return createReader(new ByteArrayInputStream(operation), docTypeManager, dataFormat);
+    }
+
+    private JsonDocumentTranscoder transcoder(DocumentTypeManager docTypeManager) {
+        JsonDocumentTranscoder transcoder = transcoders.get();
+        if (transcoder == null || transcoder.getDocumentTypeManager() != docTypeManager) {
+            transcoder = new JsonDocumentTranscoder(docTypeManager);
+            transcoders.set(transcoder);
+        }
+        return transcoder;
+    }
+
 }
@@ -3,6 +3,7 @@ package com.yahoo.vespa.http.server;
 
 import com.yahoo.container.jdisc.HttpRequest;
 import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.vespa.http.client.config.FeedParams.DataFormat;
 import com.yahoo.vespa.http.client.core.Encoder;
 import com.yahoo.vespa.http.server.util.ByteLimitedInputStream;
 import com.yahoo.vespaxmlparser.FeedReader;
@@ -10,6 +11,7 @@ import com.yahoo.vespaxmlparser.VespaXMLFeedReader;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Optional;
 import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
@@ -32,6 +34,9 @@ public class StreamReaderV3 {
 
     public VespaXMLFeedReader.Operation getNextOperation(
             InputStream requestInputStream, FeederSettings settings) throws Exception {
+        if (feedReaderFactory.transcodesJsonPuts() && settings.dataFormat == DataFormat.JSON_UTF8)
+            return parseOperation(readOperationBytes(requestInputStream), settings);
+
         VespaXMLFeedReader.Operation op = new VespaXMLFeedReader.Operation();
 
         int length = readByteLength(requestInputStream);
@@ -43,6 +48,32 @@ public class StreamReaderV3 {
         return op;
     }
 
+    /**
+     * Reads the bytes of the next operation without parsing them, such that they can be parsed
+     * by {@link #parseOperation} in another thread.
+     */
+    public byte[] readOperationBytes(InputStream requestInputStream) throws IOException {
+        int length = readByteLength(requestInputStream);
+        byte[] data = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = requestInputStream.read(data, read, length - read);
+            if (n < 0) {
+                return Arrays.copyOf(data, read);
+            }
+            read += n;
+        }
+        return data;
+    }
+
+    /** Parses an operation read by {@link #readOperationBytes}. This is thread safe. */
+    public VespaXMLFeedReader.Operation parseOperation(byte[] data, FeederSettings settings) throws Exception {
+        VespaXMLFeedReader.Operation op = new VespaXMLFeedReader.Operation();
+        FeedReader reader = feedReaderFactory.createReader(data, docTypeManager, settings.dataFormat);
+        reader.read(op);
+        return op;
+    }
+
     public Optional<String> getNextOperationId(InputStream requestInputStream) throws IOException {
         StringBuilder idBuf = new StringBuilder(100);
         int c;
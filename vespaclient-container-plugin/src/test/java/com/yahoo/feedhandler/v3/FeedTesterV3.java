@@ -29,6 +29,9 @@ import com.yahoo.container.jdisc.HttpRequest;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
@@ -43,6 +46,8 @@ import org.mockito.stubbing.Answer;
 
 public class FeedTesterV3 {
 
+    private final List<String> sentDocumentIds = new CopyOnWriteArrayList<>();
+
     @Test
     public void feedOneDocument() throws Exception {
         final FeedHandlerV3 feedHandlerV3 = setupFeederHandler();
@@ -65,6 +70,36 @@ public class FeedTesterV3 {
         assertThat(Splitter.on("\n").splitToList(result).size(), is(101));
     }
 
+    @Test
+    public void feedManyDocumentsSendsInStreamOrderAndReportsParseErrors() throws Exception {
+        final FeedHandlerV3 feedHandlerV3 = setupFeederHandler();
+        List<String> operations = new ArrayList<>();
+        for (int x = 0; x < 500; x++) {
+            operations.add(x == 250
+                           ? "[{\"put\": \"id:testdocument:testdocument::250\", \"fields\": { \"title\": }}]"
+                           : "[{\"put\": \"id:testdocument:testdocument::" + x + "\", \"fields\": { \"title\": \"fooKey\"}}]");
+        }
+        HttpResponse httpResponse = feedHandlerV3.handle(createRequest(operations));
+        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+        httpResponse.render(outStream);
+
+        List<String> expectedIds = new ArrayList<>();
+        for (int x = 0; x < 500; x++) {
+            if (x != 250) expectedIds.add("id:testdocument:testdocument::" + x);
+        }
+        assertThat(sentDocumentIds, is(expectedIds));
+
+        int errors = 0;
+        for (String line : Splitter.on("\n").omitEmptyStrings().split(Utf8.toString(outStream.toByteArray()))) {
+            OperationStatus status = OperationStatus.parse(line);
+            if (status.errorCode == ErrorCode.ERROR) {
+                assertThat(status.operationId, is("123250"));
+                errors++;
+            }
+        }
+        assertThat(errors, is(1));
+    }
+
     DocumentTypeManager createDoctypeManager() {
         DocumentTypeManager docTypeManager = new DocumentTypeManager();
         DocumentType documentType = new DocumentType("testdocument");
@@ -75,10 +110,18 @@ public class FeedTesterV3 {
     }
 
     HttpRequest createRequest(int numberOfDocs) {
+        List<String> operations = new ArrayList<>();
+        for (int x = 0; x < numberOfDocs; x++) {
+            operations.add("[{\"put\": \"id:testdocument:testdocument::c\", \"fields\": { \"title\": \"fooKey\", \"body\": \"value\"}}]");
+        }
+        return createRequest(operations);
+    }
+
+    HttpRequest createRequest(List<String> operations) {
         String clientId = "client123";
         StringBuilder wireData = new StringBuilder();
-        for (int x = 0; x < numberOfDocs; x++) {
-            String docData = "[{\"put\": \"id:testdocument:testdocument::c\", \"fields\": { \"title\": \"fooKey\", \"body\": \"value\"}}]";
+        for (int x = 0; x < operations.size(); x++) {
+            String docData = operations.get(x);
             String operationId = "123" + x;
             wireData.append(operationId + " " + Integer.toHexString(docData.length()) + "\n" + docData);
         }
@@ -115,6 +158,7 @@ public class FeedTesterV3 {
                     Mockito.stub(sharedSourceSession.sendMessageBlocking(anyObject())).toAnswer((Answer) invocation -> {
                         Object[] args = invocation.getArguments();
                         PutDocumentMessage putDocumentMessage = (PutDocumentMessage) args[0];
+                        sentDocumentIds.add(putDocumentMessage.getDocumentPut().getDocument().getId().toString());
                         ReplyContext replyContext = (ReplyContext)putDocumentMessage.getContext();
                         replyContext.feedReplies.add(new OperationStatus("message", replyContext.docId, ErrorCode.OK, false, "trace"));
                         Result result = mock(Result.class);
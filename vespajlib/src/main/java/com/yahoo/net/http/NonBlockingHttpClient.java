@@ -0,0 +1,787 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.net.http;
+
+import com.yahoo.text.Utf8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An event loop doing the I/O of any number of HTTP/1.1 requests in a single thread using non-blocking sockets,
+ * such that any number of requests may be outstanding without holding a thread for each.
+ * This also runs tasks and timers in its thread, for users which drive their own work from it.
+ * Connections are kept alive and pooled per address after each completed response.
+ * <p>
+ * Response futures are completed, and tasks run, in the thread of this, so they must never block.
+ * Users doing more than a little work on responses should continue in another executor.
+ * <p>
+ * This only supports plain http without proxies, and does not follow redirects.
+ * Response bodies are read into memory as they arrive and returned when complete.
+ * <p>
+ * This class is multithread safe.
+ *
+ * @author agent
+ */
+public class NonBlockingHttpClient implements AutoCloseable {
+
+    private static final Logger log = Logger.getLogger(NonBlockingHttpClient.class.getName());
+
+    private final int maxIdleConnectionsPerAddress;
+    private final long maxIdleMillis;
+
+    private final Selector selector;
+    private final Thread ioThread;
+
+    /** Requests submitted by other threads, not yet started by the I/O thread */
+    private final Queue<Exchange> submittedRequests = new ConcurrentLinkedQueue<>();
+
+    /** Tasks submitted by other threads, not yet run by the I/O thread */
+    private final Queue<Runnable> submittedTasks = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean closed = false;
+
+    // The following are only accessed by the I/O thread
+
+    private final Map<InetSocketAddress, Deque<Channel>> idleChannels = new HashMap<>();
+    private final Set<Channel> activeChannels = new HashSet<>();
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+    private long timerSequence = 0;
+
+    /**
+     * Creates a client and starts its I/O thread
+     *
+     * @param name the name of the I/O thread of this
+     * @param maxIdleConnectionsPerAddress the max number of idle connections to keep open to each address
+     * @param maxIdleMillis the max time to keep an idle connection open
+     */
+    public NonBlockingHttpClient(String name, int maxIdleConnectionsPerAddress, long maxIdleMillis) {
+        this.maxIdleConnectionsPerAddress = maxIdleConnectionsPerAddress;
+        this.maxIdleMillis = maxIdleMillis;
+        try {
+            this.selector = Selector.open();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not open a selector for " + name, e);
+        }
+        this.ioThread = new Thread(this::run, name);
+        ioThread.setDaemon(true);
+        ioThread.start();
+    }
+
+    /**
+     * Sends a request and returns a future which is completed in the thread of this with the response, or exceptionally
+     * with a {@link ConnectTimeoutException} or a SocketTimeoutException if no connection or response is
+     * established in time, with an IllegalArgumentException if the uri is not supported, or with an IOException
+     * on other errors. Cancelling the future abandons the request.
+     *
+     * @param method the HTTP method to use
+     * @param uri the http uri to request
+     * @param headers additional request headers, or null if none
+     * @param body the request body, or null if none
+     * @param connectTimeout the max time to use connecting in milliseconds
+     * @param timeout the max time to use before the response is received in milliseconds
+     */
+    public CompletableFuture<Response> execute(String method, URI uri, Map<String, String> headers, byte[] body,
+                                               long connectTimeout, long timeout) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        if ( ! "http".equals(uri.getScheme())) {
+            future.completeExceptionally(new IllegalArgumentException("Only http is supported by non-blocking requests, not " + uri));
+            return future;
+        }
+        int port = uri.getPort() < 0 ? 80 : uri.getPort();
+        InetSocketAddress address = new InetSocketAddress(uri.getHost(), port);
+        if (address.isUnresolved()) {
+            future.completeExceptionally(new IOException("Could not resolve host '" + uri.getHost() + "'"));
+            return future;
+        }
+        long now = System.currentTimeMillis();
+        Exchange exchange = new Exchange(address, toRequest(method, uri, port, headers, body), "HEAD".equals(method),
+                                         now + connectTimeout, now + timeout, future);
+        if (closed) {
+            future.completeExceptionally(new IOException("This client is closed"));
+            return future;
+        }
+        submittedRequests.add(exchange);
+        selector.wakeup();
+        return future;
+    }
+
+    /**
+     * Runs the given task in the thread of this
+     *
+     * @throws IllegalStateException if this is closed
+     */
+    public void execute(Runnable task) {
+        submit(task);
+    }
+
+    /**
+     * Runs the given task in the thread of this after the given delay in milliseconds
+     *
+     * @throws IllegalStateException if this is closed
+     */
+    public void schedule(Runnable task, long delayMillis) {
+        long time = System.currentTimeMillis() + delayMillis;
+        submit(() -> timers.add(new Timer(time, timerSequence++, task)));
+    }
+
+    /** Returns whether the current thread is the I/O thread of this */
+    public boolean inIoThread() {
+        return Thread.currentThread() == ioThread;
+    }
+
+    /** Closes all connections and stops the I/O thread of this. Outstanding requests are failed. */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        if (inIoThread()) return;
+        try {
+            ioThread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Returns the number of idle connections to the given address currently kept by this, for testing */
+    int idleConnectionCount(String host, int port) {
+        CompletableFuture<Integer> count = new CompletableFuture<>();
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        submit(() -> {
+            Deque<Channel> idle = idleChannels.get(address);
+            count.complete(idle == null ? 0 : idle.size());
+        });
+        return count.join();
+    }
+
+    private void submit(Runnable task) {
+        if (closed)
+            throw new IllegalStateException("This client is closed");
+        submittedTasks.add(task);
+        selector.wakeup();
+    }
+
+    private static ByteBuffer toRequest(String method, URI uri, int port, Map<String, String> headers, byte[] body) {
+        StringBuilder b = new StringBuilder();
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        b.append(method).append(' ').append(path);
+        if (uri.getRawQuery() != null)
+            b.append('?').append(uri.getRawQuery());
+        b.append(" HTTP/1.1\r\n");
+        b.append("Host: ").append(uri.getHost());
+        if (port != 80)
+            b.append(':').append(port);
+        b.append("\r\n");
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                if (header.getValue() == null) continue;
+                if (header.getKey().equalsIgnoreCase("Content-Length")) continue;
+                b.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            }
+        }
+        if (body != null)
+            b.append("Content-Length: ").append(body.length).append("\r\n");
+        b.append("\r\n");
+
+        // Non-ascii header values are sent as their UTF-8 bytes
+        byte[] head = Utf8.toBytes(b.toString());
+        ByteBuffer request = ByteBuffer.allocate(head.length + (body == null ? 0 : body.length));
+        request.put(head);
+        if (body != null)
+            request.put(body);
+        request.flip();
+        return request;
+    }
+
+    private void run() {
+        while ( ! closed) {
+            try {
+                selector.select(selectTimeout(System.currentTimeMillis()));
+                for (Exchange exchange; (exchange = submittedRequests.poll()) != null; )
+                    start(exchange);
+                for (Runnable task; (task = submittedTasks.poll()) != null; )
+                    task.run();
+                for (Iterator<SelectionKey> i = selector.selectedKeys().iterator(); i.hasNext(); ) {
+                    SelectionKey key = i.next();
+                    i.remove();
+                    handle((Channel)key.attachment(), key);
+                }
+                long now = System.currentTimeMillis();
+                expire(now);
+                while ( ! closed && ! timers.isEmpty() && timers.peek().time <= now)
+                    timers.poll().task.run();
+            }
+            catch (IOException | RuntimeException e) {
+                log.log(Level.WARNING, "Unexpected exception in " + ioThread.getName(), e);
+            }
+        }
+        for (Exchange exchange; (exchange = submittedRequests.poll()) != null; )
+            exchange.future.completeExceptionally(new IOException("This client is closed"));
+        submittedTasks.clear();
+        for (Channel channel : new ArrayList<>(activeChannels))
+            failed(channel, new IOException("This client is closed"), false);
+        for (Deque<Channel> idle : idleChannels.values())
+            idle.forEach(Channel::close);
+        idleChannels.clear();
+        timers.clear();
+        try {
+            selector.close();
+        }
+        catch (IOException e) {
+            log.log(Level.FINE, "Failed closing selector: " + e.getMessage());
+        }
+    }
+
+    /** Returns the time to wait for I/O before the next deadline of an active request, idle connection or timer */
+    private long selectTimeout(long now) {
+        long nextDeadline = now + Math.min(maxIdleMillis, 1000);
+        for (Channel channel : activeChannels)
+            nextDeadline = Math.min(nextDeadline, channel.exchange.deadline(channel.connected()));
+        if ( ! timers.isEmpty())
+            nextDeadline = Math.min(nextDeadline, timers.peek().time);
+        return Math.max(1, nextDeadline - now);
+    }
+
+    private void start(Exchange exchange) {
+        if (exchange.future.isDone()) return; // cancelled
+
+        Channel channel = pollIdle(exchange.address);
+        if (channel == null) {
+            try {
+                channel = new Channel(exchange.address);
+            }
+            catch (IOException e) {
+                exchange.future.completeExceptionally(e);
+                return;
+            }
+        }
+        channel.assign(exchange);
+        activeChannels.add(channel);
+    }
+
+    private Channel pollIdle(InetSocketAddress address) {
+        Deque<Channel> idle = idleChannels.get(address);
+        if (idle == null) return null;
+        Channel channel = idle.pollLast(); // the most recently used is the least likely to be closed by the server
+        if (idle.isEmpty())
+            idleChannels.remove(address);
+        return channel;
+    }
+
+    private void handle(Channel channel, SelectionKey key) {
+        try {
+            if ( ! key.isValid()) return;
+            if (key.isConnectable()) {
+                if (channel.socket.finishConnect()) // otherwise, keep waiting for the connection
+                    key.interestOps(SelectionKey.OP_WRITE);
+            }
+            else if (key.isWritable()) {
+                channel.socket.write(channel.exchange.request);
+                if ( ! channel.exchange.request.hasRemaining())
+                    key.interestOps(SelectionKey.OP_READ);
+            }
+            else if (key.isReadable()) {
+                read(channel);
+            }
+        }
+        catch (IOException e) {
+            failed(channel, e, true);
+        }
+        catch (RuntimeException e) { // a bug or unexpected input: Fail this request rather than the I/O loop
+            failed(channel, new IOException("Failed handling the connection to " + channel.address, e), false);
+        }
+    }
+
+    private void read(Channel channel) throws IOException {
+        while (true) {
+            readBuffer.clear();
+            int read = channel.socket.read(readBuffer);
+            if (read == 0) return;
+            if (read < 0) {
+                endOfInput(channel);
+                return;
+            }
+            if (channel.exchange == null) { // data on an idle connection: Don't reuse it
+                removeIdle(channel);
+                channel.close();
+                return;
+            }
+            readBuffer.flip();
+            if (channel.exchange.parser.feed(readBuffer)) {
+                completed(channel, ! readBuffer.hasRemaining());
+                return;
+            }
+        }
+    }
+
+    private void endOfInput(Channel channel) {
+        if (channel.exchange == null) { // closed by the server while idle
+            removeIdle(channel);
+            channel.close();
+        }
+        else if (channel.exchange.parser.endOfInput()) {
+            completed(channel, false);
+        }
+        else {
+            failed(channel, new IOException("Connection to " + channel.address +
+                                            " was closed before the response was complete"), true);
+        }
+    }
+
+    private void completed(Channel channel, boolean reusable) {
+        Exchange exchange = channel.exchange;
+        activeChannels.remove(channel);
+        channel.exchange = null;
+        if (reusable && exchange.parser.keepAlive() && ! closed && addIdle(channel)) {
+            channel.key.interestOps(SelectionKey.OP_READ); // to notice if the server closes it
+            channel.idleSince = System.currentTimeMillis();
+        }
+        else {
+            channel.close();
+        }
+        exchange.future.complete(exchange.parser.toResponse(channel.remoteAddress()));
+    }
+
+    /**
+     * Closes a channel which failed and fails its request, or retries it on a new connection if
+     * this happened on a reused connection before any response was received (it was likely closed by the server).
+     */
+    private void failed(Channel channel, IOException e, boolean mayRetry) {
+        Exchange exchange = channel.exchange;
+        activeChannels.remove(channel);
+        channel.close();
+        if (exchange == null) { // failed while idle, e.g reset by the server
+            removeIdle(channel);
+            return;
+        }
+
+        if (mayRetry && channel.reused && ! exchange.parser.receivedAny() && ! exchange.retried) {
+            exchange.retried = true;
+            exchange.request.rewind();
+            start(exchange);
+        }
+        else {
+            exchange.future.completeExceptionally(e);
+        }
+    }
+
+    private void expire(long now) {
+        for (Channel channel : new ArrayList<>(activeChannels)) {
+            Exchange exchange = channel.exchange;
+            if (exchange.future.isDone()) { // cancelled
+                activeChannels.remove(channel);
+                channel.close();
+            }
+            else if (now >= exchange.deadline(channel.connected())) {
+                boolean connected = channel.connected();
+                activeChannels.remove(channel);
+                channel.close();
+                exchange.future.completeExceptionally(connected
+                        ? new SocketTimeoutException("No response from " + channel.address + " in time")
+                        : new ConnectTimeoutException("Could not connect to " + channel.address + " in time"));
+            }
+        }
+        for (Iterator<Deque<Channel>> i = idleChannels.values().iterator(); i.hasNext(); ) {
+            Deque<Channel> idle = i.next();
+            while ( ! idle.isEmpty() && now - idle.peekFirst().idleSince >= maxIdleMillis)
+                idle.pollFirst().close();
+            if (idle.isEmpty())
+                i.remove();
+        }
+    }
+
+    private boolean addIdle(Channel channel) {
+        Deque<Channel> idle = idleChannels.computeIfAbsent(channel.address, k -> new ArrayDeque<>());
+        if (idle.size() >= maxIdleConnectionsPerAddress) return false;
+        idle.addLast(channel);
+        return true;
+    }
+
+    private void removeIdle(Channel channel) {
+        Deque<Channel> idle = idleChannels.get(channel.address);
+        if (idle == null) return;
+        idle.remove(channel);
+        if (idle.isEmpty())
+            idleChannels.remove(channel.address);
+    }
+
+    /** A connection to an address */
+    private class Channel {
+
+        private final InetSocketAddress address;
+        private final SocketChannel socket;
+        private final SelectionKey key;
+
+        /** The request currently using this, or null if it is idle */
+        private Exchange exchange = null;
+
+        /** Whether this has been used by a previous request */
+        private boolean reused = false;
+
+        /** The time this was last made idle, or 0 if it has not been used */
+        private long idleSince = 0;
+
+        Channel(InetSocketAddress address) throws IOException {
+            this.address = address;
+            this.socket = SocketChannel.open();
+            try {
+                socket.configureBlocking(false);
+                socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                boolean connected = socket.connect(address);
+                this.key = socket.register(selector, connected ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT, this);
+            }
+            catch (IOException | RuntimeException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        void assign(Exchange exchange) {
+            reused = idleSince > 0;
+            this.exchange = exchange;
+            exchange.parser = new ResponseParser(exchange.head);
+            if (connected())
+                key.interestOps(SelectionKey.OP_WRITE);
+        }
+
+        boolean connected() { return socket.isConnected(); }
+
+        String remoteAddress() { return address.getAddress().getHostAddress(); }
+
+        void close() {
+            key.cancel();
+            try {
+                socket.close();
+            }
+            catch (IOException e) {
+                log.log(Level.FINE, "Failed closing connection to " + address + ": " + e.getMessage());
+            }
+        }
+
+    }
+
+    /** A request and the state of receiving its response */
+    private static class Exchange {
+
+        private final InetSocketAddress address;
+        private final ByteBuffer request;
+        private final boolean head;
+        private final long connectDeadline;
+        private final long deadline;
+        private final CompletableFuture<Response> future;
+
+        private ResponseParser parser;
+        private boolean retried = false;
+
+        Exchange(InetSocketAddress address, ByteBuffer request, boolean head, long connectDeadline, long deadline,
+                 CompletableFuture<Response> future) {
+            this.address = address;
+            this.request = request;
+            this.head = head;
+            this.connectDeadline = Math.min(connectDeadline, deadline);
+            this.deadline = deadline;
+            this.future = future;
+        }
+
+        long deadline(boolean connected) { return connected ? deadline : connectDeadline; }
+
+    }
+
+    /** A task to run at a given time */
+    private static class Timer implements Comparable<Timer> {
+
+        private final long time;
+        private final long sequence;
+        private final Runnable task;
+
+        Timer(long time, long sequence, Runnable task) {
+            this.time = time;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Timer other) {
+            if (time != other.time) return Long.compare(time, other.time);
+            return Long.compare(sequence, other.sequence);
+        }
+
+    }
+
+    /** Thrown when a connection could not be established in time */
+    public static class ConnectTimeoutException extends SocketTimeoutException {
+
+        public ConnectTimeoutException(String message) {
+            super(message);
+        }
+
+    }
+
+    /** A HTTP response */
+    public static final class Response {
+
+        private final int statusCode;
+        private final String reasonPhrase;
+        private final List<Map.Entry<String, String>> headers;
+        private final byte[] body;
+        private final String remoteAddress;
+
+        Response(int statusCode, String reasonPhrase, List<Map.Entry<String, String>> headers, byte[] body,
+                 String remoteAddress) {
+            this.statusCode = statusCode;
+            this.reasonPhrase = reasonPhrase;
+            this.headers = Collections.unmodifiableList(headers);
+            this.body = body;
+            this.remoteAddress = remoteAddress;
+        }
+
+        public int statusCode() { return statusCode; }
+
+        public String reasonPhrase() { return reasonPhrase; }
+
+        /** Returns the name and value of the headers of this in the order received */
+        public List<Map.Entry<String, String>> headers() { return headers; }
+
+        /** Returns the value of the first header with the given name, or null if none */
+        public String header(String name) {
+            for (Map.Entry<String, String> header : headers)
+                if (header.getKey().equalsIgnoreCase(name))
+                    return header.getValue();
+            return null;
+        }
+
+        /** Returns the body of this, which is empty if it had none */
+        public byte[] body() { return body; }
+
+        /** Returns the ip address of the server which sent this response */
+        public String remoteAddress() { return remoteAddress; }
+
+    }
+
+    /** Incrementally parses a HTTP/1.x response */
+    static final class ResponseParser {
+
+        private static final int maxLineLength = 64 * 1024;
+
+        private enum State { statusLine, headers, fixedBody, chunkSize, chunkData, chunkEnd, trailers, untilClose, done }
+
+        private final boolean head;
+
+        private State state = State.statusLine;
+        private final StringBuilder line = new StringBuilder();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private long remaining;
+        private boolean receivedAny = false;
+
+        private String version;
+        private int statusCode;
+        private String reasonPhrase;
+        private final List<Map.Entry<String, String>> headers = new ArrayList<>();
+        private boolean keepAlive;
+
+        /** Creates a parser of a response to a HEAD request if head is true, and another request otherwise */
+        ResponseParser(boolean head) {
+            this.head = head;
+        }
+
+        /** Consumes the bytes of the given buffer up to the end of the response. Returns whether it is complete. */
+        boolean feed(ByteBuffer buffer) throws IOException {
+            if (buffer.hasRemaining())
+                receivedAny = true;
+            while (buffer.hasRemaining() && state != State.done) {
+                switch (state) {
+                    case fixedBody :
+                    case chunkData :
+                        int length = (int)Math.min(remaining, buffer.remaining());
+                        body.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+                        buffer.position(buffer.position() + length);
+                        remaining -= length;
+                        if (remaining == 0)
+                            state = state == State.fixedBody ? State.done : State.chunkEnd;
+                        break;
+                    case untilClose :
+                        body.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                        buffer.position(buffer.limit());
+                        break;
+                    default :
+                        if (readLine(buffer)) {
+                            handleLine(line.toString());
+                            line.setLength(0);
+                        }
+                }
+            }
+            return state == State.done;
+        }
+
+        /** Call when the server closed the connection. Returns whether the response is complete. */
+        boolean endOfInput() {
+            if (state == State.untilClose)
+                state = State.done;
+            return state == State.done;
+        }
+
+        /** Returns whether any bytes of the response has been received */
+        boolean receivedAny() { return receivedAny; }
+
+        /** Returns whether the connection may be reused after this response */
+        boolean keepAlive() { return keepAlive; }
+
+        Response toResponse(String remoteAddress) {
+            return new Response(statusCode, reasonPhrase, headers, body.toByteArray(), remoteAddress);
+        }
+
+        /** Reads into the line buffer up to and including the next newline. Returns true if a full line is read. */
+        private boolean readLine(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                char c = (char)(buffer.get() & 0xff); // ISO-8859-1
+                if (c == '\n') return true;
+                if (c == '\r') continue;
+                if (line.length() >= maxLineLength)
+                    throw new IOException("Response line exceeds " + maxLineLength + " characters");
+                line.append(c);
+            }
+            return false;
+        }
+
+        private void handleLine(String line) throws IOException {
+            switch (state) {
+                case statusLine :
+                    if (line.isEmpty()) return; // tolerate leading empty lines
+                    parseStatusLine(line);
+                    state = State.headers;
+                    break;
+                case headers :
+                    if (line.isEmpty())
+                        endOfHeaders();
+                    else
+                        parseHeader(line);
+                    break;
+                case chunkSize :
+                    int extensionStart = line.indexOf(';');
+                    String size = (extensionStart < 0 ? line : line.substring(0, extensionStart)).trim();
+                    try {
+                        remaining = Long.parseLong(size, 16);
+                    }
+                    catch (NumberFormatException e) {
+                        throw new IOException("Illegal chunk size '" + size + "'");
+                    }
+                    if (remaining < 0)
+                        throw new IOException("Illegal chunk size '" + size + "'");
+                    state = remaining == 0 ? State.trailers : State.chunkData;
+                    break;
+                case chunkEnd :
+                    if ( ! line.isEmpty())
+                        throw new IOException("Expected a line break after a chunk, got '" + line + "'");
+                    state = State.chunkSize;
+                    break;
+                case trailers :
+                    if (line.isEmpty())
+                        state = State.done;
+                    break;
+                default :
+                    throw new IllegalStateException("Not reading a line in state " + state);
+            }
+        }
+
+        private void parseStatusLine(String line) throws IOException {
+            String[] parts = line.split(" ", 3);
+            if (parts.length < 2 || ! parts[0].startsWith("HTTP/"))
+                throw new IOException("Illegal HTTP status line '" + line + "'");
+            version = parts[0];
+            try {
+                statusCode = Integer.parseInt(parts[1]);
+            }
+            catch (NumberFormatException e) {
+                throw new IOException("Illegal HTTP status line '" + line + "'");
+            }
+            reasonPhrase = parts.length > 2 ? parts[2] : "";
+        }
+
+        private void parseHeader(String line) throws IOException {
+            int separator = line.indexOf(':');
+            if (separator <= 0)
+                throw new IOException("Illegal HTTP header '" + line + "'");
+            headers.add(new AbstractMap.SimpleImmutableEntry<>(line.substring(0, separator).trim(),
+                                                               line.substring(separator + 1).trim()));
+        }
+
+        private void endOfHeaders() throws IOException {
+            if (statusCode >= 100 && statusCode < 200) { // an interim response: The real one follows
+                headers.clear();
+                state = State.statusLine;
+                return;
+            }
+
+            keepAlive = "HTTP/1.1".equals(version) ? ! hasHeaderToken("Connection", "close")
+                                                   : hasHeaderToken("Connection", "keep-alive");
+            String contentLength = headerValue("Content-Length");
+            if (head || statusCode == 204 || statusCode == 304) {
+                state = State.done;
+            }
+            else if (hasHeaderToken("Transfer-Encoding", "chunked")) {
+                state = State.chunkSize;
+            }
+            else if (contentLength != null) {
+                try {
+                    remaining = Long.parseLong(contentLength.trim());
+                }
+                catch (NumberFormatException e) {
+                    throw new IOException("Illegal Content-Length '" + contentLength + "'");
+                }
+                if (remaining < 0)
+                    throw new IOException("Illegal Content-Length '" + contentLength + "'");
+                state = remaining == 0 ? State.done : State.fixedBody;
+            }
+            else {
+                state = State.untilClose;
+                keepAlive = false;
+            }
+        }
+
+        private String headerValue(String name) {
+            for (Map.Entry<String, String> header : headers)
+                if (header.getKey().equalsIgnoreCase(name))
+                    return header.getValue();
+            return null;
+        }
+
+        private boolean hasHeaderToken(String name, String token) {
+            for (Map.Entry<String, String> header : headers) {
+                if ( ! header.getKey().equalsIgnoreCase(name)) continue;
+                for (String value : header.getValue().split(","))
+                    if (value.trim().equalsIgnoreCase(token)) return true;
+            }
+            return false;
+        }
+
+    }
+
+}
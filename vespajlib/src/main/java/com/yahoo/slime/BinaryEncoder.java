@@ -4,10 +4,13 @@ package com.yahoo.slime;
 import static com.yahoo.slime.BinaryFormat.*;
 
 final class BinaryEncoder implements
-ArrayTraverser, ObjectSymbolTraverser
+ArrayTraverser, ObjectSymbolTraverser, ObjectTraverser
 {
     BufferedOutput out;
 
+    /** The symbols of the value being encoded when it is not a complete slime, or null when encoding a slime */
+    private SymbolTable names = null;
+
     public BinaryEncoder(int capacity) {
         out = new BufferedOutput(capacity);
     }
@@ -18,11 +21,33 @@ ArrayTraverser, ObjectSymbolTraverser
 
     public byte[] encode(Slime slime) {
         out.reset();
+        names = null;
         encodeSymbolTable(slime);
         encodeValue(slime.get());
         return out.toArray();
     }
 
+    public byte[] encode(Inspector value) {
+        out.reset();
+        names = new SymbolTable();
+        collectSymbols(value);
+        encodeSymbolTable(names);
+        encodeValue(value);
+        names = null;
+        return out.toArray();
+    }
+
+    private void collectSymbols(Inspector value) {
+        if (value.type() == Type.ARRAY) {
+            value.traverse((ArrayTraverser)(index, entry) -> collectSymbols(entry));
+        } else if (value.type() == Type.OBJECT) {
+            value.traverse((ObjectTraverser)(name, field) -> {
+                names.insert(name);
+                collectSymbols(field);
+            });
+        }
+    }
+
     void encode_cmpr_long(long value) {
         byte next = (byte)(value & 0x7f);
         value >>>= 7; // unsigned shift
@@ -104,8 +129,13 @@ ArrayTraverser, ObjectSymbolTraverser
 
     void encodeOBJECT(Inspector inspector) {
         write_type_and_size(Type.OBJECT.ID, inspector.children());
-        ObjectSymbolTraverser ot = this;
-        inspector.traverse(ot);
+        if (names == null) {
+            ObjectSymbolTraverser ot = this;
+            inspector.traverse(ot);
+        } else {
+            ObjectTraverser ot = this;
+            inspector.traverse(ot);
+        }
     }
 
     void encodeValue(Inspector inspector) {
@@ -126,13 +156,24 @@ ArrayTraverser, ObjectSymbolTraverser
         int numSymbols = slime.symbols();
         encode_cmpr_long(numSymbols);
         for (int i = 0 ; i < numSymbols; ++i) {
-            String name = slime.inspect(i);
-            byte[] bytes = Utf8Codec.encode(name);
-            encode_cmpr_long(bytes.length);
-            out.put(bytes);
+            encodeSymbol(slime.inspect(i));
         }
     }
 
+    void encodeSymbolTable(SymbolTable symbols) {
+        int numSymbols = symbols.symbols();
+        encode_cmpr_long(numSymbols);
+        for (int i = 0 ; i < numSymbols; ++i) {
+            encodeSymbol(symbols.inspect(i));
+        }
+    }
+
+    private void encodeSymbol(String name) {
+        byte[] bytes = Utf8Codec.encode(name);
+        encode_cmpr_long(bytes.length);
+        out.put(bytes);
+    }
+
     public void entry(int idx, Inspector inspector) {
         encodeValue(inspector);
     }
@@ -141,4 +182,9 @@ ArrayTraverser, ObjectSymbolTraverser
         encode_cmpr_long(symbol);
         encodeValue(inspector);
     }
+
+    public void field(String name, Inspector inspector) {
+        encode_cmpr_long(names.insert(name));
+        encodeValue(inspector);
+    }
 }
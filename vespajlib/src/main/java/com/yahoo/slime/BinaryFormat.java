@@ -44,6 +44,18 @@ public class BinaryFormat {
         return encoder.encode(slime);
     }
 
+    /**
+     * Serialize a value, which may be any part of a Slime object, into binary format,
+     * without copying it into a Slime object of its own first.
+     * The symbol table of the result holds only the field names used in the value.
+     * @param value the value which is to be serialized.
+     * @return a new byte array with the encoded value, which decodes to a Slime object holding the value.
+     **/
+    public static byte[] encode(Inspector value) {
+        BinaryEncoder encoder = new BinaryEncoder();
+        return encoder.encode(value);
+    }
+
     /**
      * Take binary data and deserialize it into a Slime object.
      * The data is assumed to be the binary representation
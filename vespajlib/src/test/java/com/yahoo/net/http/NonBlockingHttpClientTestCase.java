@@ -0,0 +1,270 @@
+// Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.net.http;
+
+import com.yahoo.text.Utf8;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author agent
+ */
+public class NonBlockingHttpClientTestCase {
+
+    private KeepAliveServer server;
+    private NonBlockingHttpClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new KeepAliveServer();
+        client = new NonBlockingHttpClient("test-http-io", 4, 60 * 1000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void testConnectionsAreKeptAlive() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            NonBlockingHttpClient.Response response = client.execute("GET", uri("/hello?i=" + i), null, null,
+                                                                     5000, 5000).get(1, TimeUnit.MINUTES);
+            assertEquals(200, response.statusCode());
+            assertEquals("hello", Utf8.toString(response.body()));
+            assertEquals("127.0.0.1", response.remoteAddress());
+        }
+        assertEquals(1, server.connectionCount());
+        assertEquals(1, client.idleConnectionCount("localhost", server.port()));
+    }
+
+    @Test
+    public void testChunkedResponseAndRequestBody() throws Exception {
+        NonBlockingHttpClient.Response response = client.execute("POST", uri("/chunked"),
+                                                                 Collections.singletonMap("X-Test", "value"),
+                                                                 Utf8.toBytes("body"),
+                                                                 5000, 5000).get(1, TimeUnit.MINUTES);
+        assertEquals("hello, chunked world", Utf8.toString(response.body()));
+        assertEquals("chunked", response.header("transfer-encoding"));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        try {
+            client.execute("GET", uri("/never"), null, null, 5000, 100).get(1, TimeUnit.MINUTES);
+            fail("Expected timeout");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+            assertFalse(e.getCause() instanceof NonBlockingHttpClient.ConnectTimeoutException);
+        }
+        assertEquals(0, client.idleConnectionCount("localhost", server.port()));
+    }
+
+    @Test
+    public void testIdleConnectionResetByServerIsNotReused() throws Exception {
+        NonBlockingHttpClient.Response response = client.execute("GET", uri("/reset"), null, null,
+                                                                 5000, 5000).get(1, TimeUnit.MINUTES);
+        assertEquals("hello", Utf8.toString(response.body()));
+        long deadline = System.currentTimeMillis() + 60 * 1000;
+        while (client.idleConnectionCount("localhost", server.port()) > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(0, client.idleConnectionCount("localhost", server.port()));
+
+        response = client.execute("GET", uri("/hello"), null, null, 5000, 5000).get(1, TimeUnit.MINUTES);
+        assertEquals(200, response.statusCode());
+        assertEquals(2, server.connectionCount());
+    }
+
+    @Test
+    public void testOnlyHttpIsSupported() throws Exception {
+        try {
+            client.execute("GET", URI.create("https://localhost:4443/"), null, null, 1000, 1000).get(1, TimeUnit.MINUTES);
+            fail("Expected exception");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void testTasksAndTimersAreRunInOrderInTheClientThread() throws InterruptedException {
+        List<String> events = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        client.schedule(() -> { events.add("timer 2"); done.countDown(); }, 200);
+        client.schedule(() -> { events.add("timer 1"); done.countDown(); }, 100);
+        client.execute(() -> { events.add(client.inIoThread() ? "task" : "task in wrong thread"); done.countDown(); });
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertEquals("[task, timer 1, timer 2]", events.toString());
+    }
+
+    @Test
+    public void testResponseWithContentLengthIsParsedInPieces() throws IOException {
+        NonBlockingHttpClient.ResponseParser parser = new NonBlockingHttpClient.ResponseParser(false);
+        assertFalse(parser.feed(bytes("HTTP/1.1 200 OK\r\nX-Yahoo-Feed-Protocol-Version: 3\r\nContent-Le")));
+        assertFalse(parser.feed(bytes("ngth: 10\r\n\r\nid1 OK")));
+        ByteBuffer rest = bytes(" x \nHTTP/1.1");
+        assertTrue(parser.feed(rest));
+        assertEquals(8, rest.remaining());
+        assertTrue(parser.keepAlive());
+
+        NonBlockingHttpClient.Response response = parser.toResponse("127.0.0.1");
+        assertEquals(200, response.statusCode());
+        assertEquals("3", response.header("X-Yahoo-Feed-Protocol-Version"));
+        assertEquals("id1 OK x \n", Utf8.toString(response.body()));
+    }
+
+    @Test
+    public void testChunkedResponseIsParsed() throws IOException {
+        NonBlockingHttpClient.ResponseParser parser = new NonBlockingHttpClient.ResponseParser(false);
+        assertFalse(parser.feed(bytes("HTTP/1.1 100 Continue\r\n\r\n" +
+                                      "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\nConnection: close\r\n\r\n" +
+                                      "4\r\nid1 \r\n6;ext\r\nOK x \n\r\n")));
+        assertTrue(parser.feed(bytes("0\r\n\r\n")));
+        assertFalse(parser.keepAlive());
+        assertEquals("id1 OK x \n", Utf8.toString(parser.toResponse("127.0.0.1").body()));
+    }
+
+    @Test
+    public void testResponseWithoutLengthEndsWhenConnectionIsClosed() throws IOException {
+        NonBlockingHttpClient.ResponseParser parser = new NonBlockingHttpClient.ResponseParser(false);
+        assertFalse(parser.feed(bytes("HTTP/1.0 500 Internal Server Error\r\n\r\nboom")));
+        assertTrue(parser.endOfInput());
+        assertEquals(500, parser.toResponse("127.0.0.1").statusCode());
+        assertEquals("boom", Utf8.toString(parser.toResponse("127.0.0.1").body()));
+    }
+
+    @Test
+    public void testIllegalResponseFailsTheRequestOnly() throws Exception {
+        try {
+            client.execute("GET", uri("/negative"), null, null, 5000, 60 * 1000).get(1, TimeUnit.MINUTES);
+            fail("Expected failure");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+            assertEquals("Illegal Content-Length '-5'", e.getCause().getMessage());
+        }
+        NonBlockingHttpClient.Response response = client.execute("GET", uri("/hello"), null, null,
+                                                                 5000, 5000).get(1, TimeUnit.MINUTES);
+        assertEquals("hello", Utf8.toString(response.body()));
+    }
+
+    @Test
+    public void testNegativeLengthsAreRejected() {
+        assertRejected("HTTP/1.1 200 OK\r\nContent-Length: -1\r\n\r\n", "Illegal Content-Length '-1'");
+        assertRejected("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n-a\r\n", "Illegal chunk size '-a'");
+    }
+
+    private void assertRejected(String response, String expectedMessage) {
+        try {
+            new NonBlockingHttpClient.ResponseParser(false).feed(bytes(response));
+            fail("Expected exception");
+        }
+        catch (IOException e) {
+            assertEquals(expectedMessage, e.getMessage());
+        }
+    }
+
+    private URI uri(String pathAndQuery) {
+        return URI.create("http://localhost:" + server.port() + pathAndQuery);
+    }
+
+    private static ByteBuffer bytes(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** A server keeping connections alive which responds according to the request path */
+    private static class KeepAliveServer {
+
+        private final ServerSocket serverSocket;
+        private final AtomicInteger connectionCount = new AtomicInteger();
+
+        KeepAliveServer() throws IOException {
+            serverSocket = new ServerSocket(0);
+            Thread acceptor = new Thread(this::accept);
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int port() { return serverSocket.getLocalPort(); }
+
+        int connectionCount() { return connectionCount.get(); }
+
+        void close() throws IOException { serverSocket.close(); }
+
+        private void accept() {
+            try {
+                while (true) {
+                    Socket socket = serverSocket.accept();
+                    connectionCount.incrementAndGet();
+                    Thread handler = new Thread(() -> serve(socket));
+                    handler.setDaemon(true);
+                    handler.start();
+                }
+            }
+            catch (IOException e) {
+                // closed
+            }
+        }
+
+        private void serve(Socket socket) {
+            try (Socket s = socket) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+                OutputStream out = s.getOutputStream();
+                String requestLine;
+                while ((requestLine = in.readLine()) != null) {
+                    int contentLength = 0;
+                    for (String line; (line = in.readLine()) != null && ! line.isEmpty(); )
+                        if (line.toLowerCase().startsWith("content-length:"))
+                            contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+                    for (int i = 0; i < contentLength; i++)
+                        in.read();
+
+                    String path = requestLine.split(" ")[1];
+                    if (path.startsWith("/never")) continue;
+                    if (path.startsWith("/negative"))
+                        out.write(Utf8.toBytes("HTTP/1.1 200 OK\r\nContent-Length: -5\r\n\r\nhello"));
+                    else if (path.startsWith("/chunked"))
+                        out.write(Utf8.toBytes("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n" +
+                                               "7\r\nhello, \r\nd;ext=1\r\nchunked world\r\n0\r\n\r\n"));
+                    else
+                        out.write(Utf8.toBytes("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: 5\r\n\r\nhello"));
+                    out.flush();
+                    if (path.startsWith("/reset")) { // keep alive in the response, then reset the connection
+                        s.setSoLinger(true, 0);
+                        return;
+                    }
+                }
+            }
+            catch (IOException e) {
+                // connection closed
+            }
+        }
+
+    }
+
+}
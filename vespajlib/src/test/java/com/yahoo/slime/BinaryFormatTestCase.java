@@ -532,6 +532,35 @@ public class BinaryFormatTestCase {
         verifyEncoding(slime, expect);
     }
 
+    @Test
+    public void testEncodingPartOfSlime() {
+        System.out.println("test encoding a value inside a slime");
+        Slime slime = new Slime();
+        Cursor c1 = slime.setObject();
+        c1.setLong("bar", 10);
+        Cursor c2 = c1.setArray("foo");
+        c2.addLong(20);
+        Cursor c3 = c2.addObject();
+        c3.setLong("answer", 42);
+        c3.setString("text", "hello");
+        byte[] expect = {
+            2, // num symbols
+            6, 'a', 'n', 's', 'w', 'e', 'r',
+            4, 't', 'e', 'x', 't',
+            enc_t_and_sz(Type.ARRAY, 2), // value type and size
+            enc_t_and_m(Type.LONG, 1), 20*2,
+            enc_t_and_sz(Type.OBJECT, 2), // nested value
+            0, enc_t_and_m(Type.LONG, 1), 42*2,
+            1, enc_t_and_sz(Type.STRING, 5), 'h', 'e', 'l', 'l', 'o'
+        };
+        byte[] actual = BinaryFormat.encode(slime.get().field("foo"));
+        assertThat(actual, is(expect));
+
+        Slime decoded = BinaryFormat.decode(actual);
+        assertThat(decoded.get().entry(1).field("answer").asLong(), is(42L));
+        assertThat(decoded.get().entry(1).field("text").asString(), is("hello"));
+    }
+
     @Test
     public void testOptionalDecodeOrder() {
         System.out.println("test decoding slime with different symbol order");